@@ -0,0 +1,270 @@
+package bench;
+
+import org.ObjectLayout.ConstructionContext;
+import org.ObjectLayout.CtorAndArgs;
+import org.ObjectLayout.CtorAndArgsProvider;
+import org.ObjectLayout.Intrinsic;
+import org.ObjectLayout.IntrinsicObjects;
+import org.ObjectLayout.PrimitiveLongArray;
+import org.ObjectLayout.StructuredArray;
+import org.ObjectLayout.StructuredArrayBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.TimeUnit;
+
+/*
+  Measures the throughput of constructing StructuredArrays, PrimitiveArrays and intrinsic objects, in
+  arrays constructed per second. Each operation constructs one array of `length` elements (or, for the
+  intrinsic object and plain Java baselines, `length` containing objects).
+
+  `elementSize` is the number of long fields in each element (2, 8 or 32), so the cost of touching
+  element memory can be separated from the per-element construction overhead.
+
+  Run:
+    $ java -jar target/benchmarks.jar ".*ConstructionBench.*"
+
+  Run with the GC profiler, to see the collection cost of construction:
+    $ java -jar target/benchmarks.jar ".*ConstructionBench.*" -prof gc
+
+  Run a single size:
+    $ java -jar target/benchmarks.jar ".*ConstructionBench.*" -p length=100000 -p elementSize=8
+ */
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+
+public class ConstructionBench {
+
+    private static final int INNER_LENGTH = 100;
+
+    @Param({"1000", "100000", "1000000"})
+    long length;
+
+    @Param({"2", "8", "32"})
+    int elementSize;
+
+    Class<Element> elementClass;
+    Constructor<Element> indexConstructor;
+    CtorAndArgsProvider<Element> perIndexProvider;
+    Object[] perIndexArgs;
+    Object[] containers;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws NoSuchMethodException {
+        switch (elementSize) {
+            case 2:
+                elementClass = (Class) Element2.class;
+                break;
+            case 8:
+                elementClass = (Class) Element8.class;
+                break;
+            case 32:
+                elementClass = (Class) Element32.class;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported elementSize " + elementSize);
+        }
+        indexConstructor = elementClass.getConstructor(long.class, long.class);
+
+        perIndexArgs = new Object[2];
+        final CtorAndArgs<Element> ctorAndArgs = new CtorAndArgs<Element>(indexConstructor, perIndexArgs);
+        perIndexProvider = new CtorAndArgsProvider<Element>() {
+            @Override
+            public CtorAndArgs<Element> getForContext(ConstructionContext<Element> context) {
+                perIndexArgs[0] = context.getIndex();
+                perIndexArgs[1] = context.getIndex() * 2;
+                return ctorAndArgs;
+            }
+        };
+
+        containers = new Object[(int) length];
+    }
+
+    //
+    // StructuredArray construction:
+    //
+
+    @Benchmark
+    public StructuredArray<Element> structuredArrayDefaultCtor() {
+        return StructuredArray.newInstance(elementClass, length);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public StructuredArray<Element> structuredArrayConstantCtorAndArgs() {
+        return new StructuredArrayBuilder(StructuredArray.class, elementClass, length).
+                elementCtorAndArgs(indexConstructor, 7L, 14L).
+                build();
+    }
+
+    @Benchmark
+    public StructuredArray<Element> structuredArrayPerIndexProvider() {
+        return StructuredArray.newInstance(elementClass, perIndexProvider, length);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public StructuredArray<StructuredArray<Element>> structuredArrayNested() {
+        // length elements, as (length / INNER_LENGTH) sub-arrays of INNER_LENGTH elements each:
+        return new StructuredArrayBuilder(StructuredArray.class,
+                new StructuredArrayBuilder(StructuredArray.class, elementClass, INNER_LENGTH),
+                Math.max(1, length / INNER_LENGTH)).
+                build();
+    }
+
+    //
+    // PrimitiveArray construction (the same number of longs as the StructuredArrays hold in their elements):
+    //
+
+    @Benchmark
+    public PrimitiveLongArray primitiveLongArray() {
+        return PrimitiveLongArray.newInstance(length * elementSize);
+    }
+
+    //
+    // Intrinsic object construction:
+    //
+
+    @Benchmark
+    public Object[] intrinsicConstructWithin() {
+        final Object[] containers = this.containers;
+        switch (elementSize) {
+            case 2:
+                for (int i = 0; i < containers.length; i++) {
+                    containers[i] = new Container2();
+                }
+                break;
+            case 8:
+                for (int i = 0; i < containers.length; i++) {
+                    containers[i] = new Container8();
+                }
+                break;
+            default:
+                for (int i = 0; i < containers.length; i++) {
+                    containers[i] = new Container32();
+                }
+                break;
+        }
+        return containers;
+    }
+
+    //
+    // Plain Java baselines:
+    //
+
+    @Benchmark
+    public Object[] plainArrayOfElements() {
+        final Element[] array = new Element[(int) length];
+        switch (elementSize) {
+            case 2:
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = new Element2(i, (long) i * 2);
+                }
+                break;
+            case 8:
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = new Element8(i, (long) i * 2);
+                }
+                break;
+            default:
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = new Element32(i, (long) i * 2);
+                }
+                break;
+        }
+        return array;
+    }
+
+    @Benchmark
+    public long[] plainLongArray() {
+        return new long[(int) (length * elementSize)];
+    }
+
+    //
+    // Element and container classes:
+    //
+
+    public static class Element {
+    }
+
+    public static class Element2 extends Element {
+        long f0, f1;
+
+        public Element2() {
+        }
+
+        public Element2(final long index, final long value) {
+            f0 = index;
+            f1 = value;
+        }
+    }
+
+    public static class Element8 extends Element {
+        long f0, f1, f2, f3, f4, f5, f6, f7;
+
+        public Element8() {
+        }
+
+        public Element8(final long index, final long value) {
+            f0 = index;
+            f1 = value;
+        }
+    }
+
+    public static class Element32 extends Element {
+        long f0, f1, f2, f3, f4, f5, f6, f7;
+        long f8, f9, f10, f11, f12, f13, f14, f15;
+        long f16, f17, f18, f19, f20, f21, f22, f23;
+        long f24, f25, f26, f27, f28, f29, f30, f31;
+
+        public Element32() {
+        }
+
+        public Element32(final long index, final long value) {
+            f0 = index;
+            f1 = value;
+        }
+    }
+
+    public static class Container2 {
+        @Intrinsic
+        private final Element2 element = IntrinsicObjects.constructWithin("element", this);
+
+        public Element2 getElement() {
+            return element;
+        }
+    }
+
+    public static class Container8 {
+        @Intrinsic
+        private final Element8 element = IntrinsicObjects.constructWithin("element", this);
+
+        public Element8 getElement() {
+            return element;
+        }
+    }
+
+    public static class Container32 {
+        @Intrinsic
+        private final Element32 element = IntrinsicObjects.constructWithin("element", this);
+
+        public Element32 getElement() {
+            return element;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package bench;
+
+import bench.ObjectLayoutBench.MockStructure;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.ObjectLayout.PrimitiveLongArray;
+import org.ObjectLayout.StructuredArray;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+  Measures the GC cost of holding a large data set in different layouts, under a steady-state mutation
+  load. Not a JMH benchmark: the collector is a property of the JVM, so each layout and collector
+  combination is a separate run.
+
+  The harness builds one data set of `length` MockStructure-equivalents:
+
+  - structuredArray:    a StructuredArray<MockStructure> (one object per element, behind Object[] partitions)
+  - primitiveLongArray: a PrimitiveLongArray holding two longs per element (no element objects)
+  - objectArray:        a MockStructure[] of separately allocated elements (one object per element)
+
+  and then updates random elements for the requested duration. Every update allocates one MockStructure
+  in every layout, so the allocation rate is comparable: objectArray stores it in the array (creating
+  old-to-young references), while the other layouts copy its values into the existing storage and drop it.
+
+  The numbers reflect this (vanilla) StructuredArray implementation, which allocates every element as a
+  separate object rather than laying the elements out flat in the array. Its heap graph has the same
+  shape as objectArray's, so structuredArray and objectArray differ mainly in the mutation pattern (copying
+  into existing elements vs. replacing them), not in the number of objects the collector traces. A JVM
+  with intrinsic StructuredArray support would lay the elements out flat, as primitiveLongArray
+  approximates.
+
+  Every collection is recorded through the GarbageCollectorMXBean notifications, and reported per
+  collector bean as a distribution of durations. Which beans report pauses and which report concurrent
+  cycles depends on the collector: e.g. "G1 Young Generation"/"G1 Old Generation" are pauses,
+  "G1 Concurrent GC" (JDK 20+) and "ZGC Cycles"/"ZGC Major Cycles" are concurrent cycles, and
+  "ZGC Pauses"/"ZGC Major Pauses" are pauses. Durations are reported by the JVM in milliseconds.
+
+  Notifications are delivered asynchronously, so a collection is attributed to the measured period by its
+  GcInfo id (the collector's collection count), and the report waits for the notifications of every
+  collection counted by the MXBeans to arrive.
+
+  The notifications use com.sun.management.GarbageCollectionNotificationInfo, which requires a JDK 7 or
+  later HotSpot-based JVM (the rest of this module targets Java 6).
+
+  Run (length defaults to 10,000,000, duration to 60 seconds, warmup to 10 seconds):
+    $ java -Xmx4g -XX:+UseG1GC -cp target/benchmarks.jar bench.GcImpactHarness structuredArray
+    $ java -Xmx4g -XX:+UseParallelGC -cp target/benchmarks.jar bench.GcImpactHarness objectArray 10000000 60
+    $ java -Xmx4g -XX:+UseZGC -cp target/benchmarks.jar bench.GcImpactHarness primitiveLongArray
+
+  (ZGC requires JDK 11 or later, and -XX:+UnlockExperimentalVMOptions before JDK 15.) For per-phase
+  detail beyond what the MXBeans report, add -XX:StartFlightRecording=filename=gc.jfr (JDK 11+) and
+  inspect the GC events with `jfr print --events GarbageCollection,GCPhasePause gc.jfr`.
+ */
+public class GcImpactHarness {
+
+    private static final int RECENT_LENGTH = 1024;
+    private static final long NOTIFICATION_TIMEOUT_MS = 10000;
+
+    private final String layout;
+    private final int length;
+
+    private StructuredArray<MockStructure> structuredArray;
+    private PrimitiveLongArray primitiveLongArray;
+    private MockStructure[] objectArray;
+
+    // Keeps each update's allocation reachable for a short while, so it cannot be optimized away:
+    private final Object[] recent = new Object[RECENT_LENGTH];
+    private long seed = 0x9E3779B97F4A7C15L;
+
+    private final Map<String, List<Long>> durations = new LinkedHashMap<String, List<Long>>();
+    // The [first, last] GcInfo ids recorded per collector, guarded by durations:
+    private final Map<String, long[]> recordedIds = new LinkedHashMap<String, long[]>();
+
+    GcImpactHarness(final String layout, final int length) {
+        this.layout = layout;
+        this.length = length;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: GcImpactHarness structuredArray|primitiveLongArray|objectArray " +
+                    "[length] [seconds] [warmupSeconds]");
+            System.exit(1);
+        }
+        final String layout = args[0];
+        final int length = (args.length > 1) ? Integer.parseInt(args[1]) : 10000000;
+        final int seconds = (args.length > 2) ? Integer.parseInt(args[2]) : 60;
+        final int warmupSeconds = (args.length > 3) ? Integer.parseInt(args[3]) : 10;
+
+        final GcImpactHarness harness = new GcImpactHarness(layout, length);
+        harness.run(seconds, warmupSeconds);
+    }
+
+    void run(final int seconds, final int warmupSeconds) {
+        registerListeners();
+
+        final long buildStart = System.nanoTime();
+        build();
+        final long buildNanos = System.nanoTime() - buildStart;
+
+        System.gc();
+        final MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+
+        mutate(warmupSeconds * 1000000000L);
+
+        final Map<String, long[]> before = collectorTotals();
+        startRecording(before);
+        final long start = System.nanoTime();
+        final long updates = mutate(seconds * 1000000000L);
+        final long elapsedNanos = System.nanoTime() - start;
+        final Map<String, long[]> after = collectorTotals();
+        stopRecording(after);
+        awaitNotifications(before, after);
+
+        report(buildNanos, heap, updates, elapsedNanos, before, after);
+    }
+
+    private void build() {
+        if ("structuredArray".equals(layout)) {
+            structuredArray = StructuredArray.newInstance(MockStructure.class, length);
+            for (int i = 0; i < length; i++) {
+                structuredArray.get(i).setIndex(i);
+                structuredArray.get(i).setTestValue(i * 2);
+            }
+        } else if ("primitiveLongArray".equals(layout)) {
+            primitiveLongArray = PrimitiveLongArray.newInstance(2L * length);
+            for (int i = 0; i < length; i++) {
+                primitiveLongArray.set(2L * i, i);
+                primitiveLongArray.set((2L * i) + 1, i * 2);
+            }
+        } else if ("objectArray".equals(layout)) {
+            objectArray = new MockStructure[length];
+            for (int i = 0; i < length; i++) {
+                objectArray[i] = new MockStructure(i, i * 2);
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown layout " + layout);
+        }
+    }
+
+    private long mutate(final long durationNanos) {
+        final long deadline = System.nanoTime() + durationNanos;
+        long updates = 0;
+        do {
+            for (int n = 0; n < 4096; n++) {
+                final int index = nextIndex();
+                final MockStructure update = new MockStructure(index, updates);
+                recent[(int) updates & (RECENT_LENGTH - 1)] = update;
+                if (structuredArray != null) {
+                    final MockStructure element = structuredArray.get(index);
+                    element.setIndex(update.getIndex());
+                    element.setTestValue(update.getTestValue());
+                } else if (primitiveLongArray != null) {
+                    primitiveLongArray.set(2L * index, update.getIndex());
+                    primitiveLongArray.set((2L * index) + 1, update.getTestValue());
+                } else {
+                    objectArray[index] = update;
+                }
+                updates++;
+            }
+        } while (System.nanoTime() < deadline);
+        return updates;
+    }
+
+    private int nextIndex() {
+        long x = seed;
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        seed = x;
+        return (int) ((x >>> 1) % length);
+    }
+
+    private void registerListeners() {
+        final NotificationListener listener = new NotificationListener() {
+            @Override
+            public void handleNotification(final Notification notification, final Object handback) {
+                if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(
+                        notification.getType())) {
+                    return;
+                }
+                final GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                final long id = info.getGcInfo().getId();
+                synchronized (durations) {
+                    final long[] ids = recordedIds.get(info.getGcName());
+                    if ((ids == null) || (id < ids[0]) || (id > ids[1])) {
+                        return;
+                    }
+                    List<Long> list = durations.get(info.getGcName());
+                    if (list == null) {
+                        list = new ArrayList<Long>();
+                        durations.put(info.getGcName(), list);
+                    }
+                    list.add(info.getGcInfo().getDuration());
+                    durations.notifyAll();
+                }
+            }
+        };
+        for (final GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) bean).addNotificationListener(listener, null, null);
+        }
+    }
+
+    private void startRecording(final Map<String, long[]> before) {
+        synchronized (durations) {
+            for (final Map.Entry<String, long[]> entry : before.entrySet()) {
+                recordedIds.put(entry.getKey(), new long[] {entry.getValue()[0] + 1, Long.MAX_VALUE});
+            }
+        }
+    }
+
+    private void stopRecording(final Map<String, long[]> after) {
+        synchronized (durations) {
+            for (final Map.Entry<String, long[]> entry : after.entrySet()) {
+                final long[] ids = recordedIds.get(entry.getKey());
+                if (ids != null) {
+                    ids[1] = entry.getValue()[0];
+                }
+            }
+        }
+    }
+
+    private void awaitNotifications(final Map<String, long[]> before, final Map<String, long[]> after) {
+        final long deadline = System.currentTimeMillis() + NOTIFICATION_TIMEOUT_MS;
+        synchronized (durations) {
+            while (!notificationsDelivered(before, after)) {
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return;
+                }
+                try {
+                    durations.wait(remaining);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean notificationsDelivered(final Map<String, long[]> before, final Map<String, long[]> after) {
+        for (final Map.Entry<String, long[]> entry : after.entrySet()) {
+            final String name = entry.getKey();
+            if (recordedCount(name) < entry.getValue()[0] - before.get(name)[0]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int recordedCount(final String name) {
+        final List<Long> list = durations.get(name);
+        return (list == null) ? 0 : list.size();
+    }
+
+    private static Map<String, long[]> collectorTotals() {
+        final Map<String, long[]> totals = new LinkedHashMap<String, long[]>();
+        for (final GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            totals.put(bean.getName(), new long[] {bean.getCollectionCount(), bean.getCollectionTime()});
+        }
+        return totals;
+    }
+
+    private void report(final long buildNanos, final MemoryUsage heap, final long updates, final long elapsedNanos,
+                        final Map<String, long[]> before, final Map<String, long[]> after) {
+        System.out.println("Layout:          " + layout + ", length " + length);
+        System.out.println("JVM:             " + System.getProperty("java.vm.name") + " " +
+                System.getProperty("java.version"));
+        System.out.println("Build time:      " + (buildNanos / 1000000) + " ms");
+        System.out.println("Heap after build: used " + (heap.getUsed() >> 20) + " MB, committed " +
+                (heap.getCommitted() >> 20) + " MB");
+        System.out.println("Updates:         " + updates + " in " + (elapsedNanos / 1000000) + " ms (" +
+                (long) (updates / (elapsedNanos / 1e9)) + " updates/sec)");
+        System.out.println();
+        System.out.println(String.format("%-24s %8s %10s %8s %8s %8s %8s %8s",
+                "Collector", "count", "total ms", "p50", "p90", "p99", "p99.9", "max"));
+        synchronized (durations) {
+            for (final Map.Entry<String, long[]> entry : after.entrySet()) {
+                final String name = entry.getKey();
+                final long count = entry.getValue()[0] - before.get(name)[0];
+                final long time = entry.getValue()[1] - before.get(name)[1];
+                final List<Long> list = durations.containsKey(name) ? durations.get(name) : new ArrayList<Long>();
+                Collections.sort(list);
+                System.out.println(String.format("%-24s %8d %10d %8d %8d %8d %8d %8d",
+                        name, count, time,
+                        percentile(list, 50.0), percentile(list, 90.0), percentile(list, 99.0),
+                        percentile(list, 99.9), percentile(list, 100.0)));
+            }
+            for (final Map.Entry<String, long[]> entry : after.entrySet()) {
+                final String name = entry.getKey();
+                final long count = entry.getValue()[0] - before.get(name)[0];
+                if (recordedCount(name) < count) {
+                    System.out.println("Warning: only " + recordedCount(name) + " of " + count + " " + name +
+                            " notifications arrived; its percentiles cover only those.");
+                }
+            }
+        }
+    }
+
+    static long percentile(final List<Long> sorted, final double percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        final int index = (int) Math.ceil((percentile / 100.0) * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+}
@@ -0,0 +1,432 @@
+package bench;
+
+import org.ObjectLayout.Intrinsic;
+import org.ObjectLayout.IntrinsicObjects;
+import org.ObjectLayout.PrimitiveLongArray;
+import org.ObjectLayout.StructuredArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+  Compares containers whose members are intrinsic objects (@Intrinsic fields initialized with
+  IntrinsicObjects.constructWithin()) with the same containers whose members are ordinary, separately
+  allocated objects. Each container has three kinds of member:
+
+  - two Points (start and end),
+  - a PrimitiveLongArray of HISTORY_LENGTH longs (history),
+  - a StructuredArray of VERTEX_COUNT Points (vertices).
+
+  IntrinsicContainer declares them @Intrinsic, and PlainContainer allocates them with new, newInstance().
+  Three layouts of `length` containers are measured:
+
+  - intrinsicInStructuredArray: IntrinsicContainers as the elements of a StructuredArray
+  - intrinsicInObjectArray:     IntrinsicContainers referenced from a plain Java array
+  - plainInObjectArray:         PlainContainers referenced from a plain Java array
+
+  Benchmarks (average time):
+
+  - construct*: constructing one container, in nanoseconds.
+  - read*:      reading one kind of member of every container, in index order, in microseconds per pass
+                over all `length` containers (readPoints reads both Points, readHistory sums the history,
+                readVertices sums the vertices' x coordinates).
+  - copy*:      copying the whole layout, each container with its copy constructor, in microseconds.
+
+  On a stock JVM intrinsic members are ordinary objects that happen to be allocated next to their
+  container, so these numbers show what constructWithin() costs and what its allocation order buys
+  today; on a JVM that lays intrinsic objects out within their container, the read* benchmarks show
+  the dereferences saved.
+
+  Run with the GC profiler, to see the collection cost of each approach:
+    $ java -jar target/benchmarks.jar ".*IntrinsicBench.*" -prof gc
+
+  (With JMH 1.x, -prof gc also reports gc.alloc.rate.norm, the bytes allocated per operation.)
+
+  Run a single length:
+    $ java -jar target/benchmarks.jar ".*IntrinsicBench.*" -p length=1000000
+ */
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 3, jvmArgsAppend = "-Xmx3g")
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+
+public class IntrinsicBench {
+
+    static final int HISTORY_LENGTH = 8;
+    static final int VERTEX_COUNT = 4;
+
+    private static final int CONSTRUCT_BATCH = 1000;
+
+    //
+    // Construction:
+    //
+
+    private final Object[] constructed = new Object[CONSTRUCT_BATCH];
+
+    @Benchmark
+    @OperationsPerInvocation(CONSTRUCT_BATCH)
+    public Object[] constructIntrinsic() {
+        final Object[] containers = constructed;
+        for (int i = 0; i < containers.length; i++) {
+            containers[i] = new IntrinsicContainer(i);
+        }
+        return containers;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CONSTRUCT_BATCH)
+    public Object[] constructPlain() {
+        final Object[] containers = constructed;
+        for (int i = 0; i < containers.length; i++) {
+            containers[i] = new PlainContainer(i);
+        }
+        return containers;
+    }
+
+    //
+    // Member access:
+    //
+
+    // Each layout state carries its own length @Param (rather than the enclosing benchmark state), so that
+    // the construct* benchmarks, which do not use a layout, are not repeated for each length.
+
+    @State(Scope.Thread)
+    public static class IntrinsicInStructuredArray {
+        @Param({"10000", "1000000"})
+        int length;
+
+        StructuredArray<IntrinsicContainer> containers;
+
+        @Setup
+        public void setup() {
+            containers = StructuredArray.newInstance(IntrinsicContainer.class, length);
+            for (int i = 0; i < length; i++) {
+                containers.get(i).init(i);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class IntrinsicInObjectArray {
+        @Param({"10000", "1000000"})
+        int length;
+
+        IntrinsicContainer[] containers;
+
+        @Setup
+        public void setup() {
+            containers = new IntrinsicContainer[length];
+            for (int i = 0; i < length; i++) {
+                containers[i] = new IntrinsicContainer(i);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PlainInObjectArray {
+        @Param({"10000", "1000000"})
+        int length;
+
+        PlainContainer[] containers;
+
+        @Setup
+        public void setup() {
+            containers = new PlainContainer[length];
+            for (int i = 0; i < length; i++) {
+                containers[i] = new PlainContainer(i);
+            }
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long readPointsIntrinsicInStructuredArray(final IntrinsicInStructuredArray state) {
+        final StructuredArray<IntrinsicContainer> containers = state.containers;
+        final int length = state.length;
+        long sum = 0;
+        for (int i = 0; i < length; i++) {
+            final IntrinsicContainer container = containers.get(i);
+            sum += container.getStart().getX() + container.getEnd().getY();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long readPointsIntrinsicInObjectArray(final IntrinsicInObjectArray state) {
+        final IntrinsicContainer[] containers = state.containers;
+        long sum = 0;
+        for (final IntrinsicContainer container : containers) {
+            sum += container.getStart().getX() + container.getEnd().getY();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long readPointsPlainInObjectArray(final PlainInObjectArray state) {
+        final PlainContainer[] containers = state.containers;
+        long sum = 0;
+        for (final PlainContainer container : containers) {
+            sum += container.getStart().getX() + container.getEnd().getY();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long readHistoryIntrinsicInStructuredArray(final IntrinsicInStructuredArray state) {
+        final StructuredArray<IntrinsicContainer> containers = state.containers;
+        final int length = state.length;
+        long sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += sumOf(containers.get(i).getHistory());
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long readHistoryIntrinsicInObjectArray(final IntrinsicInObjectArray state) {
+        long sum = 0;
+        for (final IntrinsicContainer container : state.containers) {
+            sum += sumOf(container.getHistory());
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long readHistoryPlainInObjectArray(final PlainInObjectArray state) {
+        long sum = 0;
+        for (final PlainContainer container : state.containers) {
+            sum += sumOf(container.getHistory());
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long readVerticesIntrinsicInStructuredArray(final IntrinsicInStructuredArray state) {
+        final StructuredArray<IntrinsicContainer> containers = state.containers;
+        final int length = state.length;
+        long sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += sumOf(containers.get(i).getVertices());
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long readVerticesIntrinsicInObjectArray(final IntrinsicInObjectArray state) {
+        long sum = 0;
+        for (final IntrinsicContainer container : state.containers) {
+            sum += sumOf(container.getVertices());
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long readVerticesPlainInObjectArray(final PlainInObjectArray state) {
+        long sum = 0;
+        for (final PlainContainer container : state.containers) {
+            sum += sumOf(container.getVertices());
+        }
+        return sum;
+    }
+
+    //
+    // Copying:
+    //
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public StructuredArray<IntrinsicContainer> copyIntrinsicInStructuredArray(
+            final IntrinsicInStructuredArray state) throws NoSuchMethodException {
+        return StructuredArray.copyInstance(state.containers);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public IntrinsicContainer[] copyIntrinsicInObjectArray(final IntrinsicInObjectArray state) {
+        final IntrinsicContainer[] source = state.containers;
+        final IntrinsicContainer[] copy = new IntrinsicContainer[source.length];
+        for (int i = 0; i < source.length; i++) {
+            copy[i] = new IntrinsicContainer(source[i]);
+        }
+        return copy;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public PlainContainer[] copyPlainInObjectArray(final PlainInObjectArray state) {
+        final PlainContainer[] source = state.containers;
+        final PlainContainer[] copy = new PlainContainer[source.length];
+        for (int i = 0; i < source.length; i++) {
+            copy[i] = new PlainContainer(source[i]);
+        }
+        return copy;
+    }
+
+    private static long sumOf(final PrimitiveLongArray history) {
+        long sum = 0;
+        for (int i = 0; i < HISTORY_LENGTH; i++) {
+            sum += history.get(i);
+        }
+        return sum;
+    }
+
+    private static long sumOf(final StructuredArray<Point> vertices) {
+        long sum = 0;
+        for (int i = 0; i < VERTEX_COUNT; i++) {
+            sum += vertices.get(i).getX();
+        }
+        return sum;
+    }
+
+    //
+    // Member and container classes:
+    //
+
+    public static class Point {
+        private long x;
+        private long y;
+
+        public Point() {
+        }
+
+        public Point(final Point source) {
+            this.x = source.x;
+            this.y = source.y;
+        }
+
+        public long getX() {
+            return x;
+        }
+
+        public long getY() {
+            return y;
+        }
+
+        public void set(final long x, final long y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    public static class IntrinsicContainer {
+        @Intrinsic
+        private final Point start = IntrinsicObjects.constructWithin("start", this);
+        @Intrinsic
+        private final Point end = IntrinsicObjects.constructWithin("end", this);
+        @Intrinsic(length = HISTORY_LENGTH)
+        private final PrimitiveLongArray history = IntrinsicObjects.constructWithin("history", this);
+        @Intrinsic(length = VERTEX_COUNT)
+        private final StructuredArray<Point> vertices = IntrinsicObjects.constructWithin("vertices", this);
+
+        public IntrinsicContainer() {
+        }
+
+        public IntrinsicContainer(final long seed) {
+            init(seed);
+        }
+
+        public IntrinsicContainer(final IntrinsicContainer source) {
+            start.set(source.start.getX(), source.start.getY());
+            end.set(source.end.getX(), source.end.getY());
+            for (int i = 0; i < HISTORY_LENGTH; i++) {
+                history.set(i, source.history.get(i));
+            }
+            for (int i = 0; i < VERTEX_COUNT; i++) {
+                vertices.get(i).set(source.vertices.get(i).getX(), source.vertices.get(i).getY());
+            }
+        }
+
+        void init(final long seed) {
+            start.set(seed, seed + 1);
+            end.set(seed + 2, seed + 3);
+            for (int i = 0; i < HISTORY_LENGTH; i++) {
+                history.set(i, seed + i);
+            }
+            for (int i = 0; i < VERTEX_COUNT; i++) {
+                vertices.get(i).set(seed + i, seed - i);
+            }
+        }
+
+        public Point getStart() {
+            return start;
+        }
+
+        public Point getEnd() {
+            return end;
+        }
+
+        public PrimitiveLongArray getHistory() {
+            return history;
+        }
+
+        public StructuredArray<Point> getVertices() {
+            return vertices;
+        }
+    }
+
+    public static class PlainContainer {
+        private final Point start = new Point();
+        private final Point end = new Point();
+        private final PrimitiveLongArray history = PrimitiveLongArray.newInstance(HISTORY_LENGTH);
+        private final StructuredArray<Point> vertices = StructuredArray.newInstance(Point.class, VERTEX_COUNT);
+
+        public PlainContainer(final long seed) {
+            start.set(seed, seed + 1);
+            end.set(seed + 2, seed + 3);
+            for (int i = 0; i < HISTORY_LENGTH; i++) {
+                history.set(i, seed + i);
+            }
+            for (int i = 0; i < VERTEX_COUNT; i++) {
+                vertices.get(i).set(seed + i, seed - i);
+            }
+        }
+
+        public PlainContainer(final PlainContainer source) {
+            start.set(source.start.getX(), source.start.getY());
+            end.set(source.end.getX(), source.end.getY());
+            for (int i = 0; i < HISTORY_LENGTH; i++) {
+                history.set(i, source.history.get(i));
+            }
+            for (int i = 0; i < VERTEX_COUNT; i++) {
+                vertices.get(i).set(source.vertices.get(i).getX(), source.vertices.get(i).getY());
+            }
+        }
+
+        public Point getStart() {
+            return start;
+        }
+
+        public Point getEnd() {
+            return end;
+        }
+
+        public PrimitiveLongArray getHistory() {
+            return history;
+        }
+
+        public StructuredArray<Point> getVertices() {
+            return vertices;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+  The peak throughput of the LatencyDriver workloads, run back to back. Use it to choose the rates to run
+  LatencyDriver at, and report it alongside the percentiles LatencyDriver measures at those rates.
+
+  Run:
+    $ java -jar target/benchmarks.jar ".*LatencyBench.*"
+ */
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+
+public class LatencyBench {
+
+    @Param({"structuredArray", "primitiveLongArray", "sortedIndex"})
+    String workloadName;
+
+    @Param({"1000000"})
+    int length;
+
+    LatencyDriver.Workload workload;
+    long sequence;
+
+    @Setup
+    public void setup() {
+        workload = LatencyDriver.newWorkload(workloadName);
+        workload.setup(length);
+    }
+
+    @Benchmark
+    public long execute() {
+        return workload.execute(sequence++);
+    }
+}
@@ -0,0 +1,296 @@
+package bench;
+
+import bench.ObjectLayoutBench.MockStructure;
+import org.ObjectLayout.PrimitiveLongArray;
+import org.ObjectLayout.StructuredArray;
+
+import java.io.PrintStream;
+
+/*
+  Measures the latency distribution of get/update cycles issued at a fixed rate. Not a JMH benchmark: JMH
+  runs operations back to back and reports averages (or, in SampleTime mode, the time of the operations it
+  happened to sample), so a stall of the benchmark thread delays the operations that should have been
+  issued during it instead of measuring them. This is coordinated omission, and it hides exactly the tail
+  that matters for a service with a request rate it does not control.
+
+  The driver issues operation i at start + i / rate, and records three histograms (see LatencyHistogram):
+
+  - response time:        from the operation's intended start to its completion. Operations delayed by an
+                          earlier stall record the time they spent waiting, so this is the corrected
+                          distribution a client issuing requests at the same rate would see.
+  - service time:         from the operation's actual start to its completion (uncorrected).
+  - service time, CO-corrected: the service times, back-filled with the expected-interval correction. For
+                          comparison with tools that can only measure service time.
+
+  Workloads (each operation reads a pseudo-random element, derived from the operation's sequence number,
+  and updates it):
+
+  - structuredArray:    a get/update cycle on a StructuredArray<MockStructure> element
+  - primitiveLongArray: a get/update cycle on a PrimitiveLongArray element
+  - sortedIndex:        a key lookup in a sorted, sparse PrimitiveLongArray key index (a binary search, the
+                        search path of a bulk-loaded B+tree flattened into one array), then a get/update
+                        cycle on the StructuredArray<MockStructure> element holding the key's value
+
+  LatencyBench runs the same workloads under JMH, in Throughput mode. Use its result to choose the rates
+  to drive at, and report the percentiles at each rate alongside it: latency at a sustainable fraction of
+  the peak throughput is the number that matters, and latency near or above the peak grows without bound.
+
+  Run (length defaults to 1,000,000, duration to 60 seconds, warmup to 10 seconds):
+    $ java -jar target/benchmarks.jar ".*LatencyBench.*"
+    $ java -cp target/benchmarks.jar bench.LatencyDriver structuredArray 1000000
+    $ java -cp target/benchmarks.jar bench.LatencyDriver sortedIndex 200000 10000000 60 10
+ */
+public class LatencyDriver {
+
+    /**
+     * An operation to be driven at a fixed rate.
+     */
+    public interface Workload {
+        /**
+         * Build the data set the operations run against
+         *
+         * @param length the number of elements in the data set
+         */
+        void setup(int length);
+
+        /**
+         * Run one operation
+         *
+         * @param sequence the operation's sequence number, which determines the element it accesses
+         * @return a value derived from the accessed element, to be consumed by the caller
+         */
+        long execute(long sequence);
+    }
+
+    private final Workload workload;
+    private final long intervalNanos;
+
+    private final LatencyHistogram responseTime = new LatencyHistogram();
+    private final LatencyHistogram serviceTime = new LatencyHistogram();
+    private final LatencyHistogram correctedServiceTime = new LatencyHistogram();
+    // Published once per drive() so that the operations' results cannot be optimized away:
+    private volatile long consumed;
+    // Operations of the last drive() that were due before its deadline, but were not issued by then:
+    private long unissuedOperations;
+
+    LatencyDriver(final Workload workload, final long ratePerSecond) {
+        if (ratePerSecond <= 0) {
+            throw new IllegalArgumentException("rate must be positive");
+        }
+        this.workload = workload;
+        this.intervalNanos = Math.max(1, 1000000000L / ratePerSecond);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: LatencyDriver structuredArray|primitiveLongArray|sortedIndex " +
+                    "ratePerSecond [length] [seconds] [warmupSeconds]");
+            System.exit(1);
+        }
+        final String name = args[0];
+        final long rate = Long.parseLong(args[1]);
+        final int length = (args.length > 2) ? Integer.parseInt(args[2]) : 1000000;
+        final int seconds = (args.length > 3) ? Integer.parseInt(args[3]) : 60;
+        final int warmupSeconds = (args.length > 4) ? Integer.parseInt(args[4]) : 10;
+
+        final Workload workload = newWorkload(name);
+        workload.setup(length);
+
+        final LatencyDriver driver = new LatencyDriver(workload, rate);
+        driver.drive(warmupSeconds * 1000000000L);
+        driver.reset();
+        final long start = System.nanoTime();
+        final long operations = driver.drive(seconds * 1000000000L);
+        final long elapsedNanos = System.nanoTime() - start;
+
+        System.out.println("Workload:  " + name + ", length " + length);
+        System.out.println("JVM:       " + System.getProperty("java.vm.name") + " " +
+                System.getProperty("java.version"));
+        System.out.println("Rate:      " + rate + " ops/sec requested, " +
+                (long) (operations * 1000000000.0 / elapsedNanos) + " ops/sec achieved");
+        if (driver.getUnissuedOperations() > 0) {
+            System.out.println("Backlog:   " + driver.getUnissuedOperations() +
+                    " operations were due but not issued before the deadline (recorded as waiting until then)");
+        }
+        System.out.println();
+        driver.report(System.out);
+    }
+
+    static Workload newWorkload(final String name) {
+        if ("structuredArray".equals(name)) {
+            return new StructuredArrayWorkload();
+        } else if ("primitiveLongArray".equals(name)) {
+            return new PrimitiveLongArrayWorkload();
+        } else if ("sortedIndex".equals(name)) {
+            return new SortedIndexWorkload();
+        }
+        throw new IllegalArgumentException("Unknown workload " + name);
+    }
+
+    /**
+     * Issue operations at the driver's rate until a wall-clock deadline, recording their latencies. No
+     * operation is issued after the deadline, even if a stall left operations queued behind it: those that
+     * were due before the deadline are recorded in the response time histogram as having waited until it
+     * (a lower bound on their response time), and counted by {@link #getUnissuedOperations()}.
+     *
+     * @param durationNanos how long to issue operations for
+     * @return the number of operations issued
+     */
+    long drive(final long durationNanos) {
+        final long start = System.nanoTime();
+        final long deadline = start + durationNanos;
+        long operations = 0;
+        long sink = 0;
+        long intendedStart = start;
+        while (intendedStart - deadline < 0) {
+            long actualStart;
+            while ((actualStart = System.nanoTime()) - intendedStart < 0) {
+                // Spin: parking or sleeping would add wake-up latency to every operation.
+            }
+            if (actualStart - deadline >= 0) {
+                break;
+            }
+            sink += workload.execute(operations++);
+            final long end = System.nanoTime();
+            responseTime.recordValue(end - intendedStart);
+            serviceTime.recordValue(end - actualStart);
+            correctedServiceTime.recordValueWithExpectedInterval(end - actualStart, intervalNanos);
+            intendedStart += intervalNanos;
+        }
+        final long now = System.nanoTime();
+        unissuedOperations = 0;
+        for (; intendedStart - deadline < 0; intendedStart += intervalNanos) {
+            responseTime.recordValue(now - intendedStart);
+            unissuedOperations++;
+        }
+        consumed = sink;
+        return operations;
+    }
+
+    /**
+     * @return the number of operations of the last {@link #drive(long)} that were due before its deadline,
+     * but were not issued by then
+     */
+    long getUnissuedOperations() {
+        return unissuedOperations;
+    }
+
+    LatencyHistogram getResponseTime() {
+        return responseTime;
+    }
+
+    void reset() {
+        responseTime.reset();
+        serviceTime.reset();
+        correctedServiceTime.reset();
+    }
+
+    void report(final PrintStream out) {
+        LatencyHistogram.outputPercentileHeadings(out, "usec");
+        responseTime.outputPercentiles(out, "response time", 1000.0);
+        serviceTime.outputPercentiles(out, "service time", 1000.0);
+        correctedServiceTime.outputPercentiles(out, "service time, CO-corrected", 1000.0);
+    }
+
+    /**
+     * Spread sequence numbers over the data set (a Stafford variant 13 mix), so that consecutive operations
+     * access unrelated elements and every run accesses the same elements in the same order.
+     */
+    static long mix(final long sequence) {
+        long z = sequence + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return (z ^ (z >>> 31)) >>> 1;
+    }
+
+    static class StructuredArrayWorkload implements Workload {
+        private StructuredArray<MockStructure> array;
+        private int length;
+
+        @Override
+        public void setup(final int length) {
+            this.length = length;
+            array = StructuredArray.newInstance(MockStructure.class, length);
+            for (int i = 0; i < length; i++) {
+                array.get(i).setIndex(i);
+                array.get(i).setTestValue(i);
+            }
+        }
+
+        @Override
+        public long execute(final long sequence) {
+            final MockStructure element = array.get(mix(sequence) % length);
+            final long value = element.getTestValue() + 1;
+            element.setTestValue(value);
+            return value;
+        }
+    }
+
+    static class PrimitiveLongArrayWorkload implements Workload {
+        private PrimitiveLongArray array;
+        private int length;
+
+        @Override
+        public void setup(final int length) {
+            this.length = length;
+            array = PrimitiveLongArray.newInstance(length);
+            for (int i = 0; i < length; i++) {
+                array.set(i, i);
+            }
+        }
+
+        @Override
+        public long execute(final long sequence) {
+            final long index = mix(sequence) % length;
+            final long value = array.get(index) + 1;
+            array.set(index, value);
+            return value;
+        }
+    }
+
+    static class SortedIndexWorkload implements Workload {
+        private static final int KEY_SPACING = 8;
+
+        private PrimitiveLongArray keys;
+        private StructuredArray<MockStructure> values;
+        private int length;
+
+        @Override
+        public void setup(final int length) {
+            this.length = length;
+            keys = PrimitiveLongArray.newInstance(length);
+            values = StructuredArray.newInstance(MockStructure.class, length);
+            for (int i = 0; i < length; i++) {
+                keys.set(i, (long) i * KEY_SPACING);
+                values.get(i).setIndex((long) i * KEY_SPACING);
+                values.get(i).setTestValue(i);
+            }
+        }
+
+        @Override
+        public long execute(final long sequence) {
+            final long key = (mix(sequence) % length) * KEY_SPACING;
+            final MockStructure element = values.get(find(key));
+            final long value = element.getTestValue() + 1;
+            element.setTestValue(value);
+            return value;
+        }
+
+        long find(final long key) {
+            long low = 0;
+            long high = length - 1;
+            while (low <= high) {
+                final long mid = (low + high) >>> 1;
+                final long midKey = keys.get(mid);
+                if (midKey < key) {
+                    low = mid + 1;
+                } else if (midKey > key) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            throw new IllegalStateException("Key " + key + " not found");
+        }
+    }
+}
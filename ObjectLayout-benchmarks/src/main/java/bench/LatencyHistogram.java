@@ -0,0 +1,222 @@
+package bench;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * A log-linear histogram of non-negative long values (typically latencies in nanoseconds), in the style of
+ * HdrHistogram: values up to 2047 are counted exactly, and larger values are counted in buckets that are
+ * never wider than 1/1024th of the values they hold, so every recorded value is reported with at least
+ * three significant decimal digits of precision. The counts cover the whole positive long range in a fixed
+ * 432KB footprint, so recording never allocates.
+ * <p>
+ * {@link #recordValueWithExpectedInterval(long, long)} corrects for coordinated omission when the recording
+ * loop cannot measure from an intended start time: a value longer than the expected interval between
+ * operations stalled the operations that should have started during it, and the samples those operations
+ * would have recorded are back-filled.
+ * <p>
+ * Not thread safe: each recording thread should use its own histogram, and {@link #add(LatencyHistogram)}
+ * the results together.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 11;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+    private static final int MAX_SHIFT = 62 - (SUB_BUCKET_BITS - 1);
+
+    private final long[] counts = new long[SUB_BUCKET_COUNT + (MAX_SHIFT * SUB_BUCKET_HALF_COUNT)];
+    private long totalCount;
+    private long maxValue;
+    private long minValue = Long.MAX_VALUE;
+    private double sum;
+
+    /**
+     * Record a value
+     *
+     * @param value the value to record
+     * @throws IllegalArgumentException if value is negative
+     */
+    public void recordValue(final long value) throws IllegalArgumentException {
+        recordValues(value, 1);
+    }
+
+    /**
+     * Record a value, and back-fill the values that would have been recorded by the operations that should
+     * have started while it was taking place: if value is larger than expectedInterval, the values
+     * (value - expectedInterval), (value - 2 * expectedInterval), ... down to expectedInterval are also
+     * recorded.
+     *
+     * @param value the value to record
+     * @param expectedInterval the expected interval between operations, or 0 to record value only
+     * @throws IllegalArgumentException if value or expectedInterval is negative
+     */
+    public void recordValueWithExpectedInterval(final long value, final long expectedInterval)
+            throws IllegalArgumentException {
+        if (expectedInterval < 0) {
+            throw new IllegalArgumentException("expectedInterval must not be negative");
+        }
+        recordValue(value);
+        if (expectedInterval == 0) {
+            return;
+        }
+        for (long missing = value - expectedInterval; missing >= expectedInterval; missing -= expectedInterval) {
+            recordValue(missing);
+        }
+    }
+
+    /**
+     * Record a value count times
+     *
+     * @param value the value to record
+     * @param count the number of times to record it
+     * @throws IllegalArgumentException if value or count is negative
+     */
+    public void recordValues(final long value, final long count) throws IllegalArgumentException {
+        if ((value < 0) || (count < 0)) {
+            throw new IllegalArgumentException("value and count must not be negative");
+        }
+        if (count == 0) {
+            return;
+        }
+        counts[indexOf(value)] += count;
+        totalCount += count;
+        sum += (double) value * count;
+        maxValue = Math.max(maxValue, value);
+        minValue = Math.min(minValue, value);
+    }
+
+    /**
+     * Add the counts of another histogram to this one
+     *
+     * @param other the histogram to add
+     */
+    public void add(final LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        maxValue = Math.max(maxValue, other.maxValue);
+        minValue = Math.min(minValue, other.minValue);
+    }
+
+    /**
+     * Clear all recorded values
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        maxValue = 0;
+        minValue = Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return the largest value recorded (exact), or 0 if none has been recorded
+     */
+    public long getMaxValue() {
+        return maxValue;
+    }
+
+    /**
+     * @return the smallest value recorded (exact), or 0 if none has been recorded
+     */
+    public long getMinValue() {
+        return (totalCount == 0) ? 0 : minValue;
+    }
+
+    /**
+     * @return the mean of the values recorded (exact, up to double precision), or 0 if none has been recorded
+     */
+    public double getMean() {
+        return (totalCount == 0) ? 0 : sum / totalCount;
+    }
+
+    /**
+     * Get the value at a percentile: the largest value that percentile of the recorded values are less than
+     * or equal to, reported as the highest value equivalent to it at the histogram's precision (but never
+     * above the largest value recorded)
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the value at the percentile, or 0 if no value has been recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        final double clamped = Math.min(Math.max(percentile, 0.0), 100.0);
+        final long target = Math.max(1, (long) Math.ceil((clamped / 100.0) * totalCount));
+        long running = 0;
+        for (int i = 0; i < counts.length; i++) {
+            running += counts[i];
+            if (running >= target) {
+                return Math.min(highestEquivalentValue(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    /**
+     * Print the count, mean, max and a line of standard percentiles
+     *
+     * @param out the stream to print to
+     * @param label a label for the line
+     * @param unitDivisor the divisor that converts recorded values to reported units (e.g. 1000.0 to report
+     *                    nanosecond values in microseconds)
+     */
+    public void outputPercentiles(final PrintStream out, final String label, final double unitDivisor) {
+        out.println(String.format("%-28s %10d %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f",
+                label, totalCount,
+                getMean() / unitDivisor,
+                getValueAtPercentile(50.0) / unitDivisor,
+                getValueAtPercentile(90.0) / unitDivisor,
+                getValueAtPercentile(99.0) / unitDivisor,
+                getValueAtPercentile(99.9) / unitDivisor,
+                getValueAtPercentile(99.99) / unitDivisor,
+                getMaxValue() / unitDivisor));
+    }
+
+    /**
+     * Print the column headings that match {@link #outputPercentiles}
+     *
+     * @param out the stream to print to
+     * @param unit the name of the reported unit
+     */
+    public static void outputPercentileHeadings(final PrintStream out, final String unit) {
+        out.println(String.format("%-28s %10s %9s %9s %9s %9s %9s %9s %9s",
+                "(" + unit + ")", "count", "mean", "p50", "p90", "p99", "p99.9", "p99.99", "max"));
+    }
+
+    static int indexOf(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        final int subBucket = (int) (value >>> shift);
+        return SUB_BUCKET_COUNT + ((shift - 1) * SUB_BUCKET_HALF_COUNT) + (subBucket - SUB_BUCKET_HALF_COUNT);
+    }
+
+    static long lowestEquivalentValue(final int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = ((index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT) + 1;
+        final long subBucket = ((index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT) + SUB_BUCKET_HALF_COUNT;
+        return subBucket << shift;
+    }
+
+    static long highestEquivalentValue(final int index) {
+        if (index == SUB_BUCKET_COUNT + (MAX_SHIFT * SUB_BUCKET_HALF_COUNT) - 1) {
+            return Long.MAX_VALUE;
+        }
+        return lowestEquivalentValue(index + 1) - 1;
+    }
+}
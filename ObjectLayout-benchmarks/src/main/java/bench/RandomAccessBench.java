@@ -0,0 +1,294 @@
+package bench;
+
+import bench.ObjectLayoutBench.EncapsulatedArray;
+import bench.ObjectLayoutBench.EncapsulatedRandomizedArray;
+import bench.ObjectLayoutBench.MockStructure;
+import org.ObjectLayout.StructuredArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+  Measures the average time of a single element access, for uniform random, Zipfian and dependent
+  (pointer-chasing) access patterns, over a StructuredArray, an encapsulated Object[] array, and an
+  encapsulated Object[] array whose elements have been shuffled in memory.
+
+  Each MockStructure element occupies roughly 32 bytes, so the `length` values span a footprint of
+  ~16KB (L1 resident), ~256KB (L2), ~4MB, ~32MB (around a typical LLC) and ~320MB (~10x LLC). For
+  machines with a different cache hierarchy, pick lengths with -p.
+
+  The uniform pattern draws each index from a xorshift generator, and the Zipfian pattern walks a table of
+  16M precomputed indexes (much larger than the LLC) from where the previous invocation left off, so
+  neither revisits a small, cache-resident set of elements. Consecutive accesses are independent and the
+  CPU can overlap their cache misses. The chase pattern follows a single random cycle through
+  all elements (each element's testValue holds the index of the next one), so every access depends on
+  the previous one and pays the full miss latency.
+
+  Run:
+    $ java -jar target/benchmarks.jar ".*RandomAccessBench.*"
+
+  Run a single pattern and size:
+    $ java -jar target/benchmarks.jar ".*RandomAccessBench.chase.*" -p length=1048576
+ */
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 3, jvmArgsAppend = "-Xmx3g")
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+
+public class RandomAccessBench {
+
+    private static final int ACCESSES = 4096;
+
+    private static final double ZIPFIAN_THETA = 0.99;
+
+    private static final int ZIPFIAN_TABLE_LENGTH = 1 << 24;
+
+    @Param({"512", "8192", "131072", "1048576", "10485760"})
+    int length;
+
+    StructuredArray<MockStructure> array;
+    EncapsulatedArray encapsulatedArray;
+    EncapsulatedRandomizedArray encapsulatedRandomizedArray;
+
+    long seed;
+    int[] zipfianIndexes;
+    int zipfianPosition;
+
+    long arrayChasePosition;
+    int encapsulatedArrayChasePosition;
+    int encapsulatedRandomizedArrayChasePosition;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+
+        array = StructuredArray.newInstance(MockStructure.class, length);
+        encapsulatedArray = new EncapsulatedArray(length);
+        encapsulatedRandomizedArray = new EncapsulatedRandomizedArray(length);
+
+        // A single cycle through all elements (Sattolo's algorithm), so a chase visits every element
+        // before repeating:
+        final int[] next = new int[length];
+        for (int i = 0; i < length; i++) {
+            next[i] = i;
+        }
+        for (int i = length - 1; i > 0; i--) {
+            final int j = random.nextInt(i);
+            final int temp = next[i];
+            next[i] = next[j];
+            next[j] = temp;
+        }
+        for (int i = 0; i < length; i++) {
+            array.get(i).setTestValue(next[i]);
+            encapsulatedArray.get(i).setTestValue(next[i]);
+            encapsulatedRandomizedArray.get(i).setTestValue(next[i]);
+        }
+
+        seed = 0x9E3779B97F4A7C15L;
+
+        // Zipfian ranks, mapped through a random permutation so the hot elements are spread across the
+        // array rather than clustered at its start:
+        final int[] rankToIndex = new int[length];
+        for (int i = 0; i < length; i++) {
+            rankToIndex[i] = i;
+        }
+        for (int i = length - 1; i > 0; i--) {
+            final int j = random.nextInt(i + 1);
+            final int temp = rankToIndex[i];
+            rankToIndex[i] = rankToIndex[j];
+            rankToIndex[j] = temp;
+        }
+        final ZipfianGenerator zipfian = new ZipfianGenerator(length, ZIPFIAN_THETA, random);
+        zipfianIndexes = new int[ZIPFIAN_TABLE_LENGTH];
+        for (int i = 0; i < ZIPFIAN_TABLE_LENGTH; i++) {
+            zipfianIndexes[i] = rankToIndex[zipfian.nextRank()];
+        }
+        zipfianPosition = 0;
+
+        arrayChasePosition = 0;
+        encapsulatedArrayChasePosition = 0;
+        encapsulatedRandomizedArrayChasePosition = 0;
+    }
+
+    //
+    // Uniform random access:
+    //
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public long uniformStructuredArray() {
+        long sum = 0;
+        for (int i = 0; i < ACCESSES; i++) {
+            sum += array.get(nextUniformIndex()).getIndex();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public long uniformEncapsulatedArray() {
+        long sum = 0;
+        for (int i = 0; i < ACCESSES; i++) {
+            sum += encapsulatedArray.get(nextUniformIndex()).getIndex();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public long uniformEncapsulatedRandomizedArray() {
+        long sum = 0;
+        for (int i = 0; i < ACCESSES; i++) {
+            sum += encapsulatedRandomizedArray.get(nextUniformIndex()).getIndex();
+        }
+        return sum;
+    }
+
+    private int nextUniformIndex() {
+        // xorshift64, cheap enough not to dominate the access being measured:
+        long x = seed;
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        seed = x;
+        // Scale the high 32 bits into [0, length) without a division:
+        return (int) (((x >>> 32) * length) >>> 32);
+    }
+
+    //
+    // Zipfian access. Each invocation continues through the index table from where the previous one left off:
+    //
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public long zipfianStructuredArray() {
+        final int[] indexes = zipfianIndexes;
+        final int position = zipfianPosition;
+        long sum = 0;
+        for (int i = position; i < position + ACCESSES; i++) {
+            sum += array.get(indexes[i]).getIndex();
+        }
+        zipfianPosition = (position + ACCESSES) & (ZIPFIAN_TABLE_LENGTH - 1);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public long zipfianEncapsulatedArray() {
+        final int[] indexes = zipfianIndexes;
+        final int position = zipfianPosition;
+        long sum = 0;
+        for (int i = position; i < position + ACCESSES; i++) {
+            sum += encapsulatedArray.get(indexes[i]).getIndex();
+        }
+        zipfianPosition = (position + ACCESSES) & (ZIPFIAN_TABLE_LENGTH - 1);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public long zipfianEncapsulatedRandomizedArray() {
+        final int[] indexes = zipfianIndexes;
+        final int position = zipfianPosition;
+        long sum = 0;
+        for (int i = position; i < position + ACCESSES; i++) {
+            sum += encapsulatedRandomizedArray.get(indexes[i]).getIndex();
+        }
+        zipfianPosition = (position + ACCESSES) & (ZIPFIAN_TABLE_LENGTH - 1);
+        return sum;
+    }
+
+    //
+    // Dependent (pointer-chasing) access. The chase continues from where the previous invocation left off:
+    //
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public long chaseStructuredArray() {
+        long position = arrayChasePosition;
+        for (int i = 0; i < ACCESSES; i++) {
+            position = array.get(position).getTestValue();
+        }
+        arrayChasePosition = position;
+        return position;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public long chaseEncapsulatedArray() {
+        int position = encapsulatedArrayChasePosition;
+        for (int i = 0; i < ACCESSES; i++) {
+            position = (int) encapsulatedArray.get(position).getTestValue();
+        }
+        encapsulatedArrayChasePosition = position;
+        return position;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public long chaseEncapsulatedRandomizedArray() {
+        int position = encapsulatedRandomizedArrayChasePosition;
+        for (int i = 0; i < ACCESSES; i++) {
+            position = (int) encapsulatedRandomizedArray.get(position).getTestValue();
+        }
+        encapsulatedRandomizedArrayChasePosition = position;
+        return position;
+    }
+
+    /**
+     * Generates Zipfian distributed ranks in [0, itemCount), rank 0 being the most frequent, using the
+     * method of Gray et al., "Quickly Generating Billion-Record Synthetic Databases" (as used by YCSB).
+     */
+    static class ZipfianGenerator {
+        private final long itemCount;
+        private final double theta;
+        private final double zetaN;
+        private final double alpha;
+        private final double eta;
+        private final Random random;
+
+        ZipfianGenerator(final long itemCount, final double theta, final Random random) {
+            this.itemCount = itemCount;
+            this.theta = theta;
+            this.random = random;
+            this.zetaN = zeta(itemCount, theta);
+            this.alpha = 1.0 / (1.0 - theta);
+            this.eta = (1.0 - Math.pow(2.0 / itemCount, 1.0 - theta)) / (1.0 - (zeta(2, theta) / zetaN));
+        }
+
+        int nextRank() {
+            final double u = random.nextDouble();
+            final double uz = u * zetaN;
+            if (uz < 1.0) {
+                return 0;
+            }
+            if (uz < 1.0 + Math.pow(0.5, theta)) {
+                return 1;
+            }
+            final long rank = (long) (itemCount * Math.pow((eta * u) - eta + 1.0, alpha));
+            return (int) Math.min(rank, itemCount - 1);
+        }
+
+        private static double zeta(final long n, final double theta) {
+            double sum = 0;
+            for (long i = 1; i <= n; i++) {
+                sum += 1.0 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,515 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.format.OutputFormatFactory;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+import org.openjdk.jmh.util.Optional;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/*
+  Runs benchmarks, writes their results as JMH JSON, and compares them against a stored baseline (a JMH
+  JSON result file from an earlier run), exiting with a non-zero status if any benchmark regressed.
+
+  A benchmark regressed when its score is worse than the baseline's by more than its threshold (10% by
+  default), and by more than the sum of the two scores' errors (so that a noisy benchmark is not reported
+  until the difference is significant). Throughput scores are better when higher, and all other modes
+  (average time, sample time, single shot) when lower. Benchmarks are matched by name, mode and
+  parameters. A baseline benchmark that the run selects (by its benchmark regexps, or the default set, and
+  any -e, -bm or -p options) but that has no result fails the comparison, as JMH leaves a benchmark that
+  threw out of its results. Baseline benchmarks outside the selection are ignored, and benchmarks that
+  only appear in the results are reported but do not fail the comparison.
+
+  By default the StructuredArray, PrimitiveArray and intrinsic object benchmarks are run:
+  ObjectLayoutBench, ConstructionBench, IntrinsicBench and LatencyBench. Any argument the runner does not
+  recognize is passed to JMH, so benchmark regexps, -p, -f, -wi, -i etc. can be used as usual (benchmark
+  regexps replace the default set).
+
+  Options:
+    --baseline <file>                 The baseline to compare against (default benchmark-baseline.json)
+    --results <file>                  Where to write the results (default target/benchmark-results.json)
+    --threshold <percent>             The default threshold
+    --threshold <regexp>=<percent>    The threshold of the benchmarks whose names match <regexp> (may be
+                                      repeated, and the first match applies)
+    --compare-only                    Compare an existing results file, without running benchmarks
+    --update-baseline                 Run, and store the results as the new baseline, without comparing
+
+  Exit status: 0 if no benchmark regressed, 1 if any regressed or is missing, 2 if the runner could not run
+  or compare.
+
+  Run (record a baseline on a release, then gate later builds on the same machine against it):
+    $ java -cp target/benchmarks.jar bench.RegressionRunner --update-baseline
+    $ java -cp target/benchmarks.jar bench.RegressionRunner --threshold 5 --threshold ".*Construction.*=15"
+    $ java -cp target/benchmarks.jar bench.RegressionRunner ".*ObjectLayoutBench.*" -f 1 -wi 3 -i 5
+ */
+public class RegressionRunner {
+
+    static final String[] DEFAULT_INCLUDES = {
+            ".*ObjectLayoutBench.*", ".*ConstructionBench.*", ".*IntrinsicBench.*", ".*LatencyBench.*"
+    };
+
+    static final double DEFAULT_THRESHOLD_PERCENT = 10.0;
+
+    static final int EXIT_OK = 0;
+    static final int EXIT_REGRESSION = 1;
+    static final int EXIT_ERROR = 2;
+
+    public static void main(final String[] args) {
+        int status;
+        try {
+            status = run(args, System.out);
+        } catch (Exception ex) {
+            System.err.println("RegressionRunner: " + ex);
+            status = EXIT_ERROR;
+        }
+        System.exit(status);
+    }
+
+    static int run(final String[] args, final PrintStream out) throws Exception {
+        File baselineFile = new File("benchmark-baseline.json");
+        File resultsFile = new File("target/benchmark-results.json");
+        final Thresholds thresholds = new Thresholds();
+        boolean compareOnly = false;
+        boolean updateBaseline = false;
+        final List<String> jmhArgs = new ArrayList<String>();
+
+        for (int i = 0; i < args.length; i++) {
+            if ("--baseline".equals(args[i]) && (i + 1 < args.length)) {
+                baselineFile = new File(args[++i]);
+            } else if ("--results".equals(args[i]) && (i + 1 < args.length)) {
+                resultsFile = new File(args[++i]);
+            } else if ("--threshold".equals(args[i]) && (i + 1 < args.length)) {
+                thresholds.add(args[++i]);
+            } else if ("--compare-only".equals(args[i])) {
+                compareOnly = true;
+            } else if ("--update-baseline".equals(args[i])) {
+                updateBaseline = true;
+            } else {
+                jmhArgs.add(args[i]);
+            }
+        }
+
+        final CommandLineOptions jmhOptions = new CommandLineOptions(jmhArgs.toArray(new String[jmhArgs.size()]));
+        if (!compareOnly) {
+            runBenchmarks(jmhOptions, resultsFile, out);
+        }
+
+        if (updateBaseline) {
+            copy(resultsFile, baselineFile);
+            out.println("Stored " + resultsFile + " as the baseline " + baselineFile);
+            return EXIT_OK;
+        }
+
+        if (!baselineFile.exists()) {
+            out.println("No baseline " + baselineFile + " to compare against (store one with --update-baseline)");
+            return EXIT_ERROR;
+        }
+
+        final List<Comparison> comparisons =
+                compare(readScores(baselineFile), readScores(resultsFile), thresholds, new Selection(jmhOptions));
+        return report(comparisons, out) ? EXIT_REGRESSION : EXIT_OK;
+    }
+
+    private static void runBenchmarks(final CommandLineOptions jmhOptions, final File resultsFile,
+                                      final PrintStream out) throws Exception {
+        final ChainedOptionsBuilder builder = new OptionsBuilder()
+                .parent(jmhOptions)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultsFile.getPath());
+        if (jmhOptions.getIncludes().isEmpty()) {
+            for (final String include : DEFAULT_INCLUDES) {
+                builder.include(include);
+            }
+        }
+        final File resultsDirectory = resultsFile.getAbsoluteFile().getParentFile();
+        if ((resultsDirectory != null) && !resultsDirectory.isDirectory() && !resultsDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + resultsDirectory);
+        }
+        final Options options = builder.build();
+        if (options.getOutput().hasValue()) {
+            new Runner(options).run();
+        } else {
+            // The runner closes its output when done, and the comparison is reported to the same stream:
+            final PrintStream jmhOut = new PrintStream(new FilterOutputStream(out) {
+                @Override
+                public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+                    out.write(bytes, offset, length);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            }, true);
+            new Runner(options, OutputFormatFactory.createFormatInstance(
+                    jmhOut, options.verbosity().orElse(VerboseMode.NORMAL))).run();
+        }
+    }
+
+    //
+    // Results:
+    //
+
+    /**
+     * The primary score of one benchmark run, as recorded in a JMH JSON result file.
+     */
+    static final class Score {
+        final String benchmark;
+        final String mode;
+        final String params;
+        final Map<String, String> paramValues;
+        final double score;
+        final double error;
+        final String unit;
+
+        Score(final String benchmark, final String mode, final Map<String, String> paramValues,
+              final double score, final double error, final String unit) {
+            this.benchmark = benchmark;
+            this.mode = mode;
+            this.paramValues = paramValues;
+            final StringBuilder params = new StringBuilder();
+            for (final Map.Entry<String, String> param : paramValues.entrySet()) {
+                params.append(params.length() == 0 ? "" : ",")
+                        .append(param.getKey()).append('=').append(param.getValue());
+            }
+            this.params = params.toString();
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+        }
+
+        String getKey() {
+            return benchmark + " " + mode + (params.isEmpty() ? "" : " " + params);
+        }
+
+        boolean isHigherBetter() {
+            return "thrpt".equals(mode);
+        }
+    }
+
+    static Map<String, Score> readScores(final File file) throws IOException {
+        try {
+            return parseScores(readFile(file));
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Cannot read " + file + ": " + ex.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Score> parseScores(final String json) throws IllegalArgumentException {
+        final Object document = JsonParser.parse(json);
+        if (!(document instanceof List)) {
+            throw new IllegalArgumentException("Expected an array of JMH results");
+        }
+        final Map<String, Score> scores = new LinkedHashMap<String, Score>();
+        for (final Object entry : (List<Object>) document) {
+            final Map<String, Object> result = (Map<String, Object>) entry;
+            final Map<String, Object> primaryMetric = (Map<String, Object>) result.get("primaryMetric");
+            if (primaryMetric == null) {
+                throw new IllegalArgumentException("Missing primaryMetric in " + result.get("benchmark"));
+            }
+            final Map<String, String> paramValues = new LinkedHashMap<String, String>();
+            final Map<String, Object> paramMap = (Map<String, Object>) result.get("params");
+            if (paramMap != null) {
+                for (final Map.Entry<String, Object> param : paramMap.entrySet()) {
+                    paramValues.put(param.getKey(), String.valueOf(param.getValue()));
+                }
+            }
+            final Score score = new Score(
+                    String.valueOf(result.get("benchmark")),
+                    String.valueOf(result.get("mode")),
+                    paramValues,
+                    toDouble(primaryMetric.get("score")),
+                    toDouble(primaryMetric.get("scoreError")),
+                    String.valueOf(primaryMetric.get("scoreUnit")));
+            scores.put(score.getKey(), score);
+        }
+        return scores;
+    }
+
+    // JMH writes non-finite numbers as strings, e.g. "NaN":
+    private static double toDouble(final Object value) {
+        if (value instanceof Double) {
+            return (Double) value;
+        }
+        return (value == null) ? Double.NaN : Double.parseDouble(value.toString());
+    }
+
+    //
+    // Comparison:
+    //
+
+    /**
+     * Regression thresholds, in percent: a default, and overrides for benchmarks matching regexps.
+     */
+    static final class Thresholds {
+        private final List<Pattern> patterns = new ArrayList<Pattern>();
+        private final List<Double> percents = new ArrayList<Double>();
+        private double defaultPercent = DEFAULT_THRESHOLD_PERCENT;
+
+        /**
+         * Add a threshold
+         *
+         * @param spec either a percentage, which sets the default threshold, or regexp=percentage, which
+         *             sets the threshold of the benchmarks whose names fully match regexp
+         * @throws IllegalArgumentException if spec is malformed
+         */
+        void add(final String spec) throws IllegalArgumentException {
+            final int separator = spec.lastIndexOf('=');
+            if (separator < 0) {
+                defaultPercent = parsePercent(spec);
+            } else {
+                patterns.add(Pattern.compile(spec.substring(0, separator)));
+                percents.add(parsePercent(spec.substring(separator + 1)));
+            }
+        }
+
+        double forBenchmark(final String benchmark) {
+            for (int i = 0; i < patterns.size(); i++) {
+                if (patterns.get(i).matcher(benchmark).matches()) {
+                    return percents.get(i);
+                }
+            }
+            return defaultPercent;
+        }
+
+        private static double parsePercent(final String value) throws IllegalArgumentException {
+            final double percent = Double.parseDouble(value.trim());
+            if (!(percent >= 0)) {
+                throw new IllegalArgumentException("Threshold must be a non-negative percentage: " + value);
+            }
+            return percent;
+        }
+    }
+
+    /**
+     * The benchmarks a run selects, by the benchmark regexps (or the default set), excludes, modes and
+     * parameter values of its JMH options.
+     */
+    static final class Selection {
+        private final CommandLineOptions options;
+        private final List<Pattern> includes = new ArrayList<Pattern>();
+        private final List<Pattern> excludes = new ArrayList<Pattern>();
+
+        Selection(final CommandLineOptions options) {
+            this.options = options;
+            for (final String include : options.getIncludes().isEmpty() ?
+                    Arrays.asList(DEFAULT_INCLUDES) : options.getIncludes()) {
+                includes.add(Pattern.compile(include));
+            }
+            for (final String exclude : options.getExcludes()) {
+                excludes.add(Pattern.compile(exclude));
+            }
+        }
+
+        boolean isSelected(final Score score) {
+            // Matched as JMH matches them:
+            if (!matchesAny(includes, score.benchmark) || matchesAny(excludes, score.benchmark)) {
+                return false;
+            }
+            if (!options.getBenchModes().isEmpty() && !selectsMode(options.getBenchModes(), score.mode)) {
+                return false;
+            }
+            for (final Map.Entry<String, String> param : score.paramValues.entrySet()) {
+                final Optional<Collection<String>> values = options.getParameter(param.getKey());
+                if (values.hasValue() && !values.get().contains(param.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean selectsMode(final Collection<Mode> modes, final String mode) {
+            for (final Mode selected : modes) {
+                if ((selected == Mode.All) || selected.shortLabel().equals(mode)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean matchesAny(final List<Pattern> patterns, final String benchmark) {
+            for (final Pattern pattern : patterns) {
+                if (pattern.matcher(benchmark).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The comparison of one benchmark's score with its baseline. Either score may be null if the benchmark
+     * only appears on one side.
+     */
+    static final class Comparison {
+        final String key;
+        final Score baseline;
+        final Score current;
+        final double thresholdPercent;
+
+        Comparison(final String key, final Score baseline, final Score current, final double thresholdPercent) {
+            this.key = key;
+            this.baseline = baseline;
+            this.current = current;
+            this.thresholdPercent = thresholdPercent;
+        }
+
+        boolean isComparable() {
+            return (baseline != null) && (current != null) && baseline.unit.equals(current.unit) &&
+                    baseline.mode.equals(current.mode) && (baseline.score != 0);
+        }
+
+        /**
+         * @return the improvement over the baseline in percent (negative if the score got worse), or NaN
+         * if the scores are not comparable
+         */
+        double getImprovementPercent() {
+            if (!isComparable()) {
+                return Double.NaN;
+            }
+            final double change = ((current.score - baseline.score) / baseline.score) * 100.0;
+            return current.isHigherBetter() ? change : -change;
+        }
+
+        boolean isRegression() {
+            if (!isComparable() || (getImprovementPercent() >= -thresholdPercent)) {
+                return false;
+            }
+            final double errors = finiteOrZero(baseline.error) + finiteOrZero(current.error);
+            return Math.abs(current.score - baseline.score) > errors;
+        }
+
+        private static double finiteOrZero(final double value) {
+            return (Double.isNaN(value) || Double.isInfinite(value)) ? 0 : value;
+        }
+    }
+
+    /**
+     * Compare results with a baseline. Baseline benchmarks without a result are included only if the run
+     * selected them.
+     */
+    static List<Comparison> compare(final Map<String, Score> baseline,
+                                    final Map<String, Score> current,
+                                    final Thresholds thresholds,
+                                    final Selection selection) {
+        final List<Comparison> comparisons = new ArrayList<Comparison>();
+        for (final Score score : current.values()) {
+            comparisons.add(new Comparison(score.getKey(), baseline.get(score.getKey()), score,
+                    thresholds.forBenchmark(score.benchmark)));
+        }
+        for (final Score score : baseline.values()) {
+            if (!current.containsKey(score.getKey()) && selection.isSelected(score)) {
+                comparisons.add(new Comparison(score.getKey(), score, null,
+                        thresholds.forBenchmark(score.benchmark)));
+            }
+        }
+        return comparisons;
+    }
+
+    /**
+     * Print the comparisons
+     *
+     * @return true if any benchmark regressed or is missing from the results
+     */
+    static boolean report(final List<Comparison> comparisons, final PrintStream out) {
+        int regressions = 0;
+        int missing = 0;
+        out.println(String.format("%-100s %14s %14s %9s %7s  %s",
+                "Benchmark", "baseline", "current", "change", "limit", "unit"));
+        for (final Comparison comparison : comparisons) {
+            final String status;
+            if (comparison.current == null) {
+                status = "MISSING (not in results)";
+                missing++;
+            } else if (comparison.baseline == null) {
+                status = "NEW (not in baseline)";
+            } else if (!comparison.isComparable()) {
+                status = "NOT COMPARABLE (" + comparison.baseline.unit + " vs " + comparison.current.unit + ")";
+            } else if (comparison.isRegression()) {
+                status = "REGRESSION";
+                regressions++;
+            } else {
+                status = "";
+            }
+            out.println(String.format("%-100s %14s %14s %8s%% %6s%%  %-8s %s",
+                    comparison.key,
+                    format(comparison.baseline),
+                    format(comparison.current),
+                    comparison.isComparable() ? String.format("%+.1f", comparison.getImprovementPercent()) : "",
+                    String.format("%.0f", comparison.thresholdPercent),
+                    (comparison.current != null) ? comparison.current.unit : comparison.baseline.unit,
+                    status));
+        }
+        out.println();
+        if ((regressions == 0) && (missing == 0)) {
+            out.println("No regressions");
+        } else {
+            out.println(regressions + " regression(s), " + missing + " missing benchmark(s)");
+        }
+        return (regressions > 0) || (missing > 0);
+    }
+
+    private static String format(final Score score) {
+        return (score == null) ? "-" : String.format("%.3f", score.score);
+    }
+
+    //
+    // Files:
+    //
+
+    private static String readFile(final File file) throws IOException {
+        final Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            final StringBuilder builder = new StringBuilder();
+            final char[] buffer = new char[8192];
+            int count;
+            while ((count = reader.read(buffer)) >= 0) {
+                builder.append(buffer, 0, count);
+            }
+            return builder.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void copy(final File source, final File destination) throws IOException {
+        final InputStream in = new FileInputStream(source);
+        try {
+            final OutputStream out = new FileOutputStream(destination);
+            try {
+                final byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, count);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
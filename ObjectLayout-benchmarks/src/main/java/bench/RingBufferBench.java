@@ -0,0 +1,244 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+  Compares handing events to a consumer thread through a StructuredArrayRingBuffer with doing the
+  same through an ArrayBlockingQueue.
+
+  Run:
+    $ java -jar target/benchmarks.jar RingBufferBench
+
+  Run a single wait strategy:
+    $ java -jar target/benchmarks.jar RingBufferBench -p waitStrategy=YIELD
+ */
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(3)
+
+public class RingBufferBench {
+
+    private static final int CAPACITY = 1024;
+    private static final int BATCH = 256;
+
+    public static class Event {
+        private long value;
+
+        public long getValue() {
+            return value;
+        }
+
+        public void setValue(final long value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * A ring buffer with a running consumer thread. Only the ring buffer benchmarks use it, so the queue
+     * benchmarks neither run alongside its consumer nor get repeated for each wait strategy.
+     */
+    @State(Scope.Thread)
+    public static class RingBufferState {
+        @Param({"BUSY_SPIN", "YIELD", "PARK"})
+        String waitStrategy;
+
+        StructuredArrayRingBuffer<Event> ringBuffer;
+        StructuredArrayRingBuffer<Event>.Consumer ringBufferConsumer;
+        long ringBufferSequence = -1;
+
+        volatile boolean running;
+        volatile long blackhole;
+        Thread ringBufferConsumerThread;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            running = true;
+
+            ringBuffer = StructuredArrayRingBuffer.newInstance(
+                    Event.class, CAPACITY, 1, StructuredArrayRingBuffer.WaitStrategy.valueOf(waitStrategy));
+            ringBufferConsumer = ringBuffer.getConsumer(0);
+            ringBufferConsumerThread = new Thread("ring-buffer-consumer") {
+                @Override
+                public void run() {
+                    long sum = 0;
+                    long nextSequence = 0;
+                    while (running) {
+                        long available = ringBufferConsumer.waitFor(nextSequence);
+                        for (; nextSequence <= available; nextSequence++) {
+                            sum += ringBuffer.get(nextSequence).getValue();
+                        }
+                        ringBufferConsumer.release(available);
+                    }
+                    blackhole = sum;
+                }
+            };
+            ringBufferConsumerThread.setDaemon(true);
+            ringBufferConsumerThread.start();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            running = false;
+            // Wake the ring buffer consumer, which is blocked in its wait strategy:
+            ringBuffer.publish(ringBuffer.next());
+            ringBufferConsumerThread.join();
+        }
+
+        void awaitConsumer() {
+            while (ringBufferConsumer.getSequence() < ringBufferSequence) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * An ArrayBlockingQueue with a running consumer thread.
+     */
+    @State(Scope.Thread)
+    public static class QueueState {
+        ArrayBlockingQueue<Event> queue;
+        Event[] queueEvents;
+        int queueEventIndex;
+        volatile long queueConsumed;
+        long queuePublished;
+
+        volatile boolean running;
+        volatile long blackhole;
+        Thread queueConsumerThread;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            running = true;
+
+            // The queue carries references to a fixed pool of events, mirroring the ring buffer's reuse of
+            // its slots. The pool is larger than the queue so a slot is never refilled while still queued.
+            queue = new ArrayBlockingQueue<Event>(CAPACITY);
+            queueEvents = new Event[CAPACITY * 2];
+            for (int i = 0; i < queueEvents.length; i++) {
+                queueEvents[i] = new Event();
+            }
+            queueConsumerThread = new Thread("queue-consumer") {
+                @Override
+                public void run() {
+                    long sum = 0;
+                    long consumed = 0;
+                    try {
+                        while (running) {
+                            Event event = queue.poll(1, TimeUnit.MILLISECONDS);
+                            if (event != null) {
+                                sum += event.getValue();
+                                queueConsumed = ++consumed;
+                            }
+                        }
+                    } catch (InterruptedException ex) {
+                        // Done.
+                    }
+                    blackhole = sum;
+                }
+            };
+            queueConsumerThread.setDaemon(true);
+            queueConsumerThread.start();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            running = false;
+            queueConsumerThread.join();
+        }
+
+        Event nextEvent() {
+            Event event = queueEvents[queueEventIndex];
+            queueEventIndex = (queueEventIndex + 1) % queueEvents.length;
+            event.setValue(++queuePublished);
+            return event;
+        }
+
+        void awaitConsumer() {
+            while (queueConsumed < queuePublished) {
+                Thread.yield();
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @OperationsPerInvocation(BATCH)
+    public long ringBufferThroughput(final RingBufferState state) {
+        final StructuredArrayRingBuffer<Event> ringBuffer = state.ringBuffer;
+        for (int i = 0; i < BATCH; i++) {
+            long sequence = ringBuffer.next();
+            ringBuffer.get(sequence).setValue(sequence);
+            ringBuffer.publish(sequence);
+        }
+        state.ringBufferSequence += BATCH;
+        state.awaitConsumer();
+        return state.ringBufferSequence;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @OperationsPerInvocation(BATCH)
+    public long ringBufferBatchClaimThroughput(final RingBufferState state) {
+        final StructuredArrayRingBuffer<Event> ringBuffer = state.ringBuffer;
+        long high = ringBuffer.next(BATCH);
+        for (long sequence = high - BATCH + 1; sequence <= high; sequence++) {
+            ringBuffer.get(sequence).setValue(sequence);
+        }
+        ringBuffer.publish(high);
+        state.ringBufferSequence = high;
+        state.awaitConsumer();
+        return state.ringBufferSequence;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @OperationsPerInvocation(BATCH)
+    public long queueThroughput(final QueueState state) throws InterruptedException {
+        for (int i = 0; i < BATCH; i++) {
+            state.queue.put(state.nextEvent());
+        }
+        state.awaitConsumer();
+        return state.queuePublished;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long ringBufferHandoffLatency(final RingBufferState state) {
+        final StructuredArrayRingBuffer<Event> ringBuffer = state.ringBuffer;
+        long sequence = ringBuffer.next();
+        ringBuffer.get(sequence).setValue(sequence);
+        ringBuffer.publish(sequence);
+        state.ringBufferSequence = sequence;
+        state.awaitConsumer();
+        return sequence;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long queueHandoffLatency(final QueueState state) throws InterruptedException {
+        state.queue.put(state.nextEvent());
+        state.awaitConsumer();
+        return state.queuePublished;
+    }
+}
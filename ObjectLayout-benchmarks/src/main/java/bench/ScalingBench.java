@@ -0,0 +1,203 @@
+package bench;
+
+import bench.ObjectLayoutBench.MockStructure;
+import org.ObjectLayout.PrimitiveLongArray;
+import org.ObjectLayout.ReferenceArray;
+import org.ObjectLayout.StructuredArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+  Measures how access to a shared StructuredArray, PrimitiveLongArray and ReferenceArray scales with the
+  number of threads, as aggregate operations per microsecond across all threads:
+
+  - sharedRead*:       every thread reads random elements of the whole array.
+  - partitionedWrite*: every thread writes random elements within its own contiguous partition of the
+                       array (1/64th of it), so threads do not share cache lines.
+  - contendedWrite*:   every thread increments random elements within the same 8 elements, so threads
+                       continuously steal each other's cache lines. The increments are plain (racy)
+                       read-modify-writes: this measures coherence traffic, not atomic updates.
+  - readWhileWriting:  an asymmetric group of 3 StructuredArray readers per writer.
+
+  The arrays are shared by all threads (Scope.Benchmark). Each benchmark is a group of one thread, so the
+  thread count is set with -t. To produce a scaling curve, run each thread count up to the number of
+  available cores:
+
+    $ for t in 1 2 4 8 16 32 64; do [ $t -le $(nproc) ] && java -jar target/benchmarks.jar ".*ScalingBench.*" -t $t; done
+
+  For the asymmetric group, -tg sets the number of readers and writers:
+
+    $ java -jar target/benchmarks.jar ".*ScalingBench.readWhileWriting.*" -tg 15,1
+ */
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+
+public class ScalingBench {
+
+    private static final int LENGTH = 1 << 20;
+    private static final int LENGTH_MASK = LENGTH - 1;
+
+    private static final int MAX_THREADS = 64;
+    private static final int PARTITION_LENGTH = LENGTH / MAX_THREADS;
+    private static final int PARTITION_MASK = PARTITION_LENGTH - 1;
+
+    private static final int HOT_MASK = 8 - 1;
+
+    StructuredArray<MockStructure> structuredArray;
+    PrimitiveLongArray primitiveLongArray;
+    ReferenceArray<MockStructure> referenceArray;
+
+    @Setup
+    public void setup() {
+        structuredArray = StructuredArray.newInstance(MockStructure.class, LENGTH);
+        primitiveLongArray = PrimitiveLongArray.newInstance(LENGTH);
+        referenceArray = ReferenceArray.newInstance(LENGTH);
+        for (int i = 0; i < LENGTH; i++) {
+            structuredArray.get(i).setTestValue(i);
+            primitiveLongArray.set(i, i);
+            referenceArray.set(i, new MockStructure(i, i));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private static final AtomicInteger nextThreadIndex = new AtomicInteger();
+
+        int partitionBase;
+        long seed;
+
+        @Setup
+        public void setup() {
+            final int threadIndex = nextThreadIndex.getAndIncrement() % MAX_THREADS;
+            partitionBase = threadIndex * PARTITION_LENGTH;
+            seed = 0x9E3779B97F4A7C15L * (threadIndex + 1);
+        }
+
+        int nextRandom() {
+            // xorshift64, cheap enough not to dominate the access being measured:
+            long x = seed;
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+            seed = x;
+            return (int) x;
+        }
+    }
+
+    //
+    // Shared read:
+    //
+
+    @Benchmark
+    @Group("sharedReadStructuredArray")
+    @GroupThreads(1)
+    public long sharedReadStructuredArray(final ThreadState state) {
+        return structuredArray.get(state.nextRandom() & LENGTH_MASK).getTestValue();
+    }
+
+    @Benchmark
+    @Group("sharedReadPrimitiveLongArray")
+    @GroupThreads(1)
+    public long sharedReadPrimitiveLongArray(final ThreadState state) {
+        return primitiveLongArray.get(state.nextRandom() & LENGTH_MASK);
+    }
+
+    @Benchmark
+    @Group("sharedReadReferenceArray")
+    @GroupThreads(1)
+    public long sharedReadReferenceArray(final ThreadState state) {
+        return referenceArray.get(state.nextRandom() & LENGTH_MASK).getTestValue();
+    }
+
+    //
+    // Partitioned write:
+    //
+
+    @Benchmark
+    @Group("partitionedWriteStructuredArray")
+    @GroupThreads(1)
+    public void partitionedWriteStructuredArray(final ThreadState state) {
+        final int index = state.partitionBase + (state.nextRandom() & PARTITION_MASK);
+        structuredArray.get(index).setTestValue(index);
+    }
+
+    @Benchmark
+    @Group("partitionedWritePrimitiveLongArray")
+    @GroupThreads(1)
+    public void partitionedWritePrimitiveLongArray(final ThreadState state) {
+        final int index = state.partitionBase + (state.nextRandom() & PARTITION_MASK);
+        primitiveLongArray.set(index, index);
+    }
+
+    @Benchmark
+    @Group("partitionedWriteReferenceArray")
+    @GroupThreads(1)
+    public void partitionedWriteReferenceArray(final ThreadState state) {
+        final int index = state.partitionBase + (state.nextRandom() & PARTITION_MASK);
+        referenceArray.get(index).setTestValue(index);
+    }
+
+    //
+    // Contended write:
+    //
+
+    @Benchmark
+    @Group("contendedWriteStructuredArray")
+    @GroupThreads(1)
+    public void contendedWriteStructuredArray(final ThreadState state) {
+        final MockStructure element = structuredArray.get(state.nextRandom() & HOT_MASK);
+        element.setTestValue(element.getTestValue() + 1);
+    }
+
+    @Benchmark
+    @Group("contendedWritePrimitiveLongArray")
+    @GroupThreads(1)
+    public void contendedWritePrimitiveLongArray(final ThreadState state) {
+        final int index = state.nextRandom() & HOT_MASK;
+        primitiveLongArray.set(index, primitiveLongArray.get(index) + 1);
+    }
+
+    @Benchmark
+    @Group("contendedWriteReferenceArray")
+    @GroupThreads(1)
+    public void contendedWriteReferenceArray(final ThreadState state) {
+        final MockStructure element = referenceArray.get(state.nextRandom() & HOT_MASK);
+        element.setTestValue(element.getTestValue() + 1);
+    }
+
+    //
+    // Readers alongside a writer:
+    //
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(3)
+    public long readWhileWritingReader(final ThreadState state) {
+        return structuredArray.get(state.nextRandom() & LENGTH_MASK).getTestValue();
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(1)
+    public void readWhileWritingWriter(final ThreadState state) {
+        final int index = state.nextRandom() & LENGTH_MASK;
+        structuredArray.get(index).setTestValue(index);
+    }
+}
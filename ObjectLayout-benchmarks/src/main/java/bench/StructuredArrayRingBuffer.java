@@ -0,0 +1,302 @@
+package bench;
+
+import org.ObjectLayout.CtorAndArgsProvider;
+import org.ObjectLayout.StructuredArray;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single-producer, multi-consumer ring buffer whose event slots are the pre-constructed elements of a
+ * {@link StructuredArray}. Every consumer sees every published event (Disruptor-style multicast), and
+ * the producer may not overwrite a slot until all consumers have released it.
+ * <p>
+ * The producer and consumer sequences live in a single {@link AtomicLongArray} sequence table, with
+ * each sequence padded out to its own pair of cache lines so that the producer and consumers do not
+ * false-share. Sequences are published with ordered (store-release) writes
+ * ({@link AtomicLongArray#lazySet}) and read with volatile reads.
+ * <p>
+ * Typical producer use:
+ * <p><blockquote><pre>
+ * long sequence = ringBuffer.next();
+ * ringBuffer.get(sequence).setValue(value);
+ * ringBuffer.publish(sequence);
+ * </pre></blockquote></p>
+ * Typical consumer use:
+ * <p><blockquote><pre>
+ * long available = consumer.waitFor(nextSequence);
+ * for (; nextSequence &lt;= available; nextSequence++) {
+ *     handle(ringBuffer.get(nextSequence));
+ * }
+ * consumer.release(available);
+ * </pre></blockquote></p>
+ *
+ * @param <E> The class of the events held in the ring buffer
+ */
+public class StructuredArrayRingBuffer<E> {
+
+    /**
+     * How a thread waits for a sequence to become available.
+     */
+    public enum WaitStrategy {
+        BUSY_SPIN {
+            @Override
+            void idle() {
+            }
+        },
+        YIELD {
+            @Override
+            void idle() {
+                Thread.yield();
+            }
+        },
+        PARK {
+            @Override
+            void idle() {
+                LockSupport.parkNanos(1L);
+            }
+        };
+
+        abstract void idle();
+    }
+
+    // Two 64 byte cache lines per sequence, to also defeat adjacent-line prefetch:
+    private static final int SEQUENCE_PADDING = 16;
+    private static final int CURSOR_SLOT = 0;
+
+    private final StructuredArray<E> entries;
+    private final int mask;
+    private final int capacity;
+    private final AtomicLongArray sequenceTable;
+    private final Consumer[] consumers;
+    private final WaitStrategy waitStrategy;
+
+    // Producer-only state (single producer):
+    private long claimed = -1;
+    private long cachedGatingSequence = -1;
+
+    /**
+     * Create a ring buffer of default-constructed <code>eventClass</code> slots.
+     *
+     * @param eventClass the class of the events
+     * @param capacity the number of slots (must be a power of 2)
+     * @param consumerCount the number of consumers that will see each event
+     * @param waitStrategy how producer and consumers wait for sequences
+     * @param <E> the class of the events
+     * @return a new ring buffer
+     */
+    public static <E> StructuredArrayRingBuffer<E> newInstance(
+            final Class<E> eventClass,
+            final int capacity,
+            final int consumerCount,
+            final WaitStrategy waitStrategy) {
+        checkCapacity(capacity);
+        return new StructuredArrayRingBuffer<E>(
+                StructuredArray.newInstance(eventClass, capacity), consumerCount, waitStrategy);
+    }
+
+    /**
+     * Create a ring buffer whose slots are constructed according to <code>ctorAndArgsProvider</code>.
+     *
+     * @param eventClass the class of the events
+     * @param ctorAndArgsProvider produces slot constructors [potentially] on a per slot basis
+     * @param capacity the number of slots (must be a power of 2)
+     * @param consumerCount the number of consumers that will see each event
+     * @param waitStrategy how producer and consumers wait for sequences
+     * @param <E> the class of the events
+     * @return a new ring buffer
+     */
+    public static <E> StructuredArrayRingBuffer<E> newInstance(
+            final Class<E> eventClass,
+            final CtorAndArgsProvider<E> ctorAndArgsProvider,
+            final int capacity,
+            final int consumerCount,
+            final WaitStrategy waitStrategy) {
+        checkCapacity(capacity);
+        return new StructuredArrayRingBuffer<E>(
+                StructuredArray.newInstance(eventClass, ctorAndArgsProvider, capacity), consumerCount, waitStrategy);
+    }
+
+    private static void checkCapacity(final int capacity) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a positive power of 2");
+        }
+    }
+
+    private StructuredArrayRingBuffer(
+            final StructuredArray<E> entries,
+            final int consumerCount,
+            final WaitStrategy waitStrategy) {
+        if (consumerCount < 1) {
+            throw new IllegalArgumentException("consumerCount must be at least 1");
+        }
+        this.entries = entries;
+        this.capacity = (int) entries.getLength();
+        this.mask = capacity - 1;
+        this.waitStrategy = waitStrategy;
+
+        // Slot 0 is the producer cursor, followed by one slot per consumer, plus padding at both ends:
+        this.sequenceTable = new AtomicLongArray((consumerCount + 3) * SEQUENCE_PADDING);
+        putOrdered(CURSOR_SLOT, -1);
+
+        @SuppressWarnings("unchecked")
+        final Consumer[] consumers = (Consumer[]) new StructuredArrayRingBuffer.Consumer[consumerCount];
+        this.consumers = consumers;
+        for (int i = 0; i < consumerCount; i++) {
+            consumers[i] = new Consumer(i + 1);
+            putOrdered(i + 1, -1);
+        }
+    }
+
+    /**
+     * Get the number of slots in the ring buffer
+     *
+     * @return the number of slots in the ring buffer
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the event slot for a sequence. Producers may only touch slots they have claimed and not yet
+     * published, and consumers may only touch slots that are published and not yet released.
+     *
+     * @param sequence the sequence of the event
+     * @return the event slot for the sequence
+     */
+    public E get(final long sequence) {
+        return entries.get((int) sequence & mask);
+    }
+
+    /**
+     * Claim the next slot, waiting for consumers to free it if the ring is full.
+     *
+     * @return the claimed sequence
+     */
+    public long next() {
+        return next(1);
+    }
+
+    /**
+     * Claim the next <code>n</code> slots as a batch, waiting for consumers to free them if needed.
+     *
+     * @param n the number of slots to claim
+     * @return the highest claimed sequence. The batch spans <code>[returned - n + 1, returned]</code>.
+     */
+    public long next(final int n) {
+        if (n < 1 || n > capacity) {
+            throw new IllegalArgumentException("n must be between 1 and capacity (" + capacity + ")");
+        }
+
+        final long nextSequence = claimed + n;
+        final long wrapPoint = nextSequence - capacity;
+
+        if (wrapPoint > cachedGatingSequence) {
+            long gatingSequence;
+            while (wrapPoint > (gatingSequence = getMinimumConsumerSequence())) {
+                waitStrategy.idle();
+            }
+            cachedGatingSequence = gatingSequence;
+        }
+
+        claimed = nextSequence;
+        return nextSequence;
+    }
+
+    /**
+     * Make all claimed slots up to and including <code>sequence</code> visible to consumers.
+     *
+     * @param sequence the highest sequence to publish
+     */
+    public void publish(final long sequence) {
+        putOrdered(CURSOR_SLOT, sequence);
+    }
+
+    /**
+     * Get the highest published sequence.
+     *
+     * @return the highest published sequence, or -1 if nothing has been published
+     */
+    public long getCursor() {
+        return getVolatile(CURSOR_SLOT);
+    }
+
+    /**
+     * Get a consumer of this ring buffer. Each consumer must be driven by at most one thread.
+     *
+     * @param index the index of the consumer (0 to consumerCount - 1)
+     * @return the consumer
+     */
+    public Consumer getConsumer(final int index) {
+        return consumers[index];
+    }
+
+    private long getMinimumConsumerSequence() {
+        long minimum = Long.MAX_VALUE;
+        for (final Consumer consumer : consumers) {
+            minimum = Math.min(minimum, consumer.getSequence());
+        }
+        return minimum;
+    }
+
+    /**
+     * A consumer of the ring buffer, tracking the sequence up to which it has released events.
+     */
+    public class Consumer {
+        private final int slot;
+
+        Consumer(final int slot) {
+            this.slot = slot;
+        }
+
+        /**
+         * Wait until <code>sequence</code> has been published.
+         *
+         * @param sequence the sequence to wait for
+         * @return the highest published sequence, which may be greater than <code>sequence</code>
+         */
+        public long waitFor(final long sequence) {
+            long available;
+            while ((available = getCursor()) < sequence) {
+                waitStrategy.idle();
+            }
+            return available;
+        }
+
+        /**
+         * Release all events up to and including <code>sequence</code> back to the producer.
+         *
+         * @param sequence the highest sequence this consumer is done with
+         */
+        public void release(final long sequence) {
+            putOrdered(slot, sequence);
+        }
+
+        /**
+         * Get the sequence up to which this consumer has released events.
+         *
+         * @return the sequence up to which this consumer has released events
+         */
+        public long getSequence() {
+            return getVolatile(slot);
+        }
+    }
+
+    //
+    //
+    // Sequence table access:
+    //
+    //
+
+    private static int indexOf(final int slot) {
+        return (slot + 1) * SEQUENCE_PADDING;
+    }
+
+    private void putOrdered(final int slot, final long value) {
+        sequenceTable.lazySet(indexOf(slot), value);
+    }
+
+    private long getVolatile(final int slot) {
+        return sequenceTable.get(indexOf(slot));
+    }
+}
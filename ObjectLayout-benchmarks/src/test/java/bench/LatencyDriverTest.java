@@ -0,0 +1,53 @@
+package bench;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyDriverTest {
+
+    @Test
+    public void shouldStopAtDeadlineAndRecordBacklog() throws Exception {
+        // 1000 ops/sec for 200 msec, with the first operation stalling for 500 msec:
+        final LatencyDriver driver = new LatencyDriver(new StallingWorkload(500), 1000);
+
+        final long start = System.nanoTime();
+        final long operations = driver.drive(200000000L);
+        final long elapsedNanos = System.nanoTime() - start;
+
+        assertThat(operations, is(1L));
+        assertTrue("ran for " + elapsedNanos + " nsec", elapsedNanos < 1000000000L);
+        assertThat(driver.getUnissuedOperations(), is(199L));
+        assertThat(driver.getResponseTime().getTotalCount(), is(200L));
+        // The operations queued behind the stall waited until (at least) the deadline:
+        assertTrue(driver.getResponseTime().getValueAtPercentile(50.0) >= 100000000L);
+    }
+
+    private static class StallingWorkload implements LatencyDriver.Workload {
+        private final long stallMillis;
+        private boolean stalled;
+
+        StallingWorkload(final long stallMillis) {
+            this.stallMillis = stallMillis;
+        }
+
+        @Override
+        public void setup(final int length) {
+        }
+
+        @Override
+        public long execute(final long sequence) {
+            if (!stalled) {
+                stalled = true;
+                try {
+                    Thread.sleep(stallMillis);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return sequence;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package bench;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void shouldCountSmallValuesExactly() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.recordValue(value);
+        }
+
+        assertThat(histogram.getTotalCount(), is(1000L));
+        assertThat(histogram.getValueAtPercentile(50.0), is(500L));
+        assertThat(histogram.getValueAtPercentile(99.0), is(990L));
+        assertThat(histogram.getValueAtPercentile(99.5), is(995L));
+        assertThat(histogram.getValueAtPercentile(100.0), is(1000L));
+        assertThat(histogram.getMinValue(), is(1L));
+        assertThat(histogram.getMean(), is(500.5));
+    }
+
+    @Test
+    public void shouldKeepThreeSignificantDigitsForLargeValues() throws Exception {
+        for (final long value : new long[] {2048L, 123456789L, 987654321012L, Long.MAX_VALUE / 3, Long.MAX_VALUE}) {
+            final int index = LatencyHistogram.indexOf(value);
+            final long lowest = LatencyHistogram.lowestEquivalentValue(index);
+            final long highest = LatencyHistogram.highestEquivalentValue(index);
+            assertTrue(value + " in [" + lowest + ", " + highest + "]", (lowest <= value) && (value <= highest));
+            assertTrue(value + " bucket too wide", (highest - lowest) <= (value / 1000));
+        }
+    }
+
+    @Test
+    public void shouldReportPercentilesOfLargeValuesWithinPrecision() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordValues(10000L, 9990);
+        histogram.recordValues(5000000L, 10);
+
+        assertThat(histogram.getValueAtPercentile(99.0), is(LatencyHistogram.highestEquivalentValue(
+                LatencyHistogram.indexOf(10000L))));
+        final long p9999 = histogram.getValueAtPercentile(99.99);
+        assertTrue(p9999 >= 4995000L && p9999 <= 5000000L);
+        assertThat(histogram.getMaxValue(), is(5000000L));
+    }
+
+    @Test
+    public void shouldBackFillValuesForCoordinatedOmission() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.recordValueWithExpectedInterval(10, 100);
+        }
+        // One 1000 unit stall, during which 9 operations should have started:
+        histogram.recordValueWithExpectedInterval(1000, 100);
+
+        assertThat(histogram.getTotalCount(), is(109L));
+        assertThat(histogram.getValueAtPercentile(90.0), is(10L));
+        assertThat(histogram.getValueAtPercentile(95.0), is(500L));
+        assertThat(histogram.getValueAtPercentile(99.0), is(900L));
+        assertThat(histogram.getValueAtPercentile(100.0), is(1000L));
+    }
+
+    @Test
+    public void shouldAddAndReset() throws Exception {
+        final LatencyHistogram a = new LatencyHistogram();
+        final LatencyHistogram b = new LatencyHistogram();
+        a.recordValue(7);
+        b.recordValue(3000000);
+
+        a.add(b);
+        assertThat(a.getTotalCount(), is(2L));
+        assertThat(a.getMinValue(), is(7L));
+        assertThat(a.getMaxValue(), is(3000000L));
+
+        a.reset();
+        assertThat(a.getTotalCount(), is(0L));
+        assertThat(a.getValueAtPercentile(99.0), is(0L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNegativeValues() throws Exception {
+        new LatencyHistogram().recordValue(-1);
+    }
+}
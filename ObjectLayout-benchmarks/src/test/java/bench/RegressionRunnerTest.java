@@ -0,0 +1,169 @@
+package bench;
+
+import org.junit.Test;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class RegressionRunnerTest {
+
+    @Test
+    public void shouldParseJmhJsonResults() throws Exception {
+        final Map<String, RegressionRunner.Score> scores = RegressionRunner.parseScores(
+                "[" + result("bench.A.get", "thrpt", "\"length\" : \"1000\", \"name\" : \"x\"",
+                        "1.5E8", "\"NaN\"", "ops/s") +
+                        "," + result("bench.B.copy", "avgt", null, "12.5", "0.5", "us/op") + "]");
+
+        assertThat(scores.size(), is(2));
+        final RegressionRunner.Score a = scores.get("bench.A.get thrpt length=1000,name=x");
+        assertThat(a.score, is(1.5E8));
+        assertThat(Double.isNaN(a.error), is(true));
+        assertThat(a.unit, is("ops/s"));
+        final RegressionRunner.Score b = scores.get("bench.B.copy avgt");
+        assertThat(b.score, is(12.5));
+        assertThat(b.error, is(0.5));
+    }
+
+    @Test
+    public void shouldDetectRegressionsInBothDirections() throws Exception {
+        final List<RegressionRunner.Comparison> comparisons = compare(
+                "[" + result("bench.A.get", "thrpt", null, "100.0", "1.0", "ops/s") +
+                        "," + result("bench.B.copy", "avgt", null, "10.0", "0.1", "us/op") + "]",
+                "[" + result("bench.A.get", "thrpt", null, "80.0", "1.0", "ops/s") +
+                        "," + result("bench.B.copy", "avgt", null, "12.0", "0.1", "us/op") + "]",
+                new RegressionRunner.Thresholds());
+
+        assertThat(comparisons.get(0).getImprovementPercent(), is(-20.0));
+        assertThat(comparisons.get(0).isRegression(), is(true));
+        assertThat(comparisons.get(1).getImprovementPercent(), is(-20.0));
+        assertThat(comparisons.get(1).isRegression(), is(true));
+    }
+
+    @Test
+    public void shouldNotReportImprovementsOrChangesWithinThreshold() throws Exception {
+        final List<RegressionRunner.Comparison> comparisons = compare(
+                "[" + result("bench.A.get", "thrpt", null, "100.0", "1.0", "ops/s") +
+                        "," + result("bench.B.copy", "avgt", null, "10.0", "0.1", "us/op") + "]",
+                "[" + result("bench.A.get", "thrpt", null, "95.0", "1.0", "ops/s") +
+                        "," + result("bench.B.copy", "avgt", null, "5.0", "0.1", "us/op") + "]",
+                new RegressionRunner.Thresholds());
+
+        assertThat(comparisons.get(0).isRegression(), is(false));
+        assertThat(comparisons.get(1).getImprovementPercent(), is(50.0));
+        assertThat(comparisons.get(1).isRegression(), is(false));
+    }
+
+    @Test
+    public void shouldNotReportDifferencesWithinScoreErrors() throws Exception {
+        final List<RegressionRunner.Comparison> comparisons = compare(
+                "[" + result("bench.A.get", "thrpt", null, "100.0", "15.0", "ops/s") + "]",
+                "[" + result("bench.A.get", "thrpt", null, "80.0", "10.0", "ops/s") + "]",
+                new RegressionRunner.Thresholds());
+
+        assertThat(comparisons.get(0).isRegression(), is(false));
+    }
+
+    @Test
+    public void shouldApplyFirstMatchingThreshold() throws Exception {
+        final RegressionRunner.Thresholds thresholds = new RegressionRunner.Thresholds();
+        thresholds.add("5");
+        thresholds.add(".*Construction.*=25");
+        thresholds.add(".*=50");
+
+        assertThat(thresholds.forBenchmark("bench.ConstructionBench.primitiveLongArray"), is(25.0));
+        assertThat(thresholds.forBenchmark("bench.ObjectLayoutBench.arrayLoopSumTest"), is(50.0));
+
+        final List<RegressionRunner.Comparison> comparisons = compare(
+                "[" + result("bench.ConstructionBench.a", "thrpt", null, "100.0", "0", "ops/s") + "]",
+                "[" + result("bench.ConstructionBench.a", "thrpt", null, "80.0", "0", "ops/s") + "]",
+                thresholds);
+        assertThat(comparisons.get(0).isRegression(), is(false));
+    }
+
+    @Test
+    public void shouldReportNewBenchmarksWithoutFailing() throws Exception {
+        final List<RegressionRunner.Comparison> comparisons = compare(
+                "[" + result("bench.ObjectLayoutBench.a", "thrpt", null, "100.0", "1.0", "ops/s") + "]",
+                "[" + result("bench.ObjectLayoutBench.a", "thrpt", null, "100.0", "1.0", "ops/s") +
+                        "," + result("bench.ObjectLayoutBench.b", "thrpt", null, "1.0", "1.0", "ops/s") + "]",
+                new RegressionRunner.Thresholds());
+
+        assertThat(comparisons.size(), is(2));
+        assertThat(comparisons.get(1).baseline == null, is(true));
+        assertThat(RegressionRunner.report(comparisons, new PrintStream(new ByteArrayOutputStream())), is(false));
+    }
+
+    @Test
+    public void shouldFailOnSelectedBenchmarksMissingFromResults() throws Exception {
+        // e.g. a benchmark that threw, which JMH leaves out of the results:
+        final List<RegressionRunner.Comparison> comparisons = compare(
+                "[" + result("bench.ObjectLayoutBench.a", "thrpt", null, "100.0", "1.0", "ops/s") +
+                        "," + result("bench.ObjectLayoutBench.b", "thrpt", null, "100.0", "1.0", "ops/s") + "]",
+                "[" + result("bench.ObjectLayoutBench.a", "thrpt", null, "100.0", "1.0", "ops/s") + "]",
+                new RegressionRunner.Thresholds());
+
+        assertThat(comparisons.size(), is(2));
+        assertThat(comparisons.get(1).current == null, is(true));
+        assertThat(RegressionRunner.report(comparisons, new PrintStream(new ByteArrayOutputStream())), is(true));
+    }
+
+    @Test
+    public void shouldIgnoreBaselineBenchmarksOutsideTheSelection() throws Exception {
+        final String baseline = "[" +
+                result("bench.ObjectLayoutBench.a", "thrpt", "\"length\" : \"10\"", "1.0", "0", "ops/s") + "," +
+                result("bench.ObjectLayoutBench.a", "thrpt", "\"length\" : \"20\"", "1.0", "0", "ops/s") + "," +
+                result("bench.ObjectLayoutBench.a", "avgt", "\"length\" : \"10\"", "1.0", "0", "us/op") + "," +
+                result("bench.ConstructionBench.b", "thrpt", null, "1.0", "0", "ops/s") + "," +
+                result("bench.RandomAccessBench.c", "thrpt", null, "1.0", "0", "ops/s") + "]";
+
+        // Not in the default set:
+        assertThat(missing(baseline), is(4));
+        assertThat(missing(baseline, ".*ObjectLayoutBench.*"), is(3));
+        assertThat(missing(baseline, "-e", ".*Construction.*"), is(3));
+        assertThat(missing(baseline, ".*ObjectLayoutBench.*", "-bm", "thrpt"), is(2));
+        assertThat(missing(baseline, ".*ObjectLayoutBench.*", "-p", "length=20"), is(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMalformedJson() throws Exception {
+        RegressionRunner.parseScores("[{\"benchmark\" : \"bench.A.get\", ");
+    }
+
+    private static int missing(final String baseline, final String... jmhArgs) throws Exception {
+        return RegressionRunner.compare(RegressionRunner.parseScores(baseline), RegressionRunner.parseScores("[]"),
+                new RegressionRunner.Thresholds(),
+                new RegressionRunner.Selection(new CommandLineOptions(jmhArgs))).size();
+    }
+
+    private static List<RegressionRunner.Comparison> compare(final String baseline, final String current,
+                                                             final RegressionRunner.Thresholds thresholds)
+            throws Exception {
+        return RegressionRunner.compare(
+                RegressionRunner.parseScores(baseline), RegressionRunner.parseScores(current), thresholds,
+                new RegressionRunner.Selection(new CommandLineOptions()));
+    }
+
+    private static String result(final String benchmark, final String mode, final String params,
+                                 final String score, final String error, final String unit) {
+        return "{\n" +
+                "  \"benchmark\" : \"" + benchmark + "\",\n" +
+                "  \"mode\" : \"" + mode + "\",\n" +
+                "  \"threads\" : 1,\n" +
+                ((params != null) ? "  \"params\" : {" + params + "},\n" : "") +
+                "  \"primaryMetric\" : {\n" +
+                "    \"score\" : " + score + ",\n" +
+                "    \"scoreError\" : " + error + ",\n" +
+                "    \"scoreConfidence\" : [\"NaN\", \"NaN\"],\n" +
+                "    \"scoreUnit\" : \"" + unit + "\",\n" +
+                "    \"rawData\" : [[1.0, 2.0]]\n" +
+                "  },\n" +
+                "  \"secondaryMetrics\" : {}\n" +
+                "}";
+    }
+}
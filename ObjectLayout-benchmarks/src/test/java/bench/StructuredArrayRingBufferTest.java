@@ -0,0 +1,117 @@
+package bench;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class StructuredArrayRingBufferTest {
+
+    public static class Event {
+        private long value;
+
+        public long getValue() {
+            return value;
+        }
+
+        public void setValue(final long value) {
+            this.value = value;
+        }
+    }
+
+    @Test
+    public void shouldDeliverEveryEventToEveryConsumer() throws Exception {
+        final int consumerCount = 3;
+        final long eventCount = 100000;
+        final StructuredArrayRingBuffer<Event> ringBuffer =
+                StructuredArrayRingBuffer.newInstance(
+                        Event.class, 64, consumerCount, StructuredArrayRingBuffer.WaitStrategy.YIELD);
+
+        final AtomicLongArray sums = new AtomicLongArray(consumerCount);
+        Thread[] threads = new Thread[consumerCount];
+        for (int i = 0; i < consumerCount; i++) {
+            final int consumerIndex = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    StructuredArrayRingBuffer<Event>.Consumer consumer = ringBuffer.getConsumer(consumerIndex);
+                    long sum = 0;
+                    long nextSequence = 0;
+                    while (nextSequence < eventCount) {
+                        long available = consumer.waitFor(nextSequence);
+                        for (; nextSequence <= available; nextSequence++) {
+                            sum += ringBuffer.get(nextSequence).getValue();
+                        }
+                        consumer.release(available);
+                    }
+                    sums.set(consumerIndex, sum);
+                }
+            };
+            threads[i].start();
+        }
+
+        for (long i = 0; i < eventCount; i++) {
+            long sequence = ringBuffer.next();
+            ringBuffer.get(sequence).setValue(i);
+            ringBuffer.publish(sequence);
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long expected = eventCount * (eventCount - 1) / 2;
+        for (int i = 0; i < consumerCount; i++) {
+            assertThat(sums.get(i), is(expected));
+        }
+    }
+
+    @Test
+    public void shouldClaimAndPublishBatches() throws Exception {
+        final StructuredArrayRingBuffer<Event> ringBuffer =
+                StructuredArrayRingBuffer.newInstance(
+                        Event.class, 16, 1, StructuredArrayRingBuffer.WaitStrategy.PARK);
+        final StructuredArrayRingBuffer<Event>.Consumer consumer = ringBuffer.getConsumer(0);
+
+        long high = ringBuffer.next(10);
+        assertThat(high, is(9L));
+        for (long sequence = high - 9; sequence <= high; sequence++) {
+            ringBuffer.get(sequence).setValue(sequence * 2);
+        }
+        assertThat(ringBuffer.getCursor(), is(-1L));
+        ringBuffer.publish(high);
+        assertThat(ringBuffer.getCursor(), is(9L));
+
+        assertThat(consumer.waitFor(0), is(9L));
+        for (long sequence = 0; sequence <= 9; sequence++) {
+            assertThat(ringBuffer.get(sequence).getValue(), is(sequence * 2));
+        }
+        consumer.release(9);
+        assertThat(consumer.getSequence(), is(9L));
+
+        // With everything released, a full ring's worth can be claimed again:
+        assertThat(ringBuffer.next(16), is(25L));
+    }
+
+    @Test
+    public void shouldReuseTheSameSlotsWhenWrapping() throws Exception {
+        final StructuredArrayRingBuffer<Event> ringBuffer =
+                StructuredArrayRingBuffer.newInstance(
+                        Event.class, 4, 1, StructuredArrayRingBuffer.WaitStrategy.BUSY_SPIN);
+
+        Event first = ringBuffer.get(0);
+        for (long sequence = 0; sequence < 8; sequence++) {
+            ringBuffer.publish(ringBuffer.next());
+            ringBuffer.getConsumer(0).release(sequence);
+        }
+        assertThat(ringBuffer.get(4) == first, is(true));
+        assertThat(ringBuffer.get(8) == first, is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPowerOfTwoCapacity() throws Exception {
+        StructuredArrayRingBuffer.newInstance(Event.class, 12, 1, StructuredArrayRingBuffer.WaitStrategy.YIELD);
+    }
+}
@@ -4,11 +4,14 @@
  * http://creativecommons.org/publicdomain/zero/1.0/
  */
 
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 
+import org.ObjectLayout.PrimitiveLongArray;
 import org.ObjectLayout.ReferenceArray;
 import org.ObjectLayout.StructuredArray;
 
@@ -33,6 +36,161 @@ public class BPlusTree<K, V> implements Iterable<Map.Entry<K, V>> {
         this.root = firstNode;
     }
 
+    private BPlusTree(int nodeSize, Comparator<K> comparator, Leaf firstNode, Node root, int size) {
+        this.nodeSize = nodeSize;
+        this.comparator = comparator;
+        this.firstNode = firstNode;
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Build a tree bottom-up from entries supplied in strictly ascending key order. Leaves are
+     * filled to <code>fillFactor</code> of their capacity in a single pass, and branches are then
+     * stacked level by level on top of them, avoiding the splits and shifts of repeated put() calls.
+     *
+     * @param nodeSize the capacity of each node in the tree
+     * @param sortedEntries entries in strictly ascending key order
+     * @param fillFactor the fraction (between 0.5 and 1.0) of each node's capacity to fill
+     * @return a newly built tree containing all the supplied entries
+     */
+    public static <K, V> BPlusTree<K, V> bulkLoad(
+            int nodeSize, Iterator<? extends Map.Entry<K, V>> sortedEntries, double fillFactor) {
+        return bulkLoad(nodeSize, null, sortedEntries, fillFactor);
+    }
+
+    public static <K, V, E extends Map.Entry<K, V>> BPlusTree<K, V> bulkLoad(
+            int nodeSize, StructuredArray<E> sortedEntries, double fillFactor) {
+        return bulkLoad(nodeSize, null, sortedEntries.iterator(), fillFactor);
+    }
+
+    public static <V> BPlusTree<Long, V> bulkLoad(
+            int nodeSize, final PrimitiveLongArray sortedKeys, final ReferenceArray<V> values, double fillFactor) {
+        if (sortedKeys.getLength() != values.getLength()) {
+            throw new IllegalArgumentException("sortedKeys and values must be of the same length");
+        }
+
+        // A single reused entry carries each key/value pair into the tree:
+        final Entry entry = new Entry();
+        Iterator<Map.Entry<Long, V>> iterator = new Iterator<Map.Entry<Long, V>>() {
+            private long index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < sortedKeys.getLength();
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public Map.Entry<Long, V> next() {
+                if (index >= sortedKeys.getLength()) {
+                    throw new NoSuchElementException();
+                }
+                entry.set(sortedKeys.get(index), values.get(index));
+                index++;
+                return entry;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        return bulkLoad(nodeSize, null, iterator, fillFactor);
+    }
+
+    public static <K, V> BPlusTree<K, V> bulkLoad(
+            int nodeSize, Comparator<K> comparator,
+            Iterator<? extends Map.Entry<K, V>> sortedEntries, double fillFactor) {
+        if (fillFactor < 0.5 || fillFactor > 1.0) {
+            throw new IllegalArgumentException("fillFactor must be between 0.5 and 1.0");
+        }
+
+        if (!sortedEntries.hasNext()) {
+            return new BPlusTree<K, V>(nodeSize, comparator);
+        }
+
+        int fill = Math.max(nodeSize / 2, Math.min(nodeSize, (int) Math.round(nodeSize * fillFactor)));
+
+        List<Node> nodes = new ArrayList<Node>();
+        List<Object> firstKeys = new ArrayList<Object>();
+
+        Leaf firstLeaf = Leaf.newInstance(nodeSize);
+        Leaf leaf = firstLeaf;
+        Leaf previous = null;
+        Object lastKey = null;
+        int size = 0;
+
+        while (sortedEntries.hasNext()) {
+            Map.Entry<K, V> entry = sortedEntries.next();
+            Object key = entry.getKey();
+            Object val = entry.getValue();
+
+            if (key == null || val == null) {
+                throw new NullPointerException("Keys and values may not be null");
+            }
+            if (size > 0 && compare(comparator, lastKey, key) >= 0) {
+                throw new IllegalArgumentException("Entries must be supplied in strictly ascending key order");
+            }
+
+            if (leaf.size() == fill) {
+                nodes.add(leaf);
+                firstKeys.add(leaf.firstKey());
+                previous = leaf;
+                leaf = Leaf.newInstance(nodeSize);
+                previous.next = leaf;
+                leaf.prev = previous;
+            }
+
+            leaf.append(key, val);
+            lastKey = key;
+            size++;
+        }
+
+        // Keep the last leaf at or above half capacity, as remove() expects of every non-root node:
+        if (previous != null && leaf.requiresCompacting()) {
+            int total = previous.size() + leaf.size();
+            if (total <= nodeSize) {
+                leaf.moveAllTo(previous);
+                previous.next = null;
+                leaf = null;
+            } else {
+                previous.moveTailTo(leaf, total / 2 - leaf.size());
+            }
+        }
+
+        if (leaf != null) {
+            nodes.add(leaf);
+            firstKeys.add(leaf.firstKey());
+        }
+
+        // Stack branches on top of each level until a single root remains:
+        int maxChildren = nodeSize + 1;
+        int fillChildren = fill + 1;
+
+        while (nodes.size() > 1) {
+            int count = nodes.size();
+            int branches = Math.max((count + maxChildren - 1) / maxChildren, count / fillChildren);
+
+            List<Node> parents = new ArrayList<Node>(branches);
+            List<Object> parentKeys = new ArrayList<Object>(branches);
+
+            int from = 0;
+            for (int i = 0; i < branches; i++) {
+                int children = count / branches + ((i < count % branches) ? 1 : 0);
+                parents.add(Branch.newInstance(nodes, firstKeys, from, children, nodeSize));
+                parentKeys.add(firstKeys.get(from));
+                from += children;
+            }
+
+            nodes = parents;
+            firstKeys = parentKeys;
+        }
+
+        return new BPlusTree<K, V>(nodeSize, comparator, firstLeaf, nodes.get(0), size);
+    }
+
     @SuppressWarnings("unchecked")
     public V put(K key, V val) {
         if (key == null || val == null) {
@@ -143,6 +301,7 @@ public class BPlusTree<K, V> implements Iterable<Map.Entry<K, V>> {
         private int size = 0;
         private final int capacity;
         private Leaf next;
+        private Leaf prev;
 
         public Leaf() {
             capacity = (int) this.getLength();
@@ -180,6 +339,10 @@ public class BPlusTree<K, V> implements Iterable<Map.Entry<K, V>> {
                 }
 
                 next.next = this.next;
+                next.prev = this;
+                if (this.next != null) {
+                    this.next.prev = next;
+                }
                 this.next = next;
 
                 oldVal = Node.Sentinal.SPLIT;
@@ -218,6 +381,16 @@ public class BPlusTree<K, V> implements Iterable<Map.Entry<K, V>> {
             return next;
         }
 
+        @Override
+        public Leaf findLeaf(Comparator comparator, Object key) {
+            return this;
+        }
+
+        @Override
+        public Leaf lastLeaf() {
+            return this;
+        }
+
         @Override
         public boolean requiresCompacting() {
             return size < capacity / 2;
@@ -274,6 +447,9 @@ public class BPlusTree<K, V> implements Iterable<Map.Entry<K, V>> {
 
             shallowCopy(leaf, 0, this, size, leaf.size());
             next = leaf.next();
+            if (next != null) {
+                next.prev = this;
+            }
 
             size += leaf.size();
         }
@@ -335,6 +511,21 @@ public class BPlusTree<K, V> implements Iterable<Map.Entry<K, V>> {
             size--;
         }
 
+        private void moveAllTo(Leaf left) {
+            shallowCopy(this, 0, left, left.size, size);
+            left.size += size;
+            clear(0, size);
+            size = 0;
+        }
+
+        private void moveTailTo(Leaf right, int count) {
+            shallowCopy(right, 0, right, count, right.size);
+            shallowCopy(this, size - count, right, 0, count);
+            clear(size - count, size);
+            size -= count;
+            right.size += count;
+        }
+
         public static Leaf newInstance(int nodeSize) {
             return newInstance(Leaf.class, Entry.class, nodeSize);
         }
@@ -466,6 +657,16 @@ public class BPlusTree<K, V> implements Iterable<Map.Entry<K, V>> {
             return findNode(comparator, key).get(comparator, key);
         }
 
+        @Override
+        public Leaf findLeaf(Comparator comparator, Object key) {
+            return findNode(comparator, key).findLeaf(comparator, key);
+        }
+
+        @Override
+        public Leaf lastLeaf() {
+            return storedNode(size).lastLeaf();
+        }
+
         @Override
         public Object remove(Comparator comparator, Object key) {
             int index = findKeyIndex(comparator, key);
@@ -749,6 +950,21 @@ public class BPlusTree<K, V> implements Iterable<Map.Entry<K, V>> {
             return branch;
         }
 
+        private static Branch newInstance(List<Node> children, List<Object> firstKeys,
+                int from, int count, int nodeSize) {
+
+            Branch branch = create(nodeSize);
+
+            branch.setChild(0, children.get(from));
+            for (int i = 1; i < count; i++) {
+                branch.setChild(i * 2 - 1, firstKeys.get(from + i));
+                branch.setChild(i * 2, children.get(from + i));
+            }
+            branch.size = count - 1;
+
+            return branch;
+        }
+
         private static Branch create(int nodeSize) {
             int length = (nodeSize * 2) + 1;
             return ReferenceArray.newInstance(Branch.class, length);
@@ -781,6 +997,10 @@ public class BPlusTree<K, V> implements Iterable<Map.Entry<K, V>> {
         Node next();
 
         boolean hasOnlyChild();
+
+        Leaf findLeaf(Comparator comparator, Object key);
+
+        Leaf lastLeaf();
     }
 
     @SuppressWarnings("unchecked")
@@ -806,6 +1026,179 @@ public class BPlusTree<K, V> implements Iterable<Map.Entry<K, V>> {
         return new BPlusTreeIterator(firstNode);
     }
 
+    /**
+     * Create an unpositioned {@link Cursor}. Position it with one of the {@link Cursor#seek} or
+     * {@link Cursor#seekDescending} forms before calling {@link Cursor#next()}.
+     *
+     * @return a new cursor over this tree
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A reusable cursor for range scans. A cursor is positioned at a key (or at either end of the
+     * tree) with {@link #seek} or {@link #seekDescending}, and then walks the leaf chain in the
+     * chosen direction until it passes the optional bound. Keys and values are read in place from
+     * the leaf entries via {@link #key()} and {@link #value()}, so a scan allocates nothing.
+     * <p>
+     * Like the tree's iterator, a cursor is invalidated by any put or remove on the tree.
+     */
+    public class Cursor {
+        private Leaf leaf;
+        private int index;
+        private boolean descending;
+        private Object bound;
+        private boolean boundInclusive;
+        private boolean exhausted = true;
+
+        Cursor() {
+        }
+
+        /**
+         * Position the cursor before the first entry in the tree, for an ascending scan.
+         *
+         * @return this cursor
+         */
+        public Cursor seek() {
+            return position(firstNode, -1, false);
+        }
+
+        /**
+         * Position the cursor for an ascending scan starting at <code>from</code>.
+         *
+         * @param from the key to start from
+         * @param inclusive whether an entry with a key equal to <code>from</code> is included
+         * @return this cursor
+         */
+        public Cursor seek(K from, boolean inclusive) {
+            Leaf leaf = root.findLeaf(comparator, from);
+            int search = binarySearch(leaf, 0, leaf.size(), from, comparator);
+            int index = (search < 0) ? -(search + 1) - 1 : (inclusive ? search - 1 : search);
+            return position(leaf, index, false);
+        }
+
+        /**
+         * Position the cursor after the last entry in the tree, for a descending scan.
+         *
+         * @return this cursor
+         */
+        public Cursor seekDescending() {
+            Leaf last = root.lastLeaf();
+            return position(last, last.size(), true);
+        }
+
+        /**
+         * Position the cursor for a descending scan starting at <code>from</code>.
+         *
+         * @param from the key to start from
+         * @param inclusive whether an entry with a key equal to <code>from</code> is included
+         * @return this cursor
+         */
+        public Cursor seekDescending(K from, boolean inclusive) {
+            Leaf leaf = root.findLeaf(comparator, from);
+            int search = binarySearch(leaf, 0, leaf.size(), from, comparator);
+            int index = (search < 0) ? -(search + 1) : (inclusive ? search + 1 : search);
+            return position(leaf, index, true);
+        }
+
+        /**
+         * Stop the scan at <code>to</code>. For ascending scans this is an upper bound, and for
+         * descending scans a lower bound.
+         *
+         * @param to the key at which the scan ends
+         * @param inclusive whether an entry with a key equal to <code>to</code> is included
+         * @return this cursor
+         */
+        public Cursor until(K to, boolean inclusive) {
+            this.bound = to;
+            this.boundInclusive = inclusive;
+            return this;
+        }
+
+        /**
+         * Advance to the next entry in the scan direction.
+         *
+         * @return true if the cursor moved to an entry within bounds, false if the scan is done
+         */
+        public boolean next() {
+            if (exhausted) {
+                return false;
+            }
+
+            if (descending) {
+                index--;
+                while (index < 0) {
+                    leaf = leaf.prev;
+                    if (leaf == null) {
+                        return finish();
+                    }
+                    index = leaf.size() - 1;
+                }
+            } else {
+                index++;
+                while (index >= leaf.size()) {
+                    leaf = leaf.next;
+                    if (leaf == null) {
+                        return finish();
+                    }
+                    index = 0;
+                }
+            }
+
+            if (bound != null) {
+                int cmp = compare(comparator, leaf.get(index).getKey(), bound);
+                if (descending) {
+                    cmp = -cmp;
+                }
+                if (cmp > 0 || (cmp == 0 && !boundInclusive)) {
+                    return finish();
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * @return the key of the entry the cursor is currently on
+         */
+        @SuppressWarnings("unchecked")
+        public K key() {
+            return (K) current().getKey();
+        }
+
+        /**
+         * @return the value of the entry the cursor is currently on
+         */
+        @SuppressWarnings("unchecked")
+        public V value() {
+            return (V) current().getValue();
+        }
+
+        private Entry current() {
+            if (exhausted || index < 0 || index >= leaf.size()) {
+                throw new NoSuchElementException();
+            }
+            return leaf.get(index);
+        }
+
+        private Cursor position(Leaf leaf, int index, boolean descending) {
+            this.leaf = leaf;
+            this.index = index;
+            this.descending = descending;
+            this.bound = null;
+            this.boundInclusive = false;
+            this.exhausted = false;
+            return this;
+        }
+
+        private boolean finish() {
+            exhausted = true;
+            leaf = null;
+            return false;
+        }
+    }
+
     public class BPlusTreeIterator implements Iterator<Map.Entry<K, V>> {
         private Leaf leaf;
         private int index = -1;
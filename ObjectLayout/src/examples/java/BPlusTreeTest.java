@@ -11,9 +11,12 @@ import static org.junit.Assert.assertThat;
 
 import java.util.Iterator;
 import java.util.Map.Entry;
+import java.util.NavigableMap;
 import java.util.Random;
 import java.util.TreeMap;
 
+import org.ObjectLayout.PrimitiveLongArray;
+import org.ObjectLayout.ReferenceArray;
 import org.junit.Test;
 
 public class BPlusTreeTest {
@@ -151,6 +154,170 @@ public class BPlusTreeTest {
         assertPutAndGet(values);
     }
 
+    @Test
+    public void bulkLoadsSortedEntriesAtVariousFillFactors() throws Exception {
+        double[] fillFactors = new double[] { 0.5, 0.75, 1.0 };
+        int[] counts = new int[] { 1, 7, 8, 9, 17, 100, 5000 };
+
+        for (double fillFactor : fillFactors) {
+            for (int count : counts) {
+                TreeMap<Integer, Integer> treeMap = new TreeMap<Integer, Integer>();
+                for (int i = 0; i < count; i++) {
+                    treeMap.put(i * 3, i);
+                }
+
+                BPlusTree<Integer, Integer> loaded = BPlusTree.bulkLoad(
+                        8, treeMap.entrySet().iterator(), fillFactor);
+
+                String message = "{" + fillFactor + ", " + count + "}";
+                assertThat(message, loaded.size(), is(count));
+                assertThat(message, count(loaded), is(count));
+                assertIteratesInOrder(loaded, treeMap);
+
+                for (Entry<Integer, Integer> entry : treeMap.entrySet()) {
+                    assertThat(message, loaded.get(entry.getKey()), is(entry.getValue()));
+                    assertThat(message, loaded.get(entry.getKey() + 1), is(nullValue()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void bulkLoadedTreeSupportsPutsAndRemoves() throws Exception {
+        TreeMap<Integer, Integer> treeMap = new TreeMap<Integer, Integer>();
+        for (int i = 0; i < 2000; i++) {
+            treeMap.put(i * 2, i);
+        }
+
+        BPlusTree<Integer, Integer> loaded = BPlusTree.bulkLoad(
+                8, treeMap.entrySet().iterator(), 1.0);
+
+        Random random = new Random(7);
+        for (int i = 0; i < 10000; i++) {
+            int key = random.nextInt(5000);
+            if (random.nextBoolean()) {
+                assertThat("{" + i + "}", loaded.put(key, i), is(treeMap.put(key, i)));
+            } else {
+                assertThat("{" + i + "}", loaded.remove(key), is(treeMap.remove(key)));
+            }
+            assertThat("{" + i + "}", loaded.size(), is(treeMap.size()));
+        }
+
+        assertIteratesInOrder(loaded, treeMap);
+    }
+
+    @Test
+    public void bulkLoadsFromPrimitiveLongArray() throws Exception {
+        int count = 1000;
+        PrimitiveLongArray keys = PrimitiveLongArray.newInstance(count);
+        ReferenceArray<String> values = ReferenceArray.newInstance(count);
+        for (int i = 0; i < count; i++) {
+            keys.set(i, i * 10L);
+            values.set(i, "v" + i);
+        }
+
+        BPlusTree<Long, String> loaded = BPlusTree.bulkLoad(8, keys, values, 0.75);
+
+        assertThat(loaded.size(), is(count));
+        for (int i = 0; i < count; i++) {
+            assertThat(loaded.get(i * 10L), is("v" + i));
+        }
+        assertThat(loaded.get(5L), is(nullValue()));
+    }
+
+    @Test
+    public void bulkLoadsEmptyInput() throws Exception {
+        BPlusTree<Integer, Integer> loaded = BPlusTree.bulkLoad(
+                8, new TreeMap<Integer, Integer>().entrySet().iterator(), 1.0);
+
+        assertThat(loaded.size(), is(0));
+        loaded.put(1, 1);
+        assertThat(loaded.get(1), is((Object) 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bulkLoadRejectsUnsortedInput() throws Exception {
+        PrimitiveLongArray keys = PrimitiveLongArray.newInstance(3);
+        ReferenceArray<String> values = ReferenceArray.newInstance(3);
+        keys.set(0, 1L);
+        keys.set(1, 3L);
+        keys.set(2, 2L);
+        for (int i = 0; i < 3; i++) {
+            values.set(i, "v" + i);
+        }
+
+        BPlusTree.bulkLoad(8, keys, values, 1.0);
+    }
+
+    @Test
+    public void cursorScansRangesInBothDirections() throws Exception {
+        TreeMap<Integer, Integer> treeMap = new TreeMap<Integer, Integer>();
+        Random random = new Random(3);
+        for (int i = 0; i < 3000; i++) {
+            int key = random.nextInt(10000);
+            tree.put(key, i);
+            treeMap.put(key, i);
+        }
+        // Removals merge leaves, which must keep the reverse links intact:
+        for (int i = 0; i < 1500; i++) {
+            int key = random.nextInt(10000);
+            tree.remove(key);
+            treeMap.remove(key);
+        }
+
+        BPlusTree<Integer, Integer>.Cursor cursor = tree.cursor();
+        for (int i = 0; i < 200; i++) {
+            int from = random.nextInt(11000) - 500;
+            int to = from + random.nextInt(2000);
+            boolean fromInclusive = random.nextBoolean();
+            boolean toInclusive = random.nextBoolean();
+
+            assertScan(cursor.seek(from, fromInclusive).until(to, toInclusive),
+                    treeMap.subMap(from, fromInclusive, to, toInclusive));
+            assertScan(cursor.seekDescending(to, toInclusive).until(from, fromInclusive),
+                    treeMap.subMap(from, fromInclusive, to, toInclusive).descendingMap());
+            assertScan(cursor.seek(from, fromInclusive),
+                    treeMap.tailMap(from, fromInclusive));
+            assertScan(cursor.seekDescending(to, toInclusive),
+                    treeMap.headMap(to, toInclusive).descendingMap());
+        }
+
+        assertScan(cursor.seek(), treeMap);
+        assertScan(cursor.seekDescending(), treeMap.descendingMap());
+    }
+
+    @Test
+    public void cursorOnEmptyTreeFindsNothing() throws Exception {
+        BPlusTree<Integer, Integer>.Cursor cursor = tree.cursor();
+
+        assertThat(cursor.next(), is(false));
+        assertThat(cursor.seek().next(), is(false));
+        assertThat(cursor.seekDescending().next(), is(false));
+        assertThat(cursor.seek(5, true).next(), is(false));
+        assertThat(cursor.seekDescending(5, true).next(), is(false));
+    }
+
+    private static void assertScan(BPlusTree<Integer, Integer>.Cursor cursor,
+            NavigableMap<Integer, Integer> expected) {
+        for (Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertThat(cursor.next(), is(true));
+            assertThat(cursor.key(), is(entry.getKey()));
+            assertThat(cursor.value(), is(entry.getValue()));
+        }
+        assertThat(cursor.next(), is(false));
+    }
+
+    private static void assertIteratesInOrder(BPlusTree<Integer, Integer> tree,
+            TreeMap<Integer, Integer> treeMap) {
+        Iterator<Entry<Integer, Integer>> expected = treeMap.entrySet().iterator();
+        for (Entry<Integer, Integer> entry : tree) {
+            Entry<Integer, Integer> expectedEntry = expected.next();
+            assertThat(entry.getKey(), is(expectedEntry.getKey()));
+            assertThat(entry.getValue(), is(expectedEntry.getValue()));
+        }
+        assertThat(expected.hasNext(), is(false));
+    }
+
     private void assertPutAndGet(int[] values) {
         for (int value : values) {
             tree.put(value, value);
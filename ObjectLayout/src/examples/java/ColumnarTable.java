@@ -0,0 +1,628 @@
+/*
+ * Written by Gil Tene, Martin Thompson and Michael Barker, and released
+ * to the public domain, as explained at:
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+import org.ObjectLayout.PrimitiveArrayBuilder;
+import org.ObjectLayout.PrimitiveDoubleArray;
+import org.ObjectLayout.PrimitiveLongArray;
+import org.ObjectLayout.StructuredArray;
+import org.ObjectLayout.StructuredArrayBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A small in-memory columnar table. The table holds a fixed number of rows, and its typed columns are
+ * the elements of a StructuredArray of PrimitiveLongArrays and a StructuredArray of PrimitiveDoubleArrays,
+ * so each column is one contiguous primitive array.
+ * <p>
+ * Queries are built from {@link RowFilter}s, which scan a column into a {@link Selection} vector of
+ * matching row indexes, and from aggregations over a selection. Range filters use branch-free kernels.
+ * Filters and group-by aggregations can also be split into row segments run on an
+ * {@link ExecutorService}, with per-segment results combined in row order.
+ * <p>
+ * Typical use:
+ * <p><blockquote><pre>
+ * ColumnarTable table = new ColumnarTable(rowCount, new String[] {"symbol", "time"}, new String[] {"price"});
+ * Selection selection = table.select(ColumnarTable.range(table.longColumn("time"), from, to), executor);
+ * GroupBy bySymbol = table.groupBy(table.longColumn("symbol"), table.doubleColumn("price"), selection);
+ * </pre></blockquote></p>
+ */
+public class ColumnarTable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 16;
+
+    private final long rowCount;
+    private final int segmentSize;
+    private final String[] longColumnNames;
+    private final String[] doubleColumnNames;
+    private final StructuredArray<PrimitiveLongArray> longColumnData;
+    private final StructuredArray<PrimitiveDoubleArray> doubleColumnData;
+
+    public ColumnarTable(final long rowCount, final String[] longColumnNames, final String[] doubleColumnNames) {
+        this(rowCount, longColumnNames, doubleColumnNames, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Create a table with all values initially zero.
+     *
+     * @param rowCount the number of rows
+     * @param longColumnNames the names of the <code>long</code> columns
+     * @param doubleColumnNames the names of the <code>double</code> columns
+     * @param segmentSize the number of rows each parallel task scans
+     */
+    @SuppressWarnings("unchecked")
+    public ColumnarTable(final long rowCount,
+                         final String[] longColumnNames,
+                         final String[] doubleColumnNames,
+                         final int segmentSize) {
+        if (rowCount < 0) {
+            throw new IllegalArgumentException("rowCount must not be negative");
+        }
+        if (segmentSize < 1) {
+            throw new IllegalArgumentException("segmentSize must be at least 1");
+        }
+        this.rowCount = rowCount;
+        this.segmentSize = segmentSize;
+        this.longColumnNames = longColumnNames.clone();
+        this.doubleColumnNames = doubleColumnNames.clone();
+        this.longColumnData = new StructuredArrayBuilder(StructuredArray.class,
+                new PrimitiveArrayBuilder(PrimitiveLongArray.class, rowCount), longColumnNames.length).build();
+        this.doubleColumnData = new StructuredArrayBuilder(StructuredArray.class,
+                new PrimitiveArrayBuilder(PrimitiveDoubleArray.class, rowCount), doubleColumnNames.length).build();
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public LongColumn longColumn(final String name) {
+        return new LongColumn(name, longColumnData.get(columnIndex(longColumnNames, name)));
+    }
+
+    public DoubleColumn doubleColumn(final String name) {
+        return new DoubleColumn(name, doubleColumnData.get(columnIndex(doubleColumnNames, name)));
+    }
+
+    private static int columnIndex(final String[] names, final String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("no such column: " + name);
+    }
+
+    //
+    //
+    // Columns:
+    //
+    //
+
+    public static class LongColumn {
+        private final String name;
+        private final PrimitiveLongArray values;
+
+        LongColumn(final String name, final PrimitiveLongArray values) {
+            this.name = name;
+            this.values = values;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long get(final long row) {
+            return values.get(row);
+        }
+
+        public void set(final long row, final long value) {
+            values.set(row, value);
+        }
+    }
+
+    public static class DoubleColumn {
+        private final String name;
+        private final PrimitiveDoubleArray values;
+
+        DoubleColumn(final String name, final PrimitiveDoubleArray values) {
+            this.name = name;
+            this.values = values;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double get(final long row) {
+            return values.get(row);
+        }
+
+        public void set(final long row, final double value) {
+            values.set(row, value);
+        }
+    }
+
+    //
+    //
+    // Filters:
+    //
+    //
+
+    public interface LongPredicate {
+        boolean test(long value);
+    }
+
+    public interface DoublePredicate {
+        boolean test(double value);
+    }
+
+    /**
+     * A condition on the values of a row.
+     */
+    public static abstract class RowFilter {
+        abstract boolean matches(long row);
+
+        /**
+         * Write the indexes of the matching rows in <code>[fromRow, toRow)</code> to <code>out</code>.
+         *
+         * @return the number of matching rows
+         */
+        int scan(final long fromRow, final long toRow, final long[] out) {
+            int count = 0;
+            for (long row = fromRow; row < toRow; row++) {
+                if (matches(row)) {
+                    out[count++] = row;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Match rows whose value in <code>column</code> is within <code>[min, max]</code>.
+     */
+    public static RowFilter range(final LongColumn column, final long min, final long max) {
+        return new RowFilter() {
+            @Override
+            boolean matches(final long row) {
+                final long value = column.values.get(row);
+                return value >= min && value <= max;
+            }
+
+            @Override
+            int scan(final long fromRow, final long toRow, final long[] out) {
+                // Always store, and only advance on a match, so the loop has no data dependent branch:
+                final PrimitiveLongArray values = column.values;
+                int count = 0;
+                for (long row = fromRow; row < toRow; row++) {
+                    final long value = values.get(row);
+                    out[count] = row;
+                    count += ((value >= min) & (value <= max)) ? 1 : 0;
+                }
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Match rows whose value in <code>column</code> is within <code>[min, max]</code>.
+     */
+    public static RowFilter range(final DoubleColumn column, final double min, final double max) {
+        return new RowFilter() {
+            @Override
+            boolean matches(final long row) {
+                final double value = column.values.get(row);
+                return value >= min && value <= max;
+            }
+
+            @Override
+            int scan(final long fromRow, final long toRow, final long[] out) {
+                final PrimitiveDoubleArray values = column.values;
+                int count = 0;
+                for (long row = fromRow; row < toRow; row++) {
+                    final double value = values.get(row);
+                    out[count] = row;
+                    count += ((value >= min) & (value <= max)) ? 1 : 0;
+                }
+                return count;
+            }
+        };
+    }
+
+    public static RowFilter where(final LongColumn column, final LongPredicate predicate) {
+        return new RowFilter() {
+            @Override
+            boolean matches(final long row) {
+                return predicate.test(column.values.get(row));
+            }
+        };
+    }
+
+    public static RowFilter where(final DoubleColumn column, final DoublePredicate predicate) {
+        return new RowFilter() {
+            @Override
+            boolean matches(final long row) {
+                return predicate.test(column.values.get(row));
+            }
+        };
+    }
+
+    /**
+     * Match rows that match every one of <code>filters</code>. The first filter is scanned in bulk, and
+     * the rest are only checked against the rows it matched.
+     */
+    public static RowFilter and(final RowFilter... filters) {
+        if (filters.length == 0) {
+            throw new IllegalArgumentException("at least one filter is required");
+        }
+        return new RowFilter() {
+            @Override
+            boolean matches(final long row) {
+                for (final RowFilter filter : filters) {
+                    if (!filter.matches(row)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            int scan(final long fromRow, final long toRow, final long[] out) {
+                int count = filters[0].scan(fromRow, toRow, out);
+                for (int i = 1; i < filters.length; i++) {
+                    count = refine(filters[i], out, count);
+                }
+                return count;
+            }
+        };
+    }
+
+    private static int refine(final RowFilter filter, final long[] rows, final int count) {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            final long row = rows[i];
+            rows[kept] = row;
+            kept += filter.matches(row) ? 1 : 0;
+        }
+        return kept;
+    }
+
+    /**
+     * An ascending vector of selected row indexes.
+     */
+    public static class Selection {
+        private final PrimitiveLongArray rows;
+
+        Selection(final PrimitiveLongArray rows) {
+            this.rows = rows;
+        }
+
+        public long size() {
+            return rows.getLength();
+        }
+
+        public long getRow(final long index) {
+            return rows.get(index);
+        }
+    }
+
+    /**
+     * Select the rows matching <code>filter</code>.
+     *
+     * @param filter the filter to apply
+     * @return the matching rows
+     */
+    public Selection select(final RowFilter filter) {
+        return select(filter, null);
+    }
+
+    /**
+     * Select the rows matching <code>filter</code>, scanning each row segment as a task on
+     * <code>executor</code>.
+     *
+     * @param filter the filter to apply
+     * @param executor the executor to scan segments on, or null to scan on the calling thread
+     * @return the matching rows
+     */
+    public Selection select(final RowFilter filter, final ExecutorService executor) {
+        final List<long[]> segmentRows = forEachSegment(executor, rowCount, new SegmentTask<long[]>() {
+            @Override
+            public long[] run(final long from, final long to) {
+                final long[] out = new long[(int) (to - from)];
+                return Arrays.copyOf(out, filter.scan(from, to, out));
+            }
+        });
+
+        long total = 0;
+        for (final long[] rows : segmentRows) {
+            total += rows.length;
+        }
+        final PrimitiveLongArray selected = PrimitiveLongArray.newInstance(total);
+        long position = 0;
+        for (final long[] rows : segmentRows) {
+            for (final long row : rows) {
+                selected.set(position++, row);
+            }
+        }
+        return new Selection(selected);
+    }
+
+    /**
+     * Keep only the selected rows that also match <code>filter</code>.
+     *
+     * @param selection the rows to refine
+     * @param filter the filter to apply
+     * @return the selected rows that match
+     */
+    public Selection refine(final Selection selection, final RowFilter filter) {
+        long count = 0;
+        final long size = selection.size();
+        final PrimitiveLongArray rows = PrimitiveLongArray.newInstance(size);
+        for (long i = 0; i < size; i++) {
+            final long row = selection.getRow(i);
+            rows.set(count, row);
+            count += filter.matches(row) ? 1 : 0;
+        }
+        final PrimitiveLongArray trimmed = PrimitiveLongArray.newInstance(count);
+        for (long i = 0; i < count; i++) {
+            trimmed.set(i, rows.get(i));
+        }
+        return new Selection(trimmed);
+    }
+
+    //
+    //
+    // Aggregation:
+    //
+    //
+
+    public double sum(final DoubleColumn column, final Selection selection) {
+        double sum = 0;
+        for (long i = 0; i < selection.size(); i++) {
+            sum += column.values.get(selection.getRow(i));
+        }
+        return sum;
+    }
+
+    /**
+     * Aggregate <code>value</code> over the selected rows, grouped by <code>key</code>.
+     *
+     * @param key the column to group by
+     * @param value the column to aggregate
+     * @param selection the rows to aggregate, or null for all rows
+     * @return the per-key aggregates
+     */
+    public GroupBy groupBy(final LongColumn key, final DoubleColumn value, final Selection selection) {
+        return groupBy(key, value, selection, null);
+    }
+
+    /**
+     * Aggregate <code>value</code> over the selected rows, grouped by <code>key</code>, aggregating each
+     * segment of the selection as a task on <code>executor</code> and merging the partial results.
+     *
+     * @param key the column to group by
+     * @param value the column to aggregate
+     * @param selection the rows to aggregate, or null for all rows
+     * @param executor the executor to aggregate segments on, or null to aggregate on the calling thread
+     * @return the per-key aggregates
+     */
+    public GroupBy groupBy(final LongColumn key, final DoubleColumn value, final Selection selection,
+                           final ExecutorService executor) {
+        final long size = (selection != null) ? selection.size() : rowCount;
+        final List<GroupBy> partials = forEachSegment(executor, size, new SegmentTask<GroupBy>() {
+            @Override
+            public GroupBy run(final long from, final long to) {
+                final GroupBy partial = new GroupBy();
+                for (long i = from; i < to; i++) {
+                    final long row = (selection != null) ? selection.getRow(i) : i;
+                    partial.add(key.values.get(row), value.values.get(row));
+                }
+                return partial;
+            }
+        });
+
+        final GroupBy result = new GroupBy();
+        for (final GroupBy partial : partials) {
+            result.merge(partial);
+        }
+        return result;
+    }
+
+    /**
+     * The count, sum, minimum and maximum of a value per distinct key, held in an open-addressing
+     * table of primitive arrays.
+     */
+    public static class GroupBy {
+        private long[] keys = new long[16];
+        private boolean[] used = new boolean[16];
+        private long[] counts = new long[16];
+        private double[] sums = new double[16];
+        private double[] mins = new double[16];
+        private double[] maxs = new double[16];
+        private int size;
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Get the distinct keys, in ascending order.
+         *
+         * @return the distinct keys
+         */
+        public long[] keys() {
+            final long[] result = new long[size];
+            int count = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (used[slot]) {
+                    result[count++] = keys[slot];
+                }
+            }
+            Arrays.sort(result);
+            return result;
+        }
+
+        public boolean contains(final long key) {
+            return used[find(key)];
+        }
+
+        public long count(final long key) {
+            final int slot = find(key);
+            return used[slot] ? counts[slot] : 0;
+        }
+
+        public double sum(final long key) {
+            return sums[existing(key)];
+        }
+
+        public double min(final long key) {
+            return mins[existing(key)];
+        }
+
+        public double max(final long key) {
+            return maxs[existing(key)];
+        }
+
+        public double mean(final long key) {
+            final int slot = existing(key);
+            return sums[slot] / counts[slot];
+        }
+
+        void add(final long key, final double value) {
+            final int slot = slotFor(key);
+            counts[slot]++;
+            sums[slot] += value;
+            mins[slot] = Math.min(mins[slot], value);
+            maxs[slot] = Math.max(maxs[slot], value);
+        }
+
+        void merge(final GroupBy other) {
+            for (int otherSlot = 0; otherSlot < other.keys.length; otherSlot++) {
+                if (other.used[otherSlot]) {
+                    final int slot = slotFor(other.keys[otherSlot]);
+                    counts[slot] += other.counts[otherSlot];
+                    sums[slot] += other.sums[otherSlot];
+                    mins[slot] = Math.min(mins[slot], other.mins[otherSlot]);
+                    maxs[slot] = Math.max(maxs[slot], other.maxs[otherSlot]);
+                }
+            }
+        }
+
+        private int existing(final long key) {
+            final int slot = find(key);
+            if (!used[slot]) {
+                throw new IllegalArgumentException("no such key: " + key);
+            }
+            return slot;
+        }
+
+        private int find(final long key) {
+            final int mask = keys.length - 1;
+            int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+            while (used[slot] && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private int slotFor(final long key) {
+            int slot = find(key);
+            if (!used[slot]) {
+                if ((size + 1) * 4 > keys.length * 3) {
+                    grow();
+                    slot = find(key);
+                }
+                used[slot] = true;
+                keys[slot] = key;
+                mins[slot] = Double.POSITIVE_INFINITY;
+                maxs[slot] = Double.NEGATIVE_INFINITY;
+                size++;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            final long[] oldKeys = keys;
+            final boolean[] oldUsed = used;
+            final long[] oldCounts = counts;
+            final double[] oldSums = sums;
+            final double[] oldMins = mins;
+            final double[] oldMaxs = maxs;
+            final int capacity = oldKeys.length * 2;
+            keys = new long[capacity];
+            used = new boolean[capacity];
+            counts = new long[capacity];
+            sums = new double[capacity];
+            mins = new double[capacity];
+            maxs = new double[capacity];
+            for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+                if (oldUsed[oldSlot]) {
+                    final int slot = find(oldKeys[oldSlot]);
+                    used[slot] = true;
+                    keys[slot] = oldKeys[oldSlot];
+                    counts[slot] = oldCounts[oldSlot];
+                    sums[slot] = oldSums[oldSlot];
+                    mins[slot] = oldMins[oldSlot];
+                    maxs[slot] = oldMaxs[oldSlot];
+                }
+            }
+        }
+    }
+
+    //
+    //
+    // Segmented execution:
+    //
+    //
+
+    private interface SegmentTask<R> {
+        R run(long from, long to);
+    }
+
+    /**
+     * Run <code>task</code> over consecutive segments of <code>[0, length)</code>.
+     *
+     * @return the per-segment results, in segment order
+     */
+    private <R> List<R> forEachSegment(final ExecutorService executor, final long length,
+                                       final SegmentTask<R> task) {
+        final List<R> results = new ArrayList<R>();
+        if (executor == null) {
+            for (long from = 0; from < length; from += segmentSize) {
+                results.add(task.run(from, Math.min(from + segmentSize, length)));
+            }
+            return results;
+        }
+
+        final List<Future<R>> futures = new ArrayList<Future<R>>();
+        for (long from = 0; from < length; from += segmentSize) {
+            final long segmentFrom = from;
+            final long segmentTo = Math.min(from + segmentSize, length);
+            futures.add(executor.submit(new Callable<R>() {
+                @Override
+                public R call() {
+                    return task.run(segmentFrom, segmentTo);
+                }
+            }));
+        }
+        try {
+            for (final Future<R> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Written by Gil Tene, Martin Thompson and Michael Barker, and released
+ * to the public domain, as explained at:
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class ColumnarTableTest {
+
+    private static final int ROWS = 10000;
+
+    private final ColumnarTable table =
+            new ColumnarTable(ROWS, new String[] { "symbol", "time" }, new String[] { "price" }, 1000);
+    private final ColumnarTable.LongColumn symbol = table.longColumn("symbol");
+    private final ColumnarTable.LongColumn time = table.longColumn("time");
+    private final ColumnarTable.DoubleColumn price = table.doubleColumn("price");
+
+    public ColumnarTableTest() {
+        Random random = new Random(19);
+        for (long row = 0; row < ROWS; row++) {
+            symbol.set(row, random.nextInt(20));
+            time.set(row, row * 10);
+            price.set(row, 100 + random.nextGaussian());
+        }
+    }
+
+    @Test
+    public void selectsMatchingRowsInOrder() {
+        ColumnarTable.Selection selection = table.select(ColumnarTable.range(time, 5000, 20000));
+        assertSelection(selection, expectedRows(5000, 20000, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, -1));
+
+        selection = table.select(ColumnarTable.and(
+                ColumnarTable.range(time, 5000, 60000),
+                ColumnarTable.range(price, 100.0, 101.0),
+                ColumnarTable.where(symbol, new ColumnarTable.LongPredicate() {
+                    @Override
+                    public boolean test(long value) {
+                        return value == 7;
+                    }
+                })));
+        assertSelection(selection, expectedRows(5000, 60000, 100.0, 101.0, 7));
+    }
+
+    @Test
+    public void refinesAnExistingSelection() {
+        ColumnarTable.Selection selection = table.select(ColumnarTable.range(time, 0, 30000));
+        selection = table.refine(selection, ColumnarTable.where(price, new ColumnarTable.DoublePredicate() {
+            @Override
+            public boolean test(double value) {
+                return value > 100.5;
+            }
+        }));
+        assertSelection(selection, expectedRows(0, 30000, Math.nextUp(100.5), Double.POSITIVE_INFINITY, -1));
+    }
+
+    @Test
+    public void groupsAndAggregates() {
+        ColumnarTable.Selection selection = table.select(ColumnarTable.range(time, 10000, 80000));
+        ColumnarTable.GroupBy groupBy = table.groupBy(symbol, price, selection);
+
+        TreeMap<Long, double[]> expected = new TreeMap<Long, double[]>();
+        double total = 0;
+        for (long row = 0; row < ROWS; row++) {
+            if (time.get(row) < 10000 || time.get(row) > 80000) {
+                continue;
+            }
+            double[] aggregate = expected.get(symbol.get(row));
+            if (aggregate == null) {
+                aggregate = new double[] { 0, 0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+                expected.put(symbol.get(row), aggregate);
+            }
+            double value = price.get(row);
+            aggregate[0]++;
+            aggregate[1] += value;
+            aggregate[2] = Math.min(aggregate[2], value);
+            aggregate[3] = Math.max(aggregate[3], value);
+            total += value;
+        }
+
+        assertThat(groupBy.size(), is(expected.size()));
+        int i = 0;
+        long[] keys = groupBy.keys();
+        for (Long key : expected.keySet()) {
+            double[] aggregate = expected.get(key);
+            assertThat(keys[i++], is(key.longValue()));
+            assertThat(groupBy.count(key), is((long) aggregate[0]));
+            assertEquals(aggregate[1], groupBy.sum(key), 1e-6);
+            assertEquals(aggregate[2], groupBy.min(key), 0.0);
+            assertEquals(aggregate[3], groupBy.max(key), 0.0);
+            assertEquals(aggregate[1] / aggregate[0], groupBy.mean(key), 1e-9);
+        }
+        assertEquals(total, table.sum(price, selection), 1e-6);
+        assertThat(groupBy.contains(99), is(false));
+    }
+
+    @Test
+    public void parallelScansMatchSerialOnes() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ColumnarTable.RowFilter filter = ColumnarTable.and(
+                    ColumnarTable.range(price, 99.0, 100.5), ColumnarTable.range(time, 2000, 90000));
+            ColumnarTable.Selection serial = table.select(filter);
+            ColumnarTable.Selection parallel = table.select(filter, executor);
+            assertThat(parallel.size(), is(serial.size()));
+            for (long i = 0; i < serial.size(); i++) {
+                assertThat(parallel.getRow(i), is(serial.getRow(i)));
+            }
+
+            ColumnarTable.GroupBy serialGroups = table.groupBy(symbol, price, null);
+            ColumnarTable.GroupBy parallelGroups = table.groupBy(symbol, price, null, executor);
+            assertThat(parallelGroups.keys(), is(serialGroups.keys()));
+            for (long key : serialGroups.keys()) {
+                assertThat(parallelGroups.count(key), is(serialGroups.count(key)));
+                assertEquals(serialGroups.sum(key), parallelGroups.sum(key), 1e-6);
+                assertEquals(serialGroups.min(key), parallelGroups.min(key), 0.0);
+                assertEquals(serialGroups.max(key), parallelGroups.max(key), 0.0);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownColumns() {
+        table.longColumn("price");
+    }
+
+    private List<Long> expectedRows(long minTime, long maxTime, double minPrice, double maxPrice, long symbolValue) {
+        List<Long> rows = new ArrayList<Long>();
+        for (long row = 0; row < ROWS; row++) {
+            if (time.get(row) >= minTime && time.get(row) <= maxTime &&
+                    price.get(row) >= minPrice && price.get(row) <= maxPrice &&
+                    (symbolValue == -1 || symbol.get(row) == symbolValue)) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private static void assertSelection(ColumnarTable.Selection selection, List<Long> expected) {
+        assertThat(selection.size(), is((long) expected.size()));
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(selection.getRow(i), is(expected.get(i).longValue()));
+        }
+    }
+}
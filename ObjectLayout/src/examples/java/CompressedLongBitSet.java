@@ -0,0 +1,528 @@
+/*
+ * Written by Gil Tene, Martin Thompson and Michael Barker, and released
+ * to the public domain, as explained at:
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+import java.util.Arrays;
+
+/**
+ * A compressed, growable set of non-negative <code>long</code> bit indexes, in the style of a Roaring
+ * bitmap. Indexes are split into a high 48 bit key and a low 16 bit value. Each key present in the set
+ * has a container holding its low values, in whichever of three forms is smallest:
+ * <ul>
+ *     <li>an array container (a sorted <code>char[]</code>) for up to 4096 values,</li>
+ *     <li>a bitmap container (1024 words) for more than 4096 values,</li>
+ *     <li>a run container (sorted start and length pairs), produced by {@link #runOptimize()} when the
+ *     values are clustered into long runs.</li>
+ * </ul>
+ * Adding to or removing from a run container turns it back into an array or bitmap container, so
+ * {@link #runOptimize()} is best called once a set has been built.
+ */
+public class CompressedLongBitSet {
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    private static final int MAX_ARRAY_CARDINALITY = 4096;
+    private static final int BITMAP_WORDS = (1 << CHUNK_BITS) / 64;
+
+    private long[] keys = new long[4];
+    private Container[] containers = new Container[4];
+    private int containerCount;
+
+    /**
+     * Create a compressed copy of a {@link LongBitSet}.
+     *
+     * @param bitSet the bit set to copy
+     * @return a compressed bit set with the same bits set
+     */
+    public static CompressedLongBitSet valueOf(final LongBitSet bitSet) {
+        final CompressedLongBitSet compressed = new CompressedLongBitSet();
+        final long wordCount = bitSet.getWordCount();
+        for (long firstWord = 0; firstWord < wordCount; firstWord += BITMAP_WORDS) {
+            final long[] words = new long[BITMAP_WORDS];
+            int cardinality = 0;
+            for (int i = 0; (i < BITMAP_WORDS) && (firstWord + i < wordCount); i++) {
+                words[i] = bitSet.getWord(firstWord + i);
+                cardinality += Long.bitCount(words[i]);
+            }
+            if (cardinality == 0) {
+                continue;
+            }
+            final Container bitmap = new BitmapContainer(words, cardinality);
+            compressed.append(firstWord / BITMAP_WORDS,
+                    (cardinality > MAX_ARRAY_CARDINALITY) ? bitmap : ArrayContainer.copyOf(bitmap));
+        }
+        return compressed;
+    }
+
+    public boolean contains(final long index) {
+        checkIndex(index);
+        final int i = find(index >>> CHUNK_BITS);
+        return (i >= 0) && containers[i].contains((int) index & CHUNK_MASK);
+    }
+
+    public void add(final long index) {
+        checkIndex(index);
+        final long key = index >>> CHUNK_BITS;
+        int i = find(key);
+        if (i < 0) {
+            i = -i - 1;
+            insert(i, key, new ArrayContainer());
+        }
+        containers[i] = containers[i].add((int) index & CHUNK_MASK);
+    }
+
+    public void remove(final long index) {
+        checkIndex(index);
+        final int i = find(index >>> CHUNK_BITS);
+        if (i < 0) {
+            return;
+        }
+        final Container container = containers[i].remove((int) index & CHUNK_MASK);
+        if (container.cardinality() == 0) {
+            System.arraycopy(keys, i + 1, keys, i, containerCount - i - 1);
+            System.arraycopy(containers, i + 1, containers, i, containerCount - i - 1);
+            containers[--containerCount] = null;
+        } else {
+            containers[i] = container;
+        }
+    }
+
+    public boolean isEmpty() {
+        return containerCount == 0;
+    }
+
+    /**
+     * Get the number of set bits.
+     *
+     * @return the number of set bits
+     */
+    public long cardinality() {
+        long sum = 0;
+        for (int i = 0; i < containerCount; i++) {
+            sum += containers[i].cardinality();
+        }
+        return sum;
+    }
+
+    /**
+     * Find the first set bit at or after <code>fromIndex</code>.
+     *
+     * @param fromIndex the index to start searching from
+     * @return the index of the next set bit, or -1 if there is none
+     */
+    public long nextSetBit(final long fromIndex) {
+        checkIndex(fromIndex);
+        int i = find(fromIndex >>> CHUNK_BITS);
+        if (i >= 0) {
+            final int low = containers[i].nextSetBit((int) fromIndex & CHUNK_MASK);
+            if (low >= 0) {
+                return (keys[i] << CHUNK_BITS) | low;
+            }
+            i++;
+        } else {
+            i = -i - 1;
+        }
+        // Containers are never empty, so the next one holds the answer:
+        return (i < containerCount) ? (keys[i] << CHUNK_BITS) | containers[i].nextSetBit(0) : -1;
+    }
+
+    /**
+     * Convert each container to a run container where that is smaller.
+     */
+    public void runOptimize() {
+        for (int i = 0; i < containerCount; i++) {
+            final Container container = containers[i];
+            final int runCount = container.runCount();
+            if (RunContainer.sizeInBytes(runCount) < container.sizeInBytes()) {
+                containers[i] = RunContainer.copyOf(container, runCount);
+            }
+        }
+    }
+
+    /**
+     * Get an estimate of the memory held by this set's keys and containers, in bytes.
+     *
+     * @return the estimated size in bytes
+     */
+    public long getSizeInBytes() {
+        long size = 8L * keys.length + 8L * containers.length;
+        for (int i = 0; i < containerCount; i++) {
+            size += containers[i].sizeInBytes();
+        }
+        return size;
+    }
+
+    /**
+     * Copy this set into an uncompressed {@link LongBitSet}.
+     *
+     * @param length the length of the returned bit set, which must exceed the highest set bit
+     * @return an uncompressed bit set with the same bits set
+     */
+    public LongBitSet toLongBitSet(final long length) {
+        final LongBitSet bitSet = new LongBitSet(length);
+        for (long index = isEmpty() ? -1 : nextSetBit(0); index >= 0; index = nextSetBit(index + 1)) {
+            bitSet.set(index);
+            if (index == Long.MAX_VALUE) {
+                break;
+            }
+        }
+        return bitSet;
+    }
+
+    private int find(final long key) {
+        return Arrays.binarySearch(keys, 0, containerCount, key);
+    }
+
+    private void append(final long key, final Container container) {
+        insert(containerCount, key, container);
+    }
+
+    private void insert(final int i, final long key, final Container container) {
+        if (containerCount == keys.length) {
+            keys = Arrays.copyOf(keys, containerCount * 2);
+            containers = Arrays.copyOf(containers, containerCount * 2);
+        }
+        System.arraycopy(keys, i, keys, i + 1, containerCount - i);
+        System.arraycopy(containers, i, containers, i + 1, containerCount - i);
+        keys[i] = key;
+        containers[i] = container;
+        containerCount++;
+    }
+
+    private static void checkIndex(final long index) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("index < 0: " + index);
+        }
+    }
+
+    //
+    //
+    // Containers, each holding the low 16 bits of the indexes that share a key:
+    //
+    //
+
+    private static abstract class Container {
+        abstract boolean contains(int value);
+
+        /**
+         * @return the container now holding the values, which may be a converted replacement
+         */
+        abstract Container add(int value);
+
+        /**
+         * @return the container now holding the values, which may be a converted replacement
+         */
+        abstract Container remove(int value);
+
+        abstract int cardinality();
+
+        /**
+         * @return the first value at or after <code>from</code>, or -1 if there is none
+         */
+        abstract int nextSetBit(int from);
+
+        abstract long sizeInBytes();
+
+        /**
+         * @return the number of runs of consecutive values
+         */
+        abstract int runCount();
+
+        /**
+         * @return the first absent value after <code>from</code>, or -1 if the container is full from there
+         */
+        int nextClear(int from) {
+            while (from <= CHUNK_MASK && contains(from)) {
+                from++;
+            }
+            return (from <= CHUNK_MASK) ? from : -1;
+        }
+    }
+
+    private static class ArrayContainer extends Container {
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer() {
+            values = new char[4];
+        }
+
+        private ArrayContainer(final char[] values, final int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        static ArrayContainer copyOf(final Container container) {
+            final int cardinality = container.cardinality();
+            final char[] values = new char[Math.max(4, cardinality)];
+            int count = 0;
+            for (int value = container.nextSetBit(0); value >= 0; value = container.nextSetBit(value + 1)) {
+                values[count++] = (char) value;
+                if (value == CHUNK_MASK) {
+                    break;
+                }
+            }
+            return new ArrayContainer(values, cardinality);
+        }
+
+        @Override
+        boolean contains(final int value) {
+            return Arrays.binarySearch(values, 0, cardinality, (char) value) >= 0;
+        }
+
+        @Override
+        Container add(final int value) {
+            int i = Arrays.binarySearch(values, 0, cardinality, (char) value);
+            if (i >= 0) {
+                return this;
+            }
+            if (cardinality == MAX_ARRAY_CARDINALITY) {
+                return BitmapContainer.copyOf(this).add(value);
+            }
+            i = -i - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(MAX_ARRAY_CARDINALITY, cardinality * 2));
+            }
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = (char) value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(final int value) {
+            final int i = Arrays.binarySearch(values, 0, cardinality, (char) value);
+            if (i >= 0) {
+                System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int nextSetBit(final int from) {
+            int i = Arrays.binarySearch(values, 0, cardinality, (char) from);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            return (i < cardinality) ? values[i] : -1;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 2L * values.length;
+        }
+
+        @Override
+        int runCount() {
+            int runs = (cardinality > 0) ? 1 : 0;
+            for (int i = 1; i < cardinality; i++) {
+                if (values[i] != values[i - 1] + 1) {
+                    runs++;
+                }
+            }
+            return runs;
+        }
+    }
+
+    private static class BitmapContainer extends Container {
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer(final long[] words, final int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        static BitmapContainer copyOf(final Container container) {
+            final long[] words = new long[BITMAP_WORDS];
+            for (int value = container.nextSetBit(0); value >= 0; value = container.nextSetBit(value + 1)) {
+                words[value >>> 6] |= 1L << value;
+                if (value == CHUNK_MASK) {
+                    break;
+                }
+            }
+            return new BitmapContainer(words, container.cardinality());
+        }
+
+        @Override
+        boolean contains(final int value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        Container add(final int value) {
+            final long word = words[value >>> 6];
+            final long updated = word | (1L << value);
+            if (updated != word) {
+                words[value >>> 6] = updated;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(final int value) {
+            final long word = words[value >>> 6];
+            final long updated = word & ~(1L << value);
+            if (updated != word) {
+                words[value >>> 6] = updated;
+                if (--cardinality <= MAX_ARRAY_CARDINALITY) {
+                    return ArrayContainer.copyOf(this);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int nextSetBit(final int from) {
+            if (from > CHUNK_MASK) {
+                return -1;
+            }
+            int wordIndex = from >>> 6;
+            long word = words[wordIndex] & (-1L << from);
+            while (true) {
+                if (word != 0) {
+                    return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+                }
+                if (++wordIndex == BITMAP_WORDS) {
+                    return -1;
+                }
+                word = words[wordIndex];
+            }
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 8L * BITMAP_WORDS;
+        }
+
+        @Override
+        int runCount() {
+            // A run starts wherever a set bit follows a clear one:
+            int runs = 0;
+            long previous = 0;
+            for (final long word : words) {
+                runs += Long.bitCount(word & ~((word << 1) | (previous >>> 63)));
+                previous = word;
+            }
+            return runs;
+        }
+    }
+
+    private static class RunContainer extends Container {
+        private final char[] starts;
+        // Each run covers [start, start + lengthMinusOne]:
+        private final char[] lengthsMinusOne;
+        private final int runCount;
+        private final int cardinality;
+
+        private RunContainer(final char[] starts, final char[] lengthsMinusOne, final int runCount) {
+            this.starts = starts;
+            this.lengthsMinusOne = lengthsMinusOne;
+            this.runCount = runCount;
+            int sum = 0;
+            for (int i = 0; i < runCount; i++) {
+                sum += lengthsMinusOne[i] + 1;
+            }
+            this.cardinality = sum;
+        }
+
+        static long sizeInBytes(final int runCount) {
+            return 4L * runCount;
+        }
+
+        static RunContainer copyOf(final Container container, final int runCount) {
+            final char[] starts = new char[runCount];
+            final char[] lengthsMinusOne = new char[runCount];
+            int run = 0;
+            int value = container.nextSetBit(0);
+            while (value >= 0) {
+                final int end = container.nextClear(value);
+                final int last = (end < 0) ? CHUNK_MASK : end - 1;
+                starts[run] = (char) value;
+                lengthsMinusOne[run] = (char) (last - value);
+                run++;
+                value = (end < 0) ? -1 : container.nextSetBit(end);
+            }
+            return new RunContainer(starts, lengthsMinusOne, runCount);
+        }
+
+        /**
+         * @return the index of the last run starting at or before <code>value</code>, or -1 if none
+         */
+        private int runAtOrBefore(final int value) {
+            final int i = Arrays.binarySearch(starts, 0, runCount, (char) value);
+            return (i >= 0) ? i : -i - 2;
+        }
+
+        @Override
+        boolean contains(final int value) {
+            final int run = runAtOrBefore(value);
+            return (run >= 0) && (value <= starts[run] + lengthsMinusOne[run]);
+        }
+
+        @Override
+        Container add(final int value) {
+            return contains(value) ? this : toMutable().add(value);
+        }
+
+        @Override
+        Container remove(final int value) {
+            return contains(value) ? toMutable().remove(value) : this;
+        }
+
+        private Container toMutable() {
+            return (cardinality > MAX_ARRAY_CARDINALITY) ? BitmapContainer.copyOf(this) : ArrayContainer.copyOf(this);
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int nextSetBit(final int from) {
+            if (from > CHUNK_MASK) {
+                return -1;
+            }
+            final int run = runAtOrBefore(from);
+            if ((run >= 0) && (from <= starts[run] + lengthsMinusOne[run])) {
+                return from;
+            }
+            return (run + 1 < runCount) ? starts[run + 1] : -1;
+        }
+
+        @Override
+        int nextClear(final int from) {
+            final int run = runAtOrBefore(from);
+            if ((run >= 0) && (from <= starts[run] + lengthsMinusOne[run])) {
+                final int end = starts[run] + lengthsMinusOne[run] + 1;
+                return (end <= CHUNK_MASK) ? end : -1;
+            }
+            return from;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return sizeInBytes(runCount);
+        }
+
+        @Override
+        int runCount() {
+            return runCount;
+        }
+    }
+}
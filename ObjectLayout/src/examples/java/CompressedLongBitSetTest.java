@@ -0,0 +1,110 @@
+/*
+ * Written by Gil Tene, Martin Thompson and Michael Barker, and released
+ * to the public domain, as explained at:
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+public class CompressedLongBitSetTest {
+
+    @Test
+    public void matchesReferenceAcrossContainerConversions() {
+        CompressedLongBitSet bits = new CompressedLongBitSet();
+        TreeSet<Long> reference = new TreeSet<Long>();
+        Random random = new Random(23);
+
+        // Dense chunk (becomes a bitmap), sparse chunks (stay arrays), and a far away key:
+        for (int i = 0; i < 60000; i++) {
+            long index = random.nextInt(1 << 16);
+            bits.add(index);
+            reference.add(index);
+        }
+        for (int i = 0; i < 1000; i++) {
+            long index = (5L << 16) + random.nextInt(1 << 16);
+            bits.add(index);
+            reference.add(index);
+        }
+        bits.add(1L << 40);
+        reference.add(1L << 40);
+        assertMatches(bits, reference);
+
+        // Shrink the dense chunk back below the array threshold:
+        for (int i = 0; i < (1 << 16); i++) {
+            if (i % 20 != 0) {
+                bits.remove(i);
+                reference.remove((long) i);
+            }
+        }
+        assertMatches(bits, reference);
+
+        for (Long index : new TreeSet<Long>(reference)) {
+            bits.remove(index);
+        }
+        assertThat(bits.isEmpty(), is(true));
+        assertThat(bits.nextSetBit(0), is(-1L));
+    }
+
+    @Test
+    public void runOptimizeShrinksClusteredSets() {
+        CompressedLongBitSet bits = new CompressedLongBitSet();
+        TreeSet<Long> reference = new TreeSet<Long>();
+        for (long start = 0; start < 1000000; start += 100000) {
+            for (long index = start; index < start + 20000; index++) {
+                bits.add(index);
+                reference.add(index);
+            }
+        }
+
+        long before = bits.getSizeInBytes();
+        bits.runOptimize();
+        assertThat(bits.getSizeInBytes() * 10 < before, is(true));
+        assertMatches(bits, reference);
+
+        // Mutating a run container keeps the contents right:
+        bits.remove(100);
+        reference.remove(100L);
+        bits.add(20000);
+        reference.add(20000L);
+        assertMatches(bits, reference);
+    }
+
+    @Test
+    public void roundTripsThroughLongBitSet() {
+        LongBitSet bitSet = new LongBitSet(1000000);
+        Random random = new Random(41);
+        bitSet.set(200000, 300000);
+        for (int i = 0; i < 3000; i++) {
+            bitSet.set(random.nextInt(1000000));
+        }
+
+        CompressedLongBitSet compressed = CompressedLongBitSet.valueOf(bitSet);
+        assertThat(compressed.cardinality(), is(bitSet.cardinality()));
+        for (long index = bitSet.nextSetBit(0); index >= 0; index = bitSet.nextSetBit(index + 1)) {
+            assertThat(compressed.contains(index), is(true));
+        }
+
+        compressed.runOptimize();
+        LongBitSet copy = compressed.toLongBitSet(bitSet.length());
+        copy.xor(bitSet);
+        assertThat(copy.cardinality(), is(0L));
+    }
+
+    private static void assertMatches(CompressedLongBitSet bits, TreeSet<Long> reference) {
+        assertThat(bits.cardinality(), is((long) reference.size()));
+        long index = bits.isEmpty() ? -1 : bits.nextSetBit(0);
+        for (Long expected : reference) {
+            assertThat(index, is(expected.longValue()));
+            assertThat(bits.contains(expected), is(true));
+            assertThat(bits.contains(expected + 1), is(reference.contains(expected + 1)));
+            index = bits.nextSetBit(index + 1);
+        }
+        assertThat(index, is(-1L));
+    }
+}
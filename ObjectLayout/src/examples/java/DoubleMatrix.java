@@ -0,0 +1,352 @@
+/*
+ * Written by Gil Tene, Martin Thompson and Michael Barker, and released
+ * to the public domain, as explained at:
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+import org.ObjectLayout.PrimitiveDoubleArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A dense two dimensional matrix of doubles held in a single {@link PrimitiveDoubleArray}, in either
+ * row-major or column-major order.
+ * <p>
+ * Multiply and transpose work in square blocks so that the blocks of both operands stay cache resident,
+ * and both have variants that split the work into row bands run on an {@link ExecutorService}.
+ * Element-wise operations walk the backing array directly when both operands share a layout.
+ * <p>
+ * Matrices are limited to <code>Integer.MAX_VALUE</code> elements, so that kernels can work on the
+ * backing array returned by {@link PrimitiveDoubleArray#asArray()}.
+ */
+public class DoubleMatrix {
+
+    public enum Layout {
+        ROW_MAJOR,
+        COLUMN_MAJOR
+    }
+
+    private static final int BLOCK_SIZE = 64;
+
+    private final int rows;
+    private final int columns;
+    private final Layout layout;
+    private final PrimitiveDoubleArray data;
+    private final double[] elements;
+    private final int rowStride;
+    private final int columnStride;
+
+    public DoubleMatrix(final int rows, final int columns) {
+        this(rows, columns, Layout.ROW_MAJOR);
+    }
+
+    public DoubleMatrix(final int rows, final int columns, final Layout layout) {
+        if (rows < 0 || columns < 0) {
+            throw new IllegalArgumentException("rows and columns must not be negative");
+        }
+        if ((long) rows * columns > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "matrix of " + rows + " x " + columns + " exceeds Integer.MAX_VALUE elements");
+        }
+        this.rows = rows;
+        this.columns = columns;
+        this.layout = layout;
+        this.data = PrimitiveDoubleArray.newInstance((long) rows * columns);
+        this.elements = data.asArray();
+        this.rowStride = (layout == Layout.ROW_MAJOR) ? columns : 1;
+        this.columnStride = (layout == Layout.ROW_MAJOR) ? 1 : rows;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public Layout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Get the array holding this matrix's elements in {@link #getLayout()} order.
+     *
+     * @return the backing array
+     */
+    public PrimitiveDoubleArray getData() {
+        return data;
+    }
+
+    public double get(final int row, final int column) {
+        return elements[index(row, column)];
+    }
+
+    public void set(final int row, final int column, final double value) {
+        elements[index(row, column)] = value;
+    }
+
+    public DoubleMatrix fill(final double value) {
+        Arrays.fill(elements, value);
+        return this;
+    }
+
+    //
+    //
+    // Element-wise operations (in place, returning this):
+    //
+    //
+
+    public DoubleMatrix add(final DoubleMatrix other) {
+        checkSameShape(other);
+        if (other.layout == layout) {
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] += other.elements[i];
+            }
+        } else {
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    elements[index(row, column)] += other.get(row, column);
+                }
+            }
+        }
+        return this;
+    }
+
+    public DoubleMatrix subtract(final DoubleMatrix other) {
+        checkSameShape(other);
+        if (other.layout == layout) {
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] -= other.elements[i];
+            }
+        } else {
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    elements[index(row, column)] -= other.get(row, column);
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Multiply each element by the corresponding element of <code>other</code> (the Hadamard product).
+     *
+     * @param other a matrix of the same shape
+     * @return this matrix
+     */
+    public DoubleMatrix multiplyElements(final DoubleMatrix other) {
+        checkSameShape(other);
+        if (other.layout == layout) {
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] *= other.elements[i];
+            }
+        } else {
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    elements[index(row, column)] *= other.get(row, column);
+                }
+            }
+        }
+        return this;
+    }
+
+    public DoubleMatrix scale(final double factor) {
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] *= factor;
+        }
+        return this;
+    }
+
+    //
+    //
+    // Transpose:
+    //
+    //
+
+    /**
+     * Create the transpose of this matrix, in the same layout.
+     *
+     * @return a new <code>columns x rows</code> matrix
+     */
+    public DoubleMatrix transpose() {
+        final DoubleMatrix result = new DoubleMatrix(columns, rows, layout);
+        transposeRows(result, 0, rows);
+        return result;
+    }
+
+    /**
+     * Create the transpose of this matrix, in the same layout, splitting the work across
+     * <code>executor</code>.
+     *
+     * @param executor the executor to run row bands on
+     * @param parallelism the number of row bands to split the work into
+     * @return a new <code>columns x rows</code> matrix
+     */
+    public DoubleMatrix transpose(final ExecutorService executor, final int parallelism) {
+        final DoubleMatrix result = new DoubleMatrix(columns, rows, layout);
+        forEachRowBand(executor, parallelism, rows, new RowBandKernel() {
+            @Override
+            public void run(final int fromRow, final int toRow) {
+                transposeRows(result, fromRow, toRow);
+            }
+        });
+        return result;
+    }
+
+    private void transposeRows(final DoubleMatrix result, final int fromRow, final int toRow) {
+        final double[] to = result.elements;
+        for (int rowBlock = fromRow; rowBlock < toRow; rowBlock += BLOCK_SIZE) {
+            final int rowEnd = Math.min(rowBlock + BLOCK_SIZE, toRow);
+            for (int columnBlock = 0; columnBlock < columns; columnBlock += BLOCK_SIZE) {
+                final int columnEnd = Math.min(columnBlock + BLOCK_SIZE, columns);
+                for (int row = rowBlock; row < rowEnd; row++) {
+                    for (int column = columnBlock; column < columnEnd; column++) {
+                        to[column * result.rowStride + row * result.columnStride] =
+                                elements[row * rowStride + column * columnStride];
+                    }
+                }
+            }
+        }
+    }
+
+    //
+    //
+    // Multiply:
+    //
+    //
+
+    /**
+     * Compute <code>this * other</code>.
+     *
+     * @param other a matrix with as many rows as this matrix has columns
+     * @return a new, row-major <code>this.rows x other.columns</code> matrix
+     */
+    public DoubleMatrix multiply(final DoubleMatrix other) {
+        checkMultipliable(other);
+        final DoubleMatrix result = new DoubleMatrix(rows, other.columns);
+        multiplyRows(other, result, 0, rows);
+        return result;
+    }
+
+    /**
+     * Compute <code>this * other</code>, splitting the work across <code>executor</code>.
+     *
+     * @param other a matrix with as many rows as this matrix has columns
+     * @param executor the executor to run row bands on
+     * @param parallelism the number of row bands to split the work into
+     * @return a new, row-major <code>this.rows x other.columns</code> matrix
+     */
+    public DoubleMatrix multiply(final DoubleMatrix other, final ExecutorService executor, final int parallelism) {
+        checkMultipliable(other);
+        final DoubleMatrix result = new DoubleMatrix(rows, other.columns);
+        forEachRowBand(executor, parallelism, rows, new RowBandKernel() {
+            @Override
+            public void run(final int fromRow, final int toRow) {
+                multiplyRows(other, result, fromRow, toRow);
+            }
+        });
+        return result;
+    }
+
+    private void multiplyRows(final DoubleMatrix other, final DoubleMatrix result,
+                              final int fromRow, final int toRow) {
+        final double[] a = elements;
+        final double[] b = other.elements;
+        final double[] c = result.elements;
+        final int n = other.columns;
+        final int inner = columns;
+
+        for (int rowBlock = fromRow; rowBlock < toRow; rowBlock += BLOCK_SIZE) {
+            final int rowEnd = Math.min(rowBlock + BLOCK_SIZE, toRow);
+            for (int innerBlock = 0; innerBlock < inner; innerBlock += BLOCK_SIZE) {
+                final int innerEnd = Math.min(innerBlock + BLOCK_SIZE, inner);
+                for (int columnBlock = 0; columnBlock < n; columnBlock += BLOCK_SIZE) {
+                    final int columnEnd = Math.min(columnBlock + BLOCK_SIZE, n);
+                    for (int i = rowBlock; i < rowEnd; i++) {
+                        final int cRow = i * n;
+                        for (int k = innerBlock; k < innerEnd; k++) {
+                            final double aik = a[i * rowStride + k * columnStride];
+                            final int bRow = k * other.rowStride;
+                            for (int j = columnBlock; j < columnEnd; j++) {
+                                c[cRow + j] += aik * b[bRow + j * other.columnStride];
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    //
+    //
+    // Helpers:
+    //
+    //
+
+    private interface RowBandKernel {
+        void run(int fromRow, int toRow);
+    }
+
+    private static void forEachRowBand(final ExecutorService executor, final int parallelism,
+                                       final int rowCount, final RowBandKernel kernel) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        // Keep bands a whole number of blocks so they do not share blocks:
+        final int blocks = (rowCount + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        final int blocksPerBand = Math.max(1, (blocks + parallelism - 1) / parallelism);
+        final int bandSize = blocksPerBand * BLOCK_SIZE;
+
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (int fromRow = 0; fromRow < rowCount; fromRow += bandSize) {
+            final int from = fromRow;
+            final int to = Math.min(fromRow + bandSize, rowCount);
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    kernel.run(from, to);
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    private int index(final int row, final int column) {
+        if (row < 0 || row >= rows || column < 0 || column >= columns) {
+            throw new IndexOutOfBoundsException(
+                    "(" + row + ", " + column + ") is outside a " + rows + " x " + columns + " matrix");
+        }
+        return row * rowStride + column * columnStride;
+    }
+
+    private void checkSameShape(final DoubleMatrix other) {
+        if (other.rows != rows || other.columns != columns) {
+            throw new IllegalArgumentException("matrix shapes differ (" + rows + " x " + columns +
+                    " vs. " + other.rows + " x " + other.columns + ")");
+        }
+    }
+
+    private void checkMultipliable(final DoubleMatrix other) {
+        if (other.rows != columns) {
+            throw new IllegalArgumentException("cannot multiply a " + rows + " x " + columns +
+                    " matrix by a " + other.rows + " x " + other.columns + " matrix");
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Written by Gil Tene, Martin Thompson and Michael Barker, and released
+ * to the public domain, as explained at:
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class DoubleMatrixTest {
+
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    public void multipliesLikeTheNaiveLoopInEveryLayout() {
+        int[][] shapes = { { 1, 1, 1 }, { 3, 5, 7 }, { 64, 64, 64 }, { 70, 130, 65 } };
+        Random random = new Random(13);
+        for (int[] shape : shapes) {
+            for (DoubleMatrix.Layout aLayout : DoubleMatrix.Layout.values()) {
+                for (DoubleMatrix.Layout bLayout : DoubleMatrix.Layout.values()) {
+                    DoubleMatrix a = randomMatrix(shape[0], shape[1], aLayout, random);
+                    DoubleMatrix b = randomMatrix(shape[1], shape[2], bLayout, random);
+                    assertMatches(a.multiply(b), naiveMultiply(a, b));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void parallelKernelsMatchSerialOnes() {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Random random = new Random(29);
+            DoubleMatrix a = randomMatrix(200, 90, DoubleMatrix.Layout.ROW_MAJOR, random);
+            DoubleMatrix b = randomMatrix(90, 150, DoubleMatrix.Layout.COLUMN_MAJOR, random);
+
+            assertMatches(a.multiply(b, executor, 3), a.multiply(b));
+            assertMatches(a.transpose(executor, 4), a.transpose());
+            assertMatches(b.transpose(executor, 1), b.transpose());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void transposesAcrossBlocks() {
+        for (DoubleMatrix.Layout layout : DoubleMatrix.Layout.values()) {
+            DoubleMatrix matrix = randomMatrix(100, 67, layout, new Random(5));
+            DoubleMatrix transposed = matrix.transpose();
+            assertThat(transposed.getRows(), is(67));
+            assertThat(transposed.getColumns(), is(100));
+            assertThat(transposed.getLayout(), is(layout));
+            for (int row = 0; row < matrix.getRows(); row++) {
+                for (int column = 0; column < matrix.getColumns(); column++) {
+                    assertEquals(matrix.get(row, column), transposed.get(column, row), 0.0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void appliesElementWiseOperationsAcrossLayouts() {
+        Random random = new Random(31);
+        DoubleMatrix a = randomMatrix(9, 4, DoubleMatrix.Layout.ROW_MAJOR, random);
+        DoubleMatrix b = randomMatrix(9, 4, DoubleMatrix.Layout.COLUMN_MAJOR, random);
+        DoubleMatrix c = randomMatrix(9, 4, DoubleMatrix.Layout.ROW_MAJOR, random);
+
+        double[][] expected = new double[9][4];
+        for (int row = 0; row < 9; row++) {
+            for (int column = 0; column < 4; column++) {
+                expected[row][column] =
+                        ((a.get(row, column) + b.get(row, column)) * c.get(row, column) - b.get(row, column)) * 2;
+            }
+        }
+
+        a.add(b).multiplyElements(c).subtract(b).scale(2);
+        for (int row = 0; row < 9; row++) {
+            for (int column = 0; column < 4; column++) {
+                assertEquals(expected[row][column], a.get(row, column), EPSILON);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMismatchedMultiply() {
+        new DoubleMatrix(2, 3).multiply(new DoubleMatrix(2, 3));
+    }
+
+    private static DoubleMatrix randomMatrix(int rows, int columns, DoubleMatrix.Layout layout, Random random) {
+        DoubleMatrix matrix = new DoubleMatrix(rows, columns, layout);
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                matrix.set(row, column, random.nextDouble() - 0.5);
+            }
+        }
+        return matrix;
+    }
+
+    private static DoubleMatrix naiveMultiply(DoubleMatrix a, DoubleMatrix b) {
+        DoubleMatrix result = new DoubleMatrix(a.getRows(), b.getColumns());
+        for (int i = 0; i < a.getRows(); i++) {
+            for (int j = 0; j < b.getColumns(); j++) {
+                double sum = 0;
+                for (int k = 0; k < a.getColumns(); k++) {
+                    sum += a.get(i, k) * b.get(k, j);
+                }
+                result.set(i, j, sum);
+            }
+        }
+        return result;
+    }
+
+    private static void assertMatches(DoubleMatrix actual, DoubleMatrix expected) {
+        assertThat(actual.getRows(), is(expected.getRows()));
+        assertThat(actual.getColumns(), is(expected.getColumns()));
+        for (int row = 0; row < expected.getRows(); row++) {
+            for (int column = 0; column < expected.getColumns(); column++) {
+                assertEquals(expected.get(row, column), actual.get(row, column), EPSILON);
+            }
+        }
+    }
+}
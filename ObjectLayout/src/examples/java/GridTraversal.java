@@ -0,0 +1,240 @@
+/*
+ * Written by Gil Tene, Martin Thompson and Michael Barker, and released
+ * to the public domain, as explained at:
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Cache-friendly traversal orders for two dimensional grids, such as a
+ * <code>StructuredArray&lt;PrimitiveDoubleArray&gt;</code> or a nested <code>StructuredArray</code>.
+ * <p>
+ * Rather than sweeping each full row before moving to the next, a tiled traversal visits the grid in
+ * rectangular tiles sized to stay cache resident, so a stencil that reads neighbouring rows finds them
+ * still cached. A Morton (Z-order) traversal recursively visits quadrants, which keeps locality at
+ * every scale without choosing a tile size.
+ * <p>
+ * Traversals only generate coordinates. The kernel owns the grid and does the element access, so
+ * the same traversal works for any grid representation. A {@link TileVisitor} receives whole tiles so
+ * the kernel can run its own tight inner loops. A {@link CellVisitor} receives one cell at a time.
+ * <p>
+ * Typical use, for a grid of rows held as PrimitiveDoubleArrays:
+ * <p><blockquote><pre>
+ * GridTraversal.forEachTile(rows, columns, 64, 64, new GridTraversal.TileVisitor() {
+ *     public void visitTile(long fromRow, long toRow, long fromColumn, long toColumn) {
+ *         for (long row = fromRow; row &lt; toRow; row++) {
+ *             PrimitiveDoubleArray values = grid.get(row);
+ *             for (long column = fromColumn; column &lt; toColumn; column++) {
+ *                 values.set(column, values.get(column) * 2);
+ *             }
+ *         }
+ *     }
+ * });
+ * </pre></blockquote></p>
+ */
+public class GridTraversal {
+
+    /**
+     * Visits the rectangular tile <code>[fromRow, toRow) x [fromColumn, toColumn)</code>.
+     */
+    public interface TileVisitor {
+        void visitTile(long fromRow, long toRow, long fromColumn, long toColumn);
+    }
+
+    /**
+     * Visits a single cell.
+     */
+    public interface CellVisitor {
+        void visit(long row, long column);
+    }
+
+    private GridTraversal() {
+    }
+
+    /**
+     * Visit a <code>rows x columns</code> grid in tiles, tile rows in order and tiles left to right
+     * within each tile row. Tiles on the bottom and right edges are clipped to the grid.
+     *
+     * @param rows the number of rows in the grid
+     * @param columns the number of columns in the grid
+     * @param tileRows the number of rows per tile
+     * @param tileColumns the number of columns per tile
+     * @param visitor the kernel to apply to each tile
+     */
+    public static void forEachTile(final long rows, final long columns,
+                                   final long tileRows, final long tileColumns,
+                                   final TileVisitor visitor) {
+        checkShape(rows, columns, tileRows, tileColumns);
+        visitTileBand(0, rows, columns, tileRows, tileColumns, visitor);
+    }
+
+    /**
+     * Visit a <code>rows x columns</code> grid in tiles, running each band of <code>tileRows</code> rows
+     * as a separate task on <code>executor</code>, and returning when all tiles have been visited. The
+     * visitor may be called concurrently for different tiles.
+     *
+     * @param rows the number of rows in the grid
+     * @param columns the number of columns in the grid
+     * @param tileRows the number of rows per tile
+     * @param tileColumns the number of columns per tile
+     * @param visitor the kernel to apply to each tile
+     * @param executor the executor to run tile bands on
+     */
+    public static void forEachTile(final long rows, final long columns,
+                                   final long tileRows, final long tileColumns,
+                                   final TileVisitor visitor, final ExecutorService executor) {
+        checkShape(rows, columns, tileRows, tileColumns);
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (long fromRow = 0; fromRow < rows; fromRow += tileRows) {
+            final long bandFrom = fromRow;
+            final long bandTo = Math.min(fromRow + tileRows, rows);
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    visitTileBand(bandFrom, bandTo, columns, tileRows, tileColumns, visitor);
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    /**
+     * Visit every cell of a <code>rows x columns</code> grid, tile by tile, row-major within each tile.
+     *
+     * @param rows the number of rows in the grid
+     * @param columns the number of columns in the grid
+     * @param tileRows the number of rows per tile
+     * @param tileColumns the number of columns per tile
+     * @param visitor the kernel to apply to each cell
+     */
+    public static void forEachCell(final long rows, final long columns,
+                                   final long tileRows, final long tileColumns,
+                                   final CellVisitor visitor) {
+        forEachTile(rows, columns, tileRows, tileColumns, cellsOf(visitor));
+    }
+
+    /**
+     * Visit every cell of a <code>rows x columns</code> grid, tile by tile, with each tile row band run
+     * as a separate task on <code>executor</code>.
+     *
+     * @param rows the number of rows in the grid
+     * @param columns the number of columns in the grid
+     * @param tileRows the number of rows per tile
+     * @param tileColumns the number of columns per tile
+     * @param visitor the kernel to apply to each cell
+     * @param executor the executor to run tile bands on
+     */
+    public static void forEachCell(final long rows, final long columns,
+                                   final long tileRows, final long tileColumns,
+                                   final CellVisitor visitor, final ExecutorService executor) {
+        forEachTile(rows, columns, tileRows, tileColumns, cellsOf(visitor), executor);
+    }
+
+    /**
+     * Visit every cell of a <code>rows x columns</code> grid in Morton (Z-order): the four quadrants of
+     * each square are visited top-left, top-right, bottom-left, bottom-right, recursively. Non-square and
+     * non power of two grids are handled by skipping quadrants that lie outside the grid, so no work is
+     * wasted on cells that do not exist.
+     *
+     * @param rows the number of rows in the grid
+     * @param columns the number of columns in the grid
+     * @param visitor the kernel to apply to each cell
+     */
+    public static void forEachCellMorton(final long rows, final long columns, final CellVisitor visitor) {
+        checkShape(rows, columns, 1, 1);
+        if (rows == 0 || columns == 0) {
+            return;
+        }
+        long size = 1;
+        while (size < rows || size < columns) {
+            size <<= 1;
+        }
+        visitMorton(0, 0, size, rows, columns, visitor);
+    }
+
+    /**
+     * Compute the Morton (Z-order) code of a cell, interleaving the bits of <code>column</code> (even bits)
+     * and <code>row</code> (odd bits).
+     *
+     * @param row the row of the cell (0 to 2^32 - 1)
+     * @param column the column of the cell (0 to 2^32 - 1)
+     * @return the Morton code of the cell
+     */
+    public static long mortonCode(final long row, final long column) {
+        return spreadBits(column) | (spreadBits(row) << 1);
+    }
+
+    private static long spreadBits(long value) {
+        value &= 0xFFFFFFFFL;
+        value = (value | (value << 16)) & 0x0000FFFF0000FFFFL;
+        value = (value | (value << 8)) & 0x00FF00FF00FF00FFL;
+        value = (value | (value << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        value = (value | (value << 2)) & 0x3333333333333333L;
+        value = (value | (value << 1)) & 0x5555555555555555L;
+        return value;
+    }
+
+    private static void visitMorton(final long row, final long column, final long size,
+                                    final long rows, final long columns, final CellVisitor visitor) {
+        if (row >= rows || column >= columns) {
+            return;
+        }
+        if (size == 1) {
+            visitor.visit(row, column);
+            return;
+        }
+        final long half = size >> 1;
+        visitMorton(row, column, half, rows, columns, visitor);
+        visitMorton(row, column + half, half, rows, columns, visitor);
+        visitMorton(row + half, column, half, rows, columns, visitor);
+        visitMorton(row + half, column + half, half, rows, columns, visitor);
+    }
+
+    private static void visitTileBand(final long fromRow, final long toRow, final long columns,
+                                      final long tileRows, final long tileColumns, final TileVisitor visitor) {
+        for (long tileRow = fromRow; tileRow < toRow; tileRow += tileRows) {
+            final long tileRowEnd = Math.min(tileRow + tileRows, toRow);
+            for (long tileColumn = 0; tileColumn < columns; tileColumn += tileColumns) {
+                visitor.visitTile(tileRow, tileRowEnd, tileColumn, Math.min(tileColumn + tileColumns, columns));
+            }
+        }
+    }
+
+    private static TileVisitor cellsOf(final CellVisitor visitor) {
+        return new TileVisitor() {
+            @Override
+            public void visitTile(final long fromRow, final long toRow, final long fromColumn, final long toColumn) {
+                for (long row = fromRow; row < toRow; row++) {
+                    for (long column = fromColumn; column < toColumn; column++) {
+                        visitor.visit(row, column);
+                    }
+                }
+            }
+        };
+    }
+
+    private static void checkShape(final long rows, final long columns, final long tileRows, final long tileColumns) {
+        if (rows < 0 || columns < 0) {
+            throw new IllegalArgumentException("rows and columns must not be negative");
+        }
+        if (tileRows < 1 || tileColumns < 1) {
+            throw new IllegalArgumentException("tile dimensions must be at least 1");
+        }
+    }
+}
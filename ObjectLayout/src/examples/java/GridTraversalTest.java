@@ -0,0 +1,142 @@
+/*
+ * Written by Gil Tene, Martin Thompson and Michael Barker, and released
+ * to the public domain, as explained at:
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.ObjectLayout.PrimitiveArrayBuilder;
+import org.ObjectLayout.PrimitiveDoubleArray;
+import org.ObjectLayout.StructuredArray;
+import org.ObjectLayout.StructuredArrayBuilder;
+import org.junit.Test;
+
+public class GridTraversalTest {
+
+    @Test
+    public void tilesCoverEveryCellOnceInTileOrder() {
+        final int rows = 37;
+        final int columns = 53;
+        final int[] visits = new int[rows * columns];
+        final List<long[]> order = new ArrayList<long[]>();
+
+        GridTraversal.forEachCell(rows, columns, 8, 16, new GridTraversal.CellVisitor() {
+            @Override
+            public void visit(long row, long column) {
+                visits[(int) (row * columns + column)]++;
+                order.add(new long[] { row, column });
+            }
+        });
+
+        for (int count : visits) {
+            assertThat(count, is(1));
+        }
+        // The first tile is finished before the second one starts:
+        for (int i = 0; i < 8 * 16; i++) {
+            assertThat(order.get(i)[0] < 8 && order.get(i)[1] < 16, is(true));
+        }
+        assertThat(order.get(8 * 16)[1], is(16L));
+    }
+
+    @Test
+    public void parallelTilesMatchSerialResults() throws Exception {
+        final long rows = 100;
+        final long columns = 70;
+        final StructuredArray<PrimitiveDoubleArray> serial = newGrid(rows, columns);
+        final StructuredArray<PrimitiveDoubleArray> parallel = newGrid(rows, columns);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            GridTraversal.forEachTile(rows, columns, 16, 16, scaleBy(serial, 3));
+            GridTraversal.forEachTile(rows, columns, 16, 16, scaleBy(parallel, 3), executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        for (long row = 0; row < rows; row++) {
+            for (long column = 0; column < columns; column++) {
+                assertThat(parallel.get(row).get(column), is(serial.get(row).get(column)));
+                assertThat(serial.get(row).get(column), is(3.0 * (row * columns + column)));
+            }
+        }
+    }
+
+    @Test
+    public void parallelCellsVisitEachCellOnce() throws Exception {
+        final int rows = 45;
+        final int columns = 31;
+        final AtomicIntegerArray visits = new AtomicIntegerArray(rows * columns);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            GridTraversal.forEachCell(rows, columns, 10, 10, new GridTraversal.CellVisitor() {
+                @Override
+                public void visit(long row, long column) {
+                    visits.incrementAndGet((int) (row * columns + column));
+                }
+            }, executor);
+        } finally {
+            executor.shutdown();
+        }
+        for (int i = 0; i < visits.length(); i++) {
+            assertThat(visits.get(i), is(1));
+        }
+    }
+
+    @Test
+    public void mortonOrderVisitsCellsByIncreasingCode() {
+        for (long[] shape : new long[][] { { 8, 8 }, { 5, 13 }, { 1, 40 }, { 17, 3 } }) {
+            final int rows = (int) shape[0];
+            final int columns = (int) shape[1];
+            final List<Long> codes = new ArrayList<Long>();
+            GridTraversal.forEachCellMorton(rows, columns, new GridTraversal.CellVisitor() {
+                @Override
+                public void visit(long row, long column) {
+                    assertThat(row < rows && column < columns, is(true));
+                    codes.add(GridTraversal.mortonCode(row, column));
+                }
+            });
+            assertThat(codes.size(), is(rows * columns));
+            for (int i = 1; i < codes.size(); i++) {
+                assertThat(codes.get(i) > codes.get(i - 1), is(true));
+            }
+        }
+        assertThat(GridTraversal.mortonCode(0, 1), is(1L));
+        assertThat(GridTraversal.mortonCode(1, 0), is(2L));
+        assertThat(GridTraversal.mortonCode(3, 5), is(0x1BL));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static StructuredArray<PrimitiveDoubleArray> newGrid(long rows, long columns) {
+        StructuredArray<PrimitiveDoubleArray> grid = new StructuredArrayBuilder(StructuredArray.class,
+                new PrimitiveArrayBuilder(PrimitiveDoubleArray.class, columns), rows).build();
+        for (long row = 0; row < rows; row++) {
+            for (long column = 0; column < columns; column++) {
+                grid.get(row).set(column, row * columns + column);
+            }
+        }
+        return grid;
+    }
+
+    private static GridTraversal.TileVisitor scaleBy(final StructuredArray<PrimitiveDoubleArray> grid,
+                                                     final double factor) {
+        return new GridTraversal.TileVisitor() {
+            @Override
+            public void visitTile(long fromRow, long toRow, long fromColumn, long toColumn) {
+                for (long row = fromRow; row < toRow; row++) {
+                    PrimitiveDoubleArray values = grid.get(row);
+                    for (long column = fromColumn; column < toColumn; column++) {
+                        values.set(column, values.get(column) * factor);
+                    }
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Written by Gil Tene, Martin Thompson and Michael Barker, and released
+ * to the public domain, as explained at:
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+import org.ObjectLayout.PrimitiveLongArray;
+
+/**
+ * A fixed-length bit set with <code>long</code> bit indexes, backed by a {@link PrimitiveLongArray}.
+ * Unlike {@link java.util.BitSet}, it can hold more than <code>Integer.MAX_VALUE</code> bits.
+ * <p>
+ * Bulk operations combine bit sets of equal length word by word, and counting and searching use the
+ * {@link Long#bitCount(long)} and {@link Long#numberOfTrailingZeros(long)} intrinsics.
+ * <p>
+ * For sparse or clustered sets, see {@link CompressedLongBitSet}.
+ */
+public class LongBitSet {
+
+    private static final int ADDRESS_BITS_PER_WORD = 6;
+    private static final long WORD_MASK = 0xFFFFFFFFFFFFFFFFL;
+
+    private final PrimitiveLongArray words;
+    private final long length;
+    private final long wordCount;
+
+    /**
+     * Create a bit set of <code>length</code> bits, all initially clear.
+     *
+     * @param length the number of bits
+     */
+    public LongBitSet(final long length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("length must not be negative");
+        }
+        this.length = length;
+        this.wordCount = wordIndex(length + 63);
+        this.words = PrimitiveLongArray.newInstance(wordCount);
+    }
+
+    /**
+     * Get the number of bits in this bit set
+     *
+     * @return the number of bits in this bit set
+     */
+    public long length() {
+        return length;
+    }
+
+    public boolean get(final long index) {
+        checkIndex(index);
+        return (words.get(wordIndex(index)) & (1L << index)) != 0;
+    }
+
+    public void set(final long index) {
+        checkIndex(index);
+        final long wordIndex = wordIndex(index);
+        words.set(wordIndex, words.get(wordIndex) | (1L << index));
+    }
+
+    public void set(final long index, final boolean value) {
+        if (value) {
+            set(index);
+        } else {
+            clear(index);
+        }
+    }
+
+    /**
+     * Set the bits from <code>fromIndex</code> (inclusive) to <code>toIndex</code> (exclusive).
+     *
+     * @param fromIndex the first bit to set
+     * @param toIndex one past the last bit to set
+     */
+    public void set(final long fromIndex, final long toIndex) {
+        checkRange(fromIndex, toIndex);
+        if (fromIndex == toIndex) {
+            return;
+        }
+        final long startWord = wordIndex(fromIndex);
+        final long endWord = wordIndex(toIndex - 1);
+        final long firstMask = WORD_MASK << fromIndex;
+        final long lastMask = WORD_MASK >>> -toIndex;
+        if (startWord == endWord) {
+            words.set(startWord, words.get(startWord) | (firstMask & lastMask));
+            return;
+        }
+        words.set(startWord, words.get(startWord) | firstMask);
+        for (long i = startWord + 1; i < endWord; i++) {
+            words.set(i, WORD_MASK);
+        }
+        words.set(endWord, words.get(endWord) | lastMask);
+    }
+
+    public void clear(final long index) {
+        checkIndex(index);
+        final long wordIndex = wordIndex(index);
+        words.set(wordIndex, words.get(wordIndex) & ~(1L << index));
+    }
+
+    /**
+     * Clear all bits.
+     */
+    public void clear() {
+        for (long i = 0; i < wordCount; i++) {
+            words.set(i, 0);
+        }
+    }
+
+    public void flip(final long index) {
+        checkIndex(index);
+        final long wordIndex = wordIndex(index);
+        words.set(wordIndex, words.get(wordIndex) ^ (1L << index));
+    }
+
+    /**
+     * Get the number of set bits.
+     *
+     * @return the number of set bits
+     */
+    public long cardinality() {
+        long sum = 0;
+        for (long i = 0; i < wordCount; i++) {
+            sum += Long.bitCount(words.get(i));
+        }
+        return sum;
+    }
+
+    /**
+     * Find the first set bit at or after <code>fromIndex</code>.
+     *
+     * @param fromIndex the index to start searching from
+     * @return the index of the next set bit, or -1 if there is none
+     */
+    public long nextSetBit(final long fromIndex) {
+        if (fromIndex < 0) {
+            throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        }
+        if (fromIndex >= length) {
+            return -1;
+        }
+        long wordIndex = wordIndex(fromIndex);
+        long word = words.get(wordIndex) & (WORD_MASK << fromIndex);
+        while (true) {
+            if (word != 0) {
+                return (wordIndex << ADDRESS_BITS_PER_WORD) + Long.numberOfTrailingZeros(word);
+            }
+            if (++wordIndex == wordCount) {
+                return -1;
+            }
+            word = words.get(wordIndex);
+        }
+    }
+
+    /**
+     * Find the first clear bit at or after <code>fromIndex</code>.
+     *
+     * @param fromIndex the index to start searching from
+     * @return the index of the next clear bit, or -1 if there is none
+     */
+    public long nextClearBit(final long fromIndex) {
+        if (fromIndex < 0) {
+            throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        }
+        if (fromIndex >= length) {
+            return -1;
+        }
+        long wordIndex = wordIndex(fromIndex);
+        long word = ~words.get(wordIndex) & (WORD_MASK << fromIndex);
+        while (true) {
+            if (word != 0) {
+                final long index = (wordIndex << ADDRESS_BITS_PER_WORD) + Long.numberOfTrailingZeros(word);
+                return (index < length) ? index : -1;
+            }
+            if (++wordIndex == wordCount) {
+                return -1;
+            }
+            word = ~words.get(wordIndex);
+        }
+    }
+
+    /**
+     * Keep only the bits that are also set in <code>other</code>.
+     *
+     * @param other a bit set of the same length
+     */
+    public void and(final LongBitSet other) {
+        checkSameLength(other);
+        for (long i = 0; i < wordCount; i++) {
+            words.set(i, words.get(i) & other.words.get(i));
+        }
+    }
+
+    /**
+     * Set every bit that is set in <code>other</code>.
+     *
+     * @param other a bit set of the same length
+     */
+    public void or(final LongBitSet other) {
+        checkSameLength(other);
+        for (long i = 0; i < wordCount; i++) {
+            words.set(i, words.get(i) | other.words.get(i));
+        }
+    }
+
+    /**
+     * Flip every bit that is set in <code>other</code>.
+     *
+     * @param other a bit set of the same length
+     */
+    public void xor(final LongBitSet other) {
+        checkSameLength(other);
+        for (long i = 0; i < wordCount; i++) {
+            words.set(i, words.get(i) ^ other.words.get(i));
+        }
+    }
+
+    /**
+     * Clear every bit that is set in <code>other</code>.
+     *
+     * @param other a bit set of the same length
+     */
+    public void andNot(final LongBitSet other) {
+        checkSameLength(other);
+        for (long i = 0; i < wordCount; i++) {
+            words.set(i, words.get(i) & ~other.words.get(i));
+        }
+    }
+
+    long getWordCount() {
+        return wordCount;
+    }
+
+    long getWord(final long wordIndex) {
+        return words.get(wordIndex);
+    }
+
+    private static long wordIndex(final long index) {
+        return index >>> ADDRESS_BITS_PER_WORD;
+    }
+
+    private void checkIndex(final long index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + " is out of bounds [0, " + length + ")");
+        }
+    }
+
+    private void checkRange(final long fromIndex, final long toIndex) {
+        if (fromIndex < 0 || toIndex > length || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException(
+                    "range [" + fromIndex + ", " + toIndex + ") is out of bounds [0, " + length + ")");
+        }
+    }
+
+    private void checkSameLength(final LongBitSet other) {
+        if (other.length != length) {
+            throw new IllegalArgumentException(
+                    "bit set lengths differ (" + length + " vs. " + other.length + ")");
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Written by Gil Tene, Martin Thompson and Michael Barker, and released
+ * to the public domain, as explained at:
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongBitSetTest {
+
+    @Test
+    public void matchesBitSetForSingleBitOperations() {
+        int length = 10000;
+        LongBitSet bits = new LongBitSet(length);
+        BitSet reference = new BitSet(length);
+        Random random = new Random(3);
+
+        for (int i = 0; i < 20000; i++) {
+            int index = random.nextInt(length);
+            switch (random.nextInt(3)) {
+                case 0: bits.set(index); reference.set(index); break;
+                case 1: bits.clear(index); reference.clear(index); break;
+                default: bits.flip(index); reference.flip(index); break;
+            }
+        }
+
+        assertMatches(bits, reference, length);
+    }
+
+    @Test
+    public void matchesBitSetForRangesAndBulkOperations() {
+        int length = 5000;
+        Random random = new Random(17);
+        LongBitSet a = new LongBitSet(length);
+        LongBitSet b = new LongBitSet(length);
+        BitSet referenceA = new BitSet(length);
+        BitSet referenceB = new BitSet(length);
+
+        for (int i = 0; i < 50; i++) {
+            int from = random.nextInt(length);
+            int to = from + random.nextInt(length - from + 1);
+            a.set(from, to);
+            referenceA.set(from, to);
+            int index = random.nextInt(length);
+            b.set(index);
+            referenceB.set(index);
+            b.set(index / 2, index);
+            referenceB.set(index / 2, index);
+        }
+        assertMatches(a, referenceA, length);
+        assertMatches(b, referenceB, length);
+
+        a.andNot(b);
+        referenceA.andNot(referenceB);
+        assertMatches(a, referenceA, length);
+
+        a.xor(b);
+        referenceA.xor(referenceB);
+        assertMatches(a, referenceA, length);
+
+        a.or(b);
+        referenceA.or(referenceB);
+        assertMatches(a, referenceA, length);
+
+        b.flip(7);
+        referenceB.flip(7);
+        a.and(b);
+        referenceA.and(referenceB);
+        assertMatches(a, referenceA, length);
+    }
+
+    @Test
+    public void handlesIndexesBeyondIntRange() {
+        long length = (1L << 31) + 130;
+        LongBitSet bits = new LongBitSet(length);
+
+        bits.set(length - 1);
+        bits.set(1L << 30);
+        bits.set(5);
+
+        assertThat(bits.get(length - 1), is(true));
+        assertThat(bits.get(length - 2), is(false));
+        assertThat(bits.cardinality(), is(3L));
+        assertThat(bits.nextSetBit(6), is(1L << 30));
+        assertThat(bits.nextSetBit((1L << 30) + 1), is(length - 1));
+        assertThat(bits.nextSetBit(length), is(-1L));
+        assertThat(bits.nextClearBit(length - 1), is(-1L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBulkOperationsOnDifferentLengths() {
+        new LongBitSet(64).or(new LongBitSet(65));
+    }
+
+    private static void assertMatches(LongBitSet bits, BitSet reference, int length) {
+        assertThat(bits.cardinality(), is((long) reference.cardinality()));
+        for (int i = 0; i < length; i++) {
+            assertThat("{" + i + "}", bits.get(i), is(reference.get(i)));
+            int expectedNextSet = reference.nextSetBit(i);
+            assertThat("{" + i + "}", bits.nextSetBit(i), is((long) expectedNextSet));
+            int expectedNextClear = reference.nextClearBit(i);
+            assertThat("{" + i + "}", bits.nextClearBit(i), is(expectedNextClear < length ? (long) expectedNextClear : -1L));
+        }
+    }
+}
@@ -0,0 +1,572 @@
+/*
+ * Written by Gil Tene, Martin Thompson and Michael Barker, and released
+ * to the public domain, as explained at:
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import org.ObjectLayout.PrimitiveLongArray;
+import org.ObjectLayout.ReferenceArray;
+
+/**
+ * A B+ tree specialised for primitive <code>long</code> keys. Both {@link Leaf} and {@link Branch}
+ * nodes are {@link PrimitiveLongArray} subclasses that hold their keys in their own (contiguous)
+ * array body, so lookups binary search over primitives instead of chasing a pointer to a boxed key
+ * for every comparison.
+ * <p>
+ * Each node array is one slot longer than the node capacity, which lets an insert land before
+ * the node is checked for overflow and split.
+ *
+ * @param <V> the type of the values held in the tree
+ */
+public class LongKeyBPlusTree<V> {
+    private final int nodeSize;
+    private final Leaf firstNode;
+    private Node root;
+    private int size;
+
+    public LongKeyBPlusTree(int nodeSize) {
+        if (nodeSize < 4) {
+            throw new IllegalArgumentException("nodeSize must be at least 4");
+        }
+        this.nodeSize = nodeSize;
+
+        firstNode = Leaf.newInstance(nodeSize);
+        this.root = firstNode;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(long key, V val) {
+        if (val == null) {
+            throw new NullPointerException("Values may not be null");
+        }
+
+        Object o = root.put(key, val);
+
+        if (isSplit(o)) {
+            long splitKey = root.splitKey();
+            Node sibling = root.takeSplitSibling();
+            root = Branch.newInstance(root, splitKey, sibling, nodeSize);
+
+            o = null;
+        }
+
+        if (null == o) {
+            size++;
+        }
+
+        return (V) o;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        return (V) root.lookup(key);
+    }
+
+    public boolean containsKey(long key) {
+        return root.lookup(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        Object o = root.remove(key);
+
+        if (null != o) {
+            size--;
+
+            if (root.hasOnlyChild()) {
+                root = ((Branch) root).getChild(0);
+            }
+        }
+
+        return (V) o;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public EntryIterator iterator() {
+        return new EntryIterator(firstNode);
+    }
+
+    /**
+     * Walks the entries of the tree in ascending key order without boxing keys or allocating
+     * per-entry objects. {@link #next()} returns each key, and {@link #value()} returns the value
+     * associated with the key most recently returned.
+     */
+    public class EntryIterator {
+        private Leaf leaf;
+        private int index = -1;
+
+        EntryIterator(Leaf leaf) {
+            this.leaf = leaf;
+        }
+
+        public boolean hasNext() {
+            return (index + 1) < leaf.size || (leaf.next != null && leaf.next.size > 0);
+        }
+
+        public long next() {
+            if ((index + 1) < leaf.size) {
+                index++;
+            } else if (leaf.next != null && leaf.next.size > 0) {
+                leaf = leaf.next;
+                index = 0;
+            } else {
+                throw new NoSuchElementException();
+            }
+
+            return leaf.get(index);
+        }
+
+        @SuppressWarnings("unchecked")
+        public V value() {
+            if (index < 0) {
+                throw new IllegalStateException("next() has not been called");
+            }
+            return (V) leaf.values.get(index);
+        }
+    }
+
+    interface Node {
+        enum Sentinal {
+            SPLIT
+        };
+
+        Object lookup(long key);
+
+        Object put(long key, Object val);
+
+        Object remove(long key);
+
+        int size();
+
+        long firstKey();
+
+        boolean requiresCompacting();
+
+        boolean hasOnlyChild();
+
+        long splitKey();
+
+        Node takeSplitSibling();
+
+        void mergeFrom(long separator, Node right);
+
+        long stealFromRight(long separator, Node right);
+
+        long stealFromLeft(long separator, Node left);
+    }
+
+    static class Leaf extends PrimitiveLongArray implements Node {
+        private final ReferenceArray<Object> values;
+        private final int capacity;
+        private int size = 0;
+        private Leaf next;
+
+        public Leaf() {
+            capacity = (int) getLength() - 1;
+            values = ReferenceArray.newInstance(getLength());
+        }
+
+        private int search(long key) {
+            return Arrays.binarySearch(asArray(), 0, size, key);
+        }
+
+        @Override
+        public Object lookup(long key) {
+            int search = search(key);
+            if (search < 0) {
+                return null;
+            }
+
+            return values.get(search);
+        }
+
+        @Override
+        public Object put(long key, Object val) {
+            int search = search(key);
+            if (search > -1) {
+                Object oldVal = values.get(search);
+                values.set(search, val);
+                return oldVal;
+            }
+
+            insert(-(search + 1), key, val);
+
+            if (size <= capacity) {
+                return null;
+            }
+
+            Leaf next = Leaf.newInstance(capacity);
+            int halfSize = size / 2;
+            int moved = size - halfSize;
+
+            System.arraycopy(asArray(), halfSize, next.asArray(), 0, moved);
+            System.arraycopy(values.asArray(), halfSize, next.values.asArray(), 0, moved);
+            Arrays.fill(values.asArray(), halfSize, size, null);
+
+            size = halfSize;
+            next.size = moved;
+
+            next.next = this.next;
+            this.next = next;
+
+            return Node.Sentinal.SPLIT;
+        }
+
+        @Override
+        public Object remove(long key) {
+            int search = search(key);
+            if (search < 0) {
+                return null;
+            }
+
+            Object oldVal = values.get(search);
+            removeAt(search);
+            return oldVal;
+        }
+
+        private void insert(int index, long key, Object val) {
+            if (index != size) {
+                System.arraycopy(asArray(), index, asArray(), index + 1, size - index);
+                System.arraycopy(values.asArray(), index, values.asArray(), index + 1, size - index);
+            }
+            set(index, key);
+            values.set(index, val);
+            size++;
+        }
+
+        private void removeAt(int index) {
+            if (index != size - 1) {
+                System.arraycopy(asArray(), index + 1, asArray(), index, size - (index + 1));
+                System.arraycopy(values.asArray(), index + 1, values.asArray(), index, size - (index + 1));
+            }
+            values.set(size - 1, null);
+            size--;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public long firstKey() {
+            return get(0);
+        }
+
+        @Override
+        public boolean requiresCompacting() {
+            return size < capacity / 2;
+        }
+
+        @Override
+        public boolean hasOnlyChild() {
+            return false;
+        }
+
+        @Override
+        public long splitKey() {
+            return next.firstKey();
+        }
+
+        @Override
+        public Node takeSplitSibling() {
+            return next;
+        }
+
+        @Override
+        public void mergeFrom(long separator, Node right) {
+            Leaf leaf = (Leaf) right;
+
+            System.arraycopy(leaf.asArray(), 0, asArray(), size, leaf.size);
+            System.arraycopy(leaf.values.asArray(), 0, values.asArray(), size, leaf.size);
+            size += leaf.size;
+
+            next = leaf.next;
+        }
+
+        @Override
+        public long stealFromRight(long separator, Node right) {
+            Leaf leaf = (Leaf) right;
+
+            insert(size, leaf.get(0), leaf.values.get(0));
+            leaf.removeAt(0);
+
+            return leaf.firstKey();
+        }
+
+        @Override
+        public long stealFromLeft(long separator, Node left) {
+            Leaf leaf = (Leaf) left;
+            int last = leaf.size - 1;
+
+            insert(0, leaf.get(last), leaf.values.get(last));
+            leaf.removeAt(last);
+
+            return firstKey();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("[");
+            for (int i = 0; i < size; i++) {
+                sb.append(get(i)).append("->").append(values.get(i)).append(",");
+            }
+            if (size > 0) {
+                sb.setLength(sb.length() - 1);
+            }
+            sb.append("]");
+
+            return sb.toString();
+        }
+
+        public static Leaf newInstance(int nodeSize) {
+            return PrimitiveLongArray.newInstance(Leaf.class, nodeSize + 1);
+        }
+    }
+
+    static class Branch extends PrimitiveLongArray implements Node {
+        private final ReferenceArray<Node> children;
+        private final int capacity;
+        private int size = 0;
+
+        private long splitKey;
+        private Branch splitSibling;
+
+        public Branch() {
+            capacity = (int) getLength() - 1;
+            children = ReferenceArray.newInstance(getLength() + 1);
+        }
+
+        private Node getChild(int index) {
+            return children.get(index);
+        }
+
+        private int findChildIndex(long key) {
+            int search = Arrays.binarySearch(asArray(), 0, size, key);
+            return (search >= 0) ? search + 1 : -(search + 1);
+        }
+
+        @Override
+        public Object lookup(long key) {
+            return getChild(findChildIndex(key)).lookup(key);
+        }
+
+        @Override
+        public Object put(long key, Object val) {
+            int index = findChildIndex(key);
+            Node child = getChild(index);
+
+            Object oldVal = child.put(key, val);
+
+            if (!isSplit(oldVal)) {
+                return oldVal;
+            }
+
+            insert(index, child.splitKey(), child.takeSplitSibling());
+
+            if (size <= capacity) {
+                return null;
+            }
+
+            // Promote the middle key, and move the keys and children above it to a new sibling:
+            Branch next = create(capacity);
+            int halfSize = size / 2;
+            int moved = size - (halfSize + 1);
+
+            System.arraycopy(asArray(), halfSize + 1, next.asArray(), 0, moved);
+            System.arraycopy(children.asArray(), halfSize + 1, next.children.asArray(), 0, moved + 1);
+            Arrays.fill(children.asArray(), halfSize + 1, size + 1, null);
+
+            splitKey = get(halfSize);
+            splitSibling = next;
+
+            size = halfSize;
+            next.size = moved;
+
+            return Node.Sentinal.SPLIT;
+        }
+
+        @Override
+        public Object remove(long key) {
+            int index = findChildIndex(key);
+            Node child = getChild(index);
+
+            Object oldVal = child.remove(key);
+
+            if (oldVal != null && child.requiresCompacting()) {
+                compact(index);
+            }
+
+            return oldVal;
+        }
+
+        private void compact(int index) {
+            int separatorIndex = (index < size) ? index : index - 1;
+            Node left = getChild(separatorIndex);
+            Node right = getChild(separatorIndex + 1);
+            long separator = get(separatorIndex);
+
+            int mergedSize = left.size() + right.size() + ((left instanceof Branch) ? 1 : 0);
+
+            if (mergedSize <= capacity) {
+                left.mergeFrom(separator, right);
+                removeAt(separatorIndex);
+            } else if (left.requiresCompacting()) {
+                set(separatorIndex, left.stealFromRight(separator, right));
+            } else {
+                set(separatorIndex, right.stealFromLeft(separator, left));
+            }
+        }
+
+        /**
+         * Insert a key at keyIndex, with the child holding keys at or above it to its right.
+         */
+        private void insert(int keyIndex, long key, Node child) {
+            if (keyIndex != size) {
+                System.arraycopy(asArray(), keyIndex, asArray(), keyIndex + 1, size - keyIndex);
+                System.arraycopy(children.asArray(), keyIndex + 1, children.asArray(), keyIndex + 2,
+                        size - keyIndex);
+            }
+            set(keyIndex, key);
+            children.set(keyIndex + 1, child);
+            size++;
+        }
+
+        /**
+         * Remove the key at keyIndex along with the child to its right.
+         */
+        private void removeAt(int keyIndex) {
+            int length = size - (keyIndex + 1);
+            if (length > 0) {
+                System.arraycopy(asArray(), keyIndex + 1, asArray(), keyIndex, length);
+                System.arraycopy(children.asArray(), keyIndex + 2, children.asArray(), keyIndex + 1, length);
+            }
+            children.set(size, null);
+            size--;
+        }
+
+        private void pushFront(Node child, long key) {
+            System.arraycopy(asArray(), 0, asArray(), 1, size);
+            System.arraycopy(children.asArray(), 0, children.asArray(), 1, size + 1);
+            set(0, key);
+            children.set(0, child);
+            size++;
+        }
+
+        private void popFront() {
+            System.arraycopy(asArray(), 1, asArray(), 0, size - 1);
+            System.arraycopy(children.asArray(), 1, children.asArray(), 0, size);
+            children.set(size, null);
+            size--;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public long firstKey() {
+            return getChild(0).firstKey();
+        }
+
+        @Override
+        public boolean requiresCompacting() {
+            return size < capacity / 2;
+        }
+
+        @Override
+        public boolean hasOnlyChild() {
+            return size == 0;
+        }
+
+        @Override
+        public long splitKey() {
+            return splitKey;
+        }
+
+        @Override
+        public Node takeSplitSibling() {
+            Branch next = splitSibling;
+            splitSibling = null;
+            return next;
+        }
+
+        @Override
+        public void mergeFrom(long separator, Node right) {
+            Branch branch = (Branch) right;
+
+            set(size, separator);
+            System.arraycopy(branch.asArray(), 0, asArray(), size + 1, branch.size);
+            System.arraycopy(branch.children.asArray(), 0, children.asArray(), size + 1, branch.size + 1);
+            size += branch.size + 1;
+        }
+
+        @Override
+        public long stealFromRight(long separator, Node right) {
+            Branch branch = (Branch) right;
+
+            insert(size, separator, branch.getChild(0));
+            long newSeparator = branch.get(0);
+            branch.popFront();
+
+            return newSeparator;
+        }
+
+        @Override
+        public long stealFromLeft(long separator, Node left) {
+            Branch branch = (Branch) left;
+
+            pushFront(branch.getChild(branch.size), separator);
+            long newSeparator = branch.get(branch.size - 1);
+            branch.children.set(branch.size, null);
+            branch.size--;
+
+            return newSeparator;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("B:[");
+            for (int i = 0; i < size; i++) {
+                sb.append(get(i)).append(",");
+            }
+            if (size > 0) {
+                sb.setLength(sb.length() - 1);
+            }
+            sb.append("]");
+
+            return sb.toString();
+        }
+
+        private static Branch newInstance(Node left, long key, Node right, int nodeSize) {
+            Branch branch = create(nodeSize);
+
+            branch.children.set(0, left);
+            branch.set(0, key);
+            branch.children.set(1, right);
+            branch.size = 1;
+
+            return branch;
+        }
+
+        private static Branch create(int nodeSize) {
+            return PrimitiveLongArray.newInstance(Branch.class, nodeSize + 1);
+        }
+    }
+
+    private static boolean isSplit(Object o) {
+        return Node.Sentinal.SPLIT == o;
+    }
+
+    @Override
+    public String toString() {
+        return "LongKeyBPlusTree [nodeSize=" + nodeSize + ", root=" + root + "]";
+    }
+}
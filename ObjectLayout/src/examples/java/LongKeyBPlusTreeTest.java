@@ -0,0 +1,119 @@
+/*
+ * Written by Gil Tene, Martin Thompson and Michael Barker, and released
+ * to the public domain, as explained at:
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class LongKeyBPlusTreeTest {
+    private final LongKeyBPlusTree<Long> tree = new LongKeyBPlusTree<Long>(8);
+
+    @Test
+    public void test() {
+        long[] values = new long[] { 10, 20, 30, 40, 50, 60, 70, 80 };
+
+        for (long value : values) {
+            tree.put(value, value);
+        }
+
+        tree.put(21, 21L);
+
+        assertThat(tree.get(49), is(nullValue()));
+        assertThat(tree.get(50), is(50L));
+        assertThat(tree.get(51), is(nullValue()));
+        assertThat(tree.get(21), is(21L));
+        assertThat(tree.size(), is(9));
+    }
+
+    @Test
+    public void insertsAndGetsAndRemovesRandomValues() throws Exception {
+        Random random = new Random(5);
+        TreeMap<Long, Long> treeMap = new TreeMap<Long, Long>();
+        long[] values = new long[10000];
+
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextLong();
+            assertThat(tree.put(values[i], values[i]), is(treeMap.put(values[i], values[i])));
+        }
+
+        assertThat(tree.size(), is(treeMap.size()));
+        assertIteratesInOrder(treeMap);
+
+        int count = 0;
+        for (long value : values) {
+            assertThat("{" + count + "}", tree.get(value), is(treeMap.get(value)));
+            assertThat("{" + count + "}", tree.remove(value), is(treeMap.remove(value)));
+            assertThat("{" + count + "}", tree.size(), is(treeMap.size()));
+            assertThat("{" + count + "}", tree.get(value), is(nullValue()));
+
+            count++;
+        }
+
+        assertIteratesInOrder(treeMap);
+    }
+
+    @Test
+    public void interleavesPutsAndRemoves() throws Exception {
+        Random random = new Random(11);
+        TreeMap<Long, Long> treeMap = new TreeMap<Long, Long>();
+
+        for (int i = 0; i < 50000; i++) {
+            long key = random.nextInt(2000);
+            if (random.nextInt(3) > 0) {
+                assertThat("{" + i + "}", tree.put(key, (long) i), is(treeMap.put(key, (long) i)));
+            } else {
+                assertThat("{" + i + "}", tree.remove(key), is(treeMap.remove(key)));
+            }
+            assertThat("{" + i + "}", tree.size(), is(treeMap.size()));
+        }
+
+        assertIteratesInOrder(treeMap);
+    }
+
+    @Test
+    public void putsAndDeletesFromRightWithBranching() {
+        long[] values = new long[] { 10, 20, 30, 40, 50, 60, 70, 80, 90, 45 };
+        for (long value : values) {
+            tree.put(value, value);
+        }
+
+        int size = tree.size();
+        for (int i = values.length - 1; i >= 0; i--) {
+            assertThat(tree.remove(values[i]), is(values[i]));
+            assertThat(tree.size(), is(--size));
+        }
+    }
+
+    @Test
+    public void handlesNegativeAndExtremeKeys() {
+        long[] values = new long[] { Long.MIN_VALUE, -1, 0, 1, Long.MAX_VALUE };
+        for (long value : values) {
+            tree.put(value, value);
+        }
+
+        for (long value : values) {
+            assertThat(tree.containsKey(value), is(true));
+            assertThat(tree.get(value), is(value));
+        }
+        assertThat(tree.containsKey(2), is(false));
+    }
+
+    private void assertIteratesInOrder(TreeMap<Long, Long> treeMap) {
+        LongKeyBPlusTree<Long>.EntryIterator iterator = tree.iterator();
+        for (Entry<Long, Long> expected : treeMap.entrySet()) {
+            assertThat(iterator.hasNext(), is(true));
+            assertThat(iterator.next(), is(expected.getKey().longValue()));
+            assertThat(iterator.value(), is(expected.getValue()));
+        }
+        assertThat(iterator.hasNext(), is(false));
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Written by Gil Tene, Martin Thompson and Michael Barker, and released
+ * to the public domain, as explained at:
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+import org.ObjectLayout.CtorAndArgsProvider;
+import org.ObjectLayout.PrimitiveIntArray;
+import org.ObjectLayout.PrimitiveLongArray;
+import org.ObjectLayout.StructuredArray;
+
+/**
+ * A fixed-capacity, min-ordered d-ary heap of pre-constructed {@link StructuredArray} elements.
+ * <p>
+ * Each queued element is identified by a stable handle (its index in the element array) that does not
+ * change as the element moves through the heap, so priorities can be changed in place via
+ * {@link #decreaseKey(int, long)} and {@link #updatePriority(int, long)}. The heap itself is a pair of
+ * parallel primitive arrays (handle and priority by heap position), so sift operations only touch
+ * contiguous primitive data and never the elements themselves. Nothing is allocated after construction.
+ * <p>
+ * A handle returned by {@link #poll()} or passed to {@link #remove(int)} goes back on the free list.
+ * Its element keeps its contents until the handle is reused by a later {@link #offer(long)}.
+ *
+ * @param <E> The class of the queued elements
+ */
+public class StructuredArrayHeap<E> {
+
+    private static final int NONE = -1;
+
+    private final StructuredArray<E> elements;
+    private final int arity;
+    private final int capacity;
+
+    // By heap position:
+    private final PrimitiveIntArray heapHandles;
+    private final PrimitiveLongArray heapPriorities;
+    // By handle: heap position, or NONE when not queued:
+    private final PrimitiveIntArray positions;
+    // Stack of free handles:
+    private final PrimitiveIntArray freeHandles;
+    private int freeCount;
+
+    private int size;
+
+    /**
+     * Create a heap of <code>capacity</code> default-constructed <code>elementClass</code> instances.
+     *
+     * @param elementClass the class of the queued elements
+     * @param capacity the maximum number of queued elements
+     * @param arity the number of children per heap node (at least 2)
+     * @param <E> the class of the queued elements
+     * @return a new, empty heap
+     */
+    public static <E> StructuredArrayHeap<E> newInstance(
+            final Class<E> elementClass,
+            final int capacity,
+            final int arity) {
+        return new StructuredArrayHeap<E>(StructuredArray.newInstance(elementClass, capacity), arity);
+    }
+
+    /**
+     * Create a heap of <code>capacity</code> <code>elementClass</code> instances constructed according
+     * to <code>ctorAndArgsProvider</code>.
+     *
+     * @param elementClass the class of the queued elements
+     * @param ctorAndArgsProvider produces element constructors [potentially] on a per element basis
+     * @param capacity the maximum number of queued elements
+     * @param arity the number of children per heap node (at least 2)
+     * @param <E> the class of the queued elements
+     * @return a new, empty heap
+     */
+    public static <E> StructuredArrayHeap<E> newInstance(
+            final Class<E> elementClass,
+            final CtorAndArgsProvider<E> ctorAndArgsProvider,
+            final int capacity,
+            final int arity) {
+        return new StructuredArrayHeap<E>(
+                StructuredArray.newInstance(elementClass, ctorAndArgsProvider, capacity), arity);
+    }
+
+    private StructuredArrayHeap(final StructuredArray<E> elements, final int arity) {
+        if (arity < 2) {
+            throw new IllegalArgumentException("arity must be at least 2");
+        }
+        this.elements = elements;
+        this.arity = arity;
+        this.capacity = (int) elements.getLength();
+        this.heapHandles = PrimitiveIntArray.newInstance(capacity);
+        this.heapPriorities = PrimitiveLongArray.newInstance(capacity);
+        this.positions = PrimitiveIntArray.newInstance(capacity);
+        this.freeHandles = PrimitiveIntArray.newInstance(capacity);
+
+        // Lowest handles are handed out first:
+        for (int i = 0; i < capacity; i++) {
+            positions.set(i, NONE);
+            freeHandles.set(i, capacity - 1 - i);
+        }
+        freeCount = capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the element for a handle.
+     *
+     * @param handle the handle of the element
+     * @return the element for the handle
+     */
+    public E get(final int handle) {
+        return elements.get(handle);
+    }
+
+    /**
+     * Queue a free element with the given priority. The caller fills in the element via
+     * {@link #get(int)} using the returned handle.
+     *
+     * @param priority the priority of the element (lower values are polled first)
+     * @return the handle of the queued element, or -1 if the heap is full
+     */
+    public int offer(final long priority) {
+        if (freeCount == 0) {
+            return NONE;
+        }
+        final int handle = freeHandles.get(--freeCount);
+        final int position = size++;
+        place(position, handle, priority);
+        siftUp(position);
+        return handle;
+    }
+
+    /**
+     * Get the handle of the element with the lowest priority, without removing it.
+     *
+     * @return the handle of the head element, or -1 if the heap is empty
+     */
+    public int peek() {
+        return (size == 0) ? NONE : heapHandles.get(0);
+    }
+
+    /**
+     * Get the lowest priority in the heap.
+     *
+     * @return the lowest priority in the heap
+     * @throws IllegalStateException if the heap is empty
+     */
+    public long peekPriority() {
+        if (size == 0) {
+            throw new IllegalStateException("heap is empty");
+        }
+        return heapPriorities.get(0);
+    }
+
+    /**
+     * Remove the element with the lowest priority.
+     *
+     * @return the handle of the removed element, or -1 if the heap is empty
+     */
+    public int poll() {
+        if (size == 0) {
+            return NONE;
+        }
+        final int handle = heapHandles.get(0);
+        removeAt(0);
+        return handle;
+    }
+
+    /**
+     * Remove a queued element.
+     *
+     * @param handle the handle of the element to remove
+     */
+    public void remove(final int handle) {
+        removeAt(positionOf(handle));
+    }
+
+    public boolean contains(final int handle) {
+        return (handle >= 0) && (handle < capacity) && (positions.get(handle) != NONE);
+    }
+
+    public long getPriority(final int handle) {
+        return heapPriorities.get(positionOf(handle));
+    }
+
+    /**
+     * Lower the priority of a queued element.
+     *
+     * @param handle the handle of the element
+     * @param priority the new priority, which must not be greater than the current one
+     */
+    public void decreaseKey(final int handle, final long priority) {
+        final int position = positionOf(handle);
+        if (priority > heapPriorities.get(position)) {
+            throw new IllegalArgumentException("new priority " + priority +
+                    " is greater than current priority " + heapPriorities.get(position));
+        }
+        heapPriorities.set(position, priority);
+        siftUp(position);
+    }
+
+    /**
+     * Change the priority of a queued element in either direction.
+     *
+     * @param handle the handle of the element
+     * @param priority the new priority
+     */
+    public void updatePriority(final int handle, final long priority) {
+        final int position = positionOf(handle);
+        final long previous = heapPriorities.get(position);
+        heapPriorities.set(position, priority);
+        if (priority < previous) {
+            siftUp(position);
+        } else {
+            siftDown(position);
+        }
+    }
+
+    private int positionOf(final int handle) {
+        if (!contains(handle)) {
+            throw new IllegalArgumentException("handle " + handle + " is not queued");
+        }
+        return positions.get(handle);
+    }
+
+    private void removeAt(final int position) {
+        final int handle = heapHandles.get(position);
+        positions.set(handle, NONE);
+        freeHandles.set(freeCount++, handle);
+
+        final int last = --size;
+        if (position != last) {
+            final long lastPriority = heapPriorities.get(last);
+            place(position, heapHandles.get(last), lastPriority);
+            siftDown(position);
+            siftUp(position);
+        }
+    }
+
+    private void place(final int position, final int handle, final long priority) {
+        heapHandles.set(position, handle);
+        heapPriorities.set(position, priority);
+        positions.set(handle, position);
+    }
+
+    private void siftUp(int position) {
+        final int handle = heapHandles.get(position);
+        final long priority = heapPriorities.get(position);
+        while (position > 0) {
+            final int parent = (position - 1) / arity;
+            final long parentPriority = heapPriorities.get(parent);
+            if (parentPriority <= priority) {
+                break;
+            }
+            place(position, heapHandles.get(parent), parentPriority);
+            position = parent;
+        }
+        place(position, handle, priority);
+    }
+
+    private void siftDown(int position) {
+        final int handle = heapHandles.get(position);
+        final long priority = heapPriorities.get(position);
+        while (true) {
+            final int firstChild = position * arity + 1;
+            if (firstChild >= size) {
+                break;
+            }
+            final int lastChild = Math.min(firstChild + arity, size);
+            int smallest = firstChild;
+            long smallestPriority = heapPriorities.get(firstChild);
+            for (int child = firstChild + 1; child < lastChild; child++) {
+                final long childPriority = heapPriorities.get(child);
+                if (childPriority < smallestPriority) {
+                    smallest = child;
+                    smallestPriority = childPriority;
+                }
+            }
+            if (priority <= smallestPriority) {
+                break;
+            }
+            place(position, heapHandles.get(smallest), smallestPriority);
+            position = smallest;
+        }
+        place(position, handle, priority);
+    }
+}
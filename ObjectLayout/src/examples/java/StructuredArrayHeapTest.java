@@ -0,0 +1,134 @@
+/*
+ * Written by Gil Tene, Martin Thompson and Michael Barker, and released
+ * to the public domain, as explained at:
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+public class StructuredArrayHeapTest {
+
+    public static class Timer {
+        private long id;
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(final long id) {
+            this.id = id;
+        }
+    }
+
+    @Test
+    public void pollsInPriorityOrder() {
+        for (int arity = 2; arity <= 8; arity++) {
+            StructuredArrayHeap<Timer> heap = StructuredArrayHeap.newInstance(Timer.class, 1000, arity);
+            Random random = new Random(arity);
+            for (int i = 0; i < 1000; i++) {
+                long priority = random.nextInt(500);
+                int handle = heap.offer(priority);
+                heap.get(handle).setId(priority);
+            }
+            assertThat(heap.offer(0), is(-1));
+
+            long previous = Long.MIN_VALUE;
+            while (!heap.isEmpty()) {
+                long priority = heap.peekPriority();
+                int handle = heap.poll();
+                assertThat(heap.get(handle).getId(), is(priority));
+                assertThat(priority >= previous, is(true));
+                previous = priority;
+            }
+            assertThat(heap.poll(), is(-1));
+        }
+    }
+
+    @Test
+    public void handlesStayStableAcrossPriorityChanges() {
+        StructuredArrayHeap<Timer> heap = StructuredArrayHeap.newInstance(Timer.class, 16, 4);
+        int[] handles = new int[10];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = heap.offer(100 + i);
+            heap.get(handles[i]).setId(i);
+        }
+
+        heap.decreaseKey(handles[7], 1);
+        assertThat(heap.peek(), is(handles[7]));
+        assertThat(heap.getPriority(handles[7]), is(1L));
+
+        heap.updatePriority(handles[7], 1000);
+        assertThat(heap.peek(), is(handles[0]));
+
+        heap.remove(handles[0]);
+        assertThat(heap.contains(handles[0]), is(false));
+        assertThat(heap.peek(), is(handles[1]));
+
+        for (int i = 1; i < handles.length; i++) {
+            assertThat(heap.get(handles[i]).getId(), is((long) i));
+        }
+    }
+
+    @Test
+    public void matchesReferenceUnderRandomOperations() {
+        StructuredArrayHeap<Timer> heap = StructuredArrayHeap.newInstance(Timer.class, 256, 3);
+        // Reference ordering of (priority, handle) pairs:
+        TreeSet<long[]> reference = new TreeSet<long[]>(new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return (a[0] != b[0]) ? (a[0] < b[0] ? -1 : 1) : (a[1] < b[1] ? -1 : (a[1] == b[1] ? 0 : 1));
+            }
+        });
+        List<Integer> queued = new ArrayList<Integer>();
+        Random random = new Random(7);
+
+        for (int i = 0; i < 100000; i++) {
+            int op = random.nextInt(4);
+            if (op == 0 || queued.isEmpty()) {
+                long priority = random.nextInt(1000);
+                int handle = heap.offer(priority);
+                if (handle != -1) {
+                    reference.add(new long[] { priority, handle });
+                    queued.add(handle);
+                }
+            } else if (op == 1) {
+                // Equal priorities may come out in any order, so match on the priority only:
+                long priority = heap.peekPriority();
+                int handle = heap.poll();
+                assertThat("{" + i + "}", priority, is(reference.first()[0]));
+                assertThat("{" + i + "}", reference.remove(new long[] { priority, handle }), is(true));
+                queued.remove(Integer.valueOf(handle));
+            } else if (op == 2) {
+                int handle = queued.get(random.nextInt(queued.size()));
+                long current = heap.getPriority(handle);
+                long priority = current - random.nextInt(100);
+                reference.remove(new long[] { current, handle });
+                heap.decreaseKey(handle, priority);
+                reference.add(new long[] { priority, handle });
+            } else {
+                int handle = queued.remove(random.nextInt(queued.size()));
+                reference.remove(new long[] { heap.getPriority(handle), handle });
+                heap.remove(handle);
+            }
+            assertThat("{" + i + "}", heap.size(), is(reference.size()));
+            if (!heap.isEmpty()) {
+                assertThat("{" + i + "}", heap.peekPriority(), is(reference.first()[0]));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsIncreaseThroughDecreaseKey() {
+        StructuredArrayHeap<Timer> heap = StructuredArrayHeap.newInstance(Timer.class, 4, 2);
+        heap.decreaseKey(heap.offer(10), 11);
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Written by Gil Tene, Martin Thompson and Michael Barker, and released
+ * to the public domain, as explained at:
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+import org.ObjectLayout.CtorAndArgsProvider;
+import org.ObjectLayout.PrimitiveIntArray;
+import org.ObjectLayout.StructuredArray;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed-capacity pool of pre-constructed objects, all of which are elements of a single
+ * {@link StructuredArray}. Elements are handed out and returned by index, so acquiring and releasing
+ * are O(1) and allocation-free, and all pooled objects stay contiguous in memory.
+ * <p>
+ * Free elements are kept on a lock-free stack whose links live in a {@link PrimitiveIntArray}
+ * (<code>next[index]</code> is the free element below <code>index</code>). The head of the stack is
+ * tagged with a version count to avoid ABA problems. To keep threads off the shared head in the
+ * common case, each thread keeps a small cache of free indexes and only moves batches to and from
+ * the shared stack when its cache runs empty or full.
+ * <p>
+ * Indexes cached by a thread are not available to other threads until that thread calls
+ * {@link #flushThreadCache()} (or its cache overflows), so a thread that stops using the pool should
+ * flush its cache first.
+ *
+ * @param <E> The class of the pooled elements
+ */
+public class StructuredArrayPool<E> {
+
+    private static final int NONE = -1;
+    private static final long INDEX_MASK = 0xFFFFFFFFL;
+
+    private final StructuredArray<E> elements;
+    private final PrimitiveIntArray next;
+    private final int threadCacheSize;
+    private final int capacity;
+
+    // (version << 32) | (index & INDEX_MASK) of the top free element, or NONE as the index if empty:
+    private final AtomicLong head = new AtomicLong();
+
+    private final ThreadLocal<ThreadCache> threadCache = new ThreadLocal<ThreadCache>() {
+        @Override
+        protected ThreadCache initialValue() {
+            return new ThreadCache(threadCacheSize);
+        }
+    };
+
+    /**
+     * Create a pool of <code>capacity</code> default-constructed <code>elementClass</code> instances.
+     *
+     * @param elementClass the class of the pooled elements
+     * @param capacity the number of pooled elements
+     * @param threadCacheSize the number of free indexes each thread may hold locally (0 disables caching)
+     * @param <E> the class of the pooled elements
+     * @return a new pool
+     */
+    public static <E> StructuredArrayPool<E> newInstance(
+            final Class<E> elementClass,
+            final int capacity,
+            final int threadCacheSize) {
+        return new StructuredArrayPool<E>(
+                StructuredArray.newInstance(elementClass, capacity), threadCacheSize);
+    }
+
+    /**
+     * Create a pool of <code>capacity</code> <code>elementClass</code> instances constructed according
+     * to <code>ctorAndArgsProvider</code>.
+     *
+     * @param elementClass the class of the pooled elements
+     * @param ctorAndArgsProvider produces element constructors [potentially] on a per element basis
+     * @param capacity the number of pooled elements
+     * @param threadCacheSize the number of free indexes each thread may hold locally (0 disables caching)
+     * @param <E> the class of the pooled elements
+     * @return a new pool
+     */
+    public static <E> StructuredArrayPool<E> newInstance(
+            final Class<E> elementClass,
+            final CtorAndArgsProvider<E> ctorAndArgsProvider,
+            final int capacity,
+            final int threadCacheSize) {
+        return new StructuredArrayPool<E>(
+                StructuredArray.newInstance(elementClass, ctorAndArgsProvider, capacity), threadCacheSize);
+    }
+
+    private StructuredArrayPool(final StructuredArray<E> elements, final int threadCacheSize) {
+        if (threadCacheSize < 0) {
+            throw new IllegalArgumentException("threadCacheSize must not be negative");
+        }
+        this.elements = elements;
+        this.capacity = (int) elements.getLength();
+        this.threadCacheSize = threadCacheSize;
+        this.next = PrimitiveIntArray.newInstance(capacity);
+
+        // Chain every element onto the free stack, lowest index on top:
+        for (int i = 0; i < capacity; i++) {
+            next.set(i, (i + 1 < capacity) ? i + 1 : NONE);
+        }
+        head.set(pack(0, capacity > 0 ? 0 : NONE));
+    }
+
+    /**
+     * Get the number of elements in the pool
+     *
+     * @return the number of elements in the pool
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the element at an index. Only indexes currently acquired by the caller should be accessed.
+     *
+     * @param index the index of the element
+     * @return the element at the index
+     */
+    public E get(final int index) {
+        return elements.get(index);
+    }
+
+    /**
+     * Acquire a free element.
+     *
+     * @return the index of the acquired element, or -1 if the pool is exhausted
+     */
+    public int acquire() {
+        if (threadCacheSize == 0) {
+            return pop();
+        }
+        final ThreadCache cache = threadCache.get();
+        if (cache.count == 0) {
+            // Refill half the cache, keeping room for releases before we must flush again:
+            final int refill = Math.max(1, threadCacheSize / 2);
+            for (int i = 0; i < refill; i++) {
+                final int index = pop();
+                if (index == NONE) {
+                    break;
+                }
+                cache.indexes[cache.count++] = index;
+            }
+            if (cache.count == 0) {
+                return NONE;
+            }
+        }
+        return cache.indexes[--cache.count];
+    }
+
+    /**
+     * Return an element previously acquired from this pool. The caller must not touch the element
+     * after releasing it.
+     *
+     * @param index the index of the element to release
+     */
+    public void release(final int index) {
+        if (index < 0 || index >= capacity) {
+            throw new IllegalArgumentException("index " + index + " is not in this pool");
+        }
+        if (threadCacheSize == 0) {
+            push(index);
+            return;
+        }
+        final ThreadCache cache = threadCache.get();
+        if (cache.count == threadCacheSize) {
+            // Spill half the cache back to the shared stack:
+            final int keep = threadCacheSize / 2;
+            while (cache.count > keep) {
+                push(cache.indexes[--cache.count]);
+            }
+        }
+        cache.indexes[cache.count++] = index;
+    }
+
+    /**
+     * Return all free indexes cached by the calling thread to the shared free list, making them
+     * available to other threads.
+     */
+    public void flushThreadCache() {
+        if (threadCacheSize == 0) {
+            return;
+        }
+        final ThreadCache cache = threadCache.get();
+        while (cache.count > 0) {
+            push(cache.indexes[--cache.count]);
+        }
+    }
+
+    private int pop() {
+        while (true) {
+            final long currentHead = head.get();
+            final int index = indexOf(currentHead);
+            if (index == NONE) {
+                return NONE;
+            }
+            // next may be stale if another thread popped index meanwhile, but the version check
+            // on head rejects our CAS in that case:
+            final int below = next.get(index);
+            if (head.compareAndSet(currentHead, pack(versionOf(currentHead) + 1, below))) {
+                return index;
+            }
+        }
+    }
+
+    private void push(final int index) {
+        while (true) {
+            final long currentHead = head.get();
+            next.set(index, indexOf(currentHead));
+            if (head.compareAndSet(currentHead, pack(versionOf(currentHead) + 1, index))) {
+                return;
+            }
+        }
+    }
+
+    private static long pack(final int version, final int index) {
+        return ((long) version << 32) | (index & INDEX_MASK);
+    }
+
+    private static int versionOf(final long head) {
+        return (int) (head >>> 32);
+    }
+
+    private static int indexOf(final long head) {
+        return (int) head;
+    }
+
+    private static class ThreadCache {
+        final int[] indexes;
+        int count;
+
+        ThreadCache(final int size) {
+            indexes = new int[size];
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Written by Gil Tene, Martin Thompson and Michael Barker, and released
+ * to the public domain, as explained at:
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+public class StructuredArrayPoolTest {
+
+    public static class Message {
+        private long id;
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(final long id) {
+            this.id = id;
+        }
+    }
+
+    @Test
+    public void handsOutEveryElementExactlyOnce() {
+        for (int threadCacheSize : new int[] { 0, 1, 8 }) {
+            StructuredArrayPool<Message> pool = StructuredArrayPool.newInstance(Message.class, 100, threadCacheSize);
+            Set<Integer> acquired = new HashSet<Integer>();
+
+            for (int i = 0; i < pool.getCapacity(); i++) {
+                int index = pool.acquire();
+                assertThat(index >= 0 && index < 100, is(true));
+                assertThat(acquired.add(index), is(true));
+            }
+            assertThat(pool.acquire(), is(-1));
+
+            for (int index : acquired) {
+                pool.release(index);
+            }
+            acquired.clear();
+            for (int i = 0; i < pool.getCapacity(); i++) {
+                assertThat(acquired.add(pool.acquire()), is(true));
+            }
+            assertThat(pool.acquire(), is(-1));
+        }
+    }
+
+    @Test
+    public void reusesTheSameElementObjects() {
+        StructuredArrayPool<Message> pool = StructuredArrayPool.newInstance(Message.class, 4, 2);
+
+        int index = pool.acquire();
+        Message message = pool.get(index);
+        message.setId(42);
+        pool.release(index);
+
+        int again = pool.acquire();
+        assertThat(again, is(index));
+        assertThat(pool.get(again) == message, is(true));
+        assertThat(pool.get(again).getId(), is(42L));
+    }
+
+    @Test
+    public void flushedCacheIsVisibleToOtherThreads() throws Exception {
+        final StructuredArrayPool<Message> pool = StructuredArrayPool.newInstance(Message.class, 8, 8);
+
+        int[] indexes = new int[8];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = pool.acquire();
+        }
+        for (int index : indexes) {
+            pool.release(index);
+        }
+        pool.flushThreadCache();
+
+        final AtomicInteger acquiredElsewhere = new AtomicInteger();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                while (pool.acquire() != -1) {
+                    acquiredElsewhere.incrementAndGet();
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+
+        assertThat(acquiredElsewhere.get(), is(8));
+    }
+
+    @Test
+    public void neverHandsTheSameElementToTwoThreads() throws Exception {
+        final int capacity = 64;
+        final StructuredArrayPool<Message> pool = StructuredArrayPool.newInstance(Message.class, capacity, 4);
+        final AtomicIntegerArray owners = new AtomicIntegerArray(capacity);
+        final AtomicInteger failures = new AtomicInteger();
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int owner = t + 1;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    int[] held = new int[8];
+                    for (int round = 0; round < 20000; round++) {
+                        int count = 0;
+                        while (count < held.length) {
+                            int index = pool.acquire();
+                            if (index == -1) {
+                                break;
+                            }
+                            if (!owners.compareAndSet(index, 0, owner)) {
+                                failures.incrementAndGet();
+                            }
+                            held[count++] = index;
+                        }
+                        while (count > 0) {
+                            int index = held[--count];
+                            owners.set(index, 0);
+                            pool.release(index);
+                        }
+                    }
+                    pool.flushThreadCache();
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(failures.get(), is(0));
+
+        Set<Integer> remaining = new HashSet<Integer>();
+        int index;
+        while ((index = pool.acquire()) != -1) {
+            assertThat(remaining.add(index), is(true));
+        }
+        assertThat(remaining.size(), is(capacity));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsForeignIndexes() {
+        StructuredArrayPool.newInstance(Message.class, 4, 2).release(4);
+    }
+}
@@ -132,7 +132,7 @@ abstract class AbstractIntrinsicObjectModel<T>  {
         @SuppressWarnings("unchecked")
         Constructor<? extends AbstractPrimitiveArray> c = (Constructor<? extends AbstractPrimitiveArray>) constructor;
         @SuppressWarnings("unchecked")
-        T element = (T) AbstractPrimitiveArray._newInstance(length, c, args);
+        T element = (T) AbstractPrimitiveArray._newContainedInstance(length, c, args);
         directlyInitializeTargetField(containingObject, element);
         return element;
     }
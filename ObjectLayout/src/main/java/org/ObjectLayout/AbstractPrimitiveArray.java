@@ -26,7 +26,7 @@ public abstract class AbstractPrimitiveArray {
             final Class<A> arrayClass,
             final long length) {
         try {
-            return instantiate(length, arrayClass.getDeclaredConstructor(), (Object[]) null);
+            return _newInstance(length, arrayClass.getDeclaredConstructor(), (Object[]) null);
         } catch (NoSuchMethodException ex) {
             throw new RuntimeException(ex);
         }
@@ -36,6 +36,20 @@ public abstract class AbstractPrimitiveArray {
             final long length,
             final Constructor<A> arrayConstructor,
             final Object... arrayConstructorArgs) {
+        final long startTime = ArrayMetrics.startTime();
+        final A array = instantiate(length, arrayConstructor, arrayConstructorArgs);
+        ArrayMetrics.recordPrimitiveArray(ArrayMetrics.Operation.CONSTRUCTION, array, startTime);
+        return array;
+    }
+
+    /**
+     * Create a PrimitiveArray that is an element of a StructuredArray or an intrinsic object. Its construction
+     * is part of the construction of the containing object, and is not recorded in {@link ArrayMetrics}.
+     */
+    static <A extends AbstractPrimitiveArray> A _newContainedInstance(
+            final long length,
+            final Constructor<A> arrayConstructor,
+            final Object... arrayConstructorArgs) {
         return instantiate(length, arrayConstructor, arrayConstructorArgs);
     }
 
@@ -43,7 +57,10 @@ public abstract class AbstractPrimitiveArray {
         @SuppressWarnings("unchecked")
         final Class<A> sourceArrayClass = (Class<A>) source.getClass();
         Constructor<A> arrayConstructor = sourceArrayClass.getDeclaredConstructor(sourceArrayClass);
-        return instantiate(source._getLength(), arrayConstructor, source);
+        final long startTime = ArrayMetrics.startTime();
+        final A array = instantiate(source._getLength(), arrayConstructor, source);
+        ArrayMetrics.recordPrimitiveArray(ArrayMetrics.Operation.COPY, array, startTime);
+        return array;
     }
 
     /**
@@ -49,6 +49,7 @@ abstract class AbstractPrimitiveDoubleArray extends AbstractPrimitiveArray {
     void _set(final long index, final double value) {
         if (index < Integer.MAX_VALUE) {
             _set((int) index, value);
+            return;
         }
 
         // Calculate index into long-addressable-only partitions:
@@ -49,6 +49,7 @@ abstract class AbstractPrimitiveFloatArray extends AbstractPrimitiveArray {
     void _set(final long index, final float value) {
         if (index < Integer.MAX_VALUE) {
             _set((int) index, value);
+            return;
         }
 
         // Calculate index into long-addressable-only partitions:
@@ -49,6 +49,7 @@ abstract class AbstractPrimitiveShortArray extends AbstractPrimitiveArray {
     void _set(final long index, final short value) {
         if (index < Integer.MAX_VALUE) {
             _set((int) index, value);
+            return;
         }
 
         // Calculate index into long-addressable-only partitions:
@@ -127,7 +127,7 @@ abstract class AbstractStructuredArray<T> {
         @SuppressWarnings("unchecked")
         Constructor<? extends AbstractPrimitiveArray> c = (Constructor<? extends AbstractPrimitiveArray>) constructor;
         @SuppressWarnings("unchecked")
-        T element = (T) AbstractPrimitiveArray._newInstance(length, c, args);
+        T element = (T) AbstractPrimitiveArray._newContainedInstance(length, c, args);
         storeElementInLocalStorageAtIndex(element, index);
     }
 
@@ -1,5 +1,6 @@
 package org.ObjectLayout;
 
+import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 
@@ -15,6 +16,7 @@ abstract class AbstractStructuredArrayModel<S extends AbstractStructuredArray<T>
     private final StructuredArrayModel structuredSubArrayModel;
     private final PrimitiveArrayModel primitiveSubArrayModel;
     private final Class<T> elementClass;
+    private final Class[] elementVariants;
 
     /**
      * Create a model of a StructuredArray instance with terminal (non StructuredArray) elements
@@ -31,6 +33,30 @@ abstract class AbstractStructuredArrayModel<S extends AbstractStructuredArray<T>
         this.structuredSubArrayModel = null;
         this.primitiveSubArrayModel = null;
         this.elementClass = elementClass != null ? elementClass : deriveElementTypeParameter();
+        this.elementVariants = null;
+    }
+
+    /**
+     * Create a model of a StructuredArray instance with terminal (non StructuredArray) elements that may
+     * be of any of a closed set of element variant classes
+     *
+     * @param arrayClass The class of the StructuredArray modeled by the model
+     * @param elementClass The common class of the elements in the StructuredArray modeled by the model
+     * @param elementVariants The classes the elements may be instances of, in type tag order
+     * @param length The length of the StructuredArray modeled by the model
+     * @throws IllegalArgumentException if elementVariants is empty, contains duplicates, or contains a
+     * class that is abstract or not assignable to elementClass
+     */
+    AbstractStructuredArrayModel(final Class<S> arrayClass,
+                                        final Class<T> elementClass,
+                                        final Class[] elementVariants,
+                                        final long length) throws IllegalArgumentException {
+        this.arrayClass = arrayClass != null ? arrayClass : deriveArrayTypeParameter();
+        this.length = length;
+        this.structuredSubArrayModel = null;
+        this.primitiveSubArrayModel = null;
+        this.elementClass = elementClass != null ? elementClass : deriveElementTypeParameter();
+        this.elementVariants = validateElementVariants(this.elementClass, elementVariants);
     }
 
     /**
@@ -49,6 +75,7 @@ abstract class AbstractStructuredArrayModel<S extends AbstractStructuredArray<T>
         this.structuredSubArrayModel = null;
         this.primitiveSubArrayModel = primitiveSubArrayModel;
         this.elementClass = (Class<T>) primitiveSubArrayModel._getArrayClass();
+        this.elementVariants = null;
     }
 
     /**
@@ -67,6 +94,7 @@ abstract class AbstractStructuredArrayModel<S extends AbstractStructuredArray<T>
         this.structuredSubArrayModel = structuredSubArrayModel;
         this.primitiveSubArrayModel = null;
         this.elementClass = (Class<T>) structuredSubArrayModel._getArrayClass();
+        this.elementVariants = null;
     }
 
     /**
@@ -112,6 +140,42 @@ abstract class AbstractStructuredArrayModel<S extends AbstractStructuredArray<T>
         return elementClass;
     }
 
+    /**
+     * Get the element variant classes of the StructuredArray modeled by the model, in type tag order
+     * @return the element variant classes, or null if the modeled array's elements are all of the element class
+     */
+    final Class[] _getElementVariants() {
+        return elementVariants;
+    }
+
+    private static Class[] validateElementVariants(final Class elementClass, final Class[] elementVariants) {
+        if ((elementVariants == null) || (elementVariants.length == 0)) {
+            throw new IllegalArgumentException("elementVariants must contain at least one class");
+        }
+        final Class[] variants = elementVariants.clone();
+        for (int i = 0; i < variants.length; i++) {
+            final Class variant = variants[i];
+            if (variant == null) {
+                throw new IllegalArgumentException("elementVariants must not contain null");
+            }
+            if (!elementClass.isAssignableFrom(variant)) {
+                throw new IllegalArgumentException("element variant " + variant.getName() +
+                        " is not a subclass of elementClass " + elementClass.getName());
+            }
+            if (variant.isInterface() || Modifier.isAbstract(variant.getModifiers())) {
+                throw new IllegalArgumentException("element variant " + variant.getName() +
+                        " cannot be constructed (it is abstract)");
+            }
+            for (int j = 0; j < i; j++) {
+                if (variants[j] == variant) {
+                    throw new IllegalArgumentException("element variant " + variant.getName() +
+                            " is listed more than once");
+                }
+            }
+        }
+        return variants;
+    }
+
     private Class<T> deriveElementTypeParameter() {
         ParameterizedType genericSuperclass = (ParameterizedType) this.getClass().getGenericSuperclass();
         @SuppressWarnings("unchecked")
@@ -0,0 +1,353 @@
+/*
+ * Written by Gil Tene and Martin Thompson, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+package org.ObjectLayout;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Optional instrumentation of top-level {@link StructuredArray} and PrimitiveArray construction,
+ * <code>copyInstance()</code> and {@link StructuredArray#shallowCopy StructuredArray.shallowCopy()}.
+ * <p>
+ * Recording is off by default, and costs one volatile read per operation while off. It is turned on by
+ * starting the JVM with <code>-D{@value #ENABLED_PROPERTY}=true</code> (which also registers the
+ * {@link ArrayMetricsMXBean} with the platform MBean server), with {@link #setEnabled(boolean)}, or through
+ * JMX. Sub-arrays of nested StructuredArrays and intrinsic arrays are counted as part of the construction
+ * of the object containing them, not separately.
+ * <p>
+ * For each kind of operation, the MBean exposes counts, total and maximum durations, estimated bytes, a
+ * latency histogram, and a description of the slowest operation. A {@link Listener} can be installed to
+ * receive every recorded operation, e.g. to emit it as a JDK Flight Recorder event or to a log.
+ */
+public final class ArrayMetrics implements ArrayMetricsMXBean {
+
+    /**
+     * The name the MBean is registered under
+     */
+    public static final String OBJECT_NAME = "org.ObjectLayout:type=ArrayMetrics";
+
+    /**
+     * The system property that enables recording, and registers the MBean, at startup
+     */
+    public static final String ENABLED_PROPERTY = "org.ObjectLayout.metrics";
+
+    /**
+     * The number of buckets in each latency histogram
+     */
+    public static final int HISTOGRAM_BUCKETS = 40;
+
+    /**
+     * The kinds of recorded operations
+     */
+    public enum Operation {
+        CONSTRUCTION,
+        COPY,
+        SHALLOW_COPY
+    }
+
+    /**
+     * Receives each recorded operation, on the thread that performed it.
+     */
+    public interface Listener {
+        /**
+         * Called after an operation completes
+         *
+         * @param operation the kind of operation
+         * @param arrayClass the class of the constructed, copied or copied-into array
+         * @param elementClass the class of the array's elements (for PrimitiveArrays, the primitive
+         *                     component type of their storage)
+         * @param length the length of the array (for shallow copies, the number of elements copied)
+         * @param durationNanos the duration of the operation
+         * @param bytes the estimated number of bytes constructed or copied
+         */
+        void operationCompleted(Operation operation, Class arrayClass, Class elementClass,
+                                long length, long durationNanos, long bytes);
+    }
+
+    private static final ArrayMetrics INSTANCE = new ArrayMetrics();
+
+    private static volatile boolean enabled = false;
+    private static volatile Listener listener = null;
+
+    private final OperationStats[] stats = {
+            new OperationStats(), new OperationStats(), new OperationStats()
+    };
+
+    static {
+        if (Boolean.getBoolean(ENABLED_PROPERTY)) {
+            enabled = true;
+            register();
+        }
+    }
+
+    private ArrayMetrics() {
+    }
+
+    /**
+     * Get the metrics instance
+     *
+     * @return the metrics instance
+     */
+    public static ArrayMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Register the metrics MBean with the platform MBean server as {@value #OBJECT_NAME}, if it is not
+     * already registered
+     *
+     * @throws IllegalStateException if the MBean cannot be registered
+     */
+    public static void register() throws IllegalStateException {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            synchronized (ArrayMetrics.class) {
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(INSTANCE, name);
+                }
+            }
+        } catch (JMException ex) {
+            throw new IllegalStateException("Cannot register " + OBJECT_NAME, ex);
+        }
+    }
+
+    /**
+     * Install a listener to receive every recorded operation, replacing any previous listener
+     *
+     * @param newListener the listener, or null to remove the current listener
+     */
+    public static void setListener(final Listener newListener) {
+        listener = newListener;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(final boolean enable) {
+        enabled = enable;
+    }
+
+    @Override
+    public void reset() {
+        for (final OperationStats s : stats) {
+            s.reset();
+        }
+    }
+
+    @Override
+    public long getConstructionCount() {
+        return stats(Operation.CONSTRUCTION).count.get();
+    }
+
+    @Override
+    public long getConstructionTotalNanos() {
+        return stats(Operation.CONSTRUCTION).totalNanos.get();
+    }
+
+    @Override
+    public long getConstructionMaxNanos() {
+        return stats(Operation.CONSTRUCTION).maxNanos.get();
+    }
+
+    @Override
+    public long getConstructionBytes() {
+        return stats(Operation.CONSTRUCTION).bytes.get();
+    }
+
+    @Override
+    public long[] getConstructionLatencyHistogram() {
+        return stats(Operation.CONSTRUCTION).getHistogram();
+    }
+
+    @Override
+    public String getSlowestConstruction() {
+        return stats(Operation.CONSTRUCTION).slowest;
+    }
+
+    @Override
+    public long getCopyCount() {
+        return stats(Operation.COPY).count.get();
+    }
+
+    @Override
+    public long getCopyTotalNanos() {
+        return stats(Operation.COPY).totalNanos.get();
+    }
+
+    @Override
+    public long getCopyMaxNanos() {
+        return stats(Operation.COPY).maxNanos.get();
+    }
+
+    @Override
+    public long getCopyBytes() {
+        return stats(Operation.COPY).bytes.get();
+    }
+
+    @Override
+    public long[] getCopyLatencyHistogram() {
+        return stats(Operation.COPY).getHistogram();
+    }
+
+    @Override
+    public String getSlowestCopy() {
+        return stats(Operation.COPY).slowest;
+    }
+
+    @Override
+    public long getShallowCopyCount() {
+        return stats(Operation.SHALLOW_COPY).count.get();
+    }
+
+    @Override
+    public long getShallowCopyTotalNanos() {
+        return stats(Operation.SHALLOW_COPY).totalNanos.get();
+    }
+
+    @Override
+    public long getShallowCopyMaxNanos() {
+        return stats(Operation.SHALLOW_COPY).maxNanos.get();
+    }
+
+    @Override
+    public long getShallowCopyBytes() {
+        return stats(Operation.SHALLOW_COPY).bytes.get();
+    }
+
+    @Override
+    public long[] getShallowCopyLatencyHistogram() {
+        return stats(Operation.SHALLOW_COPY).getHistogram();
+    }
+
+    @Override
+    public String getSlowestShallowCopy() {
+        return stats(Operation.SHALLOW_COPY).slowest;
+    }
+
+    private OperationStats stats(final Operation operation) {
+        return stats[operation.ordinal()];
+    }
+
+    //
+    //
+    // Recording, called by the array classes:
+    //
+    //
+
+    /**
+     * Get the start time of an operation about to be recorded
+     *
+     * @return the current System.nanoTime() if recording is enabled, or 0 if it is not
+     */
+    static long startTime() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    static void recordStructuredArray(final Operation operation,
+                                      final StructuredArray<?> array,
+                                      final long startTime) {
+        if (startTime == 0) {
+            return;
+        }
+        final long durationNanos = System.nanoTime() - startTime;
+        final long bytes = getEstimator().estimate(array).getTotalBytes();
+        record(operation, array.getClass(), array.getElementClass(), array.getLength(), durationNanos, bytes);
+    }
+
+    static void recordPrimitiveArray(final Operation operation,
+                                     final AbstractPrimitiveArray array,
+                                     final long startTime) {
+        if (startTime == 0) {
+            return;
+        }
+        final long durationNanos = System.nanoTime() - startTime;
+        final long bytes = getEstimator().estimate(array).getTotalBytes();
+        record(operation, array.getClass(), FootprintEstimator.storageComponentType(array.getClass()),
+                array._getLength(), durationNanos, bytes);
+    }
+
+    static void recordShallowCopy(final StructuredArray<?> dst, final long count, final long startTime) {
+        if (startTime == 0) {
+            return;
+        }
+        final long durationNanos = System.nanoTime() - startTime;
+        final long bytes = count * getEstimator().instanceSize(dst.getElementClass());
+        record(Operation.SHALLOW_COPY, dst.getClass(), dst.getElementClass(), count, durationNanos, bytes);
+    }
+
+    private static void record(final Operation operation, final Class arrayClass, final Class elementClass,
+                               final long length, final long durationNanos, final long bytes) {
+        INSTANCE.stats(operation).record(arrayClass, elementClass, length, durationNanos, bytes);
+        final Listener l = listener;
+        if (l != null) {
+            l.operationCompleted(operation, arrayClass, elementClass, length, durationNanos, bytes);
+        }
+    }
+
+    private static FootprintEstimator getEstimator() {
+        return EstimatorHolder.ESTIMATOR;
+    }
+
+    // Initialized on first use, so the estimator is not built unless metrics are recorded:
+    private static final class EstimatorHolder {
+        static final FootprintEstimator ESTIMATOR = FootprintEstimator.forCurrentJvm();
+    }
+
+    private static final class OperationStats {
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong totalNanos = new AtomicLong();
+        final AtomicLong maxNanos = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+        volatile String slowest = null;
+
+        void record(final Class arrayClass, final Class elementClass,
+                    final long length, final long durationNanos, final long byteCount) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(durationNanos);
+            bytes.addAndGet(byteCount);
+            final int bucket = 63 - Long.numberOfLeadingZeros(Math.max(durationNanos, 1));
+            histogram.incrementAndGet(Math.min(bucket, HISTOGRAM_BUCKETS - 1));
+
+            long max = maxNanos.get();
+            while (durationNanos > max) {
+                if (maxNanos.compareAndSet(max, durationNanos)) {
+                    slowest = arrayClass.getName() + "<" + elementClass.getName() + ">[" + length + "]: " +
+                            durationNanos + " ns, " + byteCount + " bytes";
+                    break;
+                }
+                max = maxNanos.get();
+            }
+        }
+
+        long[] getHistogram() {
+            final long[] counts = new long[HISTOGRAM_BUCKETS];
+            for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+                counts[i] = histogram.get(i);
+            }
+            return counts;
+        }
+
+        void reset() {
+            count.set(0);
+            totalNanos.set(0);
+            maxNanos.set(0);
+            bytes.set(0);
+            for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+                histogram.set(i, 0);
+            }
+            slowest = null;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Written by Gil Tene and Martin Thompson, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+package org.ObjectLayout;
+
+/**
+ * The JMX management interface of {@link ArrayMetrics}, registered as
+ * {@value ArrayMetrics#OBJECT_NAME}.
+ * <p>
+ * Counters are aggregated over all threads since the metrics were last {@link #reset() reset}. Durations
+ * are in nanoseconds. Byte counts are estimated with {@link FootprintEstimator}: the footprint of the
+ * constructed or copied array for constructions and copies, and the size of the copied elements for
+ * shallow copies. Latency histograms have {@value ArrayMetrics#HISTOGRAM_BUCKETS} power of two buckets:
+ * bucket <code>i</code> counts operations that took between 2^<code>i</code> and 2^(<code>i</code> + 1)
+ * nanoseconds (bucket 0 also counts operations that took 0 nanoseconds, and the last bucket counts all
+ * longer operations).
+ */
+public interface ArrayMetricsMXBean {
+
+    /**
+     * Determine if operations are being recorded
+     *
+     * @return true if operations are being recorded
+     */
+    boolean isEnabled();
+
+    /**
+     * Start or stop recording operations
+     *
+     * @param enabled true to start recording, false to stop
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Clear all counters and histograms
+     */
+    void reset();
+
+    /**
+     * @return the number of constructions recorded
+     */
+    long getConstructionCount();
+
+    /**
+     * @return the total duration of the constructions recorded
+     */
+    long getConstructionTotalNanos();
+
+    /**
+     * @return the longest duration of the constructions recorded
+     */
+    long getConstructionMaxNanos();
+
+    /**
+     * @return the estimated bytes of the constructions recorded
+     */
+    long getConstructionBytes();
+
+    /**
+     * @return the latency histogram of the constructions recorded
+     */
+    long[] getConstructionLatencyHistogram();
+
+    /**
+     * Describe the slowest construction: array class, element class, length, duration and bytes
+     *
+     * @return a description of the slowest construction, or null if none has been recorded
+     */
+    String getSlowestConstruction();
+
+    /**
+     * @return the number of copyInstance operations recorded
+     */
+    long getCopyCount();
+
+    /**
+     * @return the total duration of the copyInstance operations recorded
+     */
+    long getCopyTotalNanos();
+
+    /**
+     * @return the longest duration of the copyInstance operations recorded
+     */
+    long getCopyMaxNanos();
+
+    /**
+     * @return the estimated bytes of the copyInstance operations recorded
+     */
+    long getCopyBytes();
+
+    /**
+     * @return the latency histogram of the copyInstance operations recorded
+     */
+    long[] getCopyLatencyHistogram();
+
+    /**
+     * Describe the slowest copyInstance: array class, element class, length, duration and bytes
+     *
+     * @return a description of the slowest copyInstance, or null if none has been recorded
+     */
+    String getSlowestCopy();
+
+    /**
+     * @return the number of shallowCopy operations recorded
+     */
+    long getShallowCopyCount();
+
+    /**
+     * @return the total duration of the shallowCopy operations recorded
+     */
+    long getShallowCopyTotalNanos();
+
+    /**
+     * @return the longest duration of the shallowCopy operations recorded
+     */
+    long getShallowCopyMaxNanos();
+
+    /**
+     * @return the estimated bytes of the shallowCopy operations recorded
+     */
+    long getShallowCopyBytes();
+
+    /**
+     * @return the latency histogram of the shallowCopy operations recorded
+     */
+    long[] getShallowCopyLatencyHistogram();
+
+    /**
+     * Describe the slowest shallowCopy: array class, element class, element count, duration and bytes
+     *
+     * @return a description of the slowest shallowCopy, or null if none has been recorded
+     */
+    String getSlowestShallowCopy();
+}
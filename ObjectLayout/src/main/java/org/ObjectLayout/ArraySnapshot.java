@@ -0,0 +1,1202 @@
+/*
+ * Written by Gil Tene and Martin Thompson, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+package org.ObjectLayout;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes and reads {@link StructuredArray} and PrimitiveArray instances in a compact, versioned binary
+ * snapshot format, streaming through a {@link WritableByteChannel} or {@link ReadableByteChannel}
+ * (such as a {@link java.nio.channels.FileChannel}).
+ * <p>
+ * A snapshot starts with a header (magic number, format version and record kind), followed by the array
+ * model: the array class, length and nesting of sub-array models, and for each class involved, a schema
+ * of the fields that are stored. The model is followed by the raw data:
+ * <ul>
+ *     <li>Each element of a StructuredArray is written as its field values, in schema order.</li>
+ *     <li>Each PrimitiveArray is written as one bulk little-endian block of its elements.</li>
+ *     <li>Fields declared by subclasses of StructuredArray and of the PrimitiveArray classes are written
+ *     ahead of the array contents.</li>
+ * </ul>
+ * All values are little-endian. Only non-static, non-transient fields of primitive and {@link String}
+ * types can be stored. Classes with other (reference) fields are rejected with an
+ * {@link IllegalArgumentException} when writing. When reading, arrays and elements are constructed with
+ * their default constructors, after which stored field values are written over their fields. Field
+ * schemas are checked against the loaded classes, and a mismatch fails the read with an
+ * {@link IOException}.
+ * <p>
+ * A {@link DirtyTrackingLongArray} can also be checkpointed incrementally: a delta record holds only the
+ * pages modified since the previous checkpoint, and is applied on top of a restored full snapshot (and
+ * any earlier deltas) with {@link #applyDelta(PrimitiveLongArray, ReadableByteChannel)}.
+ * <p>
+ * Records can be written one after the other to a single channel (e.g. a full snapshot followed by a
+ * series of deltas), and read back in the same order from a single channel: reading a record leaves the
+ * channel positioned at the start of the next one.
+ */
+public final class ArraySnapshot {
+
+    /**
+     * The snapshot format version written by this class.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    static final int MAGIC = 0x4E534C4F; // "OLSN" when read as little-endian bytes
+
+    private static final byte STRUCTURED_ARRAY_RECORD = 'S';
+    private static final byte PRIMITIVE_ARRAY_RECORD = 'P';
+    private static final byte DELTA_RECORD = 'D';
+
+    private static final byte TERMINAL_ELEMENTS = 0;
+    private static final byte STRUCTURED_ELEMENTS = 1;
+    private static final byte PRIMITIVE_ELEMENTS = 2;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private ArraySnapshot() {
+    }
+
+    //
+    //
+    // Public API:
+    //
+    //
+
+    /**
+     * Write a snapshot of a StructuredArray (including any nested StructuredArrays and PrimitiveArrays).
+     *
+     * @param array the array to write
+     * @param channel the channel to write to
+     * @throws IOException if writing to the channel fails
+     * @throws IllegalArgumentException if any class involved has fields that cannot be stored, or if the
+     * array (or a nested array) has element variants
+     */
+    public static void write(final StructuredArray<?> array, final WritableByteChannel channel)
+            throws IOException, IllegalArgumentException {
+        final ModelDescriptor descriptor = ModelDescriptor.describe(array.getArrayModel());
+        final SnapshotOutput out = new SnapshotOutput(channel);
+        writeHeader(out, STRUCTURED_ARRAY_RECORD);
+        descriptor.write(out);
+        writeStructuredArrayContents(array, descriptor, out);
+        out.flush();
+    }
+
+    /**
+     * Write a snapshot of a PrimitiveArray (e.g. a {@link PrimitiveLongArray} or a subclass of one).
+     *
+     * @param array the array to write
+     * @param channel the channel to write to
+     * @throws IOException if writing to the channel fails
+     * @throws IllegalArgumentException if the array is a {@link ReferenceArray}, or its class has fields that
+     * cannot be stored
+     */
+    public static void write(final AbstractPrimitiveArray array, final WritableByteChannel channel)
+            throws IOException, IllegalArgumentException {
+        final Class<?> arrayClass = array.getClass();
+        final FieldCodec arrayFields = FieldCodec.forClass(arrayClass);
+        final SnapshotOutput out = new SnapshotOutput(channel);
+        writeHeader(out, PRIMITIVE_ARRAY_RECORD);
+        out.putString(arrayClass.getName());
+        arrayFields.writeSchema(out);
+        out.putLong(array._getLength());
+        writePrimitiveArrayContents(array, arrayFields, out);
+        out.flush();
+    }
+
+    /**
+     * Read a StructuredArray snapshot.
+     *
+     * @param channel the channel to read from
+     * @param <S> the class of the array
+     * @return a newly constructed array with the snapshot's contents
+     * @throws IOException if reading fails, the snapshot is malformed or of an unsupported version, or the
+     * snapshot's classes cannot be loaded or do not match the loaded classes
+     */
+    @SuppressWarnings("unchecked")
+    public static <S extends StructuredArray<?>> S readStructuredArray(final ReadableByteChannel channel)
+            throws IOException {
+        final SnapshotInput in = new SnapshotInput(channel);
+        readHeader(in, STRUCTURED_ARRAY_RECORD);
+        final ModelDescriptor descriptor = ModelDescriptor.read(in);
+        final S array = (S) descriptor.newBuilder().build();
+        readStructuredArrayContents(array, descriptor, in);
+        in.finish();
+        return array;
+    }
+
+    /**
+     * Read a PrimitiveArray snapshot.
+     *
+     * @param channel the channel to read from
+     * @param <A> the class of the array
+     * @return a newly constructed array with the snapshot's contents
+     * @throws IOException if reading fails, the snapshot is malformed or of an unsupported version, or the
+     * snapshot's classes cannot be loaded or do not match the loaded classes
+     */
+    @SuppressWarnings("unchecked")
+    public static <A extends AbstractPrimitiveArray> A readPrimitiveArray(final ReadableByteChannel channel)
+            throws IOException {
+        final SnapshotInput in = new SnapshotInput(channel);
+        readHeader(in, PRIMITIVE_ARRAY_RECORD);
+        final Class<A> arrayClass = (Class<A>) loadClass(in.getString());
+        final FieldCodec arrayFields = FieldCodec.readSchema(in, arrayClass);
+        final long length = in.getLong();
+        final A array = AbstractPrimitiveArray._newInstance(arrayClass, length);
+        readPrimitiveArrayContents(array, arrayFields, in);
+        in.finish();
+        return array;
+    }
+
+    /**
+     * Write a delta checkpoint of the pages of an array that have been modified since its dirty pages
+     * were last cleared, and clear their dirty state. The dirty state of each page is cleared only after its
+     * contents have been written, so pages that were not written when an exception is thrown remain dirty.
+     *
+     * @param array the array to checkpoint
+     * @param channel the channel to write to
+     * @return the number of pages written
+     * @throws IOException if writing to the channel fails
+     */
+    public static long writeDelta(final DirtyTrackingLongArray array, final WritableByteChannel channel)
+            throws IOException {
+        final SnapshotOutput out = new SnapshotOutput(channel);
+        final long length = array.getLength();
+        final long pageSize = array.getPageSize();
+        final long dirtyPageCount = array.getDirtyPageCount();
+        writeHeader(out, DELTA_RECORD);
+        out.putLong(length);
+        out.putInt(array.getPageSizeExponent());
+        out.putLong(dirtyPageCount);
+
+        final long[] pageContents = new long[(int) Math.min(pageSize, CHUNK_SIZE)];
+        long pagesWritten = 0;
+        for (long page = array.nextDirtyPage(0); page >= 0; page = array.nextDirtyPage(page + 1)) {
+            if (pagesWritten == dirtyPageCount) {
+                throw new IllegalStateException("Array was modified while its delta checkpoint was written");
+            }
+            out.putLong(page);
+            final long pageEnd = Math.min((page + 1) * pageSize, length);
+            for (long offset = page * pageSize; offset < pageEnd; offset += pageContents.length) {
+                final int count = (int) Math.min(pageContents.length, pageEnd - offset);
+                for (int i = 0; i < count; i++) {
+                    pageContents[i] = array._get(offset + i);
+                }
+                out.putLongs(pageContents, 0, count);
+            }
+            array.clearPageDirty(page);
+            pagesWritten++;
+        }
+        if (pagesWritten != dirtyPageCount) {
+            throw new IllegalStateException("Array was modified while its delta checkpoint was written");
+        }
+        out.flush();
+        return pagesWritten;
+    }
+
+    /**
+     * Apply a delta checkpoint (written by {@link #writeDelta(DirtyTrackingLongArray, WritableByteChannel)})
+     * to an array holding the state of the previous checkpoint. Applying a delta does not mark pages of a
+     * {@link DirtyTrackingLongArray} dirty.
+     *
+     * @param array the array to update
+     * @param channel the channel to read from
+     * @return the number of pages applied
+     * @throws IOException if reading fails, the delta is malformed, or its length does not match the array
+     */
+    public static long applyDelta(final PrimitiveLongArray array, final ReadableByteChannel channel)
+            throws IOException {
+        final SnapshotInput in = new SnapshotInput(channel);
+        readHeader(in, DELTA_RECORD);
+        final long length = in.getLong();
+        if (length != array.getLength()) {
+            throw new IOException("Delta is for an array of length " + length +
+                    ", not " + array.getLength());
+        }
+        final int pageSizeExponent = in.getInt();
+        if ((pageSizeExponent < 0) || (pageSizeExponent > 30)) {
+            throw new IOException("Malformed delta page size");
+        }
+        final long pageSize = 1L << pageSizeExponent;
+        final long pageCount = in.getLong();
+
+        final long[] pageContents = new long[(int) Math.min(pageSize, CHUNK_SIZE)];
+        for (long p = 0; p < pageCount; p++) {
+            final long page = in.getLong();
+            // Compare against the page count rather than page * pageSize, which can overflow for a malformed page:
+            if ((page < 0) || (page >= (length + pageSize - 1) / pageSize)) {
+                throw new IOException("Delta page " + page + " is out of bounds");
+            }
+            final long pageEnd = Math.min((page + 1) * pageSize, length);
+            for (long offset = page * pageSize; offset < pageEnd; offset += pageContents.length) {
+                final int count = (int) Math.min(pageContents.length, pageEnd - offset);
+                in.getLongs(pageContents, 0, count);
+                for (int i = 0; i < count; i++) {
+                    array._set(offset + i, pageContents[i]);
+                }
+            }
+        }
+        in.finish();
+        return pageCount;
+    }
+
+    //
+    //
+    // Header:
+    //
+    //
+
+    private static void writeHeader(final SnapshotOutput out, final byte recordKind) throws IOException {
+        out.putInt(MAGIC);
+        out.putInt(FORMAT_VERSION);
+        out.putByte(recordKind);
+    }
+
+    private static void readHeader(final SnapshotInput in, final byte expectedRecordKind) throws IOException {
+        if (in.getInt() != MAGIC) {
+            throw new IOException("Not an ObjectLayout array snapshot");
+        }
+        final int version = in.getInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported snapshot format version " + version +
+                    " (supported version is " + FORMAT_VERSION + ")");
+        }
+        final byte recordKind = in.getByte();
+        if (recordKind != expectedRecordKind) {
+            throw new IOException("Snapshot holds a " + recordName(recordKind) +
+                    ", not a " + recordName(expectedRecordKind));
+        }
+    }
+
+    private static String recordName(final byte recordKind) {
+        switch (recordKind) {
+            case STRUCTURED_ARRAY_RECORD:
+                return "StructuredArray";
+            case PRIMITIVE_ARRAY_RECORD:
+                return "PrimitiveArray";
+            case DELTA_RECORD:
+                return "delta";
+            default:
+                return "unknown record (" + recordKind + ")";
+        }
+    }
+
+    //
+    //
+    // Contents:
+    //
+    //
+
+    private static void writeStructuredArrayContents(final StructuredArray<?> array,
+                                                     final ModelDescriptor descriptor,
+                                                     final SnapshotOutput out) throws IOException {
+        descriptor.arrayFields.write(array, out);
+        final long length = array.getLength();
+        switch (descriptor.kind) {
+            case TERMINAL_ELEMENTS:
+                for (long i = 0; i < length; i++) {
+                    descriptor.elementFields.write(array.get(i), out);
+                }
+                break;
+            case STRUCTURED_ELEMENTS:
+                for (long i = 0; i < length; i++) {
+                    writeStructuredArrayContents((StructuredArray<?>) array.get(i), descriptor.subArray, out);
+                }
+                break;
+            default:
+                for (long i = 0; i < length; i++) {
+                    writePrimitiveArrayContents((AbstractPrimitiveArray) array.get(i), descriptor.elementFields, out);
+                }
+                break;
+        }
+    }
+
+    private static void readStructuredArrayContents(final StructuredArray<?> array,
+                                                    final ModelDescriptor descriptor,
+                                                    final SnapshotInput in) throws IOException {
+        descriptor.arrayFields.read(array, in);
+        final long length = array.getLength();
+        switch (descriptor.kind) {
+            case TERMINAL_ELEMENTS:
+                // Let reads from a non-file channel fetch the element block at once rather than per field:
+                in.expect(length * descriptor.elementFields.getMinEncodedSize());
+                for (long i = 0; i < length; i++) {
+                    descriptor.elementFields.read(array.get(i), in);
+                }
+                break;
+            case STRUCTURED_ELEMENTS:
+                for (long i = 0; i < length; i++) {
+                    readStructuredArrayContents((StructuredArray<?>) array.get(i), descriptor.subArray, in);
+                }
+                break;
+            default:
+                for (long i = 0; i < length; i++) {
+                    readPrimitiveArrayContents((AbstractPrimitiveArray) array.get(i), descriptor.elementFields, in);
+                }
+                break;
+        }
+    }
+
+    private static void writePrimitiveArrayContents(final AbstractPrimitiveArray array,
+                                                    final FieldCodec arrayFields,
+                                                    final SnapshotOutput out) throws IOException {
+        arrayFields.write(array, out);
+        final long length = array._getLength();
+        final boolean intAddressable = (length <= Integer.MAX_VALUE);
+
+        if (array instanceof AbstractPrimitiveLongArray) {
+            final AbstractPrimitiveLongArray a = (AbstractPrimitiveLongArray) array;
+            if (intAddressable) {
+                out.putLongs(a._asArray(), 0, (int) length);
+            } else {
+                final long[] chunk = new long[CHUNK_SIZE];
+                for (long offset = 0; offset < length; offset += CHUNK_SIZE) {
+                    final int count = (int) Math.min(CHUNK_SIZE, length - offset);
+                    for (int i = 0; i < count; i++) {
+                        chunk[i] = a._get(offset + i);
+                    }
+                    out.putLongs(chunk, 0, count);
+                }
+            }
+        } else if (array instanceof AbstractPrimitiveDoubleArray) {
+            final AbstractPrimitiveDoubleArray a = (AbstractPrimitiveDoubleArray) array;
+            if (intAddressable) {
+                out.putDoubles(a._asArray(), 0, (int) length);
+            } else {
+                final double[] chunk = new double[CHUNK_SIZE];
+                for (long offset = 0; offset < length; offset += CHUNK_SIZE) {
+                    final int count = (int) Math.min(CHUNK_SIZE, length - offset);
+                    for (int i = 0; i < count; i++) {
+                        chunk[i] = a._get(offset + i);
+                    }
+                    out.putDoubles(chunk, 0, count);
+                }
+            }
+        } else if (array instanceof AbstractPrimitiveIntArray) {
+            final AbstractPrimitiveIntArray a = (AbstractPrimitiveIntArray) array;
+            if (intAddressable) {
+                out.putInts(a._asArray(), 0, (int) length);
+            } else {
+                final int[] chunk = new int[CHUNK_SIZE];
+                for (long offset = 0; offset < length; offset += CHUNK_SIZE) {
+                    final int count = (int) Math.min(CHUNK_SIZE, length - offset);
+                    for (int i = 0; i < count; i++) {
+                        chunk[i] = a._get(offset + i);
+                    }
+                    out.putInts(chunk, 0, count);
+                }
+            }
+        } else if (array instanceof AbstractPrimitiveFloatArray) {
+            final AbstractPrimitiveFloatArray a = (AbstractPrimitiveFloatArray) array;
+            if (intAddressable) {
+                out.putFloats(a._asArray(), 0, (int) length);
+            } else {
+                final float[] chunk = new float[CHUNK_SIZE];
+                for (long offset = 0; offset < length; offset += CHUNK_SIZE) {
+                    final int count = (int) Math.min(CHUNK_SIZE, length - offset);
+                    for (int i = 0; i < count; i++) {
+                        chunk[i] = a._get(offset + i);
+                    }
+                    out.putFloats(chunk, 0, count);
+                }
+            }
+        } else if (array instanceof AbstractPrimitiveShortArray) {
+            final AbstractPrimitiveShortArray a = (AbstractPrimitiveShortArray) array;
+            if (intAddressable) {
+                out.putShorts(a._asArray(), 0, (int) length);
+            } else {
+                final short[] chunk = new short[CHUNK_SIZE];
+                for (long offset = 0; offset < length; offset += CHUNK_SIZE) {
+                    final int count = (int) Math.min(CHUNK_SIZE, length - offset);
+                    for (int i = 0; i < count; i++) {
+                        chunk[i] = a._get(offset + i);
+                    }
+                    out.putShorts(chunk, 0, count);
+                }
+            }
+        } else if (array instanceof AbstractPrimitiveCharArray) {
+            final AbstractPrimitiveCharArray a = (AbstractPrimitiveCharArray) array;
+            if (intAddressable) {
+                out.putChars(a._asArray(), 0, (int) length);
+            } else {
+                final char[] chunk = new char[CHUNK_SIZE];
+                for (long offset = 0; offset < length; offset += CHUNK_SIZE) {
+                    final int count = (int) Math.min(CHUNK_SIZE, length - offset);
+                    for (int i = 0; i < count; i++) {
+                        chunk[i] = a._get(offset + i);
+                    }
+                    out.putChars(chunk, 0, count);
+                }
+            }
+        } else if (array instanceof AbstractPrimitiveByteArray) {
+            final AbstractPrimitiveByteArray a = (AbstractPrimitiveByteArray) array;
+            if (intAddressable) {
+                out.putBytes(a._asArray(), 0, (int) length);
+            } else {
+                final byte[] chunk = new byte[CHUNK_SIZE];
+                for (long offset = 0; offset < length; offset += CHUNK_SIZE) {
+                    final int count = (int) Math.min(CHUNK_SIZE, length - offset);
+                    for (int i = 0; i < count; i++) {
+                        chunk[i] = a._get(offset + i);
+                    }
+                    out.putBytes(chunk, 0, count);
+                }
+            }
+        } else {
+            throw new IllegalArgumentException(
+                    "Cannot snapshot the contents of " + array.getClass().getName());
+        }
+    }
+
+    private static void readPrimitiveArrayContents(final AbstractPrimitiveArray array,
+                                                   final FieldCodec arrayFields,
+                                                   final SnapshotInput in) throws IOException {
+        arrayFields.read(array, in);
+        final long length = array._getLength();
+        final boolean intAddressable = (length <= Integer.MAX_VALUE);
+
+        if (array instanceof AbstractPrimitiveLongArray) {
+            final AbstractPrimitiveLongArray a = (AbstractPrimitiveLongArray) array;
+            if (intAddressable) {
+                in.getLongs(a._asArray(), 0, (int) length);
+            } else {
+                final long[] chunk = new long[CHUNK_SIZE];
+                for (long offset = 0; offset < length; offset += CHUNK_SIZE) {
+                    final int count = (int) Math.min(CHUNK_SIZE, length - offset);
+                    in.getLongs(chunk, 0, count);
+                    for (int i = 0; i < count; i++) {
+                        a._set(offset + i, chunk[i]);
+                    }
+                }
+            }
+        } else if (array instanceof AbstractPrimitiveDoubleArray) {
+            final AbstractPrimitiveDoubleArray a = (AbstractPrimitiveDoubleArray) array;
+            if (intAddressable) {
+                in.getDoubles(a._asArray(), 0, (int) length);
+            } else {
+                final double[] chunk = new double[CHUNK_SIZE];
+                for (long offset = 0; offset < length; offset += CHUNK_SIZE) {
+                    final int count = (int) Math.min(CHUNK_SIZE, length - offset);
+                    in.getDoubles(chunk, 0, count);
+                    for (int i = 0; i < count; i++) {
+                        a._set(offset + i, chunk[i]);
+                    }
+                }
+            }
+        } else if (array instanceof AbstractPrimitiveIntArray) {
+            final AbstractPrimitiveIntArray a = (AbstractPrimitiveIntArray) array;
+            if (intAddressable) {
+                in.getInts(a._asArray(), 0, (int) length);
+            } else {
+                final int[] chunk = new int[CHUNK_SIZE];
+                for (long offset = 0; offset < length; offset += CHUNK_SIZE) {
+                    final int count = (int) Math.min(CHUNK_SIZE, length - offset);
+                    in.getInts(chunk, 0, count);
+                    for (int i = 0; i < count; i++) {
+                        a._set(offset + i, chunk[i]);
+                    }
+                }
+            }
+        } else if (array instanceof AbstractPrimitiveFloatArray) {
+            final AbstractPrimitiveFloatArray a = (AbstractPrimitiveFloatArray) array;
+            if (intAddressable) {
+                in.getFloats(a._asArray(), 0, (int) length);
+            } else {
+                final float[] chunk = new float[CHUNK_SIZE];
+                for (long offset = 0; offset < length; offset += CHUNK_SIZE) {
+                    final int count = (int) Math.min(CHUNK_SIZE, length - offset);
+                    in.getFloats(chunk, 0, count);
+                    for (int i = 0; i < count; i++) {
+                        a._set(offset + i, chunk[i]);
+                    }
+                }
+            }
+        } else if (array instanceof AbstractPrimitiveShortArray) {
+            final AbstractPrimitiveShortArray a = (AbstractPrimitiveShortArray) array;
+            if (intAddressable) {
+                in.getShorts(a._asArray(), 0, (int) length);
+            } else {
+                final short[] chunk = new short[CHUNK_SIZE];
+                for (long offset = 0; offset < length; offset += CHUNK_SIZE) {
+                    final int count = (int) Math.min(CHUNK_SIZE, length - offset);
+                    in.getShorts(chunk, 0, count);
+                    for (int i = 0; i < count; i++) {
+                        a._set(offset + i, chunk[i]);
+                    }
+                }
+            }
+        } else if (array instanceof AbstractPrimitiveCharArray) {
+            final AbstractPrimitiveCharArray a = (AbstractPrimitiveCharArray) array;
+            if (intAddressable) {
+                in.getChars(a._asArray(), 0, (int) length);
+            } else {
+                final char[] chunk = new char[CHUNK_SIZE];
+                for (long offset = 0; offset < length; offset += CHUNK_SIZE) {
+                    final int count = (int) Math.min(CHUNK_SIZE, length - offset);
+                    in.getChars(chunk, 0, count);
+                    for (int i = 0; i < count; i++) {
+                        a._set(offset + i, chunk[i]);
+                    }
+                }
+            }
+        } else if (array instanceof AbstractPrimitiveByteArray) {
+            final AbstractPrimitiveByteArray a = (AbstractPrimitiveByteArray) array;
+            if (intAddressable) {
+                in.getBytes(a._asArray(), 0, (int) length);
+            } else {
+                final byte[] chunk = new byte[CHUNK_SIZE];
+                for (long offset = 0; offset < length; offset += CHUNK_SIZE) {
+                    final int count = (int) Math.min(CHUNK_SIZE, length - offset);
+                    in.getBytes(chunk, 0, count);
+                    for (int i = 0; i < count; i++) {
+                        a._set(offset + i, chunk[i]);
+                    }
+                }
+            }
+        } else {
+            throw new IOException("Cannot restore the contents of " + array.getClass().getName());
+        }
+    }
+
+    private static Class<?> loadClass(final String name) throws IOException {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader == null) {
+            loader = ArraySnapshot.class.getClassLoader();
+        }
+        try {
+            return Class.forName(name, true, loader);
+        } catch (ClassNotFoundException ex) {
+            throw new IOException("Cannot load snapshot class " + name, ex);
+        }
+    }
+
+    //
+    //
+    // Model description:
+    //
+    //
+
+    /**
+     * The parts of a StructuredArrayModel that are written to (and read from) a snapshot, along with the
+     * field codecs of each class involved.
+     */
+    private static class ModelDescriptor {
+        Class<?> arrayClass;
+        FieldCodec arrayFields;
+        long length;
+        byte kind;
+        // TERMINAL_ELEMENTS: the element class. PRIMITIVE_ELEMENTS: the PrimitiveArray class.
+        Class<?> elementClass;
+        FieldCodec elementFields;
+        // PRIMITIVE_ELEMENTS only:
+        long elementLength;
+        // STRUCTURED_ELEMENTS only:
+        ModelDescriptor subArray;
+
+        static ModelDescriptor describe(final AbstractStructuredArrayModel<?, ?> model) {
+            final ModelDescriptor descriptor = new ModelDescriptor();
+            descriptor.arrayClass = model._getArrayClass();
+            descriptor.arrayFields = FieldCodec.forClass(descriptor.arrayClass);
+            descriptor.length = model._getLength();
+            if (model._getStructuredSubArrayModel() != null) {
+                descriptor.kind = STRUCTURED_ELEMENTS;
+                descriptor.subArray = describe(model._getStructuredSubArrayModel());
+            } else if (model._getPrimitiveSubArrayModel() != null) {
+                descriptor.kind = PRIMITIVE_ELEMENTS;
+                descriptor.elementClass = model._getPrimitiveSubArrayModel()._getArrayClass();
+                descriptor.elementFields = FieldCodec.forClass(descriptor.elementClass);
+                descriptor.elementLength = model._getPrimitiveSubArrayModel()._getLength();
+            } else {
+                descriptor.kind = TERMINAL_ELEMENTS;
+                descriptor.elementClass = model._getElementClass();
+                if (model._getElementVariants() != null) {
+                    throw new IllegalArgumentException("Arrays of " + descriptor.elementClass.getName() +
+                            " with element variants cannot be snapshotted");
+                }
+                if (AbstractPrimitiveArray.class.isAssignableFrom(descriptor.elementClass) ||
+                        AbstractStructuredArray.class.isAssignableFrom(descriptor.elementClass)) {
+                    throw new IllegalArgumentException("Array elements of " + descriptor.elementClass.getName() +
+                            " were not described by a sub-array model, and cannot be snapshotted");
+                }
+                descriptor.elementFields = FieldCodec.forClass(descriptor.elementClass);
+            }
+            return descriptor;
+        }
+
+        void write(final SnapshotOutput out) throws IOException {
+            out.putString(arrayClass.getName());
+            arrayFields.writeSchema(out);
+            out.putLong(length);
+            out.putByte(kind);
+            if (kind == STRUCTURED_ELEMENTS) {
+                subArray.write(out);
+            } else {
+                out.putString(elementClass.getName());
+                elementFields.writeSchema(out);
+                if (kind == PRIMITIVE_ELEMENTS) {
+                    out.putLong(elementLength);
+                }
+            }
+        }
+
+        static ModelDescriptor read(final SnapshotInput in) throws IOException {
+            final ModelDescriptor descriptor = new ModelDescriptor();
+            descriptor.arrayClass = loadClass(in.getString());
+            descriptor.arrayFields = FieldCodec.readSchema(in, descriptor.arrayClass);
+            descriptor.length = in.getLong();
+            descriptor.kind = in.getByte();
+            if (descriptor.kind == STRUCTURED_ELEMENTS) {
+                descriptor.subArray = read(in);
+            } else if ((descriptor.kind == TERMINAL_ELEMENTS) || (descriptor.kind == PRIMITIVE_ELEMENTS)) {
+                descriptor.elementClass = loadClass(in.getString());
+                descriptor.elementFields = FieldCodec.readSchema(in, descriptor.elementClass);
+                if (descriptor.kind == PRIMITIVE_ELEMENTS) {
+                    descriptor.elementLength = in.getLong();
+                }
+            } else {
+                throw new IOException("Unknown element kind " + descriptor.kind + " in snapshot");
+            }
+            return descriptor;
+        }
+
+        @SuppressWarnings("unchecked")
+        StructuredArrayBuilder newBuilder() {
+            switch (kind) {
+                case STRUCTURED_ELEMENTS:
+                    return new StructuredArrayBuilder(arrayClass, subArray.newBuilder(), length);
+                case PRIMITIVE_ELEMENTS:
+                    return new StructuredArrayBuilder(arrayClass,
+                            new PrimitiveArrayBuilder(elementClass, elementLength), length);
+                default:
+                    return new StructuredArrayBuilder(arrayClass, elementClass, length);
+            }
+        }
+    }
+
+    //
+    //
+    // Field values:
+    //
+    //
+
+    /**
+     * Writes and reads the stored fields of a class: the non-static, non-transient fields declared by
+     * the class and its superclasses, excluding those declared by this library's own array classes.
+     */
+    private static class FieldCodec {
+        private static final byte STRING_TYPE = 'T';
+
+        private static final Set<Class<?>> LIBRARY_CLASSES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+                Object.class,
+                AbstractStructuredArray.class, StructuredArray.class,
+                AbstractPrimitiveArray.class,
+                AbstractPrimitiveByteArray.class, PrimitiveByteArray.class,
+                AbstractPrimitiveCharArray.class, PrimitiveCharArray.class,
+                AbstractPrimitiveShortArray.class, PrimitiveShortArray.class,
+                AbstractPrimitiveIntArray.class, PrimitiveIntArray.class,
+                AbstractPrimitiveFloatArray.class, PrimitiveFloatArray.class,
+                AbstractPrimitiveLongArray.class, PrimitiveLongArray.class,
+                AbstractPrimitiveDoubleArray.class, PrimitiveDoubleArray.class,
+                AbstractReferenceArray.class, ReferenceArray.class
+        ));
+
+        private final Field[] fields;
+        private final byte[] types;
+        private final int minEncodedSize;
+
+        private FieldCodec(final Field[] fields) {
+            this.fields = fields;
+            this.types = new byte[fields.length];
+            int size = 0;
+            for (int i = 0; i < fields.length; i++) {
+                types[i] = typeCodeOf(fields[i]);
+                size += minEncodedSizeOf(types[i]);
+            }
+            this.minEncodedSize = size;
+        }
+
+        /**
+         * @return the number of bytes the fields of one object encode to, counting strings as empty
+         */
+        int getMinEncodedSize() {
+            return minEncodedSize;
+        }
+
+        static FieldCodec forClass(final Class<?> clazz) {
+            final List<Field> fields = new ArrayList<Field>();
+            final List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+            for (Class<?> c = clazz; !LIBRARY_CLASSES.contains(c); c = c.getSuperclass()) {
+                hierarchy.add(0, c);
+            }
+            for (final Class<?> c : hierarchy) {
+                final List<Field> declared = new ArrayList<Field>();
+                for (final Field field : c.getDeclaredFields()) {
+                    final int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                        continue;
+                    }
+                    if (!field.getType().isPrimitive() && (field.getType() != String.class)) {
+                        throw new IllegalArgumentException("Field " + field.getName() + " of " + c.getName() +
+                                " is of type " + field.getType().getName() +
+                                ". Only primitive and String fields can be snapshotted.");
+                    }
+                    field.setAccessible(true);
+                    declared.add(field);
+                }
+                // Declaration order is not guaranteed by reflection, so use a stable order:
+                Collections.sort(declared, new Comparator<Field>() {
+                    @Override
+                    public int compare(final Field a, final Field b) {
+                        return a.getName().compareTo(b.getName());
+                    }
+                });
+                fields.addAll(declared);
+            }
+            return new FieldCodec(fields.toArray(new Field[fields.size()]));
+        }
+
+        static FieldCodec readSchema(final SnapshotInput in, final Class<?> clazz) throws IOException {
+            final FieldCodec codec;
+            try {
+                codec = forClass(clazz);
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("Cannot restore fields of " + clazz.getName(), ex);
+            }
+            final int count = in.getInt();
+            boolean matches = (count == codec.fields.length);
+            for (int i = 0; i < count; i++) {
+                final String name = in.getString();
+                final byte type = in.getByte();
+                matches &= (i < codec.fields.length) &&
+                        codec.fields[i].getName().equals(name) && (codec.types[i] == type);
+            }
+            if (!matches) {
+                throw new IOException("Snapshot fields of " + clazz.getName() + " do not match the loaded class");
+            }
+            return codec;
+        }
+
+        void writeSchema(final SnapshotOutput out) throws IOException {
+            out.putInt(fields.length);
+            for (int i = 0; i < fields.length; i++) {
+                out.putString(fields[i].getName());
+                out.putByte(types[i]);
+            }
+        }
+
+        void write(final Object object, final SnapshotOutput out) throws IOException {
+            try {
+                for (int i = 0; i < fields.length; i++) {
+                    final Field field = fields[i];
+                    switch (types[i]) {
+                        case 'Z': out.putByte((byte) (field.getBoolean(object) ? 1 : 0)); break;
+                        case 'B': out.putByte(field.getByte(object)); break;
+                        case 'C': out.putShort((short) field.getChar(object)); break;
+                        case 'S': out.putShort(field.getShort(object)); break;
+                        case 'I': out.putInt(field.getInt(object)); break;
+                        case 'J': out.putLong(field.getLong(object)); break;
+                        case 'F': out.putInt(Float.floatToRawIntBits(field.getFloat(object))); break;
+                        case 'D': out.putLong(Double.doubleToRawLongBits(field.getDouble(object))); break;
+                        default: out.putNullableString((String) field.get(object)); break;
+                    }
+                }
+            } catch (IllegalAccessException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+
+        void read(final Object object, final SnapshotInput in) throws IOException {
+            try {
+                for (int i = 0; i < fields.length; i++) {
+                    final Field field = fields[i];
+                    switch (types[i]) {
+                        case 'Z': field.setBoolean(object, in.getByte() != 0); break;
+                        case 'B': field.setByte(object, in.getByte()); break;
+                        case 'C': field.setChar(object, (char) in.getShort()); break;
+                        case 'S': field.setShort(object, in.getShort()); break;
+                        case 'I': field.setInt(object, in.getInt()); break;
+                        case 'J': field.setLong(object, in.getLong()); break;
+                        case 'F': field.setFloat(object, Float.intBitsToFloat(in.getInt())); break;
+                        case 'D': field.setDouble(object, Double.longBitsToDouble(in.getLong())); break;
+                        default: field.set(object, in.getNullableString()); break;
+                    }
+                }
+            } catch (IllegalAccessException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+
+        private static int minEncodedSizeOf(final byte type) {
+            switch (type) {
+                case 'Z': case 'B': return 1;
+                case 'C': case 'S': return 2;
+                case 'J': case 'D': return 8;
+                default: return 4; // int, float, and a string's length
+            }
+        }
+
+        private static byte typeCodeOf(final Field field) {
+            final Class<?> type = field.getType();
+            if (type == boolean.class) return 'Z';
+            if (type == byte.class) return 'B';
+            if (type == char.class) return 'C';
+            if (type == short.class) return 'S';
+            if (type == int.class) return 'I';
+            if (type == long.class) return 'J';
+            if (type == float.class) return 'F';
+            if (type == double.class) return 'D';
+            return STRING_TYPE;
+        }
+    }
+
+    //
+    //
+    // Buffered little-endian channel I/O:
+    //
+    //
+
+    private static class SnapshotOutput {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        SnapshotOutput(final WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(final int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void putByte(final byte value) throws IOException {
+            ensure(1);
+            buffer.put(value);
+        }
+
+        void putShort(final short value) throws IOException {
+            ensure(2);
+            buffer.putShort(value);
+        }
+
+        void putInt(final int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(final long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putString(final String value) throws IOException {
+            final byte[] bytes = value.getBytes(UTF8);
+            putInt(bytes.length);
+            putBytes(bytes, 0, bytes.length);
+        }
+
+        void putNullableString(final String value) throws IOException {
+            if (value == null) {
+                putInt(-1);
+            } else {
+                putString(value);
+            }
+        }
+
+        void putBytes(final byte[] values, int offset, int count) throws IOException {
+            while (count > 0) {
+                ensure(1);
+                final int n = Math.min(count, buffer.remaining());
+                buffer.put(values, offset, n);
+                offset += n;
+                count -= n;
+            }
+        }
+
+        void putShorts(final short[] values, int offset, int count) throws IOException {
+            while (count > 0) {
+                ensure(2);
+                final int n = Math.min(count, buffer.remaining() / 2);
+                buffer.asShortBuffer().put(values, offset, n);
+                buffer.position(buffer.position() + n * 2);
+                offset += n;
+                count -= n;
+            }
+        }
+
+        void putChars(final char[] values, int offset, int count) throws IOException {
+            while (count > 0) {
+                ensure(2);
+                final int n = Math.min(count, buffer.remaining() / 2);
+                buffer.asCharBuffer().put(values, offset, n);
+                buffer.position(buffer.position() + n * 2);
+                offset += n;
+                count -= n;
+            }
+        }
+
+        void putInts(final int[] values, int offset, int count) throws IOException {
+            while (count > 0) {
+                ensure(4);
+                final int n = Math.min(count, buffer.remaining() / 4);
+                buffer.asIntBuffer().put(values, offset, n);
+                buffer.position(buffer.position() + n * 4);
+                offset += n;
+                count -= n;
+            }
+        }
+
+        void putFloats(final float[] values, int offset, int count) throws IOException {
+            while (count > 0) {
+                ensure(4);
+                final int n = Math.min(count, buffer.remaining() / 4);
+                buffer.asFloatBuffer().put(values, offset, n);
+                buffer.position(buffer.position() + n * 4);
+                offset += n;
+                count -= n;
+            }
+        }
+
+        void putLongs(final long[] values, int offset, int count) throws IOException {
+            while (count > 0) {
+                ensure(8);
+                final int n = Math.min(count, buffer.remaining() / 8);
+                buffer.asLongBuffer().put(values, offset, n);
+                buffer.position(buffer.position() + n * 8);
+                offset += n;
+                count -= n;
+            }
+        }
+
+        void putDoubles(final double[] values, int offset, int count) throws IOException {
+            while (count > 0) {
+                ensure(8);
+                final int n = Math.min(count, buffer.remaining() / 8);
+                buffer.asDoubleBuffer().put(values, offset, n);
+                buffer.position(buffer.position() + n * 8);
+                offset += n;
+                count -= n;
+            }
+        }
+    }
+
+    /**
+     * Buffers reads of one record. A record must not consume bytes of the record following it on the same
+     * channel: reads from a {@link FileChannel} fill the buffer, and the channel is repositioned to the end
+     * of the record by {@link #finish()}; reads from other channels are bounded to the bytes the record
+     * is known to still need: the data of a bulk read, or a block announced by {@link #expect(long)}.
+     */
+    private static class SnapshotInput {
+        private final ReadableByteChannel channel;
+        private final boolean readAhead;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private long bytesRead;
+        // The offset (in bytes read from the channel) up to which the record is known to extend:
+        private long expectedEnd;
+
+        SnapshotInput(final ReadableByteChannel channel) {
+            this.channel = channel;
+            this.readAhead = (channel instanceof FileChannel);
+            buffer.limit(0);
+        }
+
+        /**
+         * Make at least <code>bytes</code> bytes available in the buffer.
+         *
+         * @param bytes the number of bytes needed now
+         * @param wanted the number of bytes (from the current position) the caller will consume in total
+         */
+        private void require(final int bytes, final long wanted) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            final long expected = Math.max(wanted, expectedEnd - consumed());
+            buffer.compact();
+            if (!readAhead) {
+                buffer.limit((int) Math.min(buffer.capacity(), Math.max(bytes, expected)));
+            }
+            while (buffer.position() < bytes) {
+                final int n = channel.read(buffer);
+                if (n < 0) {
+                    throw new EOFException("Unexpected end of snapshot");
+                }
+                bytesRead += n;
+            }
+            buffer.flip();
+        }
+
+        private long consumed() {
+            return bytesRead - buffer.remaining();
+        }
+
+        /**
+         * Declare that at least the next <code>bytes</code> bytes belong to this record, so that reads from
+         * a non-file channel can fetch them together rather than one scalar at a time.
+         */
+        void expect(final long bytes) {
+            expectedEnd = Math.max(expectedEnd, consumed() + bytes);
+        }
+
+        private void require(final int bytes) throws IOException {
+            require(bytes, bytes);
+        }
+
+        /**
+         * Complete the reading of a record, returning any bytes read past its end to the channel
+         */
+        void finish() throws IOException {
+            if (readAhead && buffer.hasRemaining()) {
+                final FileChannel fileChannel = (FileChannel) channel;
+                fileChannel.position(fileChannel.position() - buffer.remaining());
+            }
+            buffer.limit(0);
+        }
+
+        byte getByte() throws IOException {
+            require(1);
+            return buffer.get();
+        }
+
+        short getShort() throws IOException {
+            require(2);
+            return buffer.getShort();
+        }
+
+        int getInt() throws IOException {
+            require(4);
+            return buffer.getInt();
+        }
+
+        long getLong() throws IOException {
+            require(8);
+            return buffer.getLong();
+        }
+
+        String getString() throws IOException {
+            final int length = getInt();
+            if (length < 0) {
+                throw new IOException("Malformed string in snapshot");
+            }
+            final byte[] bytes = new byte[length];
+            getBytes(bytes, 0, length);
+            return new String(bytes, UTF8);
+        }
+
+        String getNullableString() throws IOException {
+            final int length = getInt();
+            if (length == -1) {
+                return null;
+            }
+            if (length < 0) {
+                throw new IOException("Malformed string in snapshot");
+            }
+            final byte[] bytes = new byte[length];
+            getBytes(bytes, 0, length);
+            return new String(bytes, UTF8);
+        }
+
+        void getBytes(final byte[] values, int offset, int count) throws IOException {
+            while (count > 0) {
+                require(1, (long) count);
+                final int n = Math.min(count, buffer.remaining());
+                buffer.get(values, offset, n);
+                offset += n;
+                count -= n;
+            }
+        }
+
+        void getShorts(final short[] values, int offset, int count) throws IOException {
+            while (count > 0) {
+                require(2, (long) count * 2);
+                final int n = Math.min(count, buffer.remaining() / 2);
+                buffer.asShortBuffer().get(values, offset, n);
+                buffer.position(buffer.position() + n * 2);
+                offset += n;
+                count -= n;
+            }
+        }
+
+        void getChars(final char[] values, int offset, int count) throws IOException {
+            while (count > 0) {
+                require(2, (long) count * 2);
+                final int n = Math.min(count, buffer.remaining() / 2);
+                buffer.asCharBuffer().get(values, offset, n);
+                buffer.position(buffer.position() + n * 2);
+                offset += n;
+                count -= n;
+            }
+        }
+
+        void getInts(final int[] values, int offset, int count) throws IOException {
+            while (count > 0) {
+                require(4, (long) count * 4);
+                final int n = Math.min(count, buffer.remaining() / 4);
+                buffer.asIntBuffer().get(values, offset, n);
+                buffer.position(buffer.position() + n * 4);
+                offset += n;
+                count -= n;
+            }
+        }
+
+        void getFloats(final float[] values, int offset, int count) throws IOException {
+            while (count > 0) {
+                require(4, (long) count * 4);
+                final int n = Math.min(count, buffer.remaining() / 4);
+                buffer.asFloatBuffer().get(values, offset, n);
+                buffer.position(buffer.position() + n * 4);
+                offset += n;
+                count -= n;
+            }
+        }
+
+        void getLongs(final long[] values, int offset, int count) throws IOException {
+            while (count > 0) {
+                require(8, (long) count * 8);
+                final int n = Math.min(count, buffer.remaining() / 8);
+                buffer.asLongBuffer().get(values, offset, n);
+                buffer.position(buffer.position() + n * 8);
+                offset += n;
+                count -= n;
+            }
+        }
+
+        void getDoubles(final double[] values, int offset, int count) throws IOException {
+            while (count > 0) {
+                require(8, (long) count * 8);
+                final int n = Math.min(count, buffer.remaining() / 8);
+                buffer.asDoubleBuffer().get(values, offset, n);
+                buffer.position(buffer.position() + n * 8);
+                offset += n;
+                count -= n;
+            }
+        }
+    }
+}
@@ -31,6 +31,7 @@ class CopyCtorAndArgsProvider<T> implements CtorAndArgsProvider<T> {
 
     private final long sourceOffset;
     private final Constructor<T> copyConstructor;
+    private final Constructor[] variantCopyConstructors;
     private final CtorAndArgs<T> ctorAndArgs;
 
     /**
@@ -55,6 +56,32 @@ class CopyCtorAndArgsProvider<T> implements CtorAndArgsProvider<T> {
             throws NoSuchMethodException {
         this.sourceOffset = sourceOffset;
         this.copyConstructor = elementClass.getDeclaredConstructor(elementClass);
+        this.variantCopyConstructors = null;
+        this.ctorAndArgs = ctorAndArgs;
+    }
+
+    /**
+     * Used to apply a copy constructor to a target array's elements, copying corresponding elements from a
+     * source array whose elements may be of any of the given element variant classes, starting at a given
+     * offset. Each element is copied with the copy constructor of its own variant class.
+     *
+     * @param elementVariants The element variant classes of the source array, in type tag order
+     * @param sourceOffset The beginning index in the source from which to start copying
+     * @throws NoSuchMethodException if a copy constructor is not found in an element variant class
+     */
+    public CopyCtorAndArgsProvider(final Class[] elementVariants, final long sourceOffset, CtorAndArgs<T> ctorAndArgs)
+            throws NoSuchMethodException {
+        this.sourceOffset = sourceOffset;
+        this.copyConstructor = null;
+        this.variantCopyConstructors = new Constructor[elementVariants.length];
+        for (int i = 0; i < elementVariants.length; i++) {
+            @SuppressWarnings("unchecked")
+            final Constructor variantCopyConstructor = elementVariants[i].getDeclaredConstructor(elementVariants[i]);
+            if (!variantCopyConstructor.isAccessible()) {
+                variantCopyConstructor.setAccessible(true);
+            }
+            variantCopyConstructors[i] = variantCopyConstructor;
+        }
         this.ctorAndArgs = ctorAndArgs;
     }
 
@@ -77,7 +104,14 @@ class CopyCtorAndArgsProvider<T> implements CtorAndArgsProvider<T> {
 
         T sourceElement = sourceArray.get(index);
 
-        ctorAndArgs.setConstructor(copyConstructor);
+        if (variantCopyConstructors != null) {
+            @SuppressWarnings("unchecked")
+            final Constructor<T> variantCopyConstructor =
+                    variantCopyConstructors[sourceArray.getElementTypeTag(index)];
+            ctorAndArgs.setConstructor(variantCopyConstructor);
+        } else {
+            ctorAndArgs.setConstructor(copyConstructor);
+        }
         // Set the source object for the copy constructor:
         ctorAndArgs.getArgs()[0] = sourceElement;
 
@@ -25,12 +25,13 @@ public class CtorAndArgs<T> {
     /**
      * Create a {@link CtorAndArgs} instance. The presumption is that types in args
      * match those expected by constructor. Obviously exceptions may be generated at construction time if
-     * this is not the case.
+     * this is not the case. The constructor may be that of a subclass of T (e.g. of one of the element
+     * variants of a {@link StructuredArray}).
      *
      * @param constructor Constructor to be indicated in this {@link CtorAndArgs}
      * @param args constructor arguments to be indicated in this {@link CtorAndArgs}
      */
-    public CtorAndArgs(final Constructor<T> constructor, final Object... args) {
+    public CtorAndArgs(final Constructor<? extends T> constructor, final Object... args) {
         setConstructor(constructor);
         setArgs(args);
     }
@@ -82,11 +83,12 @@ public class CtorAndArgs<T> {
      *
      * @param constructor Constructor to be indicated in this CtorAndArgs
      */
-    public final CtorAndArgs<T> setConstructor(final Constructor<T> constructor) {
+    @SuppressWarnings("unchecked")
+    public final CtorAndArgs<T> setConstructor(final Constructor<? extends T> constructor) {
         if (null == constructor) {
             throw new NullPointerException("constructor cannot be null");
         }
-        this.constructor = constructor;
+        this.constructor = (Constructor<T>) constructor;
         return this;
     }
 
@@ -0,0 +1,219 @@
+/*
+ * Written by Gil Tene and Martin Thompson, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+package org.ObjectLayout;
+
+/**
+ * A {@link PrimitiveLongArray} that records which pages (fixed-size, power of two runs of elements) have
+ * been modified through {@link #set(int, long)} or {@link #set(long, long)}.
+ * <p>
+ * Dirty page tracking allows incremental checkpointing of large arrays: a full snapshot is written once
+ * (see {@link ArraySnapshot#write(AbstractPrimitiveArray, java.nio.channels.WritableByteChannel)}), after
+ * which each {@link ArraySnapshot#writeDelta(DirtyTrackingLongArray, java.nio.channels.WritableByteChannel)}
+ * writes only the pages modified since the previous checkpoint, and clears their dirty state. Restoring
+ * reads the full snapshot and applies the deltas in order with
+ * {@link ArraySnapshot#applyDelta(PrimitiveLongArray, java.nio.channels.ReadableByteChannel)}, so
+ * checkpoint I/O is proportional to the rate of change rather than to the size of the array.
+ * <p>
+ * Each page is tracked by one bit. A set() to an already dirty page only reads its bit, so repeated
+ * writes to hot pages do not write to the tracking state. Writes made through {@link #asArray()} are
+ * not tracked; use {@link #markDirty(long, long)} to record them. As with the elements themselves, the
+ * tracking state is not synchronized: concurrent writers, or a writer concurrent with a delta checkpoint,
+ * require external synchronization.
+ * <p>
+ * The tracking state is transient and is not part of a snapshot. An array read back from a snapshot
+ * starts out with no dirty pages, and with the default page size.
+ */
+public class DirtyTrackingLongArray extends PrimitiveLongArray {
+
+    /**
+     * The default page size, as a power of two exponent: 512 longs (4KB) per page.
+     */
+    public static final int DEFAULT_PAGE_SIZE_EXPONENT = 9;
+
+    private final transient int pageSizeExponent;
+    private final transient long pageCount;
+    private final transient long[] dirtyPages;
+
+    /**
+     * Default constructor. Tracks pages of 2^{@link #DEFAULT_PAGE_SIZE_EXPONENT} elements.
+     */
+    public DirtyTrackingLongArray() {
+        this(DEFAULT_PAGE_SIZE_EXPONENT);
+    }
+
+    /**
+     * Construct an array tracking pages of 2^<code>pageSizeExponent</code> elements. Use with
+     * {@link PrimitiveLongArray#newInstance(long, java.lang.reflect.Constructor, Object...)}.
+     *
+     * @param pageSizeExponent the page size, as a power of two exponent (0 to 30)
+     * @throws IllegalArgumentException if <code>pageSizeExponent</code> is out of range, or the array
+     * is too long to track at that page size
+     */
+    public DirtyTrackingLongArray(final int pageSizeExponent) throws IllegalArgumentException {
+        super();
+        if ((pageSizeExponent < 0) || (pageSizeExponent > 30)) {
+            throw new IllegalArgumentException("pageSizeExponent must be between 0 and 30");
+        }
+        this.pageSizeExponent = pageSizeExponent;
+        this.pageCount = (getLength() + (1L << pageSizeExponent) - 1) >>> pageSizeExponent;
+        final long wordCount = (pageCount + 63) >>> 6;
+        if (wordCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Array of length " + getLength() +
+                    " is too long to track with pages of 2^" + pageSizeExponent + " elements");
+        }
+        this.dirtyPages = new long[(int) wordCount];
+    }
+
+    /**
+     * Copying constructor. The copy has the same contents and dirty pages as the source array.
+     *
+     * @param sourceArray the array to copy
+     */
+    public DirtyTrackingLongArray(final DirtyTrackingLongArray sourceArray) {
+        super(sourceArray);
+        this.pageSizeExponent = sourceArray.pageSizeExponent;
+        this.pageCount = sourceArray.pageCount;
+        this.dirtyPages = sourceArray.dirtyPages.clone();
+    }
+
+    @Override
+    public void set(final int index, final long value) {
+        _set(index, value);
+        markPageDirty(index >>> pageSizeExponent);
+    }
+
+    @Override
+    public void set(final long index, final long value) {
+        _set(index, value);
+        markPageDirty(index >>> pageSizeExponent);
+    }
+
+    /**
+     * Mark the pages holding the elements <code>[fromIndex, toIndex)</code> as dirty, e.g. after
+     * modifying them through {@link #asArray()}.
+     *
+     * @param fromIndex the index of the first modified element
+     * @param toIndex the index after the last modified element
+     * @throws ArrayIndexOutOfBoundsException if the range is not within the array
+     */
+    public void markDirty(final long fromIndex, final long toIndex) {
+        if ((fromIndex < 0) || (toIndex > getLength()) || (fromIndex > toIndex)) {
+            throw new ArrayIndexOutOfBoundsException(
+                    "range [" + fromIndex + ", " + toIndex + ") is out of bounds");
+        }
+        if (fromIndex == toIndex) {
+            return;
+        }
+        final long lastPage = (toIndex - 1) >>> pageSizeExponent;
+        for (long page = fromIndex >>> pageSizeExponent; page <= lastPage; page++) {
+            markPageDirty(page);
+        }
+    }
+
+    private void markPageDirty(final long page) {
+        final int wordIndex = (int) (page >>> 6);
+        final long word = dirtyPages[wordIndex];
+        final long bit = 1L << page;
+        if ((word & bit) == 0) {
+            dirtyPages[wordIndex] = word | bit;
+        }
+    }
+
+    /**
+     * Get the number of elements per tracked page
+     *
+     * @return the number of elements per tracked page
+     */
+    public long getPageSize() {
+        return 1L << pageSizeExponent;
+    }
+
+    /**
+     * Get the page size, as a power of two exponent
+     *
+     * @return the page size, as a power of two exponent
+     */
+    public int getPageSizeExponent() {
+        return pageSizeExponent;
+    }
+
+    /**
+     * Get the number of tracked pages. The last page may be shorter than the page size.
+     *
+     * @return the number of tracked pages
+     */
+    public long getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Determine if a page has been modified since its dirty state was last cleared
+     *
+     * @param page the page
+     * @return true if the page is dirty
+     */
+    public boolean isPageDirty(final long page) {
+        if ((page < 0) || (page >= pageCount)) {
+            throw new ArrayIndexOutOfBoundsException("page " + page + " is out of bounds");
+        }
+        return (dirtyPages[(int) (page >>> 6)] & (1L << page)) != 0;
+    }
+
+    /**
+     * Find the first dirty page at or after <code>fromPage</code>
+     *
+     * @param fromPage the page to start searching from
+     * @return the first dirty page at or after <code>fromPage</code>, or -1 if there is none
+     */
+    public long nextDirtyPage(final long fromPage) {
+        if (fromPage >= pageCount) {
+            return -1;
+        }
+        int wordIndex = (int) (Math.max(fromPage, 0) >>> 6);
+        long word = dirtyPages[wordIndex] & (-1L << Math.max(fromPage, 0));
+        while (word == 0) {
+            if (++wordIndex == dirtyPages.length) {
+                return -1;
+            }
+            word = dirtyPages[wordIndex];
+        }
+        return ((long) wordIndex << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Count the dirty pages
+     *
+     * @return the number of dirty pages
+     */
+    public long getDirtyPageCount() {
+        long count = 0;
+        for (final long word : dirtyPages) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Clear the dirty state of a page
+     *
+     * @param page the page
+     */
+    public void clearPageDirty(final long page) {
+        if ((page < 0) || (page >= pageCount)) {
+            throw new ArrayIndexOutOfBoundsException("page " + page + " is out of bounds");
+        }
+        dirtyPages[(int) (page >>> 6)] &= ~(1L << page);
+    }
+
+    /**
+     * Clear the dirty state of all pages, e.g. after writing a full snapshot of the array.
+     */
+    public void clearDirtyPages() {
+        for (int i = 0; i < dirtyPages.length; i++) {
+            dirtyPages[i] = 0;
+        }
+    }
+}
@@ -0,0 +1,555 @@
+/*
+ * Written by Gil Tene and Martin Thompson, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+package org.ObjectLayout;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimates the heap footprint of {@link StructuredArray} and PrimitiveArray instances from their models,
+ * for capacity planning, without constructing them.
+ * <p>
+ * The estimate follows the storage representation of the vanilla Java implementation: each StructuredArray
+ * is an array object holding references to separately allocated elements, in an int-addressable backing
+ * array plus a (usually empty) set of long-addressable partitions, and each PrimitiveArray is an array
+ * object holding its values in the same kind of partitioned backing storage. Intrinsic objects declared
+ * with {@link Intrinsic @Intrinsic} in element classes are separately allocated objects, and are counted
+ * with the elements that contain them. An optimized JDK implementation that lays elements out inline
+ * will use less memory than estimated here. Elements of arrays with element variants (see
+ * {@link StructuredArrayModel#getElementVariants()}) are estimated as if all were of the largest variant,
+ * which is the per-element stride a flat layout of such an array would need.
+ * <p>
+ * Object sizes are computed from a simple model of the JVM's object layout: an object header, the
+ * instance fields of the class and all its superclasses packed without gaps, and padding to the object
+ * alignment. Array sizes are an array header followed by the elements, padded to the object alignment.
+ * {@link #forCurrentJvm()} determines the header sizes, reference size and alignment of the running
+ * JVM. Shared metadata (the array model and {@link Class} objects) is not counted, nor are the reflective
+ * {@link Field} objects StructuredArrays keep for copying elements, nor objects referenced from fields
+ * added by subclasses of the array classes.
+ * <p>
+ * The footprint is broken down per nesting level (see {@link Level}): level 0 is the top-level array,
+ * level 1 its sub-arrays (if any), and so on down to the level holding the leaf elements.
+ */
+public final class FootprintEstimator {
+
+    private static final String HOTSPOT_DIAGNOSTIC_MBEAN_NAME = "com.sun.management:type=HotSpotDiagnostic";
+
+    private final int objectHeaderBytes;
+    private final int arrayHeaderBytes;
+    private final int referenceBytes;
+    private final int objectAlignment;
+
+    // Per class sizes, which do not change once computed:
+    private final ConcurrentHashMap<Class, Long> instanceSizes = new ConcurrentHashMap<Class, Long>();
+    private final ConcurrentHashMap<Class, Long> intrinsicObjectsSizes = new ConcurrentHashMap<Class, Long>();
+
+    /**
+     * Create an estimator for a given object layout
+     *
+     * @param objectHeaderBytes the size of an object header (e.g. 12 with compressed class pointers)
+     * @param arrayHeaderBytes the offset of the first element of an array (e.g. 16 with compressed class
+     *                         pointers)
+     * @param referenceBytes the size of a reference (4 with compressed oops, 8 without)
+     * @param objectAlignment the alignment of objects in the heap (a power of two, typically 8)
+     * @throws IllegalArgumentException if a size is not positive or the alignment is not a power of two
+     */
+    public FootprintEstimator(final int objectHeaderBytes,
+                              final int arrayHeaderBytes,
+                              final int referenceBytes,
+                              final int objectAlignment) throws IllegalArgumentException {
+        if ((objectHeaderBytes <= 0) || (arrayHeaderBytes <= 0) || (referenceBytes <= 0)) {
+            throw new IllegalArgumentException("header and reference sizes must be positive");
+        }
+        if ((objectAlignment <= 0) || (Integer.bitCount(objectAlignment) != 1)) {
+            throw new IllegalArgumentException("objectAlignment must be a power of two");
+        }
+        this.objectHeaderBytes = objectHeaderBytes;
+        this.arrayHeaderBytes = arrayHeaderBytes;
+        this.referenceBytes = referenceBytes;
+        this.objectAlignment = objectAlignment;
+    }
+
+    /**
+     * Create an estimator for the object layout of the running JVM. The layout is derived from the JVM's
+     * compressed oops, compressed class pointers and object alignment settings where the JVM exposes them
+     * (as HotSpot does), and otherwise from the JVM's data model and maximum heap size.
+     *
+     * @return an estimator for the object layout of the running JVM
+     */
+    public static FootprintEstimator forCurrentJvm() {
+        final boolean is64Bit = !"32".equals(System.getProperty("sun.arch.data.model"));
+        // HotSpot's defaults, used when the options cannot be read:
+        final boolean defaultCompressedOops = is64Bit && (Runtime.getRuntime().maxMemory() < (32L << 30));
+        final boolean compressedOops = getBooleanVMOption("UseCompressedOops", defaultCompressedOops);
+        final boolean compressedClassPointers = getBooleanVMOption("UseCompressedClassPointers", compressedOops);
+        final int objectAlignment = getIntVMOption("ObjectAlignmentInBytes", 8);
+
+        if (!is64Bit) {
+            return new FootprintEstimator(8, 12, 4, objectAlignment);
+        }
+        final int objectHeaderBytes = compressedClassPointers ? 12 : 16;
+        final int arrayHeaderBytes = (int) align(objectHeaderBytes + 4, 8);
+        return new FootprintEstimator(objectHeaderBytes, arrayHeaderBytes, compressedOops ? 4 : 8, objectAlignment);
+    }
+
+    /**
+     * Estimate the footprint of a StructuredArray described by a model
+     *
+     * @param arrayModel the model of the array
+     * @return the estimated footprint
+     */
+    public Footprint estimate(final StructuredArrayModel arrayModel) {
+        final List<Level> levels = new ArrayList<Level>();
+        addStructuredLevels(arrayModel, 1, levels);
+        return new Footprint(levels);
+    }
+
+    /**
+     * Estimate the footprint of a PrimitiveArray (or {@link ReferenceArray}) described by a model
+     *
+     * @param arrayModel the model of the array
+     * @return the estimated footprint
+     */
+    public Footprint estimate(final PrimitiveArrayModel arrayModel) {
+        final List<Level> levels = new ArrayList<Level>();
+        addPrimitiveLevel(arrayModel, 1, levels);
+        return new Footprint(levels);
+    }
+
+    /**
+     * Estimate the footprint of an existing StructuredArray, from its model
+     *
+     * @param array the array
+     * @return the estimated footprint
+     */
+    public Footprint estimate(final StructuredArray<?> array) {
+        return estimate(array.getArrayModel());
+    }
+
+    /**
+     * Estimate the footprint of an existing PrimitiveArray (or {@link ReferenceArray})
+     *
+     * @param array the array
+     * @return the estimated footprint
+     */
+    @SuppressWarnings("unchecked")
+    public Footprint estimate(final AbstractPrimitiveArray array) {
+        return estimate(new PrimitiveArrayModel(array.getClass(), array._getLength()));
+    }
+
+    /**
+     * Estimate the size of an instance of a class, including padding but not including any objects it
+     * refers to (its shallow size)
+     *
+     * @param objectClass the class
+     * @return the estimated size of an instance, in bytes
+     */
+    public long instanceSize(final Class objectClass) {
+        final Long cachedSize = instanceSizes.get(objectClass);
+        if (cachedSize != null) {
+            return cachedSize;
+        }
+        long size = objectHeaderBytes;
+        for (Class c = objectClass; c != null; c = c.getSuperclass()) {
+            for (final Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    size += fieldSize(field.getType());
+                }
+            }
+        }
+        size = align(size, objectAlignment);
+        instanceSizes.put(objectClass, size);
+        return size;
+    }
+
+    /**
+     * Estimate the size of a Java array, including padding
+     *
+     * @param componentType the component type of the array (e.g. <code>long.class</code>)
+     * @param length the length of the array
+     * @return the estimated size of the array, in bytes
+     */
+    public long arraySize(final Class componentType, final long length) {
+        return align(arrayHeaderBytes + (length * fieldSize(componentType)), objectAlignment);
+    }
+
+    /**
+     * Estimate the size of an instance of a class together with its intrinsic objects (recursively)
+     *
+     * @param objectClass the class
+     * @return the estimated size of an instance and its intrinsic objects, in bytes
+     */
+    public long instanceSizeWithIntrinsics(final Class objectClass) {
+        return instanceSize(objectClass) + intrinsicObjectsSize(objectClass);
+    }
+
+    private void addStructuredLevels(final AbstractStructuredArrayModel arrayModel,
+                                     final long arrayCount,
+                                     final List<Level> levels) {
+        final long length = arrayModel._getLength();
+        final Class elementClass = arrayModel._getElementClass();
+
+        final long arrayObjectBytes = instanceSize(arrayModel._getArrayClass());
+        final long storageBytes = storageSize(Object.class, length);
+        final Class[] elementVariants = arrayModel._getElementVariants();
+        long fieldTableBytes = arraySize(Field.class, instanceFieldCount(elementClass));
+        Class sizingClass = elementClass;
+        if (elementVariants != null) {
+            sizingClass = elementVariants[0];
+            for (final Class variant : elementVariants) {
+                int variantFieldCount = 0;
+                for (Class c = variant; c != elementClass.getSuperclass(); c = c.getSuperclass()) {
+                    variantFieldCount += instanceFieldCount(c);
+                }
+                fieldTableBytes += arraySize(Field.class, variantFieldCount);
+                if (instanceSizeWithIntrinsics(variant) > instanceSizeWithIntrinsics(sizingClass)) {
+                    sizingClass = variant;
+                }
+            }
+        }
+
+        final AbstractStructuredArrayModel structuredSubArrayModel = arrayModel._getStructuredSubArrayModel();
+        final AbstractPrimitiveArrayModel primitiveSubArrayModel = arrayModel._getPrimitiveSubArrayModel();
+        final boolean isLeaf = (structuredSubArrayModel == null) && (primitiveSubArrayModel == null);
+
+        levels.add(new Level(levels.size(), arrayModel._getArrayClass(), elementClass, arrayCount, length,
+                arrayCount * arrayObjectBytes,
+                arrayCount * storageBytes,
+                arrayCount * fieldTableBytes,
+                isLeaf ? arrayCount * length * instanceSize(sizingClass) : 0,
+                isLeaf ? arrayCount * length * intrinsicObjectsSize(sizingClass) : 0));
+
+        if (structuredSubArrayModel != null) {
+            addStructuredLevels(structuredSubArrayModel, arrayCount * length, levels);
+        } else if (primitiveSubArrayModel != null) {
+            addPrimitiveLevel(primitiveSubArrayModel, arrayCount * length, levels);
+        }
+    }
+
+    private void addPrimitiveLevel(final AbstractPrimitiveArrayModel arrayModel,
+                                   final long arrayCount,
+                                   final List<Level> levels) {
+        final long length = arrayModel._getLength();
+        final Class componentType = storageComponentType(arrayModel._getArrayClass());
+        levels.add(new Level(levels.size(), arrayModel._getArrayClass(), componentType, arrayCount, length,
+                arrayCount * instanceSize(arrayModel._getArrayClass()),
+                arrayCount * storageSize(componentType, length),
+                0, 0, 0));
+    }
+
+    /**
+     * The size of the backing storage of an array of a given length: an int-addressable Java array, and a
+     * Java array of long-addressable partitions (which always holds at least one, possibly empty, partition).
+     */
+    private long storageSize(final Class componentType, final long length) {
+        final int intLength = (int) Math.min(length, Integer.MAX_VALUE);
+        final long extraLength = length - intLength;
+        final long numFullPartitions = extraLength >>> AbstractPrimitiveArray.MAX_EXTRA_PARTITION_SIZE_POW2_EXPONENT;
+        final long lastPartitionSize = extraLength & AbstractPrimitiveArray.PARTITION_MASK;
+        return arraySize(componentType, intLength) +
+                arraySize(Object.class, numFullPartitions + 1) +
+                (numFullPartitions * arraySize(componentType, AbstractPrimitiveArray.MAX_EXTRA_PARTITION_SIZE)) +
+                arraySize(componentType, lastPartitionSize);
+    }
+
+    private long intrinsicObjectsSize(final Class objectClass) {
+        final Long cachedSize = intrinsicObjectsSizes.get(objectClass);
+        if (cachedSize != null) {
+            return cachedSize;
+        }
+        long size = 0;
+        for (Class c = objectClass; c != null; c = c.getSuperclass()) {
+            for (final Field field : c.getDeclaredFields()) {
+                if (field.getAnnotation(Intrinsic.class) == null) {
+                    continue;
+                }
+                final IntrinsicObjectModel model = IntrinsicObjects.createModel(field);
+                if (model._isStructuredArray()) {
+                    size += estimate((StructuredArrayModel) model._getStructuredArrayModel()).getTotalBytes();
+                } else if (model._isPrimitiveArray()) {
+                    size += estimate((PrimitiveArrayModel) model._getPrimitiveArrayModel()).getTotalBytes();
+                } else {
+                    size += instanceSizeWithIntrinsics(field.getType());
+                }
+            }
+        }
+        intrinsicObjectsSizes.put(objectClass, size);
+        return size;
+    }
+
+    private long fieldSize(final Class type) {
+        if ((type == long.class) || (type == double.class)) {
+            return 8;
+        } else if ((type == int.class) || (type == float.class)) {
+            return 4;
+        } else if ((type == short.class) || (type == char.class)) {
+            return 2;
+        } else if ((type == byte.class) || (type == boolean.class)) {
+            return 1;
+        }
+        return referenceBytes;
+    }
+
+    private static int instanceFieldCount(final Class objectClass) {
+        int count = 0;
+        for (final Field field : objectClass.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    static Class storageComponentType(final Class arrayClass) {
+        for (Class c = arrayClass; c != null; c = c.getSuperclass()) {
+            if (c == AbstractPrimitiveLongArray.class) {
+                return long.class;
+            } else if (c == AbstractPrimitiveDoubleArray.class) {
+                return double.class;
+            } else if (c == AbstractPrimitiveIntArray.class) {
+                return int.class;
+            } else if (c == AbstractPrimitiveFloatArray.class) {
+                return float.class;
+            } else if (c == AbstractPrimitiveShortArray.class) {
+                return short.class;
+            } else if (c == AbstractPrimitiveCharArray.class) {
+                return char.class;
+            } else if (c == AbstractPrimitiveByteArray.class) {
+                return byte.class;
+            }
+        }
+        // ReferenceArray:
+        return Object.class;
+    }
+
+    private static long align(final long size, final int alignment) {
+        return (size + alignment - 1) & -alignment;
+    }
+
+    private static boolean getBooleanVMOption(final String name, final boolean defaultValue) {
+        final String value = getVMOption(name);
+        return (value != null) ? Boolean.parseBoolean(value) : defaultValue;
+    }
+
+    private static int getIntVMOption(final String name, final int defaultValue) {
+        final String value = getVMOption(name);
+        try {
+            return (value != null) ? Integer.parseInt(value) : defaultValue;
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
+    }
+
+    private static String getVMOption(final String name) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final Object option = server.invoke(new ObjectName(HOTSPOT_DIAGNOSTIC_MBEAN_NAME), "getVMOption",
+                    new Object[] {name}, new String[] {String.class.getName()});
+            return String.valueOf(((CompositeData) option).get("value"));
+        } catch (Exception ex) {
+            // Not a HotSpot JVM, or no such option in this JVM version:
+            return null;
+        }
+    }
+
+    /**
+     * The estimated footprint of an array, broken down by nesting level
+     */
+    public static final class Footprint {
+        private final List<Level> levels;
+
+        Footprint(final List<Level> levels) {
+            this.levels = Collections.unmodifiableList(levels);
+        }
+
+        /**
+         * Get the per-level breakdown of the footprint
+         *
+         * @return the levels, from the top-level array (level 0) down to the leaf elements
+         */
+        public List<Level> getLevels() {
+            return levels;
+        }
+
+        /**
+         * Get the total estimated footprint
+         *
+         * @return the total estimated footprint, in bytes
+         */
+        public long getTotalBytes() {
+            long total = 0;
+            for (final Level level : levels) {
+                total += level.getTotalBytes();
+            }
+            return total;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder builder = new StringBuilder();
+            for (final Level level : levels) {
+                builder.append(level).append('\n');
+            }
+            builder.append("total: ").append(getTotalBytes()).append(" bytes");
+            return builder.toString();
+        }
+    }
+
+    /**
+     * The estimated footprint of one nesting level of an array: all the arrays at that level, with their
+     * backing storage, and (at the leaf level of a StructuredArray) their elements.
+     */
+    public static final class Level {
+        private final int depth;
+        private final Class arrayClass;
+        private final Class elementClass;
+        private final long arrayCount;
+        private final long length;
+        private final long arrayObjectBytes;
+        private final long storageBytes;
+        private final long fieldTableBytes;
+        private final long elementBytes;
+        private final long intrinsicObjectBytes;
+
+        Level(final int depth, final Class arrayClass, final Class elementClass,
+              final long arrayCount, final long length,
+              final long arrayObjectBytes, final long storageBytes, final long fieldTableBytes,
+              final long elementBytes, final long intrinsicObjectBytes) {
+            this.depth = depth;
+            this.arrayClass = arrayClass;
+            this.elementClass = elementClass;
+            this.arrayCount = arrayCount;
+            this.length = length;
+            this.arrayObjectBytes = arrayObjectBytes;
+            this.storageBytes = storageBytes;
+            this.fieldTableBytes = fieldTableBytes;
+            this.elementBytes = elementBytes;
+            this.intrinsicObjectBytes = intrinsicObjectBytes;
+        }
+
+        /**
+         * Get the nesting depth of this level (0 for the top-level array)
+         *
+         * @return the nesting depth of this level
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * Get the class of the arrays at this level
+         *
+         * @return the class of the arrays at this level
+         */
+        public Class getArrayClass() {
+            return arrayClass;
+        }
+
+        /**
+         * Get the class of the elements of the arrays at this level (for PrimitiveArrays, the primitive
+         * component type of their storage, or Object for {@link ReferenceArray})
+         *
+         * @return the class of the elements of the arrays at this level
+         */
+        public Class getElementClass() {
+            return elementClass;
+        }
+
+        /**
+         * Get the number of arrays at this level
+         *
+         * @return the number of arrays at this level
+         */
+        public long getArrayCount() {
+            return arrayCount;
+        }
+
+        /**
+         * Get the length of each array at this level
+         *
+         * @return the length of each array at this level
+         */
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * Get the size of the array objects themselves (headers and fields)
+         *
+         * @return the size of the array objects, in bytes
+         */
+        public long getArrayObjectBytes() {
+            return arrayObjectBytes;
+        }
+
+        /**
+         * Get the size of the arrays' backing storage: the int-addressable and long-addressable partition
+         * Java arrays holding element references (for StructuredArrays) or values (for PrimitiveArrays)
+         *
+         * @return the size of the backing storage, in bytes
+         */
+        public long getStorageBytes() {
+            return storageBytes;
+        }
+
+        /**
+         * Get the size of the per-array tables of element fields that StructuredArrays keep for copying
+         * elements (not including the {@link Field} objects they refer to)
+         *
+         * @return the size of the field tables, in bytes
+         */
+        public long getFieldTableBytes() {
+            return fieldTableBytes;
+        }
+
+        /**
+         * Get the size of the leaf elements at this level (0 for levels holding sub-arrays)
+         *
+         * @return the size of the leaf elements, in bytes
+         */
+        public long getElementBytes() {
+            return elementBytes;
+        }
+
+        /**
+         * Get the size of the intrinsic objects (recursively) of the leaf elements at this level
+         *
+         * @return the size of the intrinsic objects, in bytes
+         */
+        public long getIntrinsicObjectBytes() {
+            return intrinsicObjectBytes;
+        }
+
+        /**
+         * Get the total size of this level
+         *
+         * @return the total size of this level, in bytes
+         */
+        public long getTotalBytes() {
+            return arrayObjectBytes + storageBytes + fieldTableBytes + elementBytes + intrinsicObjectBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "level " + depth + ": " + arrayCount + " x " + arrayClass.getSimpleName() +
+                    "[" + length + "] of " + elementClass.getSimpleName() +
+                    ": arrays " + arrayObjectBytes +
+                    ", storage " + storageBytes +
+                    ", field tables " + fieldTableBytes +
+                    ", elements " + elementBytes +
+                    ", intrinsic objects " + intrinsicObjectBytes +
+                    " (total " + getTotalBytes() + " bytes)";
+        }
+    }
+}
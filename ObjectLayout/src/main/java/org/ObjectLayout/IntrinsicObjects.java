@@ -192,7 +192,7 @@ public final class IntrinsicObjects {
         return objectModel;
     }
 
-    private static <T> IntrinsicObjectModel<T> createModel(Field field) {
+    static <T> IntrinsicObjectModel<T> createModel(Field field) {
         @SuppressWarnings("unchecked")
         Class<T> objectClass = (Class<T>) field.getType();
         Class containingClass = field.getDeclaringClass();
@@ -9,9 +9,16 @@ import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import static java.lang.reflect.Modifier.*;
 
@@ -31,6 +38,12 @@ import static java.lang.reflect.Modifier.*;
  *     constructors and arguments, the selection of which can take the element index and construction context
  *     into account.
  * <p>
+ *     A leaf StructuredArray may also be created with a closed set of element variant classes (see
+ *     {@link StructuredArrayModel#StructuredArrayModel(Class, Class, Class[], long)}), in which case each element
+ *     may be an instance of any one of the variants, as chosen per index by the {@link CtorAndArgsProvider}. The
+ *     variant of an element is identified by its type tag ({@link StructuredArray#getElementTypeTag(long)}),
+ *     allowing e.g. heterogeneous records to be held in a single array and dispatched on while iterating.
+ * <p>
  *     StructuredArray is designed with semantics specifically chosen and restricted such that a "flat" memory
  *     layout of the implemented data structure would be possible on optimizing JVMs. Doing so provides for the
  *     possibility of matching access speed benefits that exist in data structures with similar semantics that
@@ -48,6 +61,10 @@ public class StructuredArray<T> extends AbstractStructuredArray<T> implements It
     final Field[] fields;
     final boolean hasFinalFields;
 
+    // Element variants and their fields, in type tag order (null if elements are all of the element class):
+    final Class[] elementVariants;
+    private final Field[][] variantFields;
+
     private final StructuredArrayModel<? extends StructuredArray<T>, T> arrayModel;
 
     // Single-dimensional newInstance forms:
@@ -273,7 +290,8 @@ public class StructuredArray<T> extends AbstractStructuredArray<T> implements It
     /**
      * Copy a given array of elements to a newly created array. Copying of individual elements is done by using
      * the <code>elementClass</code> copy constructor to construct the individual member elements of the new
-     * array based on the corresponding elements of the <code>source</code> array.
+     * array based on the corresponding elements of the <code>source</code> array. Elements of arrays with element
+     * variants are copied using the copy constructor of each element's own variant class.
      *
      * @param source The array to duplicate
      * @param <S> The class of the array to be created
@@ -323,11 +341,78 @@ public class StructuredArray<T> extends AbstractStructuredArray<T> implements It
      * @return The newly created array
      * @throws NoSuchMethodException if any contained element class does not support a copy constructor
      */
-    @SuppressWarnings("unchecked")
     public static <S extends StructuredArray<T>, T> S copyInstance(
             final S source,
             final long[] sourceOffsets,
             final long[] counts) throws NoSuchMethodException {
+        return copyInstance(source, sourceOffsets, counts, null);
+    }
+
+    /**
+     * Copy a given array of elements to a newly created array, copying disjoint index ranges of the
+     * (outermost) array in parallel. Each of the <code>parallelism</code> index ranges is copied by a separate
+     * task submitted to <code>executor</code>, with its own copy constructor provider, and this method returns
+     * when all ranges have been copied.
+     * <p>
+     * Nested arrays are copied in parallel at the outermost level, with each task copying the sub-arrays
+     * in its range sequentially. If copying any range fails, the ranges not yet copied are cancelled.
+     * <p>
+     * The calling thread blocks until all ranges have been copied, so calling this method from a task
+     * running on <code>executor</code> can deadlock when the executor has a bounded number of threads.
+     *
+     * @param source The array to duplicate
+     * @param executor The executor to run copying tasks on
+     * @param parallelism The number of index ranges to copy in parallel
+     * @param <S> The class of the array to be created
+     * @param <T> The class of the array elements
+     * @return The newly created array
+     * @throws NoSuchMethodException if any contained element class does not support a copy constructor
+     */
+    public static <S extends StructuredArray<T>, T> S copyInstance(
+            final S source,
+            final ExecutorService executor,
+            final int parallelism) throws NoSuchMethodException {
+        return copyInstance(source, new long[] {0}, new long[] {source.getLength()}, executor, parallelism);
+    }
+
+    /**
+     * Copy a range from an array of elements to a newly created array, copying disjoint index ranges of the
+     * (outermost) array in parallel. See {@link #copyInstance(StructuredArray, ExecutorService, int)} and
+     * {@link #copyInstance(StructuredArray, long[], long[])}.
+     * <p>
+     * The calling thread blocks until all ranges have been copied, so calling this method from a task
+     * running on <code>executor</code> can deadlock when the executor has a bounded number of threads.
+     *
+     * @param source The array to copy from
+     * @param sourceOffsets offset indexes, indicating where the source region to be copied begins at each
+     *                      StructuredArray nesting depth
+     * @param counts the number of elements to copy at each StructuredArray nesting depth
+     * @param executor The executor to run copying tasks on
+     * @param parallelism The number of index ranges to copy in parallel
+     * @param <S> The class of the array to be created
+     * @param <T> The class of the array elements
+     * @return The newly created array
+     * @throws NoSuchMethodException if any contained element class does not support a copy constructor
+     */
+    public static <S extends StructuredArray<T>, T> S copyInstance(
+            final S source,
+            final long[] sourceOffsets,
+            final long[] counts,
+            final ExecutorService executor,
+            final int parallelism) throws NoSuchMethodException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        return copyInstance(source, sourceOffsets, counts,
+                new ParallelCopy(executor, parallelism, source.getArrayModel(), sourceOffsets, counts));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S extends StructuredArray<T>, T> S copyInstance(
+            final S source,
+            final long[] sourceOffsets,
+            final long[] counts,
+            final ParallelCopy parallelCopy) throws NoSuchMethodException {
         if (sourceOffsets.length != counts.length) {
             throw new IllegalArgumentException("sourceOffsets.length must match counts.length");
         }
@@ -359,9 +444,13 @@ public class StructuredArray<T> extends AbstractStructuredArray<T> implements It
         final StructuredArrayBuilder<S, T> arrayBuilder =
                 createCopyingArrayBuilder(sourceArrayModel, sourceOffsets, 0, counts, 0).
                         arrayCtorAndArgs(arrayConstructor, source).
-                        contextCookie(source);
+                        contextCookie(source).
+                        parallelCopy(parallelCopy);
 
-        return instantiate(arrayBuilder);
+        final long startTime = ArrayMetrics.startTime();
+        final S array = instantiateArray(arrayBuilder);
+        ArrayMetrics.recordStructuredArray(ArrayMetrics.Operation.COPY, array, startTime);
+        return array;
     }
 
     private static <S extends StructuredArray<T>, T> StructuredArrayBuilder<S, T> createCopyingArrayBuilder(
@@ -374,9 +463,19 @@ public class StructuredArray<T> extends AbstractStructuredArray<T> implements It
         long sourceOffset = (offsetsIndex < sourceOffsets.length) ? sourceOffsets[offsetsIndex] : 0;
         long count = (countsIndex < counts.length) ? counts[countsIndex] : sourceArrayModel.getLength();
 
-        final CtorAndArgs<T> ctorAndArgs = new CtorAndArgs<T>(elementClass, new Class[] {elementClass}, new Object[1]);
-        final CtorAndArgsProvider<T> elementCopyCtorAndArgsProvider =
-                new CopyCtorAndArgsProvider<T>(elementClass, sourceOffset, ctorAndArgs);
+        final Class[] elementVariants = sourceArrayModel._getElementVariants();
+        final CtorAndArgs<T> ctorAndArgs;
+        final CtorAndArgsProvider<T> elementCopyCtorAndArgsProvider;
+        if (elementVariants != null) {
+            // Elements are copied with the copy constructors of their own variant classes:
+            @SuppressWarnings("unchecked")
+            final Class<T> firstVariant = elementVariants[0];
+            ctorAndArgs = new CtorAndArgs<T>(firstVariant, new Class[] {firstVariant}, new Object[1]);
+            elementCopyCtorAndArgsProvider = new CopyCtorAndArgsProvider<T>(elementVariants, sourceOffset, ctorAndArgs);
+        } else {
+            ctorAndArgs = new CtorAndArgs<T>(elementClass, new Class[] {elementClass}, new Object[1]);
+            elementCopyCtorAndArgsProvider = new CopyCtorAndArgsProvider<T>(elementClass, sourceOffset, ctorAndArgs);
+        }
 
         if (sourceArrayModel.getStructuredSubArrayModel() != null) {
             // This array contains another array:
@@ -397,7 +496,11 @@ public class StructuredArray<T> extends AbstractStructuredArray<T> implements It
                     resolve();
         } else {
             // This is a leaf array (it's elements are regular objects):
-            return new StructuredArrayBuilder<S, T>(sourceArrayClass, elementClass, count).
+            @SuppressWarnings("unchecked")
+            final StructuredArrayBuilder<S, T> leafArrayBuilder = (elementVariants != null) ?
+                    new StructuredArrayBuilder<S, T>(sourceArrayClass, elementClass, elementVariants, count) :
+                    new StructuredArrayBuilder<S, T>(sourceArrayClass, elementClass, count);
+            return leafArrayBuilder.
                     elementCtorAndArgsProvider(elementCopyCtorAndArgsProvider).
                     resolve();
         }
@@ -430,6 +533,14 @@ public class StructuredArray<T> extends AbstractStructuredArray<T> implements It
 
     private static <S extends StructuredArray<T>, T> S instantiate(
             final StructuredArrayBuilder<S, T> arrayBuilder) {
+        final long startTime = ArrayMetrics.startTime();
+        final S array = instantiateArray(arrayBuilder);
+        ArrayMetrics.recordStructuredArray(ArrayMetrics.Operation.CONSTRUCTION, array, startTime);
+        return array;
+    }
+
+    private static <S extends StructuredArray<T>, T> S instantiateArray(
+            final StructuredArrayBuilder<S, T> arrayBuilder) {
         ConstructionContext<T> context = new ConstructionContext<T>(arrayBuilder.getContextCookie());
         ConstructorMagic constructorMagic = getConstructorMagic();
         constructorMagic.setConstructionArgs(arrayBuilder, context);
@@ -466,18 +577,36 @@ public class StructuredArray<T> extends AbstractStructuredArray<T> implements It
             field.setAccessible(true);
         }
         this.fields = fields;
-        this.hasFinalFields = containsFinalQualifiedFields(fields);
+
+        this.elementVariants = arrayModel._getElementVariants();
+        if (elementVariants != null) {
+            // Each variant's fields include those it inherits from (and including) the element class:
+            boolean variantsHaveFinalFields = false;
+            this.variantFields = new Field[elementVariants.length][];
+            for (int i = 0; i < elementVariants.length; i++) {
+                variantFields[i] = variantInstanceFields(elementVariants[i]);
+                variantsHaveFinalFields |= containsFinalQualifiedFields(variantFields[i]);
+            }
+            this.hasFinalFields = variantsHaveFinalFields;
+        } else {
+            this.variantFields = null;
+            this.hasFinalFields = containsFinalQualifiedFields(fields);
+        }
 
         StructuredArrayBuilder structuredSubArrayBuilder = arrayBuilder.getStructuredSubArrayBuilder();
         PrimitiveArrayBuilder primitiveSubArrayBuilder = arrayBuilder.getPrimitiveSubArrayBuilder();
 
-        if (structuredSubArrayBuilder != null) {
-            populateStructuredSubArrays(ctorAndArgsProvider, structuredSubArrayBuilder, context);
+        final ParallelCopy parallelCopy = arrayBuilder.getParallelCopy();
+
+        if (parallelCopy != null) {
+            populateInParallel(parallelCopy, context);
+        } else if (structuredSubArrayBuilder != null) {
+            populateStructuredSubArrays(ctorAndArgsProvider, structuredSubArrayBuilder, context, 0, getLength());
         } else if (primitiveSubArrayBuilder != null) {
-            populatePrimitiveSubArrays(ctorAndArgsProvider, primitiveSubArrayBuilder, context);
+            populatePrimitiveSubArrays(ctorAndArgsProvider, primitiveSubArrayBuilder, context, 0, getLength());
         } else {
             // This is a single dimension array. Populate it:
-            populateLeafElements(ctorAndArgsProvider, context);
+            populateLeafElements(ctorAndArgsProvider, context, 0, getLength());
         }
     }
 
@@ -538,6 +667,48 @@ public class StructuredArray<T> extends AbstractStructuredArray<T> implements It
         return super.get(index);
     }
 
+    /**
+     * Get the type tag of the element at the given index. The type tag is the index of the element's class
+     * in the element variants declared by the array's model (see
+     * {@link StructuredArrayModel#getElementVariants()}). Arrays whose model does not declare element
+     * variants hold elements of the element class only, and all their elements have a type tag of 0.
+     *
+     * @param index of the element
+     * @return the type tag of the element at the index
+     * @throws ArrayIndexOutOfBoundsException if index is out of bounds
+     */
+    public int getElementTypeTag(final long index) throws ArrayIndexOutOfBoundsException {
+        if ((index < 0) || (index >= getLength())) {
+            throw new ArrayIndexOutOfBoundsException("index " + index + " is out of bounds [0, " + getLength() + ")");
+        }
+        if (elementVariants == null) {
+            return 0;
+        }
+        return typeTagOf(get(index));
+    }
+
+    private int typeTagOf(final Object element) {
+        final Class elementClass = element.getClass();
+        for (int i = 0; i < elementVariants.length; i++) {
+            if (elementVariants[i] == elementClass) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Element class " + elementClass.getName() +
+                " is not one of the element variants");
+    }
+
+    private boolean isElementVariant(final Class c) {
+        if (elementVariants != null) {
+            for (final Class variant : elementVariants) {
+                if (variant == c) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     //
     //
     // Populating array elements:
@@ -582,17 +753,23 @@ public class StructuredArray<T> extends AbstractStructuredArray<T> implements It
     }
 
     private void populateLeafElements(final CtorAndArgsProvider<T> ctorAndArgsProvider,
-                                      final ConstructionContext<T> context) {
-        long length = getLength();
-
+                                      final ConstructionContext<T> context,
+                                      final long fromIndex,
+                                      final long toIndex) {
         try {
-            for (long index = 0; index < length; index++) {
+            for (long index = fromIndex; index < toIndex; index++) {
                 final CtorAndArgs<T> ctorAndArgs;
 
                 context.setIndex(index);
                 ctorAndArgs = ctorAndArgsProvider.getForContext(context);
 
-                if (ctorAndArgs.getConstructor().getDeclaringClass() != getElementClass()) {
+                if (elementVariants != null) {
+                    if (!isElementVariant(ctorAndArgs.getConstructor().getDeclaringClass())) {
+                        throw new IllegalArgumentException("ctorAndArgs.getConstructor().getDeclaringClass() (" +
+                                ctorAndArgs.getConstructor().getDeclaringClass() +
+                                ") is not one of the element variants of ElementClass (" + getElementClass() + ")");
+                    }
+                } else if (ctorAndArgs.getConstructor().getDeclaringClass() != getElementClass()) {
                     throw new IllegalArgumentException("ElementClass (" + getElementClass() +
                             ") does not match ctorAndArgs.getConstructor().getDeclaringClass() (" +
                             ctorAndArgs.getConstructor().getDeclaringClass() + ")");
@@ -607,11 +784,11 @@ public class StructuredArray<T> extends AbstractStructuredArray<T> implements It
 
     private void populatePrimitiveSubArrays(final CtorAndArgsProvider<T> subArrayCtorAndArgsProvider,
                                              final PrimitiveArrayBuilder subArrayBuilder,
-                                             final ConstructionContext<T> context) {
-        long length = getLength();
-
+                                             final ConstructionContext<T> context,
+                                             final long fromIndex,
+                                             final long toIndex) {
         try {
-            for (long index = 0; index < length; index++) {
+            for (long index = fromIndex; index < toIndex; index++) {
                 final CtorAndArgs<T> ctorAndArgs;
 
                 context.setIndex(index);
@@ -632,11 +809,11 @@ public class StructuredArray<T> extends AbstractStructuredArray<T> implements It
 
     private void populateStructuredSubArrays(final CtorAndArgsProvider<T> subArrayCtorAndArgsProvider,
                                    final StructuredArrayBuilder subArrayBuilder,
-                                   final ConstructionContext<T> context) {
-        long length = getLength();
-
+                                   final ConstructionContext<T> context,
+                                   final long fromIndex,
+                                   final long toIndex) {
         try {
-            for (long index = 0; index < length; index++) {
+            for (long index = fromIndex; index < toIndex; index++) {
                 final CtorAndArgs<T> ctorAndArgs;
 
                 context.setIndex(index);
@@ -655,6 +832,95 @@ public class StructuredArray<T> extends AbstractStructuredArray<T> implements It
         }
     }
 
+    /**
+     * Populate disjoint index ranges of this array in parallel, as part of a parallel copyInstance. Each range
+     * gets its own construction context and its own (copying) builder chain, so no per-element construction
+     * state is shared between workers.
+     */
+    private void populateInParallel(final ParallelCopy parallelCopy,
+                                    final ConstructionContext<T> context) {
+        final long length = getLength();
+        final long rangeLength = Math.max(1, (length + parallelCopy.parallelism - 1) / parallelCopy.parallelism);
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (long from = 0; from < length; from += rangeLength) {
+            final long fromIndex = from;
+            final long toIndex = Math.min(from + rangeLength, length);
+            futures.add(parallelCopy.executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws NoSuchMethodException {
+                    populateRange(parallelCopy, context.getContextCookie(), fromIndex, toIndex);
+                    return null;
+                }
+            }));
+        }
+        boolean done = false;
+        try {
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+            done = true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        } finally {
+            if (!done) {
+                // Do not keep populating an array that will be discarded:
+                for (final Future<Void> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void populateRange(final ParallelCopy parallelCopy,
+                               final Object contextCookie,
+                               final long fromIndex,
+                               final long toIndex) throws NoSuchMethodException {
+        final ConstructionContext<T> context = new ConstructionContext<T>(contextCookie);
+        context.setArray(this);
+
+        final StructuredArrayBuilder<StructuredArray<T>, T> workerBuilder =
+                createCopyingArrayBuilder(parallelCopy.sourceArrayModel,
+                        parallelCopy.sourceOffsets, 0, parallelCopy.counts, 0);
+        final CtorAndArgsProvider<T> ctorAndArgsProvider = workerBuilder.getElementCtorAndArgsProvider();
+
+        if (workerBuilder.getStructuredSubArrayBuilder() != null) {
+            populateStructuredSubArrays(ctorAndArgsProvider, workerBuilder.getStructuredSubArrayBuilder(),
+                    context, fromIndex, toIndex);
+        } else if (workerBuilder.getPrimitiveSubArrayBuilder() != null) {
+            populatePrimitiveSubArrays(ctorAndArgsProvider, workerBuilder.getPrimitiveSubArrayBuilder(),
+                    context, fromIndex, toIndex);
+        } else {
+            populateLeafElements(ctorAndArgsProvider, context, fromIndex, toIndex);
+        }
+    }
+
+    /**
+     * The parameters of a parallel copyInstance, carried by the top level array's builder.
+     */
+    static class ParallelCopy {
+        final ExecutorService executor;
+        final int parallelism;
+        final StructuredArrayModel sourceArrayModel;
+        final long[] sourceOffsets;
+        final long[] counts;
+
+        ParallelCopy(final ExecutorService executor,
+                     final int parallelism,
+                     final StructuredArrayModel sourceArrayModel,
+                     final long[] sourceOffsets,
+                     final long[] counts) {
+            this.executor = executor;
+            this.parallelism = parallelism;
+            this.sourceArrayModel = sourceArrayModel;
+            this.sourceOffsets = sourceOffsets;
+            this.counts = counts;
+        }
+    }
+
     /**
      * create a fresh StructuredArray intended to occupy a a given intrinsic field in the containing object,
      * at the field described by the supplied intrinsicObjectModel, using the supplied constructor and arguments.
@@ -878,6 +1144,21 @@ public class StructuredArray<T> extends AbstractStructuredArray<T> implements It
         public long getCursor() {
             return cursor;
         }
+
+        /**
+         * Get the type tag of the element most recently returned by {@link #next()}
+         * (see {@link StructuredArray#getElementTypeTag(long)}).
+         *
+         * @return the type tag of the element most recently returned by {@link #next()}
+         * @throws IllegalStateException if {@link #next()} has not been called since creation or the last
+         * {@link #reset()}
+         */
+        public int getTypeTag() throws IllegalStateException {
+            if (cursor == initialOffset) {
+                throw new IllegalStateException("next() has not been called");
+            }
+            return getElementTypeTag(cursor - 1);
+        }
     }
 
     //
@@ -905,6 +1186,33 @@ public class StructuredArray<T> extends AbstractStructuredArray<T> implements It
         return instanceFields;
     }
 
+    private Field[] variantInstanceFields(final Class variant) {
+        final List<Field> variantFields = new ArrayList<Field>();
+        for (Class c = variant; c != getElementClass().getSuperclass(); c = c.getSuperclass()) {
+            for (final Field field : removeStaticFields(c.getDeclaredFields())) {
+                field.setAccessible(true);
+                variantFields.add(field);
+            }
+        }
+        return variantFields.toArray(new Field[variantFields.size()]);
+    }
+
+    /**
+     * Get the fields to shallow copy from one element to another. Elements of arrays with element
+     * variants can only be copied onto elements of the same variant class.
+     */
+    private Field[] fieldsToCopy(final Object srcElement, final Object dstElement) {
+        if (variantFields == null) {
+            return fields;
+        }
+        if (srcElement.getClass() != dstElement.getClass()) {
+            throw new IllegalArgumentException(String.format(
+                    "Only elements of the same variant class can be copied: %s != %s",
+                    srcElement.getClass(), dstElement.getClass()));
+        }
+        return variantFields[typeTagOf(srcElement)];
+    }
+
     private boolean containsFinalQualifiedFields(final Field[] fields) {
         for (final Field field : fields) {
             if (isFinal(field.getModifiers())) {
@@ -915,7 +1223,8 @@ public class StructuredArray<T> extends AbstractStructuredArray<T> implements It
         return false;
     }
 
-    private static void shallowCopy(final Object src, final Object dst, final Field[] fields) {
+    void shallowCopyElement(final Object src, final Object dst) {
+        final Field[] fields = fieldsToCopy(src, dst);
         try {
             for (final Field field : fields) {
                 field.set(dst, field.get(src));
@@ -925,7 +1234,8 @@ public class StructuredArray<T> extends AbstractStructuredArray<T> implements It
         }
     }
 
-    private static void reverseShallowCopy(final Object src, final Object dst, final Field[] fields) {
+    void reverseShallowCopyElement(final Object src, final Object dst) {
+        final Field[] fields = fieldsToCopy(src, dst);
         try {
             for (int i = fields.length - 1; i >= 0; i--) {
                 final Field field = fields[i];
@@ -950,7 +1260,8 @@ public class StructuredArray<T> extends AbstractStructuredArray<T> implements It
      * @param count of structure elements to copy
      * @param <S> The class of the arrays
      * @param <T> The class of the array elements
-     * @throws IllegalArgumentException if the source and destination array element types are not identical, or if
+     * @throws IllegalArgumentException if the source and destination array element types (or element variants)
+     * are not identical, if corresponding source and destination elements are of different element variants, or if
      * the source or destination arrays have nested StructuredArrays within them, or if final fields are discovered
      * and all allowFinalFieldOverwrite is not true.
      */
@@ -981,7 +1292,8 @@ public class StructuredArray<T> extends AbstractStructuredArray<T> implements It
      * @param allowFinalFieldOverwrite allow final fields to be overwritten during a copy operation.
      * @param <S> The class of the arrays
      * @param <T> The class of the array elements
-     * @throws IllegalArgumentException if the source and destination array element types are not identical, or if
+     * @throws IllegalArgumentException if the source and destination array element types (or element variants)
+     * are not identical, if corresponding source and destination elements are of different element variants, or if
      * the source or destination arrays have nested StructuredArrays within them, or if final fields are discovered
      * and all allowFinalFieldOverwrite is not true.
      */
@@ -1004,11 +1316,16 @@ public class StructuredArray<T> extends AbstractStructuredArray<T> implements It
             throw new IllegalArgumentException("shallowCopy only supported for single dimension arrays (with no nested StructuredArrays)");
         }
 
-        final Field[] fields = src.fields;
+        if (!Arrays.equals(src.elementVariants, dst.elementVariants)) {
+            throw new IllegalArgumentException("Only arrays with the same element variants can be copied");
+        }
+
         if (!allowFinalFieldOverwrite && dst.hasFinalFields) {
             throw new IllegalArgumentException("Cannot shallow copy onto final fields");
         }
 
+        final long startTime = ArrayMetrics.startTime();
+
         if (((srcOffset + count) < Integer.MAX_VALUE) && ((dstOffset + count) < Integer.MAX_VALUE)) {
             // use the (faster) int based get
             if (dst == src && (dstOffset >= srcOffset && (dstOffset + count) >= srcOffset)) {
@@ -1016,12 +1333,12 @@ public class StructuredArray<T> extends AbstractStructuredArray<T> implements It
                 int dstIdx = (int)(dstOffset + count) - 1;
                 int limit = (int)(srcOffset - 1);
                 for (; srcIdx > limit; srcIdx--, dstIdx--) {
-                    reverseShallowCopy(src.get(srcIdx), dst.get(dstIdx), fields);
+                    src.reverseShallowCopyElement(src.get(srcIdx), dst.get(dstIdx));
                 }
             } else {
                 for (int srcIdx = (int)srcOffset, dstIdx = (int)dstOffset, limit = (int)(srcOffset + count);
                      srcIdx < limit; srcIdx++, dstIdx++) {
-                    shallowCopy(src.get(srcIdx), dst.get(dstIdx), fields);
+                    src.shallowCopyElement(src.get(srcIdx), dst.get(dstIdx));
                 }
             }
         } else {
@@ -1029,15 +1346,17 @@ public class StructuredArray<T> extends AbstractStructuredArray<T> implements It
             if (dst == src && (dstOffset >= srcOffset && (dstOffset + count) >= srcOffset)) {
                 for (long srcIdx = srcOffset + count, dstIdx = dstOffset + count, limit = srcOffset - 1;
                      srcIdx > limit; srcIdx--, dstIdx--) {
-                    reverseShallowCopy(src.get(srcIdx), dst.get(dstIdx), fields);
+                    src.reverseShallowCopyElement(src.get(srcIdx), dst.get(dstIdx));
                 }
             } else {
                 for (long srcIdx = srcOffset, dstIdx = dstOffset, limit = srcOffset + count;
                      srcIdx < limit; srcIdx++, dstIdx++) {
-                    shallowCopy(src.get(srcIdx), dst.get(dstIdx), fields);
+                    src.shallowCopyElement(src.get(srcIdx), dst.get(dstIdx));
                 }
             }
         }
+
+        ArrayMetrics.recordShallowCopy(dst, count, startTime);
     }
 
     //
@@ -91,6 +91,8 @@ public class StructuredArrayBuilder<S extends StructuredArray<T>, T> {
     private CtorAndArgsProvider<T> elementCtorAndArgsProvider;
     private Object contextCookie;
 
+    private StructuredArray.ParallelCopy parallelCopy;
+
     /**
      * Constructs a new {@link StructuredArrayBuilder} object for creating arrays of type S with
      * elements of type T, and the given length.
@@ -115,6 +117,33 @@ public class StructuredArrayBuilder<S extends StructuredArray<T>, T> {
         this.primitiveSubArrayBuilder = null;
     }
 
+    /**
+     * Constructs a new {@link StructuredArrayBuilder} object for creating arrays of type S with
+     * elements of type T, and the given length, where each element may be an instance of any one of a
+     * closed set of element variant classes (subclasses of T). The element {@link CtorAndArgsProvider}
+     * chooses the variant for each index by providing a constructor declared by that variant. When no
+     * provider is set, all elements are constructed with the default constructor of the first variant.
+     *
+     * @param arrayClass The class of the array to be built by this builder
+     * @param elementClass The common class of elements in the array to be built by this builder
+     * @param elementVariants The classes the elements may be instances of, in type tag order
+     * @param length The length of the array to be build by this builder
+     * @throws IllegalArgumentException if elementVariants is empty, contains duplicates, or contains a
+     * class that is abstract or not a subclass of elementClass
+     */
+    public StructuredArrayBuilder(final Class<S> arrayClass,
+                                  final Class<T> elementClass,
+                                  final Class<? extends T>[] elementVariants,
+                                  final long length) throws IllegalArgumentException {
+        if (elementClass.isAssignableFrom(StructuredArray.class)) {
+            throw new IllegalArgumentException("Cannot use this constructor form for nested StructuredArrays. " +
+                    "Use the StructuredArrayBuilder(arrayClass, subArrayBuilder, length) form instead.");
+        }
+        this.arrayModel = new StructuredArrayModel<S, T>(arrayClass, elementClass, elementVariants, length){};
+        this.structuredSubArrayBuilder = null;
+        this.primitiveSubArrayBuilder = null;
+    }
+
     /**
      * Constructs a new {@link StructuredArrayBuilder} object for creating arrays of the given array model.
      *
@@ -265,6 +294,15 @@ public class StructuredArrayBuilder<S extends StructuredArray<T>, T> {
         return this;
     }
 
+    StructuredArrayBuilder<S, T> parallelCopy(final StructuredArray.ParallelCopy parallelCopy) {
+        this.parallelCopy = parallelCopy;
+        return this;
+    }
+
+    StructuredArray.ParallelCopy getParallelCopy() {
+        return parallelCopy;
+    }
+
     private void resolve(boolean resolveArrayCtorAndArgs) throws IllegalStateException {
         try {
             if ((arrayCtorAndArgs == null) && resolveArrayCtorAndArgs) {
@@ -299,8 +337,11 @@ public class StructuredArrayBuilder<S extends StructuredArray<T>, T> {
                             };
                     elementCtorAndArgsProvider = subArrayCtorAndArgsProvider;
                 } else {
-                    // Use the default constructor:
-                    final CtorAndArgs<T> constantCtorAndArgs = new CtorAndArgs<T>(arrayModel.getElementClass());
+                    // Use the default constructor (of the first element variant, if variants are declared):
+                    @SuppressWarnings("unchecked")
+                    final Class<T> defaultElementClass = (arrayModel._getElementVariants() != null) ?
+                            (Class<T>) arrayModel._getElementVariants()[0] : arrayModel.getElementClass();
+                    final CtorAndArgs<T> constantCtorAndArgs = new CtorAndArgs<T>(defaultElementClass);
                     elementCtorAndArgsProvider =
                             new CtorAndArgsProvider<T>() {
                                 @Override
@@ -1,5 +1,7 @@
 package org.ObjectLayout;
 
+import java.util.Arrays;
+
 /**
  * A model that describes the structure of a StructuredArray
  *
@@ -32,6 +34,26 @@ public abstract class StructuredArrayModel<S extends StructuredArray<T>, T> exte
         super(arrayClass, elementClass, length);
     }
 
+    /**
+     * Create a model of a StructuredArray instance with terminal (non StructuredArray) elements, each of
+     * which may be an instance of any one of a closed set of element variant classes. The element class
+     * is the common superclass of the variants, and may itself be abstract. An element's type tag is the
+     * index of its class in elementVariants (see {@link StructuredArray#getElementTypeTag(long)}).
+     *
+     * @param arrayClass The class of the StructuredArray modeled by the model
+     * @param elementClass The common class of the elements in the StructuredArray modeled by the model
+     * @param elementVariants The classes the elements may be instances of, in type tag order
+     * @param length The length of the StructuredArray modeled by the model
+     * @throws IllegalArgumentException if elementVariants is empty, contains duplicates, or contains a
+     * class that is abstract or not a subclass of elementClass
+     */
+    public StructuredArrayModel(final Class<S> arrayClass,
+                                final Class<T> elementClass,
+                                final Class<? extends T>[] elementVariants,
+                                final long length) throws IllegalArgumentException {
+        super(arrayClass, elementClass, elementVariants, length);
+    }
+
     /**
      * Create a model of a StructuredArray instance with elements that are themselves StructuredArrays
      *
@@ -68,7 +90,7 @@ public abstract class StructuredArrayModel<S extends StructuredArray<T>, T> exte
     /**
      * Determine if this model is equal to another object. If the other object is not a model, they are
      * not equal. If the other object is a model, the two are equal if all details, (arrayClass, elementClass,
-     * length, and any subArrayModel hierarchy details) are identical.
+     * elementVariants, length, and any subArrayModel hierarchy details) are identical.
      *
      * @param other the other object
      * @return true is the other object is a model that is equal to this one, false otherwise.
@@ -82,7 +104,8 @@ public abstract class StructuredArrayModel<S extends StructuredArray<T>, T> exte
         StructuredArrayModel<S, T> otherArray = (StructuredArrayModel<S, T>) other;
         if ((getArrayClass() != otherArray.getArrayClass()) ||
                 (getElementClass() != otherArray.getElementClass()) ||
-                (getLength() != otherArray.getLength())) {
+                (getLength() != otherArray.getLength()) ||
+                !Arrays.equals(_getElementVariants(), otherArray._getElementVariants())) {
             return false;
         }
         if ((getPrimitiveSubArrayModel() == null) && (otherArray.getPrimitiveSubArrayModel() == null)) {
@@ -119,6 +142,16 @@ public abstract class StructuredArrayModel<S extends StructuredArray<T>, T> exte
         return super._getElementClass();
     }
 
+    /**
+     * Get the element variant classes of the StructuredArray modeled by the model, in type tag order
+     * @return a copy of the element variant classes, or null if the model does not declare element variants
+     */
+    @SuppressWarnings("unchecked")
+    public final Class<? extends T>[] getElementVariants() {
+        final Class[] elementVariants = super._getElementVariants();
+        return (elementVariants != null) ? (Class<? extends T>[]) elementVariants.clone() : null;
+    }
+
     /**
      * Get the model describing the structure of the elements of the array being modeled
      * @return the model describing the structure of the elements of the array being modeled
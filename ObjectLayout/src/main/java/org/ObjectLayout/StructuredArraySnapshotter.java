@@ -0,0 +1,237 @@
+/*
+ * Written by Gil Tene and Martin Thompson, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+package org.ObjectLayout;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Takes consistent, point-in-time snapshots of a live {@link StructuredArray} while a writer thread keeps
+ * modifying it, without stopping the writer for the duration of the copy.
+ * <p>
+ * The source array is divided into fixed-size, power of two segments. A snapshot is begun by the writer
+ * thread with {@link #beginSnapshot()}, which only advances an epoch, and is completed by a background
+ * thread with {@link #completeSnapshot()}, which copies each segment into a snapshot buffer. Before
+ * modifying an element, the writer calls {@link #beforeWrite(long)} (or obtains the element with
+ * {@link #getForWrite(long)}). If a snapshot is in progress and the element's segment has not yet been
+ * copied, the writer copies that segment first (copy-on-write), so the snapshot holds the contents
+ * of every element as of the call to {@link #beginSnapshot()}. A segment is copied exactly once per
+ * snapshot, by whichever thread claims it first. The writer pays one volatile read per write when no
+ * snapshot is in progress, and at most one segment copy per segment it touches while one is.
+ * <p>
+ * Snapshots are double buffered: two snapshot arrays, with the same model as the source array, are
+ * allocated up front and used alternately, so taking snapshots creates no garbage. A completed snapshot
+ * (see {@link #getLatestSnapshot()}) remains valid until the second following snapshot begins.
+ * <p>
+ * The snapshotter supports a single writer thread: {@link #beginSnapshot()}, {@link #beforeWrite(long)}
+ * and all modifications of the source array must be made from the same thread. Elements are copied into
+ * the snapshot arrays' existing elements with an {@link ElementCopier}.
+ *
+ * @param <T> The class of the array elements
+ */
+public class StructuredArraySnapshotter<T> {
+
+    /**
+     * Copies the contents of one array element into another.
+     *
+     * @param <T> The class of the array elements
+     */
+    public interface ElementCopier<T> {
+        /**
+         * Copy the contents of <code>source</code> into <code>target</code>
+         *
+         * @param source the element to copy from
+         * @param target the element to copy into
+         */
+        void copy(T source, T target);
+    }
+
+    /**
+     * The default segment size, as a power of two exponent: 1024 elements per segment.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE_EXPONENT = 10;
+
+    private final StructuredArray<T> source;
+    private final StructuredArray<T>[] buffers;
+    private final ElementCopier<T> copier;
+    private final int segmentSizeExponent;
+    private final int segmentCount;
+
+    // Per segment: 2 * epoch when copied for the snapshot of that epoch, (2 * epoch) - 1 while being copied.
+    private final AtomicLongArray segmentStates;
+
+    private long epoch = 0; // Only accessed by the writer thread
+    private volatile long activeEpoch = 0; // 0 when no snapshot is in progress
+    private volatile StructuredArray<T> latestSnapshot = null;
+
+    /**
+     * Create a snapshotter for a source array, with the default segment size.
+     *
+     * @param source the array to take snapshots of
+     * @param copier copies the contents of an element into a snapshot element
+     * @throws IllegalArgumentException if the array (or a nested array) has element variants
+     */
+    public StructuredArraySnapshotter(final StructuredArray<T> source, final ElementCopier<T> copier) {
+        this(source, copier, DEFAULT_SEGMENT_SIZE_EXPONENT);
+    }
+
+    /**
+     * Create a snapshotter for a source array.
+     *
+     * @param source the array to take snapshots of
+     * @param copier copies the contents of an element into a snapshot element
+     * @param segmentSizeExponent the segment size, as a power of two exponent (0 to 30)
+     * @throws IllegalArgumentException if <code>segmentSizeExponent</code> is out of range, the array
+     * is too long to track at that segment size, or the array (or a nested array) has element variants
+     */
+    @SuppressWarnings("unchecked")
+    public StructuredArraySnapshotter(final StructuredArray<T> source,
+                                      final ElementCopier<T> copier,
+                                      final int segmentSizeExponent) throws IllegalArgumentException {
+        if ((segmentSizeExponent < 0) || (segmentSizeExponent > 30)) {
+            throw new IllegalArgumentException("segmentSizeExponent must be between 0 and 30");
+        }
+        final long segments = (source.getLength() + (1L << segmentSizeExponent) - 1) >>> segmentSizeExponent;
+        if (segments > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Array of length " + source.getLength() +
+                    " is too long to snapshot with segments of 2^" + segmentSizeExponent + " elements");
+        }
+        // Snapshot buffers are built from the model, and cannot mirror the source's per-index variants:
+        for (AbstractStructuredArrayModel model = source.getArrayModel(); model != null;
+             model = model._getStructuredSubArrayModel()) {
+            if (model._getElementVariants() != null) {
+                throw new IllegalArgumentException("Arrays with element variants cannot be snapshotted");
+            }
+        }
+        this.source = source;
+        this.copier = copier;
+        this.segmentSizeExponent = segmentSizeExponent;
+        this.segmentCount = (int) segments;
+        this.segmentStates = new AtomicLongArray(segmentCount);
+
+        final StructuredArrayModel model = source.getArrayModel();
+        this.buffers = new StructuredArray[] {
+                (StructuredArray<T>) new StructuredArrayBuilder(model).build(),
+                (StructuredArray<T>) new StructuredArrayBuilder(model).build()
+        };
+    }
+
+    /**
+     * Begin a snapshot of the source array's current contents. Must be called from the writer thread.
+     * The snapshot is completed by calling {@link #completeSnapshot()}, typically from a background thread.
+     *
+     * @throws IllegalStateException if the previous snapshot has not been completed
+     */
+    public void beginSnapshot() throws IllegalStateException {
+        if (activeEpoch != 0) {
+            throw new IllegalStateException("A snapshot is already in progress");
+        }
+        activeEpoch = ++epoch;
+    }
+
+    /**
+     * Indicate that the writer thread is about to modify an element of the source array. If a snapshot
+     * is in progress, this makes sure the element's segment has been copied into the snapshot first.
+     *
+     * @param index the index of the element about to be modified
+     */
+    public void beforeWrite(final long index) {
+        final long e = activeEpoch;
+        if (e != 0) {
+            final int segment = (int) (index >>> segmentSizeExponent);
+            if (segmentStates.get(segment) != 2 * e) {
+                copySegment(segment, e);
+            }
+        }
+    }
+
+    /**
+     * Get an element of the source array for modification by the writer thread. Equivalent to
+     * {@link #beforeWrite(long)} followed by <code>get(index)</code> on the source array.
+     *
+     * @param index the index of the element
+     * @return the element of the source array at <code>index</code>
+     */
+    public T getForWrite(final long index) {
+        beforeWrite(index);
+        return source.get(index);
+    }
+
+    /**
+     * Copy all segments of the in-progress snapshot that the writer has not already copied, and complete
+     * the snapshot. May be called from any (single) thread.
+     *
+     * @return the completed snapshot
+     * @throws IllegalStateException if no snapshot is in progress
+     */
+    public StructuredArray<T> completeSnapshot() throws IllegalStateException {
+        final long e = activeEpoch;
+        if (e == 0) {
+            throw new IllegalStateException("No snapshot is in progress");
+        }
+        for (int segment = 0; segment < segmentCount; segment++) {
+            if (segmentStates.get(segment) != 2 * e) {
+                copySegment(segment, e);
+            }
+        }
+        final StructuredArray<T> snapshot = buffers[(int) (e & 1)];
+        latestSnapshot = snapshot;
+        activeEpoch = 0;
+        return snapshot;
+    }
+
+    /**
+     * Determine if a snapshot has been begun and not yet completed
+     *
+     * @return true if a snapshot is in progress
+     */
+    public boolean isSnapshotInProgress() {
+        return activeEpoch != 0;
+    }
+
+    /**
+     * Get the most recently completed snapshot
+     *
+     * @return the most recently completed snapshot, or null if no snapshot has been completed
+     */
+    public StructuredArray<T> getLatestSnapshot() {
+        return latestSnapshot;
+    }
+
+    /**
+     * Get the source array
+     *
+     * @return the source array
+     */
+    public StructuredArray<T> getSource() {
+        return source;
+    }
+
+    private void copySegment(final int segment, final long e) {
+        final long copied = 2 * e;
+        final long copying = copied - 1;
+        while (true) {
+            final long state = segmentStates.get(segment);
+            if (state == copied) {
+                return;
+            }
+            if (state == copying) {
+                // Another thread is copying this segment, and will be done shortly:
+                Thread.yield();
+                continue;
+            }
+            if (segmentStates.compareAndSet(segment, state, copying)) {
+                final StructuredArray<T> target = buffers[(int) (e & 1)];
+                final long from = (long) segment << segmentSizeExponent;
+                final long to = Math.min(from + (1L << segmentSizeExponent), source.getLength());
+                for (long i = from; i < to; i++) {
+                    copier.copy(source.get(i), target.get(i));
+                }
+                segmentStates.set(segment, copied);
+                return;
+            }
+        }
+    }
+}
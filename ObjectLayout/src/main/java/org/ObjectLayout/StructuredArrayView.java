@@ -0,0 +1,246 @@
+/*
+ * Written by Gil Tene and Martin Thompson, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+package org.ObjectLayout;
+
+/**
+ * A multi-dimensional, flat-indexed view of a nested {@link StructuredArray} (e.g. one built with a
+ * chain of sub-array {@link StructuredArrayBuilder}s).
+ * <p>
+ * The dimensions of the view are taken from the nested array's {@link StructuredArrayModel}, which
+ * describes a regular shape: every sub-array at a given nesting level has the same length. An element
+ * <code>[i][j][k]</code> is addressed by a single flat index computed from the dimension vector in
+ * row-major order, and is reached with one lookup into a flat table of the leaf elements, rather than
+ * through one dependent {@link StructuredArray#get(long)} per nesting level.
+ * <p>
+ * The view reflects the leaf elements of the nested array at the time the view was created. Since
+ * StructuredArray elements are never replaced, the view stays valid for the life of the array.
+ *
+ * @param <T> The class of the leaf elements
+ */
+public class StructuredArrayView<T> {
+
+    private final StructuredArray<?> array;
+    private final long[] dimensions;
+    private final long[] strides;
+    private final long flatLength;
+    private final ReferenceArray<T> leaves;
+
+    /**
+     * Create a view of all nesting levels of a nested StructuredArray.
+     *
+     * @param array the outermost array of the nested structure
+     * @param leafClass the class of the innermost elements
+     * @param <T> the class of the innermost elements
+     * @return a view of the nested array
+     * @throws IllegalArgumentException if the innermost elements are not instances of <code>leafClass</code>
+     */
+    public static <T> StructuredArrayView<T> newInstance(
+            final StructuredArray<?> array,
+            final Class<T> leafClass) throws IllegalArgumentException {
+        return newInstance(array, leafClass, countNestingLevels(array.getArrayModel()));
+    }
+
+    /**
+     * Create a view of the outermost <code>dimensionCount</code> nesting levels of a nested StructuredArray.
+     * The leaf elements of the view are the elements found at that depth, which may themselves be arrays.
+     *
+     * @param array the outermost array of the nested structure
+     * @param leafClass the class of the elements found at depth <code>dimensionCount</code>
+     * @param dimensionCount the number of nesting levels to view
+     * @param <T> the class of the elements found at depth <code>dimensionCount</code>
+     * @return a view of the nested array
+     * @throws IllegalArgumentException if the nested array is not that deep, or the elements at that depth
+     * are not instances of <code>leafClass</code>
+     */
+    public static <T> StructuredArrayView<T> newInstance(
+            final StructuredArray<?> array,
+            final Class<T> leafClass,
+            final int dimensionCount) throws IllegalArgumentException {
+        final int maxDimensionCount = countNestingLevels(array.getArrayModel());
+        if ((dimensionCount < 1) || (dimensionCount > maxDimensionCount)) {
+            throw new IllegalArgumentException("dimensionCount must be between 1 and " + maxDimensionCount);
+        }
+        AbstractStructuredArrayModel model = array.getArrayModel();
+        for (int i = 1; i < dimensionCount; i++) {
+            model = model._getStructuredSubArrayModel();
+        }
+        if (!leafClass.isAssignableFrom(model._getElementClass())) {
+            throw new IllegalArgumentException("Elements at depth " + dimensionCount + " are of class " +
+                    model._getElementClass().getName() + ", not " + leafClass.getName());
+        }
+        return new StructuredArrayView<T>(array, dimensionCount);
+    }
+
+    private static int countNestingLevels(AbstractStructuredArrayModel model) {
+        int levels = 1;
+        while (model._getStructuredSubArrayModel() != null) {
+            model = model._getStructuredSubArrayModel();
+            levels++;
+        }
+        return levels;
+    }
+
+    private StructuredArrayView(final StructuredArray<?> array, final int dimensionCount) {
+        this.array = array;
+        this.dimensions = new long[dimensionCount];
+        AbstractStructuredArrayModel model = array.getArrayModel();
+        for (int i = 0; i < dimensionCount; i++) {
+            dimensions[i] = model._getLength();
+            model = model._getStructuredSubArrayModel();
+        }
+
+        this.strides = new long[dimensionCount];
+        long stride = 1;
+        for (int i = dimensionCount - 1; i >= 0; i--) {
+            strides[i] = stride;
+            stride *= dimensions[i];
+        }
+        this.flatLength = stride;
+
+        this.leaves = ReferenceArray.newInstance(flatLength);
+        final long filled = collectLeaves(array, 0, 0);
+        if (filled != flatLength) {
+            throw new IllegalArgumentException("Nested array does not match the shape of its model");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private long collectLeaves(final StructuredArray<?> subArray, final int level, long flatIndex) {
+        if (subArray.getLength() != dimensions[level]) {
+            throw new IllegalArgumentException("Nested array at level " + level + " has length " +
+                    subArray.getLength() + ", expected " + dimensions[level]);
+        }
+        final long length = subArray.getLength();
+        if (level == dimensions.length - 1) {
+            for (long i = 0; i < length; i++) {
+                leaves.set(flatIndex++, (T) subArray.get(i));
+            }
+        } else {
+            for (long i = 0; i < length; i++) {
+                flatIndex = collectLeaves((StructuredArray<?>) subArray.get(i), level + 1, flatIndex);
+            }
+        }
+        return flatIndex;
+    }
+
+    /**
+     * Get the nested array this view was created from
+     *
+     * @return the nested array this view was created from
+     */
+    public StructuredArray<?> getArray() {
+        return array;
+    }
+
+    /**
+     * Get the number of dimensions of the view
+     *
+     * @return the number of dimensions of the view
+     */
+    public int getDimensionCount() {
+        return dimensions.length;
+    }
+
+    /**
+     * Get the length of one dimension of the view
+     *
+     * @param dimension the dimension (0 is the outermost array)
+     * @return the length of the dimension
+     */
+    public long getDimension(final int dimension) {
+        return dimensions[dimension];
+    }
+
+    /**
+     * Get the total number of leaf elements in the view
+     *
+     * @return the product of all dimensions
+     */
+    public long getFlatLength() {
+        return flatLength;
+    }
+
+    /**
+     * Compute the flat index of an element from its per-dimension indexes.
+     *
+     * @param indexes one index per dimension, outermost first
+     * @return the flat, row-major index of the element
+     * @throws IllegalArgumentException if the number of indexes does not match the number of dimensions
+     * @throws ArrayIndexOutOfBoundsException if any index is out of bounds for its dimension
+     */
+    public long flatIndex(final long... indexes) throws IllegalArgumentException {
+        if (indexes.length != dimensions.length) {
+            throw new IllegalArgumentException("Expected " + dimensions.length + " indexes, got " + indexes.length);
+        }
+        long flatIndex = 0;
+        for (int i = 0; i < indexes.length; i++) {
+            flatIndex += checkedIndex(i, indexes[i]) * strides[i];
+        }
+        return flatIndex;
+    }
+
+    /**
+     * Get an element by its per-dimension indexes.
+     *
+     * @param indexes one index per dimension, outermost first
+     * @return the element
+     */
+    public T get(final long... indexes) {
+        return leaves.get(flatIndex(indexes));
+    }
+
+    /**
+     * Get an element of a two dimensional view.
+     *
+     * @param i the index in the outer dimension
+     * @param j the index in the inner dimension
+     * @return the element at <code>[i][j]</code>
+     */
+    public T get(final long i, final long j) {
+        checkDimensionCount(2);
+        return leaves.get(checkedIndex(0, i) * strides[0] + checkedIndex(1, j));
+    }
+
+    /**
+     * Get an element of a three dimensional view.
+     *
+     * @param i the index in the outermost dimension
+     * @param j the index in the middle dimension
+     * @param k the index in the innermost dimension
+     * @return the element at <code>[i][j][k]</code>
+     */
+    public T get(final long i, final long j, final long k) {
+        checkDimensionCount(3);
+        return leaves.get(checkedIndex(0, i) * strides[0] + checkedIndex(1, j) * strides[1] + checkedIndex(2, k));
+    }
+
+    /**
+     * Get an element by its flat, row-major index.
+     *
+     * @param flatIndex the flat index of the element
+     * @return the element
+     */
+    public T getFlat(final long flatIndex) {
+        if ((flatIndex < 0) || (flatIndex >= flatLength)) {
+            throw new ArrayIndexOutOfBoundsException("flat index " + flatIndex + " is out of bounds");
+        }
+        return leaves.get(flatIndex);
+    }
+
+    private long checkedIndex(final int dimension, final long index) {
+        if ((index < 0) || (index >= dimensions[dimension])) {
+            throw new ArrayIndexOutOfBoundsException(
+                    "index " + index + " is out of bounds for dimension " + dimension);
+        }
+        return index;
+    }
+
+    private void checkDimensionCount(final int count) {
+        if (dimensions.length != count) {
+            throw new IllegalArgumentException("View has " + dimensions.length + " dimensions, not " + count);
+        }
+    }
+}
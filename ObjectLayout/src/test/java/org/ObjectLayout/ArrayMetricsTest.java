@@ -0,0 +1,134 @@
+package org.ObjectLayout;
+
+import org.ObjectLayout.StructuredArrayTest.MockStructure;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ArrayMetricsTest {
+
+    private final ArrayMetrics metrics = ArrayMetrics.getInstance();
+    private final FootprintEstimator estimator = FootprintEstimator.forCurrentJvm();
+
+    @Before
+    public void enable() {
+        metrics.reset();
+        metrics.setEnabled(true);
+    }
+
+    @After
+    public void disable() {
+        metrics.setEnabled(false);
+        ArrayMetrics.setListener(null);
+        metrics.reset();
+    }
+
+    @Test
+    public void shouldRecordStructuredArrayConstruction() throws Exception {
+        final StructuredArray<MockStructure> array = StructuredArray.newInstance(MockStructure.class, 1000);
+
+        assertThat(metrics.getConstructionCount(), is(1L));
+        assertThat(metrics.getConstructionBytes(), is(estimator.estimate(array).getTotalBytes()));
+        assertTrue(metrics.getConstructionMaxNanos() > 0);
+        assertThat(metrics.getConstructionTotalNanos(), is(metrics.getConstructionMaxNanos()));
+        assertThat(sum(metrics.getConstructionLatencyHistogram()), is(1L));
+        assertTrue(metrics.getSlowestConstruction().contains(MockStructure.class.getName() + ">[1000]"));
+        assertThat(metrics.getCopyCount(), is(0L));
+    }
+
+    @Test
+    public void shouldRecordNestedArrayAsOneConstruction() throws Exception {
+        final StructuredArray<StructuredArray<StructuredArray<MockStructure>>> array =
+                new StructuredArrayTest().get3dBuilder(2, 3, 4).build();
+
+        assertThat(metrics.getConstructionCount(), is(1L));
+        assertThat(metrics.getConstructionBytes(), is(estimator.estimate(array).getTotalBytes()));
+    }
+
+    @Test
+    public void shouldRecordCopies() throws Exception {
+        final StructuredArray<MockStructure> array = StructuredArray.newInstance(MockStructure.class, 100);
+        final PrimitiveLongArray longArray = PrimitiveLongArray.newInstance(100);
+        metrics.reset();
+
+        StructuredArray.copyInstance(array);
+        PrimitiveLongArray.copyInstance(longArray);
+
+        assertThat(metrics.getConstructionCount(), is(0L));
+        assertThat(metrics.getCopyCount(), is(2L));
+        assertThat(metrics.getCopyBytes(),
+                is(estimator.estimate(array).getTotalBytes() + estimator.estimate(longArray).getTotalBytes()));
+    }
+
+    @Test
+    public void shouldRecordShallowCopy() throws Exception {
+        final StructuredArray<MockStructure> src = StructuredArray.newInstance(MockStructure.class, 100);
+        final StructuredArray<MockStructure> dst = StructuredArray.newInstance(MockStructure.class, 100);
+
+        StructuredArray.shallowCopy(src, 10, dst, 20, 30);
+
+        assertThat(metrics.getShallowCopyCount(), is(1L));
+        assertThat(metrics.getShallowCopyBytes(), is(30 * estimator.instanceSize(MockStructure.class)));
+    }
+
+    @Test
+    public void shouldNotRecordWhenDisabled() throws Exception {
+        metrics.setEnabled(false);
+
+        StructuredArray.newInstance(MockStructure.class, 10);
+        PrimitiveLongArray.newInstance(10);
+
+        assertThat(metrics.getConstructionCount(), is(0L));
+        assertThat(sum(metrics.getConstructionLatencyHistogram()), is(0L));
+    }
+
+    @Test
+    public void shouldNotifyListener() throws Exception {
+        final List<String> events = new ArrayList<String>();
+        ArrayMetrics.setListener(new ArrayMetrics.Listener() {
+            @Override
+            public void operationCompleted(final ArrayMetrics.Operation operation, final Class arrayClass,
+                                           final Class elementClass, final long length,
+                                           final long durationNanos, final long bytes) {
+                events.add(operation + " " + arrayClass.getSimpleName() + " " + elementClass.getName() +
+                        " " + length);
+            }
+        });
+
+        PrimitiveLongArray.newInstance(42);
+
+        assertThat(events.size(), is(1));
+        assertThat(events.get(0), is("CONSTRUCTION PrimitiveLongArray long 42"));
+    }
+
+    @Test
+    public void shouldExposeMBean() throws Exception {
+        ArrayMetrics.register();
+        PrimitiveLongArray.newInstance(10);
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(ArrayMetrics.OBJECT_NAME);
+        assertThat((Long) server.getAttribute(name, "ConstructionCount"), is(1L));
+        assertThat((Boolean) server.getAttribute(name, "Enabled"), is(true));
+        assertThat(((long[]) server.getAttribute(name, "ConstructionLatencyHistogram")).length,
+                is(ArrayMetrics.HISTOGRAM_BUCKETS));
+    }
+
+    private static long sum(final long[] counts) {
+        long sum = 0;
+        for (final long count : counts) {
+            sum += count;
+        }
+        return sum;
+    }
+}
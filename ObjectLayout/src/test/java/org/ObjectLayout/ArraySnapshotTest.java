@@ -0,0 +1,346 @@
+package org.ObjectLayout;
+
+import org.ObjectLayout.StructuredArrayTest.MockStructure;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ArraySnapshotTest {
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("ArraySnapshotTest", ".snapshot");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void shouldRoundTripTerminalArray() throws Exception {
+        final StructuredArray<MockStructure> array = StructuredArray.newInstance(MockStructure.class, 1000);
+        for (long i = 0; i < array.getLength(); i++) {
+            array.get(i).setIndex(i);
+            array.get(i).setTestValue(i * 31);
+        }
+
+        writeSnapshot(array);
+        final StructuredArray<MockStructure> copy = readStructuredSnapshot();
+
+        assertThat(copy.getLength(), is(1000L));
+        for (long i = 0; i < copy.getLength(); i++) {
+            assertThat(copy.get(i), is(array.get(i)));
+        }
+    }
+
+    @Test
+    public void shouldReadElementsInBlocksFromNonFileChannel() throws Exception {
+        final StructuredArray<MockStructure> array = StructuredArray.newInstance(MockStructure.class, 100000);
+        for (long i = 0; i < array.getLength(); i++) {
+            array.get(i).setIndex(i);
+            array.get(i).setTestValue(i * 31);
+        }
+        writeSnapshot(array);
+
+        final FileInputStream in = new FileInputStream(file);
+        final CountingChannel channel = new CountingChannel(Channels.newChannel(in));
+        final StructuredArray<MockStructure> copy;
+        try {
+            copy = ArraySnapshot.readStructuredArray(channel);
+        } finally {
+            in.close();
+        }
+
+        for (long i = 0; i < copy.getLength(); i++) {
+            assertThat(copy.get(i), is(array.get(i)));
+        }
+        // 1.6MB of elements, read a buffer at a time rather than 200,000 times a field at a time:
+        assertThat(channel.reads < 100, is(true));
+    }
+
+    @Test
+    public void shouldRoundTripNestedArrays() throws Exception {
+        final StructuredArray<StructuredArray<StructuredArray<MockStructure>>> array =
+                new StructuredArrayTest().get3dBuilder(3, 4, 5).build();
+        for (long i = 0; i < 3; i++) {
+            for (long j = 0; j < 4; j++) {
+                for (long k = 0; k < 5; k++) {
+                    array.get(i).get(j).get(k).setIndex(i * 100 + j * 10 + k);
+                    array.get(i).get(j).get(k).setTestValue(-k);
+                }
+            }
+        }
+
+        writeSnapshot(array);
+        final StructuredArray<StructuredArray<StructuredArray<MockStructure>>> copy = readStructuredSnapshot();
+
+        assertThat(copy.getLength(), is(3L));
+        assertThat(copy.get(2).getLength(), is(4L));
+        assertThat(copy.get(2).get(3).getLength(), is(5L));
+        for (long i = 0; i < 3; i++) {
+            for (long j = 0; j < 4; j++) {
+                for (long k = 0; k < 5; k++) {
+                    assertThat(copy.get(i).get(j).get(k), is(array.get(i).get(j).get(k)));
+                }
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldRoundTripArrayOfPrimitiveArraysWithFields() throws Exception {
+        final StructuredArray<ColoredLongArray> array = new StructuredArrayBuilder(
+                ColoredStructuredArray.class,
+                new PrimitiveArrayBuilder(ColoredLongArray.class, 100),
+                7).build();
+        ((ColoredStructuredArray<ColoredLongArray>) array).generation = 42;
+        for (long i = 0; i < array.getLength(); i++) {
+            final ColoredLongArray row = array.get(i);
+            row.color = (i == 3) ? null : "color-" + i;
+            row.weight = i * 0.5f;
+            for (long j = 0; j < row.getLength(); j++) {
+                row.set(j, (i << 32) | j);
+            }
+        }
+
+        writeSnapshot(array);
+        final StructuredArray<ColoredLongArray> copy = readStructuredSnapshot();
+
+        assertThat(copy.getClass() == ColoredStructuredArray.class, is(true));
+        assertThat(((ColoredStructuredArray<ColoredLongArray>) copy).generation, is(42));
+        assertThat(copy.getLength(), is(7L));
+        for (long i = 0; i < copy.getLength(); i++) {
+            final ColoredLongArray row = copy.get(i);
+            assertThat(row.getLength(), is(100L));
+            assertThat(row.weight, is(i * 0.5f));
+            if (i == 3) {
+                assertThat(row.color, nullValue());
+            } else {
+                assertThat(row.color, is("color-" + i));
+            }
+            for (long j = 0; j < row.getLength(); j++) {
+                assertThat(row.get(j), is((i << 32) | j));
+            }
+        }
+    }
+
+    @Test
+    public void shouldRoundTripPrimitiveArraysLargerThanBuffer() throws Exception {
+        final PrimitiveDoubleArray doubles = PrimitiveDoubleArray.newInstance(300000);
+        for (long i = 0; i < doubles.getLength(); i++) {
+            doubles.set(i, i / 3.0);
+        }
+        writeSnapshot(doubles);
+        final PrimitiveDoubleArray doublesCopy = readPrimitiveSnapshot();
+        assertThat(doublesCopy.getLength(), is(doubles.getLength()));
+        for (long i = 0; i < doubles.getLength(); i++) {
+            assertThat(doublesCopy.get(i), is(doubles.get(i)));
+        }
+
+        final PrimitiveCharArray chars = PrimitiveCharArray.newInstance(1000001);
+        for (long i = 0; i < chars.getLength(); i++) {
+            chars.set(i, (char) (i * 7));
+        }
+        writeSnapshot(chars);
+        final PrimitiveCharArray charsCopy = readPrimitiveSnapshot();
+        for (long i = 0; i < chars.getLength(); i++) {
+            assertThat(charsCopy.get(i), is(chars.get(i)));
+        }
+    }
+
+    @Test
+    public void shouldWriteLittleEndianBulkData() throws Exception {
+        final PrimitiveIntArray array = PrimitiveIntArray.newInstance(2);
+        array.set(0, 0x01020304);
+        array.set(1, -1);
+        writeSnapshot(array);
+
+        final ByteBuffer contents = readFileContents();
+        assertThat(contents.remaining() >= 8, is(true));
+        contents.position(contents.limit() - 8);
+        assertThat(contents.get(), is((byte) 0x04));
+        assertThat(contents.get(), is((byte) 0x03));
+        contents.order(ByteOrder.LITTLE_ENDIAN);
+        contents.position(contents.limit() - 8);
+        assertThat(contents.getInt(), is(0x01020304));
+        assertThat(contents.getInt(), is(-1));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectBadMagic() throws Exception {
+        writeBytes(new byte[] {1, 2, 3, 4, 1, 0, 0, 0, 'S'});
+        readStructuredSnapshot();
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectUnsupportedVersion() throws Exception {
+        final ByteBuffer header = ByteBuffer.allocate(9).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(ArraySnapshot.MAGIC).putInt(ArraySnapshot.FORMAT_VERSION + 1).put((byte) 'S');
+        writeBytes(header.array());
+        readStructuredSnapshot();
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectWrongRecordKind() throws Exception {
+        writeSnapshot(PrimitiveLongArray.newInstance(10));
+        readStructuredSnapshot();
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectTruncatedSnapshot() throws Exception {
+        writeSnapshot(StructuredArray.newInstance(MockStructure.class, 100));
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 1);
+        } finally {
+            raf.close();
+        }
+        readStructuredSnapshot();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectReferenceFields() throws Exception {
+        writeSnapshot(StructuredArray.newInstance(StructureWithReference.class, 10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @SuppressWarnings("unchecked")
+    public void shouldRejectArraysWithElementVariants() throws Exception {
+        writeSnapshot(new StructuredArrayBuilder(StructuredArray.class, MockStructure.class,
+                new Class[] {MockStructure.class}, 10).build());
+    }
+
+    public static class ColoredStructuredArray<T> extends StructuredArray<T> {
+        int generation;
+
+        public ColoredStructuredArray() {
+        }
+
+        public ColoredStructuredArray(ColoredStructuredArray<T> source) {
+            super(source);
+            generation = source.generation;
+        }
+    }
+
+    public static class ColoredLongArray extends PrimitiveLongArray {
+        String color;
+        float weight;
+        transient Object scratch = null;
+
+        public ColoredLongArray() {
+        }
+
+        public ColoredLongArray(ColoredLongArray source) {
+            super(source);
+            color = source.color;
+            weight = source.weight;
+        }
+    }
+
+    public static class StructureWithReference {
+        Object reference;
+    }
+
+    private static class CountingChannel implements ReadableByteChannel {
+        private final ReadableByteChannel channel;
+        int reads;
+
+        CountingChannel(final ReadableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+            reads++;
+            return channel.read(dst);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private void writeSnapshot(final StructuredArray<?> array) throws IOException {
+        final FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        try {
+            channel.truncate(0);
+            ArraySnapshot.write(array, channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeSnapshot(final AbstractPrimitiveArray array) throws IOException {
+        final FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        try {
+            channel.truncate(0);
+            ArraySnapshot.write(array, channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private <S extends StructuredArray<?>> S readStructuredSnapshot() throws IOException {
+        final FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            return ArraySnapshot.readStructuredArray(channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private <A extends AbstractPrimitiveArray> A readPrimitiveSnapshot() throws IOException {
+        final FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            return ArraySnapshot.readPrimitiveArray(channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeBytes(final byte[] bytes) throws IOException {
+        final FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        try {
+            channel.truncate(0);
+            channel.write(ByteBuffer.wrap(bytes));
+        } finally {
+            channel.close();
+        }
+    }
+
+    private ByteBuffer readFileContents() throws IOException {
+        final FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            final ByteBuffer contents = ByteBuffer.allocate((int) channel.size());
+            while (contents.hasRemaining() && channel.read(contents) >= 0) {
+            }
+            contents.flip();
+            return contents;
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package org.ObjectLayout;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class DirtyTrackingLongArrayTest {
+
+    private File baseFile;
+    private File deltaFile1;
+    private File deltaFile2;
+
+    @Before
+    public void createFiles() throws IOException {
+        baseFile = File.createTempFile("DirtyTrackingLongArrayTest", ".base");
+        deltaFile1 = File.createTempFile("DirtyTrackingLongArrayTest", ".delta1");
+        deltaFile2 = File.createTempFile("DirtyTrackingLongArrayTest", ".delta2");
+    }
+
+    @After
+    public void deleteFiles() {
+        baseFile.delete();
+        deltaFile1.delete();
+        deltaFile2.delete();
+    }
+
+    @Test
+    public void shouldTrackDirtyPagesOnSet() throws Exception {
+        final DirtyTrackingLongArray array = newArray(10000, 6);
+        assertThat(array.getPageSize(), is(64L));
+        assertThat(array.getPageCount(), is(157L));
+        assertThat(array.getDirtyPageCount(), is(0L));
+        assertThat(array.nextDirtyPage(0), is(-1L));
+
+        array.set(0, 1);
+        array.set(63L, 2);
+        array.set(64 * 70 + 5, 3);
+        array.set(9999L, 4);
+
+        assertThat(array.getDirtyPageCount(), is(3L));
+        assertThat(array.isPageDirty(0), is(true));
+        assertThat(array.isPageDirty(1), is(false));
+        assertThat(array.nextDirtyPage(0), is(0L));
+        assertThat(array.nextDirtyPage(1), is(70L));
+        assertThat(array.nextDirtyPage(71), is(156L));
+        assertThat(array.nextDirtyPage(157), is(-1L));
+
+        array.clearPageDirty(70);
+        assertThat(array.nextDirtyPage(1), is(156L));
+        array.clearDirtyPages();
+        assertThat(array.getDirtyPageCount(), is(0L));
+    }
+
+    @Test
+    public void shouldMarkRanges() throws Exception {
+        final DirtyTrackingLongArray array = newArray(1000, 4);
+        array.asArray()[100] = 7;
+        array.markDirty(100, 101);
+        array.markDirty(150, 200);
+        array.markDirty(500, 500);
+        assertThat(array.getDirtyPageCount(), is(5L));
+        assertThat(array.isPageDirty(100 / 16), is(true));
+        assertThat(array.isPageDirty(150 / 16), is(true));
+        assertThat(array.isPageDirty(199 / 16), is(true));
+        assertThat(array.isPageDirty(208 / 16), is(false));
+    }
+
+    @Test
+    public void shouldUseDefaultPageSize() throws Exception {
+        final DirtyTrackingLongArray array = PrimitiveLongArray.newInstance(DirtyTrackingLongArray.class, 1025);
+        assertThat(array.getPageSizeExponent(), is(DirtyTrackingLongArray.DEFAULT_PAGE_SIZE_EXPONENT));
+        assertThat(array.getPageCount(), is(3L));
+    }
+
+    @Test
+    public void shouldCopyContentsAndDirtyPages() throws Exception {
+        final DirtyTrackingLongArray array = newArray(300, 5);
+        array.set(42, 42);
+        final DirtyTrackingLongArray copy = PrimitiveLongArray.copyInstance(array);
+        assertThat(copy.get(42), is(42L));
+        assertThat(copy.getDirtyPageCount(), is(1L));
+        copy.set(299, 1);
+        assertThat(array.getDirtyPageCount(), is(1L));
+    }
+
+    @Test
+    public void shouldRestoreBasePlusDeltas() throws Exception {
+        final long length = 100000;
+        final DirtyTrackingLongArray array = newArray(length, 8);
+        for (long i = 0; i < length; i++) {
+            array.set(i, i);
+        }
+
+        // Full checkpoint:
+        FileChannel channel = new RandomAccessFile(baseFile, "rw").getChannel();
+        try {
+            ArraySnapshot.write(array, channel);
+        } finally {
+            channel.close();
+        }
+        array.clearDirtyPages();
+
+        // First delta, touching a few pages:
+        array.set(5, -5);
+        array.set(length - 1, -1);
+        array.set(1000, -1000);
+        assertThat(writeDelta(array, deltaFile1), is(3L));
+        assertThat(array.getDirtyPageCount(), is(0L));
+
+        // Second delta, overwriting one of the same elements and a range:
+        array.set(5, 55);
+        for (long i = 50000; i < 50600; i++) {
+            array.set(i, i * 3);
+        }
+        assertThat(writeDelta(array, deltaFile2), is(4L));
+
+        // The delta holds only the modified pages:
+        assertThat(deltaFile2.length() < (5 * 256 * 8), is(true));
+
+        // Restore:
+        channel = new RandomAccessFile(baseFile, "r").getChannel();
+        final PrimitiveLongArray restored;
+        try {
+            restored = ArraySnapshot.readPrimitiveArray(channel);
+        } finally {
+            channel.close();
+        }
+        assertThat(applyDelta(restored, deltaFile1), is(3L));
+        assertThat(restored.get(5), is(-5L));
+        assertThat(applyDelta(restored, deltaFile2), is(4L));
+
+        assertThat(restored.getClass() == DirtyTrackingLongArray.class, is(true));
+        assertThat(((DirtyTrackingLongArray) restored).getDirtyPageCount(), is(0L));
+        for (long i = 0; i < length; i++) {
+            assertThat(restored.get(i), is(array.get(i)));
+        }
+    }
+
+    @Test
+    public void shouldReadSnapshotAndDeltasBackToBackFromOneChannel() throws Exception {
+        final long length = 10000;
+        final DirtyTrackingLongArray array = newArray(length, 6);
+        for (long i = 0; i < length; i++) {
+            array.set(i, i);
+        }
+
+        // A full checkpoint followed by three deltas, all in one file:
+        FileChannel channel = new RandomAccessFile(baseFile, "rw").getChannel();
+        try {
+            ArraySnapshot.write(array, channel);
+            array.clearDirtyPages();
+            for (int delta = 1; delta <= 3; delta++) {
+                for (long i = delta; i < length; i += 997 * delta) {
+                    array.set(i, -i * delta);
+                }
+                ArraySnapshot.writeDelta(array, channel);
+            }
+        } finally {
+            channel.close();
+        }
+
+        // Read back from a FileChannel, and from a channel that is not a FileChannel:
+        for (int pass = 0; pass < 2; pass++) {
+            final FileInputStream stream = new FileInputStream(baseFile);
+            final ReadableByteChannel in = (pass == 0) ? stream.getChannel() : Channels.newChannel(stream);
+            try {
+                final PrimitiveLongArray restored = ArraySnapshot.readPrimitiveArray(in);
+                for (int delta = 1; delta <= 3; delta++) {
+                    ArraySnapshot.applyDelta(restored, in);
+                }
+                assertThat(in.read(ByteBuffer.allocate(1)), is(-1));
+                for (long i = 0; i < length; i++) {
+                    assertThat(restored.get(i), is(array.get(i)));
+                }
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    @Test
+    public void shouldLeaveUnwrittenPagesDirtyWhenModifiedDuringDelta() throws Exception {
+        final DirtyTrackingLongArray array = newArray(1L << 19, 10);
+        // 200 dirty pages of 8KB each, more than the output buffers before its first write:
+        array.markDirty(0, 200 << 10);
+
+        final WritableByteChannel modifyingChannel = new WritableByteChannel() {
+            private boolean modified;
+
+            @Override
+            public int write(final ByteBuffer src) {
+                if (!modified) {
+                    array.set(300 << 10, 1);
+                    modified = true;
+                }
+                final int written = src.remaining();
+                src.position(src.limit());
+                return written;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        try {
+            ArraySnapshot.writeDelta(array, modifyingChannel);
+            fail("Expected a modification during the delta to be detected");
+        } catch (IllegalStateException expected) {
+        }
+
+        assertThat(array.getDirtyPageCount(), is(1L));
+        assertThat(array.nextDirtyPage(0), is(300L));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectDeltaOfDifferentLength() throws Exception {
+        final DirtyTrackingLongArray array = newArray(1000, 4);
+        array.set(3, 3);
+        writeDelta(array, deltaFile1);
+        applyDelta(PrimitiveLongArray.newInstance(999), deltaFile1);
+    }
+
+    @Test
+    public void shouldRejectDeltaPageBeyondArray() throws Exception {
+        final DirtyTrackingLongArray array = newArray(1000, 4);
+        array.set(3, 3);
+        writeDelta(array, deltaFile1);
+
+        // Replace the page number (which precedes the page's 16 longs) with one whose offset overflows to 0:
+        final FileChannel channel = new RandomAccessFile(deltaFile1, "rw").getChannel();
+        try {
+            final ByteBuffer page = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            page.putLong(1L << 60).flip();
+            channel.write(page, channel.size() - (16 * 8) - 8);
+        } finally {
+            channel.close();
+        }
+
+        final PrimitiveLongArray restored = PrimitiveLongArray.newInstance(1000);
+        try {
+            applyDelta(restored, deltaFile1);
+            fail("Expected a delta page beyond the array to be rejected");
+        } catch (IOException expected) {
+        }
+        assertThat(restored.get(3), is(0L));
+    }
+
+    @Test
+    public void shouldRejectBadPageSize() throws Exception {
+        try {
+            newArray(10, 31);
+            fail("Expected construction to fail");
+        } catch (RuntimeException ex) {
+            // Construction failures surface wrapped by the reflective constructor call:
+            assertThat(ex.getCause().getCause() instanceof IllegalArgumentException, is(true));
+        }
+    }
+
+    private static DirtyTrackingLongArray newArray(final long length, final int pageSizeExponent)
+            throws NoSuchMethodException {
+        return PrimitiveLongArray.newInstance(length,
+                DirtyTrackingLongArray.class.getConstructor(int.class), pageSizeExponent);
+    }
+
+    private static long writeDelta(final DirtyTrackingLongArray array, final File file) throws IOException {
+        final FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        try {
+            channel.truncate(0);
+            return ArraySnapshot.writeDelta(array, channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static long applyDelta(final PrimitiveLongArray array, final File file) throws IOException {
+        final FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            return ArraySnapshot.applyDelta(array, channel);
+        } finally {
+            channel.close();
+        }
+    }
+}
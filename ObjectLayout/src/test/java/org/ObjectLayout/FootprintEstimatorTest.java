@@ -0,0 +1,239 @@
+package org.ObjectLayout;
+
+import org.ObjectLayout.StructuredArrayTest.MockStructure;
+import org.junit.Test;
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Validates the estimates against the actual layout of the running JVM, measured the way JOL does:
+ * from the field offsets and array base offsets and scales reported by Unsafe, and by walking the object
+ * graph of constructed arrays.
+ */
+public class FootprintEstimatorTest {
+
+    private static final Unsafe unsafe = getUnsafe();
+
+    private final FootprintEstimator estimator = FootprintEstimator.forCurrentJvm();
+
+    @Test
+    public void shouldDetectLayoutOfCurrentJvm() throws Exception {
+        assertThat(estimator.instanceSize(HeaderProbe.class), is(measuredInstanceSize(HeaderProbe.class)));
+        assertThat(estimator.arraySize(Object.class, 3), is(measuredArraySize(Object[].class, 3)));
+        assertThat(estimator.arraySize(long.class, 3), is(measuredArraySize(long[].class, 3)));
+        assertThat(estimator.arraySize(byte.class, 13), is(measuredArraySize(byte[].class, 13)));
+    }
+
+    @Test
+    public void shouldEstimateInstanceSizes() throws Exception {
+        for (final Class c : new Class[] {Object.class, MockStructure.class, Point.class, Line.class,
+                StructuredArray.class, PrimitiveLongArray.class, PrimitiveByteArray.class, ReferenceArray.class}) {
+            assertThat(c.getName(), estimator.instanceSize(c), is(measuredInstanceSize(c)));
+        }
+    }
+
+    @Test
+    public void shouldEstimateFlatStructuredArray() throws Exception {
+        final StructuredArray<MockStructure> array = StructuredArray.newInstance(MockStructure.class, 1000);
+        final FootprintEstimator.Footprint footprint = estimator.estimate(array);
+
+        assertThat(footprint.getLevels().size(), is(1));
+        final FootprintEstimator.Level level = footprint.getLevels().get(0);
+        assertThat(level.getArrayCount(), is(1L));
+        assertThat(level.getElementBytes(), is(1000 * measuredInstanceSize(MockStructure.class)));
+        assertThat(level.getIntrinsicObjectBytes(), is(0L));
+        assertThat(footprint.getTotalBytes(), is(measuredGraphSize(array)));
+    }
+
+    @Test
+    public void shouldEstimateNestedStructuredArray() throws Exception {
+        final StructuredArray<StructuredArray<StructuredArray<MockStructure>>> array =
+                new StructuredArrayTest().get3dBuilder(3, 5, 7).build();
+        final FootprintEstimator.Footprint footprint = estimator.estimate(array);
+
+        assertThat(footprint.getLevels().size(), is(3));
+        assertThat(footprint.getLevels().get(0).getArrayCount(), is(1L));
+        assertThat(footprint.getLevels().get(1).getArrayCount(), is(3L));
+        assertThat(footprint.getLevels().get(2).getArrayCount(), is(15L));
+        assertThat(footprint.getLevels().get(2).getElementBytes(),
+                is(105 * measuredInstanceSize(MockStructure.class)));
+        assertThat(footprint.getTotalBytes(), is(measuredGraphSize(array)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldEstimateStructuredArrayOfPrimitiveArrays() throws Exception {
+        final StructuredArray<PrimitiveLongArray> array =
+                new StructuredArrayBuilder(StructuredArray.class,
+                        new PrimitiveArrayBuilder(PrimitiveLongArray.class, 9), 11).build();
+        final FootprintEstimator.Footprint footprint = estimator.estimate(array);
+
+        assertThat(footprint.getLevels().size(), is(2));
+        assertThat(footprint.getLevels().get(1).getArrayCount(), is(11L));
+        assertThat(footprint.getLevels().get(1).getElementClass() == long.class, is(true));
+        assertThat(footprint.getTotalBytes(), is(measuredGraphSize(array)));
+    }
+
+    @Test
+    public void shouldEstimatePrimitiveArrays() throws Exception {
+        final PrimitiveLongArray longArray = PrimitiveLongArray.newInstance(1001);
+        assertThat(estimator.estimate(longArray).getTotalBytes(), is(measuredGraphSize(longArray)));
+
+        final PrimitiveByteArray byteArray = PrimitiveByteArray.newInstance(13);
+        assertThat(estimator.estimate(byteArray).getTotalBytes(), is(measuredGraphSize(byteArray)));
+
+        final ReferenceArray<Object> referenceArray = ReferenceArray.newInstance(17);
+        assertThat(estimator.estimate(referenceArray).getTotalBytes(), is(measuredGraphSize(referenceArray)));
+    }
+
+    @Test
+    public void shouldEstimateIntrinsicObjects() throws Exception {
+        final StructuredArray<Line> array = StructuredArray.newInstance(Line.class, 100);
+        final FootprintEstimator.Footprint footprint = estimator.estimate(array);
+
+        final long lineIntrinsics = 2 * measuredInstanceSize(Point.class) +
+                measuredGraphSize(array.get(0).getHistory());
+        assertThat(footprint.getLevels().get(0).getIntrinsicObjectBytes(), is(100 * lineIntrinsics));
+        assertThat(footprint.getTotalBytes(), is(measuredGraphSize(array)));
+    }
+
+    @Test
+    public void shouldEstimateLongAddressablePartitions() throws Exception {
+        // Not constructed, so only the estimate's arithmetic is checked: the length needs one full
+        // long-addressable partition and a last partition of 5 elements.
+        final long length = Integer.MAX_VALUE + (1L << 30) + 5;
+        final FootprintEstimator.Level level = estimator.estimate(
+                new PrimitiveArrayModel<PrimitiveByteArray>(PrimitiveByteArray.class, length)).getLevels().get(0);
+        assertThat(level.getStorageBytes(),
+                is(estimator.arraySize(byte.class, Integer.MAX_VALUE) +
+                        estimator.arraySize(Object.class, 2) +
+                        estimator.arraySize(byte.class, 1L << 30) +
+                        estimator.arraySize(byte.class, 5)));
+    }
+
+    //
+    // Test classes:
+    //
+
+    public static class HeaderProbe {
+        byte b;
+    }
+
+    public static class Point {
+        private int x;
+        private int y;
+        private byte flags;
+    }
+
+    public static class Line {
+        @Intrinsic
+        private final Point start = IntrinsicObjects.constructWithin("start", this);
+        @Intrinsic
+        private final Point end = IntrinsicObjects.constructWithin("end", this);
+        @Intrinsic(length = 5)
+        private final PrimitiveLongArray history = IntrinsicObjects.constructWithin("history", this);
+        private long id;
+
+        PrimitiveLongArray getHistory() {
+            return history;
+        }
+    }
+
+    //
+    // Measurement of the actual layout:
+    //
+
+    private static long measuredInstanceSize(final Class objectClass) {
+        // One past the end of the last field, or the end of the header if there are no fields:
+        long end = minimumFieldOffset();
+        for (Class c = objectClass; c != null; c = c.getSuperclass()) {
+            for (final Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    end = Math.max(end, unsafe.objectFieldOffset(field) + primitiveOrReferenceSize(field.getType()));
+                }
+            }
+        }
+        return align(end);
+    }
+
+    private static long minimumFieldOffset() {
+        try {
+            return unsafe.objectFieldOffset(HeaderProbe.class.getDeclaredField("b"));
+        } catch (NoSuchFieldException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static long measuredArraySize(final Class arrayClass, final long length) {
+        return align(unsafe.arrayBaseOffset(arrayClass) + (length * unsafe.arrayIndexScale(arrayClass)));
+    }
+
+    private static long primitiveOrReferenceSize(final Class type) {
+        if (!type.isPrimitive()) {
+            return unsafe.arrayIndexScale(Object[].class);
+        }
+        return unsafe.arrayIndexScale(Array.newInstance(type, 0).getClass());
+    }
+
+    private static long align(final long size) {
+        return (size + 7) & ~7L;
+    }
+
+    /**
+     * The total size of all objects reachable from root, excluding the metadata that the estimator does not
+     * count (models, Class and Field objects).
+     */
+    private static long measuredGraphSize(final Object root) {
+        final IdentityHashMap<Object, Boolean> visited = new IdentityHashMap<Object, Boolean>();
+        final List<Object> pending = new ArrayList<Object>();
+        pending.add(root);
+        long size = 0;
+        while (!pending.isEmpty()) {
+            final Object o = pending.remove(pending.size() - 1);
+            if ((o == null) || visited.containsKey(o) || (o instanceof Class) || (o instanceof Field) ||
+                    (o instanceof AbstractStructuredArrayModel) || (o instanceof AbstractPrimitiveArrayModel)) {
+                continue;
+            }
+            visited.put(o, Boolean.TRUE);
+            final Class c = o.getClass();
+            if (c.isArray()) {
+                final int length = Array.getLength(o);
+                size += measuredArraySize(c, length);
+                if (!c.getComponentType().isPrimitive()) {
+                    for (int i = 0; i < length; i++) {
+                        pending.add(((Object[]) o)[i]);
+                    }
+                }
+            } else {
+                size += measuredInstanceSize(c);
+                for (Class s = c; s != null; s = s.getSuperclass()) {
+                    for (final Field field : s.getDeclaredFields()) {
+                        if (!Modifier.isStatic(field.getModifiers()) && !field.getType().isPrimitive()) {
+                            pending.add(unsafe.getObject(o, unsafe.objectFieldOffset(field)));
+                        }
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    private static Unsafe getUnsafe() {
+        try {
+            final Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return (Unsafe) field.get(null);
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+* Written by Gil Tene and Martin Thompson, and released to the public domain,
+* as explained at http://creativecommons.org/publicdomain/zero/1.0/
+*/
+
+package org.ObjectLayout;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class PolymorphicStructuredArrayTest {
+
+    private static final int TRADE = 0;
+    private static final int QUOTE = 1;
+
+    @SuppressWarnings("unchecked")
+    private static final Class<? extends Event>[] EVENT_VARIANTS = new Class[] {Trade.class, Quote.class};
+
+    @Test
+    public void shouldConstructElementVariantsChosenPerIndex() throws NoSuchMethodException {
+        final StructuredArray<Event> events = newEventLog(10);
+
+        assertThat(events.getElementClass() == Event.class, is(true));
+        for (long i = 0; i < events.getLength(); i++) {
+            final Event event = events.get(i);
+            assertThat(event.timestamp, is(i * 100));
+            if ((i % 3) == 0) {
+                assertThat(event.getClass() == Quote.class, is(true));
+                assertThat(events.getElementTypeTag(i), is(QUOTE));
+                assertThat(((Quote) event).bid, is(i));
+            } else {
+                assertThat(event.getClass() == Trade.class, is(true));
+                assertThat(events.getElementTypeTag(i), is(TRADE));
+                assertThat(((Trade) event).price, is(i));
+            }
+        }
+    }
+
+    @Test
+    public void shouldExposeTypeTagsWhileIterating() throws NoSuchMethodException {
+        final StructuredArray<Event> events = newEventLog(10);
+
+        final StructuredArray<Event>.ElementIterator iterator = events.iterator();
+        long quotes = 0;
+        long tradePrices = 0;
+        while (iterator.hasNext()) {
+            final Event event = iterator.next();
+            switch (iterator.getTypeTag()) {
+                case TRADE:
+                    tradePrices += ((Trade) event).price;
+                    break;
+                case QUOTE:
+                    quotes++;
+                    break;
+            }
+        }
+
+        assertThat(quotes, is(4L));
+        assertThat(tradePrices, is(1L + 2 + 4 + 5 + 7 + 8));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectTypeTagRequestBeforeNext() throws NoSuchMethodException {
+        newEventLog(10).iterator().getTypeTag();
+    }
+
+    @Test
+    public void shouldConstructFirstVariantByDefault() throws NoSuchMethodException {
+        final StructuredArray<Event> events =
+                new StructuredArrayBuilder<StructuredArray<Event>, Event>(
+                        eventLogClass(), Event.class, EVENT_VARIANTS, 5).build();
+
+        for (final Event event : events) {
+            assertThat(event.getClass() == Trade.class, is(true));
+        }
+        assertThat(events.getElementTypeTag(4), is(TRADE));
+    }
+
+    @Test
+    public void shouldReportZeroTypeTagForArraysWithoutVariants() throws NoSuchMethodException {
+        final StructuredArray<Trade> trades = StructuredArray.newInstance(Trade.class, 3);
+
+        assertThat(trades.getArrayModel().getElementVariants() == null, is(true));
+        assertThat(trades.getElementTypeTag(2), is(0));
+        final StructuredArray<Trade>.ElementIterator iterator = trades.iterator();
+        iterator.next();
+        assertThat(iterator.getTypeTag(), is(0));
+    }
+
+    @Test
+    public void shouldRejectConstructorOfClassOutsideVariants() throws NoSuchMethodException {
+        assertConstructionRejected(
+                new StructuredArrayBuilder<StructuredArray<Event>, Event>(
+                        eventLogClass(), Event.class, EVENT_VARIANTS, 5).
+                        elementCtorAndArgs(new CtorAndArgs<Event>(Heartbeat.class.getDeclaredConstructor())));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldRejectConstructorOfConcreteElementClassThatIsNotAVariant() throws NoSuchMethodException {
+        final Class<StructuredArray<Trade>> arrayClass = (Class<StructuredArray<Trade>>) (Class) StructuredArray.class;
+
+        assertConstructionRejected(
+                new StructuredArrayBuilder<StructuredArray<Trade>, Trade>(
+                        arrayClass, Trade.class, new Class[] {LargeTrade.class}, 5).
+                        elementCtorAndArgs(new CtorAndArgs<Trade>(Trade.class.getDeclaredConstructor())));
+
+        // The element class itself is accepted when it is declared as a variant:
+        final StructuredArray<Trade> trades =
+                new StructuredArrayBuilder<StructuredArray<Trade>, Trade>(
+                        arrayClass, Trade.class, new Class[] {LargeTrade.class, Trade.class}, 5).
+                        elementCtorAndArgs(new CtorAndArgs<Trade>(Trade.class.getDeclaredConstructor())).
+                        build();
+        assertThat(trades.getElementTypeTag(0), is(1));
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void shouldRejectTypeTagRequestOutOfBounds() throws NoSuchMethodException {
+        newEventLog(10).getElementTypeTag(10);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldRejectInvalidVariants() throws NoSuchMethodException {
+        final Class[][] invalidVariants = {
+                {},
+                {Trade.class, Trade.class},
+                {Trade.class, Event.class},
+                {Trade.class, StructuredArrayTest.MockStructure.class},
+        };
+        for (final Class[] variants : invalidVariants) {
+            try {
+                new StructuredArrayModel<StructuredArray<Event>, Event>(eventLogClass(), Event.class, variants, 5){};
+                assertTrue("accepted " + variants.length + " variants", false);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void shouldIncludeVariantsInModelEquality() throws NoSuchMethodException {
+        final StructuredArrayModel<StructuredArray<Event>, Event> model =
+                new StructuredArrayModel<StructuredArray<Event>, Event>(eventLogClass(), Event.class, EVENT_VARIANTS, 5){};
+        @SuppressWarnings("unchecked")
+        final Class<? extends Event>[] reversed = new Class[] {Quote.class, Trade.class};
+
+        assertThat(model.equals(newEventLog(5).getArrayModel()), is(true));
+        assertThat(model.equals(new StructuredArrayModel<StructuredArray<Event>, Event>(
+                eventLogClass(), Event.class, reversed, 5){}), is(false));
+        assertThat(model.equals(new StructuredArrayModel<StructuredArray<Event>, Event>(
+                eventLogClass(), Event.class, 5){}), is(false));
+
+        model.getElementVariants()[0] = Quote.class;
+        assertThat(model.getElementVariants()[0] == Trade.class, is(true));
+    }
+
+    @Test
+    public void shouldCopyElementsWithTheirOwnVariantCopyConstructors() throws NoSuchMethodException {
+        final StructuredArray<Event> events = newEventLog(10);
+
+        final StructuredArray<Event> copy = StructuredArray.copyInstance(events, 2, 6);
+
+        assertThat(copy.getArrayModel().getElementVariants().length, is(2));
+        for (long i = 0; i < copy.getLength(); i++) {
+            final Event event = copy.get(i);
+            assertThat(event.getClass() == events.get(i + 2).getClass(), is(true));
+            assertThat(copy.getElementTypeTag(i), is(events.getElementTypeTag(i + 2)));
+            assertThat(event.timestamp, is((i + 2) * 100));
+        }
+        assertThat(((Quote) copy.get(1)).bid, is(3L));
+        assertThat(((Trade) copy.get(2)).price, is(4L));
+    }
+
+    @Test
+    public void shouldShallowCopyInheritedAndVariantFields() throws NoSuchMethodException {
+        final StructuredArray<Event> events = newEventLog(10);
+
+        // Elements 0 and 3 are both quotes:
+        StructuredArray.shallowCopy(events, 3, events, 0, 1);
+
+        assertThat(events.get(0).timestamp, is(300L));
+        assertThat(((Quote) events.get(0)).bid, is(3L));
+        assertThat(((Quote) events.get(0)).ask, is(4L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectShallowCopyBetweenDifferentVariants() throws NoSuchMethodException {
+        final StructuredArray<Event> events = newEventLog(10);
+
+        // Element 1 is a trade, element 0 is a quote:
+        StructuredArray.shallowCopy(events, 1, events, 0, 1);
+    }
+
+    @Test
+    public void shouldEstimateElementFootprintWithLargestVariant() throws NoSuchMethodException {
+        final FootprintEstimator estimator = FootprintEstimator.forCurrentJvm();
+        final FootprintEstimator.Level level = estimator.estimate(newEventLog(10)).getLevels().get(0);
+
+        assertThat(level.getElementBytes(), is(10 * estimator.instanceSize(Quote.class)));
+    }
+
+    private static void assertConstructionRejected(final StructuredArrayBuilder builder) {
+        try {
+            builder.build();
+            assertTrue("accepted a constructor of a class outside the element variants", false);
+        } catch (RuntimeException ex) {
+            // Element population failures surface wrapped by the reflective array construction:
+            Throwable cause = ex;
+            while (!(cause instanceof IllegalArgumentException) && (cause.getCause() != null)) {
+                cause = cause.getCause();
+            }
+            assertTrue(cause instanceof IllegalArgumentException);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<StructuredArray<Event>> eventLogClass() {
+        return (Class<StructuredArray<Event>>) (Class) StructuredArray.class;
+    }
+
+    private static StructuredArray<Event> newEventLog(final long length) throws NoSuchMethodException {
+        final CtorAndArgs<Event> tradeCtorAndArgs = new CtorAndArgs<Event>(
+                Trade.class.getDeclaredConstructor(Long.TYPE, Long.TYPE, Long.TYPE), 0L, 0L, 0L);
+        final CtorAndArgs<Event> quoteCtorAndArgs = new CtorAndArgs<Event>(
+                Quote.class.getDeclaredConstructor(Long.TYPE, Long.TYPE, Long.TYPE), 0L, 0L, 0L);
+
+        return new StructuredArrayBuilder<StructuredArray<Event>, Event>(
+                eventLogClass(), Event.class, EVENT_VARIANTS, length).
+                elementCtorAndArgsProvider(new CtorAndArgsProvider<Event>() {
+                    @Override
+                    public CtorAndArgs<Event> getForContext(ConstructionContext<Event> context) {
+                        final long index = context.getIndex();
+                        final CtorAndArgs<Event> ctorAndArgs =
+                                ((index % 3) == 0) ? quoteCtorAndArgs : tradeCtorAndArgs;
+                        final Object[] args = ctorAndArgs.getArgs();
+                        args[0] = index * 100;
+                        args[1] = index;
+                        args[2] = index + 1;
+                        return ctorAndArgs;
+                    }
+                }).
+                build();
+    }
+
+    public abstract static class Event {
+        long timestamp;
+
+        Event(final long timestamp) {
+            this.timestamp = timestamp;
+        }
+    }
+
+    public static class Trade extends Event {
+        long price;
+        long quantity;
+
+        public Trade() {
+            super(0);
+        }
+
+        public Trade(final long timestamp, final long price, final long quantity) {
+            super(timestamp);
+            this.price = price;
+            this.quantity = quantity;
+        }
+
+        public Trade(final Trade source) {
+            this(source.timestamp, source.price, source.quantity);
+        }
+    }
+
+    public static class LargeTrade extends Trade {
+        long counterparty;
+
+        public LargeTrade() {
+        }
+    }
+
+    public static class Quote extends Event {
+        long bid;
+        long ask;
+        long bidSize;
+        long askSize;
+
+        public Quote(final long timestamp, final long bid, final long ask) {
+            super(timestamp);
+            this.bid = bid;
+            this.ask = ask;
+        }
+
+        public Quote(final Quote source) {
+            super(source.timestamp);
+            this.bid = source.bid;
+            this.ask = source.ask;
+            this.bidSize = source.bidSize;
+            this.askSize = source.askSize;
+        }
+    }
+
+    public static class Heartbeat extends Event {
+        public Heartbeat() {
+            super(0);
+        }
+    }
+}
@@ -59,6 +59,19 @@ public class PrimitiveLongArrayTest {
         assertTrue(blueArray.getColor().equals("Blue"));
     }
 
+    @Test
+    public void testLongIndexedAccess() throws Exception {
+        PrimitiveLongArray array = PrimitiveLongArray.newInstance(20);
+
+        for (long i = 0; i < array.getLength(); i++) {
+            array.set(i, i * 3);
+        }
+
+        for (long i = 0; i < array.getLength(); i++) {
+            assertThat(array.get(i), is(i * 3));
+        }
+    }
+
     @Test
     public void testCopyOfColoredLongArray() throws Exception {
         ColoredLongArray blueArray = ColoredLongArray.newInstance("Blue", 10);
@@ -0,0 +1,150 @@
+package org.ObjectLayout;
+
+import org.ObjectLayout.StructuredArrayTest.MockStructure;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class StructuredArraySnapshotterTest {
+
+    private static final StructuredArraySnapshotter.ElementCopier<MockStructure> COPIER =
+            new StructuredArraySnapshotter.ElementCopier<MockStructure>() {
+                @Override
+                public void copy(final MockStructure source, final MockStructure target) {
+                    target.setIndex(source.getIndex());
+                    target.setTestValue(source.getTestValue());
+                }
+            };
+
+    @Test
+    public void shouldSnapshotQuiescentArray() throws Exception {
+        final StructuredArray<MockStructure> array = newArray(1000);
+        final StructuredArraySnapshotter<MockStructure> snapshotter =
+                new StructuredArraySnapshotter<MockStructure>(array, COPIER, 4);
+        assertTrue(snapshotter.getLatestSnapshot() == null);
+
+        snapshotter.beginSnapshot();
+        assertThat(snapshotter.isSnapshotInProgress(), is(true));
+        final StructuredArray<MockStructure> snapshot = snapshotter.completeSnapshot();
+
+        assertThat(snapshotter.isSnapshotInProgress(), is(false));
+        assertTrue(snapshotter.getLatestSnapshot() == snapshot);
+        assertThat(snapshot.getLength(), is(1000L));
+        for (long i = 0; i < array.getLength(); i++) {
+            assertThat(snapshot.get(i), is(array.get(i)));
+        }
+    }
+
+    @Test
+    public void shouldPreserveSegmentsTouchedByWriter() throws Exception {
+        final StructuredArray<MockStructure> array = newArray(100);
+        final StructuredArraySnapshotter<MockStructure> snapshotter =
+                new StructuredArraySnapshotter<MockStructure>(array, COPIER, 3);
+
+        snapshotter.beginSnapshot();
+        snapshotter.getForWrite(17).setTestValue(-1);
+        snapshotter.getForWrite(99).setTestValue(-2);
+        final StructuredArray<MockStructure> snapshot = snapshotter.completeSnapshot();
+
+        assertThat(snapshot.get(17).getTestValue(), is(17L));
+        assertThat(snapshot.get(99).getTestValue(), is(99L));
+        assertThat(array.get(17).getTestValue(), is(-1L));
+    }
+
+    @Test
+    public void shouldAlternateBuffers() throws Exception {
+        final StructuredArray<MockStructure> array = newArray(10);
+        final StructuredArraySnapshotter<MockStructure> snapshotter =
+                new StructuredArraySnapshotter<MockStructure>(array, COPIER);
+
+        snapshotter.beginSnapshot();
+        final StructuredArray<MockStructure> first = snapshotter.completeSnapshot();
+        snapshotter.getForWrite(3).setTestValue(300);
+        snapshotter.beginSnapshot();
+        final StructuredArray<MockStructure> second = snapshotter.completeSnapshot();
+        snapshotter.beginSnapshot();
+        final StructuredArray<MockStructure> third = snapshotter.completeSnapshot();
+
+        assertTrue(first != second);
+        assertTrue(first == third);
+        assertThat(second.get(3).getTestValue(), is(300L));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectOverlappingSnapshots() throws Exception {
+        final StructuredArraySnapshotter<MockStructure> snapshotter =
+                new StructuredArraySnapshotter<MockStructure>(newArray(10), COPIER);
+        snapshotter.beginSnapshot();
+        snapshotter.beginSnapshot();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectCompletingWithoutSnapshot() throws Exception {
+        new StructuredArraySnapshotter<MockStructure>(newArray(10), COPIER).completeSnapshot();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @SuppressWarnings("unchecked")
+    public void shouldRejectArraysWithElementVariants() throws Exception {
+        final StructuredArray<StructuredArray<MockStructure>> array =
+                new StructuredArrayBuilder(StructuredArray.class,
+                        new StructuredArrayBuilder(StructuredArray.class, MockStructure.class,
+                                new Class[] {MockStructure.class}, 10),
+                        2).build();
+        new StructuredArraySnapshotter(array, COPIER);
+    }
+
+    @Test
+    public void shouldTakeConsistentSnapshotsWhileWriterRuns() throws Exception {
+        final long length = 20000;
+        final StructuredArray<MockStructure> array = newArray(length);
+        final StructuredArraySnapshotter<MockStructure> snapshotter =
+                new StructuredArraySnapshotter<MockStructure>(array, COPIER, 6);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            long round = 0;
+            for (int snapshotNumber = 0; snapshotNumber < 20; snapshotNumber++) {
+                // The writer keeps every element's testValue equal to index + (length * round) at the start
+                // of each snapshot, and keeps writing while the snapshot is copied in the background:
+                final long roundAtSnapshot = round;
+                snapshotter.beginSnapshot();
+                final Future<StructuredArray<MockStructure>> future = executor.submit(
+                        new Callable<StructuredArray<MockStructure>>() {
+                            @Override
+                            public StructuredArray<MockStructure> call() {
+                                return snapshotter.completeSnapshot();
+                            }
+                        });
+                do {
+                    round++;
+                    for (long i = 0; i < length; i++) {
+                        snapshotter.getForWrite(i).setTestValue(i + (length * round));
+                    }
+                } while (!future.isDone());
+
+                final StructuredArray<MockStructure> snapshot = future.get();
+                for (long i = 0; i < length; i++) {
+                    assertThat(snapshot.get(i).getTestValue(), is(i + (length * roundAtSnapshot)));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static StructuredArray<MockStructure> newArray(final long length) {
+        final StructuredArray<MockStructure> array = StructuredArray.newInstance(MockStructure.class, length);
+        for (long i = 0; i < length; i++) {
+            array.get(i).setIndex(i);
+            array.get(i).setTestValue(i);
+        }
+        return array;
+    }
+}
@@ -10,6 +10,13 @@ import org.junit.Test;
 import java.awt.*;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.lang.Long.valueOf;
 import static org.hamcrest.CoreMatchers.is;
@@ -454,6 +461,88 @@ public class StructuredArrayTest {
         assertCorrectVariableInitialisation(counts, newArray, 2);
     }
 
+    @Test
+    public void shouldConstructCopyOfArrayInParallel() throws NoSuchMethodException {
+        final long length = 1001;
+        final DefaultMockCtorAndArgsProvider ctorAndArgsProvider = new DefaultMockCtorAndArgsProvider();
+        final StructuredArray<MockStructure> sourceArray =
+                StructuredArray.newInstance(MockStructure.class, ctorAndArgsProvider, length);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final StructuredArray<MockStructure> newArray = StructuredArray.copyInstance(sourceArray, executor, 7);
+
+            assertCorrectVariableInitialisation(new long[] {length}, newArray);
+            for (long i = 0; i < length; i++) {
+                assertTrue(newArray.get(i) != sourceArray.get(i));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void shouldConstructCopyOfArrayRangeInParallel() throws NoSuchMethodException {
+        final long[] lengths = {15, 7, 5};
+        final DefaultMockCtorAndArgsProvider ctorAndArgsProvider = new DefaultMockCtorAndArgsProvider();
+
+        final StructuredArrayBuilder<StructuredArray<StructuredArray<StructuredArray<MockStructure>>>,
+                StructuredArray<StructuredArray<MockStructure>>> builder = get3dBuilder(lengths);
+        builder.getStructuredSubArrayBuilder().
+                getStructuredSubArrayBuilder().
+                elementCtorAndArgsProvider(ctorAndArgsProvider);
+
+        final StructuredArray<StructuredArray<StructuredArray<MockStructure>>> sourceArray = builder.build();
+
+        long[] offsets = {2, 2, 2};
+        long[] counts = {13, 5, 3};
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final StructuredArray<StructuredArray<StructuredArray<MockStructure>>> newArray =
+                    StructuredArray.copyInstance(sourceArray, offsets, counts, executor, 4);
+
+            assertCorrectVariableInitialisation(counts, newArray, 2);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldCancelRemainingRangesWhenParallelCopyFails() throws Exception {
+        final StructuredArray<FailingCopyStructure> sourceArray =
+                StructuredArray.newInstance(FailingCopyStructure.class, 40);
+        FailingCopyStructure.attempts.set(0);
+        FailingCopyStructure.copies.set(0);
+
+        // A single worker, which holds each range after the first until it is cancelled (or for 10 seconds):
+        final ExecutorService executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>()) {
+            private int started = 0;
+
+            @Override
+            protected void beforeExecute(final Thread thread, final Runnable task) {
+                if (started++ == 0) {
+                    return;
+                }
+                final long deadline = System.currentTimeMillis() + 10000;
+                while (!((Future) task).isCancelled() && (System.currentTimeMillis() < deadline)) {
+                    Thread.yield();
+                }
+            }
+        };
+        try {
+            StructuredArray.copyInstance(sourceArray, executor, 4);
+            assertTrue("copy should have failed", false);
+        } catch (RuntimeException expected) {
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(20, TimeUnit.SECONDS);
+        }
+
+        assertThat(FailingCopyStructure.copies.get(), is(0));
+    }
+
     @Test(expected = ArrayIndexOutOfBoundsException.class)
     public void shouldThrowOutOfBoundExceptionForAccessesOutOfBounds() throws NoSuchMethodException {
         final long length = 11;
@@ -746,6 +835,22 @@ public class StructuredArrayTest {
         }
     }
 
+    public static class FailingCopyStructure {
+        static final AtomicInteger attempts = new AtomicInteger();
+        static final AtomicInteger copies = new AtomicInteger();
+
+        public FailingCopyStructure() {
+        }
+
+        // The first copy fails, and later ones are counted:
+        public FailingCopyStructure(final FailingCopyStructure src) {
+            if (attempts.getAndIncrement() == 0) {
+                throw new IllegalStateException("copy failed");
+            }
+            copies.incrementAndGet();
+        }
+    }
+
     public static class MockStructureWithFinalField {
         private final int value = 888;
     }
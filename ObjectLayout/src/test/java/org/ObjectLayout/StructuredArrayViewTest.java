@@ -0,0 +1,86 @@
+package org.ObjectLayout;
+
+import org.ObjectLayout.StructuredArrayTest.MockStructure;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class StructuredArrayViewTest {
+
+    @SuppressWarnings("unchecked")
+    private static StructuredArray<StructuredArray<StructuredArray<MockStructure>>> newNestedArray(
+            final long[] lengths) {
+        return new StructuredArrayBuilder(
+                StructuredArray.class,
+                new StructuredArrayBuilder(
+                        StructuredArray.class,
+                        new StructuredArrayBuilder(
+                                StructuredArray.class,
+                                MockStructure.class,
+                                lengths[2]
+                        ),
+                        lengths[1]
+                ),
+                lengths[0]
+        ).build();
+    }
+
+    @Test
+    public void shouldMatchNestedGetsForEveryElement() throws Exception {
+        final long[] lengths = {3, 4, 5};
+        final StructuredArray<StructuredArray<StructuredArray<MockStructure>>> array = newNestedArray(lengths);
+        final StructuredArrayView<MockStructure> view = StructuredArrayView.newInstance(array, MockStructure.class);
+
+        assertThat(view.getDimensionCount(), is(3));
+        assertThat(view.getDimension(0), is(3L));
+        assertThat(view.getDimension(1), is(4L));
+        assertThat(view.getDimension(2), is(5L));
+        assertThat(view.getFlatLength(), is(60L));
+
+        long flatIndex = 0;
+        for (long i = 0; i < lengths[0]; i++) {
+            for (long j = 0; j < lengths[1]; j++) {
+                for (long k = 0; k < lengths[2]; k++) {
+                    final MockStructure expected = array.get(i).get(j).get(k);
+                    assertTrue(view.get(i, j, k) == expected);
+                    assertTrue(view.get(new long[] {i, j, k}) == expected);
+                    assertThat(view.flatIndex(i, j, k), is(flatIndex));
+                    assertTrue(view.getFlat(flatIndex) == expected);
+                    flatIndex++;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldViewOuterLevelsOnly() throws Exception {
+        final StructuredArray<StructuredArray<StructuredArray<MockStructure>>> array = newNestedArray(new long[] {2, 3, 4});
+        @SuppressWarnings("rawtypes")
+        final StructuredArrayView<StructuredArray> view = StructuredArrayView.newInstance(array, StructuredArray.class, 2);
+
+        assertThat(view.getDimensionCount(), is(2));
+        assertThat(view.getFlatLength(), is(6L));
+        assertTrue(view.get(1, 2) == array.get(1).get(2));
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void shouldRejectOutOfBoundsIndex() throws Exception {
+        final StructuredArrayView<MockStructure> view =
+                StructuredArrayView.newInstance(newNestedArray(new long[] {2, 3, 4}), MockStructure.class);
+        view.get(0, 3, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectWrongLeafClass() throws Exception {
+        StructuredArrayView.newInstance(newNestedArray(new long[] {2, 3, 4}), String.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectWrongIndexCount() throws Exception {
+        final StructuredArrayView<MockStructure> view =
+                StructuredArrayView.newInstance(newNestedArray(new long[] {2, 3, 4}), MockStructure.class);
+        view.get(0, 1);
+    }
+}